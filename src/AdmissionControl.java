@@ -0,0 +1,302 @@
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * decides which connections the server accepts and how many commands each address can send, so a reconnect storm
+ * or a misbehaving bot cannot crowd out the other players
+ *
+ * the rates are token buckets kept as the time each bucket is full again, so taking tokens is a single compare and set
+ * and no lock is held on the accept path or by a session. the buckets of each address are kept in a concurrent map,
+ * an address is forgotten once it has no sessions and its buckets have filled up again.
+ * a server being drained for a deploy refuses every new connection and keeps the sessions it has
+ */
+public class AdmissionControl {
+
+    /**
+     * how often addresses that have gone idle are looked for, in nanoseconds
+     */
+    private static final long SWEEP_INTERVAL = 10_000_000_000L;
+
+    /**
+     * the most sessions open at once, 0 for no limit
+     */
+    private final int maxSessions;
+
+    /**
+     * the most sessions open at once from one address, 0 for no limit
+     */
+    private final int maxSessionsPerAddress;
+
+    /**
+     * how fast each address can connect
+     */
+    private final Rate connects;
+
+    /**
+     * how fast each address can send commands, shared between all of its sessions
+     */
+    private final Rate commands;
+
+    /**
+     * where refused connections and commands are counted
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * the buckets and sessions of every address seen recently
+     */
+    private final ConcurrentHashMap<InetAddress, Host> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * the number of sessions open
+     */
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    /**
+     * when idle addresses are next looked for, from System.nanoTime
+     */
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL);
+
+    /**
+     * stores weather every new connection is refused, while the server is drained
+     */
+    private volatile boolean draining = false;
+
+    /**
+     * constructor for the admission control of a server
+     * @param config the settings the server was started with
+     * @param metrics where refused connections and commands are counted
+     */
+    public AdmissionControl(ServerConfig config, ServerMetrics metrics){
+        maxSessions = config.getMaxSessions();
+        maxSessionsPerAddress = config.getMaxSessionsPerAddress();
+        connects = new Rate(config.getConnectRate(), config.getConnectBurst());
+        commands = new Rate(config.getCommandRate(), config.getCommandBurst());
+        this.metrics = metrics;
+    }
+
+    /**
+     * decides if a connection that has just been accepted can start a session
+     * @param address the address the connection came from
+     * @return the address the session counts against, released when the session ends, or null if the connection
+     * should be closed because the server is full or draining, or the address is connecting too fast
+     */
+    public Host admit(InetAddress address){
+        long now = System.nanoTime();
+        sweep(now);
+        if(draining || !reserve(sessions, maxSessions)){
+            metrics.connectionRejected();
+            return null;
+        }
+        Host host;
+        while (true){
+            host = hosts.get(address);
+            if(host == null){
+                Host added = new Host(address, now);
+                host = hosts.putIfAbsent(address, added);
+                if(host == null){
+                    host = added;
+                }
+            }
+            int open = host.sessions.get();
+            if(open < 0){ // swept while this thread was looking it up, a fresh one takes its place
+                hosts.remove(address, host);
+                continue;
+            }
+            if(maxSessionsPerAddress > 0 && open >= maxSessionsPerAddress){
+                sessions.decrementAndGet();
+                metrics.connectionRejected();
+                return null;
+            }
+            if(host.sessions.compareAndSet(open, open + 1)){
+                break;
+            }
+        }
+        if(!connects.take(host.connects, 1, now)){
+            release(host);
+            metrics.connectionThrottled();
+            return null;
+        }
+        return host;
+    }
+
+    /**
+     * ends a session that was admitted
+     * @param host the address the session counted against
+     */
+    public void release(Host host){
+        host.sessions.decrementAndGet();
+        sessions.decrementAndGet();
+    }
+
+    /**
+     * takes tokens for commands from the bucket of an address
+     * @param host the address the commands came from
+     * @param count the number of commands
+     * @return true if they can be played, false if the address is sending commands too fast and they are refused
+     */
+    public boolean allowCommands(Host host, int count){
+        if(commands.take(host.commands, count, System.nanoTime())){
+            return true;
+        }
+        metrics.commandsThrottled(count);
+        return false;
+    }
+
+    /**
+     * starts or stops refusing every new connection
+     * @param draining true while the server is drained
+     */
+    public void setDraining(boolean draining){
+        this.draining = draining;
+    }
+
+    /**
+     * @return true while every new connection is refused
+     */
+    public boolean isDraining(){
+        return draining;
+    }
+
+    /**
+     * adds one to a count unless it is at its limit
+     * @param count the count
+     * @param max the limit, 0 for no limit
+     * @return true if the count was added to
+     */
+    private static boolean reserve(AtomicInteger count, int max){
+        while (true){
+            int current = count.get();
+            if(max > 0 && current >= max){
+                return false;
+            }
+            if(count.compareAndSet(current, current + 1)){
+                return true;
+            }
+        }
+    }
+
+    /**
+     * forgets every address with no sessions whose buckets are full, at most once every SWEEP_INTERVAL.
+     * whichever thread moves the next sweep on does the sweep, the others carry on
+     * @param now the time, from System.nanoTime
+     */
+    private void sweep(long now){
+        long due = nextSweep.get();
+        if(now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL)){
+            return;
+        }
+        for(Host host:hosts.values()){
+            // -1 marks it as gone, so a session admitted at the same moment looks it up again
+            if(host.isIdle(now) && host.sessions.compareAndSet(0, -1)){
+                hosts.remove(host.address, host);
+            }
+        }
+    }
+
+    /**
+     * the buckets and open sessions of one address
+     */
+    public static final class Host {
+
+        /**
+         * the address
+         */
+        private final InetAddress address;
+
+        /**
+         * the number of sessions open from the address, -1 once it has been forgotten
+         */
+        private final AtomicInteger sessions = new AtomicInteger();
+
+        /**
+         * when the connect bucket is full again, from System.nanoTime
+         */
+        private final AtomicLong connects;
+
+        /**
+         * when the command bucket is full again, from System.nanoTime
+         */
+        private final AtomicLong commands;
+
+        /**
+         * constructor for an address seen for the first time, its buckets start full
+         * @param address the address
+         * @param now the time, from System.nanoTime
+         */
+        private Host(InetAddress address, long now){
+            this.address = address;
+            connects = new AtomicLong(now);
+            commands = new AtomicLong(now);
+        }
+
+        /**
+         * @param now the time, from System.nanoTime
+         * @return true if no session is open from the address and both of its buckets are full
+         */
+        private boolean isIdle(long now){
+            return sessions.get() == 0 && connects.get() - now <= 0 && commands.get() - now <= 0;
+        }
+
+        /**
+         * @return the address
+         */
+        public InetAddress getAddress(){
+            return address;
+        }
+    }
+
+    /**
+     * a rate tokens are added to a bucket at and the most tokens it holds
+     * a bucket is a single time, when it will be full again. taking tokens moves that time on by the time they take to
+     * come back, and is refused if it would move further ahead of now than a full bucket takes to fill
+     */
+    private static final class Rate {
+
+        /**
+         * the time one token takes to come back, in nanoseconds, 0 for no limit
+         */
+        private final long interval;
+
+        /**
+         * the time an empty bucket takes to fill, in nanoseconds
+         */
+        private final long capacity;
+
+        /**
+         * constructor for a rate
+         * @param perSecond the tokens added each second, 0 for no limit
+         * @param burst the most tokens a bucket holds
+         */
+        private Rate(double perSecond, int burst){
+            interval = perSecond > 0 ? Math.max(1, (long) (1e9 / perSecond)) : 0;
+            capacity = interval * burst;
+        }
+
+        /**
+         * takes tokens from a bucket if it holds enough
+         * @param bucket when the bucket is full again
+         * @param tokens the number of tokens
+         * @param now the time, from System.nanoTime
+         * @return true if the tokens were taken
+         */
+        private boolean take(AtomicLong bucket, int tokens, long now){
+            if(interval == 0){
+                return true;
+            }
+            while (true){
+                long full = bucket.get();
+                long next = (full - now < 0 ? now : full) + tokens * interval;
+                if(next - now > capacity){
+                    return false;
+                }
+                if(bucket.compareAndSet(full, next)){
+                    return true;
+                }
+            }
+        }
+    }
+}
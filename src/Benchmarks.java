@@ -0,0 +1,417 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a small benchmark suite for the hot paths of the game: the deck, scoring, building the messages sent to
+ * the player and a full hit and stay round trip to a server on the loopback address
+ *
+ * each benchmark is warmed up and then measured over several timed iterations, reporting the time per operation
+ * and the bytes allocated per operation, read from the same per thread allocation counter profilers use.
+ * results can be saved as a baseline and later runs compared against it so regressions show up. a benchmark has
+ * regressed only when its time less its standard deviation is above the baseline time plus the baseline deviation,
+ * so a noisy benchmark, such as the round trip on a busy machine, is not reported for a change within its own spread
+ *
+ * settings are written as --name=value: warmup and iterations (counts), time (milliseconds per iteration),
+ * only (run benchmarks whose name starts with this), save (file to write results to) and baseline (file to compare with)
+ */
+public class Benchmarks {
+
+    /**
+     * the port the loopback server listens on
+     */
+    private static final int PORT = 23799;
+
+    /**
+     * something a benchmark does once per operation
+     */
+    private interface Operation {
+        /**
+         * does the operation once
+         * @return a value depending on the work done, so the work cannot be optimised away
+         * @throws Exception if the operation fails
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * the number of warmup iterations
+     */
+    private int warmup = 3;
+
+    /**
+     * the number of measured iterations
+     */
+    private int iterations = 5;
+
+    /**
+     * the length of each iteration in milliseconds
+     */
+    private long time = 500;
+
+    /**
+     * only benchmarks whose name starts with this are run
+     */
+    private String only = "";
+
+    /**
+     * where results are saved, null to not save them
+     */
+    private String save = null;
+
+    /**
+     * the baseline results are compared with, null to not compare
+     */
+    private String baseline = null;
+
+    /**
+     * every value returned by an operation is added here so the work it did is used
+     */
+    private static long sink;
+
+    /**
+     * main method to run the benchmarks
+     * @param args the settings, written as --name=value
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception{
+        Benchmarks benchmarks = new Benchmarks();
+        for(String arg:args){
+            int equals = arg.indexOf('=');
+            if(!arg.startsWith("--") || equals < 0){
+                throw new IllegalArgumentException("arguments must be written as --name=value: " + arg);
+            }
+            benchmarks.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        int regressions = benchmarks.runAll();
+        System.exit(regressions == 0 ? 0 : 1); // the loopback server threads would otherwise keep the jvm running
+    }
+
+    /**
+     * changes a single setting
+     * @param name the name of the setting
+     * @param value the new value of the setting
+     */
+    private void set(String name, String value){
+        switch (name) {
+            case "warmup":
+                warmup = Integer.parseInt(value);
+                break;
+            case "iterations":
+                iterations = Integer.parseInt(value);
+                break;
+            case "time":
+                time = Long.parseLong(value);
+                break;
+            case "only":
+                only = value;
+                break;
+            case "save":
+                save = value;
+                break;
+            case "baseline":
+                baseline = value;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting " + name);
+        }
+    }
+
+    /**
+     * runs every benchmark, prints the results and saves or compares them
+     * @return the number of benchmarks that regressed against the baseline
+     * @throws Exception if a benchmark fails
+     */
+    private int runAll() throws Exception{
+        Map<String, Operation> suite = suite();
+        Map<String, double[]> before = baseline == null ? new LinkedHashMap<>() : load(Paths.get(baseline));
+        List<String> lines = new ArrayList<>();
+        lines.add("# java " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors()
+                + " cores, " + iterations + " iterations of " + time + " ms");
+        lines.add("# benchmark ns/op +/- B/op");
+        int regressions = 0;
+        System.out.printf("%-28s %14s %12s %12s%s%n", "benchmark", "ns/op", "+/-", "B/op", baseline == null ? "" : "   vs baseline");
+        for(Map.Entry<String, Operation> entry:suite.entrySet()){
+            if(!entry.getKey().startsWith(only)){
+                continue;
+            }
+            double[] result = measure(entry.getValue());
+            String line = String.format("%-28s %14.1f %12.1f %12.1f", entry.getKey(), result[0], result[1], result[2]);
+            lines.add(line);
+            double[] old = before.get(entry.getKey());
+            if(old != null){
+                double change = result[0] / old[0] - 1;
+                boolean regressed = result[0] - result[1] > old[0] + old[1];
+                if(regressed){
+                    regressions++;
+                }
+                line += String.format("   %+6.1f%% time %+8.1f B/op%s", 100 * change, result[2] - old[2], regressed ? "  REGRESSION" : "");
+            }
+            System.out.println(line);
+        }
+        if(save != null){
+            Files.write(Paths.get(save), lines, StandardCharsets.UTF_8);
+        }
+        if(sink == 42){
+            System.out.println(); // only here so the sink is read
+        }
+        return regressions;
+    }
+
+    /**
+     * warms up and measures one benchmark
+     * @param operation the operation to measure
+     * @return the mean nanoseconds per operation, its standard deviation and the mean bytes allocated per operation
+     * @throws Exception if the operation fails
+     */
+    private double[] measure(Operation operation) throws Exception{
+        for(int i = 0; i < warmup; i++){
+            iteration(operation);
+        }
+        double[] nanos = new double[iterations];
+        double bytes = 0;
+        for(int i = 0; i < iterations; i++){
+            double[] result = iteration(operation);
+            nanos[i] = result[0];
+            bytes += result[1];
+        }
+        double mean = Arrays.stream(nanos).average().orElse(0);
+        double variance = Arrays.stream(nanos).map(n -> (n - mean) * (n - mean)).sum() / Math.max(1, iterations - 1);
+        return new double[]{mean, Math.sqrt(variance), bytes / iterations};
+    }
+
+    /**
+     * runs an operation over and over for one iteration
+     * @param operation the operation to run
+     * @return the nanoseconds per operation and the bytes allocated per operation
+     * @throws Exception if the operation fails
+     */
+    private double[] iteration(Operation operation) throws Exception{
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long end = System.nanoTime() + time * 1_000_000;
+        long operations = 0;
+        long result = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long now;
+        do{
+            for(int i = 0; i < 64; i++){ // checks the clock every 64 operations so reading it costs little
+                result += operation.run();
+            }
+            operations += 64;
+            now = System.nanoTime();
+        } while (now < end);
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        sink += result;
+        return new double[]{(double) (now - start) / operations, (double) allocated / operations};
+    }
+
+    /**
+     * reads saved results
+     * @param file the file written by an earlier run with --save
+     * @return the results by benchmark name
+     * @throws IOException if the file cannot be read
+     */
+    private static Map<String, double[]> load(Path file) throws IOException{
+        Map<String, double[]> results = new LinkedHashMap<>();
+        for(String line:Files.readAllLines(file, StandardCharsets.UTF_8)){
+            String[] fields = line.trim().split("\\s+");
+            if(fields.length == 4 && !line.startsWith("#")){
+                results.put(fields[0], new double[]{Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3])});
+            }
+        }
+        return results;
+    }
+
+    /**
+     * builds every benchmark
+     * @return the benchmarks by name, in the order they run
+     * @throws IOException if the loopback server cannot be reached
+     */
+    private Map<String, Operation> suite() throws IOException{
+        Map<String, Operation> suite = new LinkedHashMap<>();
+
+        Deck deck = new Deck();
+        suite.put("deck.shuffleDeck", () -> {
+            deck.shuffleDeck(); // nothing has been dealt, so this shuffles all 52 cards
+            return deck.cardsLeft();
+        });
+        suite.put("deck.resetDeck", () -> {
+            deck.resetDeck();
+            return deck.cardsLeft();
+        });
+        Deck dealing = new Deck();
+        suite.put("deck.dealACard", () -> {
+            if(dealing.cardsLeft() == 0){
+                dealing.resetDeck(); // one reset every 52 deals
+            }
+            return dealing.dealACard().length();
+        });
+
+        ArrayList<String> typical = new ArrayList<>(Arrays.asList("10", "7"));
+        ArrayList<String> typicalHit = new ArrayList<>(Arrays.asList("5", "6", "9"));
+        ArrayList<String> aceHeavy = new ArrayList<>(Arrays.asList("A", "A", "3", "A", "2", "A"));
+        suite.put("score.typical", () -> deck.score(typical) + deck.score(typicalHit));
+        suite.put("score.aceHeavy", () -> deck.score(aceHeavy));
+        Hand hand = new Hand();
+        suite.put("hand.aceHeavy", () -> {
+            hand.clear();
+            hand.add(Card.ACE);
+            hand.add(Card.ACE);
+            hand.add((byte) 3);
+            hand.add(Card.ACE);
+            hand.add((byte) 2);
+            hand.add(Card.ACE);
+            return hand.getScore();
+        });
+
+        Hand playerHand = hand(10, 2, 3, 4);
+        Hand dealerHand = hand(13, 7);
+        long[] characters = new long[1];
+        TextGameOutput text = new TextGameOutput() {
+            @Override
+            protected void sendData(String message) {
+                characters[0] += message.length();
+            }
+        };
+        suite.put("render.playerHand", () -> {
+            text.playerHand(playerHand, dealerHand.get(0));
+            return characters[0];
+        });
+        suite.put("render.outcome", () -> {
+            text.outcome(Outcome.PLAYER_HIGHER, playerHand, dealerHand);
+            return characters[0];
+        });
+        long[] messageBytes = new long[1];
+        EncodedTextGameOutput encoded = new EncodedTextGameOutput() {
+            @Override
+            protected void send(ByteBuffer message) {
+                messageBytes[0] += message.remaining();
+            }
+        };
+        suite.put("render.encodedPlayerHand", () -> {
+            encoded.playerHand(playerHand, dealerHand.get(0));
+            return messageBytes[0];
+        });
+        suite.put("render.encodedOutcome", () -> {
+            encoded.outcome(Outcome.PLAYER_HIGHER, playerHand, dealerHand);
+            return messageBytes[0];
+        });
+        long[] frameBytes = new long[1];
+        BinaryGameOutput binary = new BinaryGameOutput() {
+            @Override
+            protected void send(ByteBuffer frame) {
+                frameBytes[0] += frame.remaining();
+            }
+        };
+        suite.put("encode.outcome", () -> {
+            binary.outcome(Outcome.PLAYER_HIGHER, playerHand, dealerHand);
+            return frameBytes[0];
+        });
+
+        if("roundtrip".startsWith(only) || only.startsWith("roundtrip")){
+            startServer();
+            suite.put("roundtrip.hitStay", roundTrip());
+        }
+        return suite;
+    }
+
+    /**
+     * makes a hand from ranks
+     * @param ranks the ranks of the cards
+     * @return the hand
+     */
+    private static Hand hand(int... ranks){
+        Hand hand = new Hand();
+        for(int rank:ranks){
+            hand.add((byte) rank);
+        }
+        return hand;
+    }
+
+    /**
+     * starts a server on the loopback address in the background, with no log written anywhere
+     */
+    private static void startServer(){
+        ServerConfig config = ServerConfig.parse(new String[]{"--port=" + PORT, "--headless=true", "--log=none"});
+        Thread thread = new Thread(() -> new BlackjackServer(config).runServer(), "benchmark-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * connects a binary client to the loopback server
+     * @return an operation playing one hand of new hand, hit and stay, reading every reply
+     * @throws IOException if the server cannot be reached
+     */
+    private static Operation roundTrip() throws IOException{
+        Socket socket = null;
+        for(int attempt = 0; socket == null; attempt++){
+            try{
+                socket = new Socket("127.0.0.1", PORT);
+            }catch (IOException e){
+                if(attempt == 50){
+                    throw e;
+                }
+                try{
+                    Thread.sleep(100); // the server is still starting
+                }catch (InterruptedException interrupted){
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+        socket.setTcpNoDelay(true);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        ByteBuffer preamble = ByteBuffer.allocate(BinaryProtocol.PREAMBLE_LENGTH);
+        BinaryProtocol.writePreamble(preamble, BinaryProtocol.FULL_HAND_VERSION);
+        out.write(preamble.array());
+        out.flush();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        BinaryProtocol.readPreamble(in);
+        GameOutput ignore = new GameOutput() {
+            @Override
+            public void openingHand(Hand playerHand, byte dealerCard) {
+            }
+
+            @Override
+            public void playerHand(Hand playerHand, byte dealerCard) {
+            }
+
+            @Override
+            public void outcome(Outcome outcome, Hand playerHand, Hand dealerHand) {
+            }
+        };
+        BinaryProtocol.readEvent(in, ignore); // the welcome
+        return () -> {
+            long opcodes = 0;
+            for(byte command:new byte[]{BinaryProtocol.NEW_HAND, BinaryProtocol.HIT, BinaryProtocol.STAY}){
+                out.writeShort(1);
+                out.writeByte(command);
+                out.flush();
+                int opcode = BinaryProtocol.readEvent(in, ignore);
+                opcodes += opcode;
+                if(opcode == BinaryProtocol.OUTCOME){
+                    break; // a blackjack or a bust ends the hand early
+                }
+            }
+            return opcodes;
+        };
+    }
+}
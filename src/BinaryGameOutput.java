@@ -0,0 +1,76 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * turns what happens in a game into binary protocol frames, encoding each one into a reused buffer
+ */
+public abstract class BinaryGameOutput implements GameOutput {
+
+    /**
+     * the buffer frames are encoded into, grown if a frame does not fit
+     */
+    private ByteBuffer frame = ByteBuffer.allocate(64);
+
+    /**
+     * sends an encoded frame, the buffer is reused once this returns so it must be written or copied
+     * @param frame the frame, positioned at its first byte
+     */
+    protected abstract void send(ByteBuffer frame);
+
+    /**
+     * tells the client the connection was accepted
+     */
+    public void welcome(){
+        ByteBuffer out = clear(3);
+        BinaryProtocol.writeEmpty(BinaryProtocol.WELCOME, out);
+        send(out.flip());
+    }
+
+    @Override
+    public void openingHand(Hand playerHand, byte dealerCard){
+        ByteBuffer out = clear(BinaryProtocol.maxFrameLength(playerHand, null));
+        BinaryProtocol.writeHand(BinaryProtocol.OPENING_HAND, playerHand, dealerCard, out);
+        send(out.flip());
+    }
+
+    @Override
+    public void playerHand(Hand playerHand, byte dealerCard){
+        ByteBuffer out = clear(BinaryProtocol.maxFrameLength(playerHand, null));
+        BinaryProtocol.writeHand(BinaryProtocol.PLAYER_HAND, playerHand, dealerCard, out);
+        send(out.flip());
+    }
+
+    @Override
+    public void outcome(Outcome outcome, Hand playerHand, Hand dealerHand){
+        ByteBuffer out = clear(BinaryProtocol.maxFrameLength(playerHand, dealerHand));
+        BinaryProtocol.writeOutcome(outcome, playerHand, dealerHand, out);
+        send(out.flip());
+    }
+
+    @Override
+    public void hint(Hint hint){
+        ByteBuffer out = clear(BinaryProtocol.LENGTH_FIELD + 6);
+        BinaryProtocol.writeHint(hint, out);
+        send(out.flip());
+    }
+
+    @Override
+    public void bankroll(long balance, long bet){
+        ByteBuffer out = clear(BinaryProtocol.LENGTH_FIELD + 13);
+        BinaryProtocol.writeBankroll(balance, bet, out);
+        send(out.flip());
+    }
+
+    /**
+     * gets the frame buffer ready for a new frame
+     * @param size the most bytes the frame can need
+     * @return the cleared buffer
+     */
+    protected ByteBuffer clear(int size){
+        if(frame.capacity() < size){
+            frame = ByteBuffer.allocate(Math.max(size, frame.capacity() * 2));
+        }
+        frame.clear();
+        return frame;
+    }
+}
@@ -0,0 +1,1108 @@
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * the compact binary protocol spoken between the client and the server
+ *
+ * a connection starts with the client sending the three byte preamble 'B' 'J' version, which the server
+ * answers with its own preamble. a legacy client starts with the object stream magic 0xaced instead, so the
+ * server can tell the two apart from the first two bytes and keep serving old clients as text.
+ * after the preamble every message is a frame of an unsigned two byte length, a one byte opcode and the payload,
+ * the length counting the opcode and the payload. cards are sent as their rank from 1 (ace) to 13 (king), see Card
+ *
+ * in version 1 every event carries the whole of both hands. in version 2 the server sends only what changed,
+ * a card dealt to a seat or the result of the hand, and the client keeps the table itself in a TableState.
+ * every hand opens with a snapshot of the whole table and the client can ask for another with SYNC at any time.
+ * version 2 events name the seat they are about, so the same frame can be sent to every player at a shared table.
+ * a seat that splits has more than one hand, a deal, turn or split names the hand in one byte as hand packs it
+ *
+ * a client that knows its next few commands, such as a bot, can send them in one BATCH frame. they are played in
+ * order and every event they cause is followed by a BATCH_RESULT saying what became of each, all in one write
+ *
+ * a spectator connects to the spectator port, sends a version 2 preamble and one WATCH frame naming a table, and is
+ * then sent the same version 2 frames as the players at it, starting from a snapshot. it sends nothing more
+ */
+public class BinaryProtocol {
+
+    /**
+     * the first byte of the preamble
+     */
+    public static final byte MAGIC_0 = 'B';
+
+    /**
+     * the second byte of the preamble
+     */
+    public static final byte MAGIC_1 = 'J';
+
+    /**
+     * the version where every event carries the whole of both hands
+     */
+    public static final byte FULL_HAND_VERSION = 1;
+
+    /**
+     * the version where events carry only what changed since the last one
+     */
+    public static final byte DELTA_VERSION = 2;
+
+    /**
+     * the newest version of the protocol this code speaks, the server answers in whichever version the client asks for
+     */
+    public static final byte VERSION = DELTA_VERSION;
+
+    /**
+     * the number of bytes in the preamble
+     */
+    public static final int PREAMBLE_LENGTH = 3;
+
+    /**
+     * the number of bytes before the opcode of a frame
+     */
+    public static final int LENGTH_FIELD = 2;
+
+    /**
+     * the client wants another card
+     */
+    public static final byte HIT = 1;
+
+    /**
+     * the client wants to keep their hand
+     */
+    public static final byte STAY = 2;
+
+    /**
+     * the client wants a new hand
+     */
+    public static final byte NEW_HAND = 3;
+
+    /**
+     * the client is disconnecting
+     */
+    public static final byte DISCONNECT = 4;
+
+    /**
+     * the client wants a snapshot of the whole table, version 2 only
+     */
+    public static final byte SYNC = 5;
+
+    /**
+     * the client wants to know the better play for its hand
+     */
+    public static final byte HINT = 6;
+
+    /**
+     * the client sends several commands at once, payload is the opcode of each in the order they are to be played.
+     * not a command of its own, so it has no name and a batch inside a batch is unknown
+     */
+    public static final byte BATCH = 7;
+
+    /**
+     * the most commands in one batch, so one frame cannot keep the server from other clients for long
+     */
+    public static final int MAX_BATCH = 64;
+
+    /**
+     * a spectator asks to watch a table, payload is the four byte number of the table, 0 for the one with the most
+     * players. only sent on the spectator port, where it is the one frame a spectator sends
+     */
+    public static final byte WATCH = 8;
+
+    /**
+     * the number of bytes in a watch frame
+     */
+    public static final int WATCH_LENGTH = LENGTH_FIELD + 5;
+
+    /**
+     * the client places the bet for its next hands, payload is the four byte number of chips. played as "Bet "
+     * followed by the chips, so it is not one of the plain commands and cannot be sent in a batch
+     */
+    public static final byte BET = 9;
+
+    /**
+     * the client doubles its bet on the hand being played and takes exactly one more card
+     */
+    public static final byte DOUBLE = 10;
+
+    /**
+     * the client splits the pair it is playing into two hands, with a bet on each
+     */
+    public static final byte SPLIT = 11;
+
+    /**
+     * the client takes insurance against a dealer blackjack, only as its first play when the dealer shows an ace
+     */
+    public static final byte INSURANCE = 12;
+
+    /**
+     * the client names its player, payload is the name in utf-8, at most MAX_NAME bytes of letters, digits, '.', '-'
+     * and '_'. the bankroll and hand history of the player are then kept under the name and the address it connects
+     * from, so players behind one address stay apart. played as "Name " followed by the name, only between hands,
+     * and cannot be sent in a batch
+     */
+    public static final byte NAME = 13;
+
+    /**
+     * the most bytes in the name of a player
+     */
+    public static final int MAX_NAME = 32;
+
+    /**
+     * the server accepted the connection, no payload
+     */
+    public static final byte WELCOME = 0x40;
+
+    /**
+     * the opening hand was dealt, payload is the player hand, the player score and the dealers up card
+     */
+    public static final byte OPENING_HAND = 0x41;
+
+    /**
+     * the player hit and is still in the hand, payload is the player hand, the player score and the dealers up card
+     */
+    public static final byte PLAYER_HAND = 0x42;
+
+    /**
+     * the hand is over, payload is the outcome code, the player score, the player hand,
+     * the dealer score and the dealer hand
+     */
+    public static final byte OUTCOME = 0x43;
+
+    /**
+     * version 2, a card was dealt face up, payload is the hand it went to as written by hand, the rank and the score
+     * of the hand with the card
+     */
+    public static final byte DEAL = 0x44;
+
+    /**
+     * the number of bytes in a deal frame
+     */
+    public static final int DEAL_LENGTH = LENGTH_FIELD + 4;
+
+    /**
+     * version 2, the hand is over, payload is the dealer score, the dealer cards not sent yet, the number of hands
+     * dealt in and for each of them the seat and outcome code packed into one byte, the score and the cards not sent yet.
+     * a seat that split has one entry for each of its hands, one after the other in the order they were played
+     */
+    public static final byte RESULT = 0x45;
+
+    /**
+     * version 2, the whole table, payload is the index of the hand being played in its top two bits, the phase
+     * and the seat whose turn it is packed into one byte, the dealer cards that are face up, the number of hands
+     * dealt in and for each of them the seat and outcome code or NO_OUTCOME packed into one byte, then the cards.
+     * a seat that split has one entry for each of its hands, as in a result
+     */
+    public static final byte SNAPSHOT = 0x46;
+
+    /**
+     * version 2, the client was given a seat at a shared table, payload is the seat
+     */
+    public static final byte SEATED = 0x47;
+
+    /**
+     * version 2, it is a seats turn to act, payload is the hand to play as written by hand. sent at a shared table as
+     * each seat starts, and at any table as a seat that split moves on to its next hand
+     */
+    public static final byte TURN = 0x48;
+
+    /**
+     * the number of bytes in a frame written by writeSeat, a turn, seated or split event
+     */
+    public static final int SEAT_LENGTH = LENGTH_FIELD + 2;
+
+    /**
+     * the better play for the players hand, payload is the opcode of the play, HIT or STAY, then what hitting and
+     * staying are each worth in thousandths of a unit as signed two byte numbers
+     */
+    public static final byte HINT_EVENT = 0x49;
+
+    /**
+     * every command of a batch has been played, payload is the result of each in the order they were sent,
+     * PLAYED, IGNORED or UNKNOWN
+     */
+    public static final byte BATCH_RESULT = 0x4a;
+
+    /**
+     * the bankroll of the player, sent when they place a bet or take a name, whenever chips are taken for a hand, a double, a split or
+     * insurance, and after every hand they had a bet on. nothing is sent on connect, a client that wants it first
+     * places a bet. payload is the eight byte number of chips and the four byte bet, 0 if the bankroll does not cover it
+     */
+    public static final byte BANKROLL = 0x4b;
+
+    /**
+     * version 2, a seat split the hand it was playing, payload is that hand as written by hand. its second card
+     * moves to a new hand after the last one of the seat, and a deal to each of the two hands follows
+     */
+    public static final byte SPLIT_EVENT = 0x4c;
+
+    /**
+     * batch result of a command that was played
+     */
+    public static final byte PLAYED = 0;
+
+    /**
+     * batch result of a command that cannot be played right now, such as a hit when the hand is over
+     */
+    public static final byte IGNORED = 1;
+
+    /**
+     * batch result of an opcode that is not a command
+     */
+    public static final byte UNKNOWN = 2;
+
+    /**
+     * the seat of the dealer in version 2 events
+     */
+    public static final byte DEALER_SEAT = 0;
+
+    /**
+     * the seat of the player in version 2 events
+     */
+    public static final byte PLAYER_SEAT = 1;
+
+    /**
+     * sent in a snapshot in place of an outcome code while there is no outcome
+     */
+    private static final int NO_OUTCOME = 0x0f;
+
+    /**
+     * checks if the first two bytes of a connection are the binary preamble
+     * @param first the first byte received
+     * @param second the second byte received
+     * @return true if the client speaks this protocol
+     */
+    public static boolean isPreamble(int first, int second){
+        return first == MAGIC_0 && second == MAGIC_1;
+    }
+
+    /**
+     * writes the preamble
+     * @param out the buffer to write to
+     * @param version the version of the protocol to speak
+     */
+    public static void writePreamble(ByteBuffer out, int version){
+        out.put(MAGIC_0).put(MAGIC_1).put((byte) version);
+    }
+
+    /**
+     * reads the preamble sent by the other side and checks it is a version this code speaks
+     * @param in the stream to read from
+     * @return the version the other side speaks
+     * @throws IOException if the preamble is missing or the version is not supported
+     */
+    public static int readPreamble(InputStream in) throws IOException{
+        int first = in.read();
+        int second = in.read();
+        return checkPreamble(first, second, in.read());
+    }
+
+    /**
+     * checks a received preamble is one this code speaks
+     * @param first the first byte received
+     * @param second the second byte received
+     * @param version the version byte received
+     * @return the version
+     * @throws IOException if the preamble is missing or the version is not supported
+     */
+    public static int checkPreamble(int first, int second, int version) throws IOException{
+        if(!isPreamble(first, second)){
+            throw new StreamCorruptedException("missing protocol preamble");
+        }
+        if(version < FULL_HAND_VERSION || version > VERSION){
+            throw new StreamCorruptedException("unsupported protocol version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * finds the opcode of a command
+     * @param command the command as the game understands it, for example "Hit"
+     * @return the opcode, or -1 if there is no such command
+     */
+    public static byte commandCode(String command){
+        Command parsed = Command.parse(command);
+        return parsed == null ? -1 : parsed.getOpcode();
+    }
+
+    /**
+     * finds the command for an opcode
+     * @param opcode the opcode of the command
+     * @return the command as the game understands it, or null if there is no such command
+     */
+    public static String commandName(int opcode){
+        Command command = Command.of(opcode);
+        return command == null ? null : command.getName();
+    }
+
+    /**
+     * packs a seat and the index of one of its hands into the byte deal, turn and split frames name a hand by,
+     * the first hand of a seat is the seat on its own, so a seat that never splits is sent as it always was
+     * @param seat the seat, DEALER_SEAT for the dealer
+     * @param index the index of the hand, below SeatHands.MAX_HANDS
+     * @return the packed hand
+     */
+    public static byte hand(byte seat, int index){
+        return (byte) (seat | index << 4);
+    }
+
+    /**
+     * @param hand a hand as written by hand
+     * @return the seat of the hand
+     */
+    public static byte handSeat(int hand){
+        return (byte) (hand & 0x0f);
+    }
+
+    /**
+     * reads the index of a hand as written by hand off the wire
+     * @param hand the hand
+     * @return the index of the hand in its seat
+     * @throws IOException if a seat cannot have that many hands
+     */
+    private static int handIndex(int hand) throws IOException{
+        return index((hand & 0xff) >> 4);
+    }
+
+    /**
+     * checks the index of a hand read off the wire is one a seat can have
+     * @param index the index of the hand
+     * @return the index
+     * @throws IOException if a seat cannot have that many hands
+     */
+    private static int index(int index) throws IOException{
+        if(index >= SeatHands.MAX_HANDS){
+            throw new StreamCorruptedException("not a hand: " + index);
+        }
+        return index;
+    }
+
+    /**
+     * packs two numbers below 16 into one byte
+     * @param high the number for the top four bits
+     * @param low the number for the bottom four bits
+     * @return the packed byte
+     */
+    private static byte pack(int high, int low){
+        return (byte) (high << 4 | low);
+    }
+
+    /**
+     * checks a seat read off the wire is one a player can sit in
+     * @param seat the seat from 1 to TableState.MAX_SEATS
+     * @return the seat
+     * @throws IOException if there is no such seat
+     */
+    private static byte seat(byte seat) throws IOException{
+        if(seat < 1 || seat > TableState.MAX_SEATS){
+            throw new StreamCorruptedException("not a seat: " + seat);
+        }
+        return seat;
+    }
+
+    /**
+     * checks a rank read off the wire is a legal card
+     * @param rank the rank from 1 to 13
+     * @return the rank
+     * @throws IOException if the rank is not a legal card
+     */
+    private static byte rank(byte rank) throws IOException{
+        if(!Card.isRank(rank)){
+            throw new StreamCorruptedException("not a legal card rank: " + rank);
+        }
+        return rank;
+    }
+
+    /**
+     * writes a frame with no payload, used for every command from the client and for the welcome
+     * @param opcode the opcode of the frame
+     * @param out the buffer to write to
+     */
+    public static void writeEmpty(byte opcode, ByteBuffer out){
+        out.putShort((short) 1).put(opcode);
+    }
+
+    /**
+     * works out the largest frame a hand event can need
+     * @param playerHand the players hand
+     * @param dealerHand the dealers hand, or null if it is not sent
+     * @return the number of bytes
+     */
+    public static int maxFrameLength(Hand playerHand, Hand dealerHand){
+        return LENGTH_FIELD + 1 + 3 + playerHand.size() + 2 + (dealerHand == null ? 0 : dealerHand.size());
+    }
+
+    /**
+     * writes an opening hand or player hand frame
+     * @param opcode either OPENING_HAND or PLAYER_HAND
+     * @param playerHand the players hand
+     * @param dealerCard the rank of the card the dealer has showing
+     * @param out the buffer to write to
+     */
+    public static void writeHand(byte opcode, Hand playerHand, byte dealerCard, ByteBuffer out){
+        int start = out.position();
+        out.putShort((short) 0).put(opcode);
+        writeCards(playerHand, out);
+        out.put((byte) playerHand.getScore());
+        out.put(dealerCard);
+        endFrame(start, out);
+    }
+
+    /**
+     * writes an outcome frame
+     * @param outcome how the hand ended
+     * @param playerHand the players final hand
+     * @param dealerHand the dealers final hand
+     * @param out the buffer to write to
+     */
+    public static void writeOutcome(Outcome outcome, Hand playerHand, Hand dealerHand, ByteBuffer out){
+        int start = out.position();
+        out.putShort((short) 0).put(OUTCOME);
+        out.put((byte) outcome.getCode());
+        out.put((byte) playerHand.getScore());
+        writeCards(playerHand, out);
+        out.put((byte) dealerHand.getScore());
+        writeCards(dealerHand, out);
+        endFrame(start, out);
+    }
+
+    /**
+     * writes a deal frame
+     * @param hand the hand the card was dealt to as written by hand, or just the seat for its first hand
+     * @param rank the rank of the card
+     * @param score the score of the hand with the card
+     * @param out the buffer to write to
+     */
+    public static void writeDeal(byte hand, byte rank, int score, ByteBuffer out){
+        out.putShort((short) (DEAL_LENGTH - LENGTH_FIELD)).put(DEAL).put(hand).put(rank).put((byte) score);
+    }
+
+    /**
+     * starts a result frame with the dealers cards the clients have not been sent,
+     * follow it with writeSeatResult for each seat dealt in and then endResult
+     * @param dealerHand the dealers final hand
+     * @param dealerSent the number of the dealers cards already sent
+     * @param hands the number of hands that will be written
+     * @param out the buffer to write to
+     * @return the position the frame started at, to pass to endResult
+     */
+    public static int beginResult(Hand dealerHand, int dealerSent, int hands, ByteBuffer out){
+        int start = out.position();
+        out.putShort((short) 0).put(RESULT);
+        out.put((byte) dealerHand.getScore());
+        writeCards(dealerHand, dealerSent, out);
+        out.put((byte) hands);
+        return start;
+    }
+
+    /**
+     * writes how one hand of a seat ended in a result frame, the hands of a seat that split are written in order
+     * @param seat the seat
+     * @param outcome how the hand ended for the seat
+     * @param hand the final hand of the seat
+     * @param sent the number of the cards of the seat already sent
+     * @param out the buffer to write to
+     */
+    public static void writeSeatResult(byte seat, Outcome outcome, Hand hand, int sent, ByteBuffer out){
+        out.put(pack(seat, outcome.getCode()));
+        out.put((byte) hand.getScore());
+        writeCards(hand, sent, out);
+    }
+
+    /**
+     * finishes a result frame once every seat has been written
+     * @param start the position returned by beginResult
+     * @param out the buffer the frame was written to
+     */
+    public static void endResult(int start, ByteBuffer out){
+        endFrame(start, out);
+    }
+
+    /**
+     * works out the largest result frame the hands of one seat can need
+     * @param hands every hand of the seat
+     * @param dealerHand the dealers hand
+     * @return the number of bytes
+     */
+    public static int maxFrameLength(SeatHands hands, Hand dealerHand){
+        int length = LENGTH_FIELD + 4 + dealerHand.size();
+        for(int i = 0; i < hands.size(); i++){
+            length += 3 + hands.get(i).size();
+        }
+        return length;
+    }
+
+    /**
+     * works out the largest result or snapshot frame a table can need
+     * @param table the table, holding every card that will be sent
+     * @return the number of bytes
+     */
+    public static int maxFrameLength(TableState table){
+        int length = LENGTH_FIELD + 4 + table.getDealerHand().size();
+        for(int seat = 1; seat <= TableState.MAX_SEATS; seat++){
+            SeatHands hands = table.getHands(seat);
+            for(int i = 0; i < hands.size(); i++){
+                length += 3 + hands.get(i).size();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * writes a snapshot frame of the whole table as the clients should see it
+     * @param table the table
+     * @param out the buffer to write to
+     */
+    public static void writeSnapshot(TableState table, ByteBuffer out){
+        int start = out.position();
+        out.putShort((short) 0).put(SNAPSHOT);
+        int active = table.getTurn() == 0 ? 0 : table.getHands(table.getTurn()).getActiveIndex();
+        out.put(pack(active << 2 | table.getPhase(), table.getTurn()));
+        writeCards(table.getDealerHand(), out);
+        int count = out.position();
+        out.put((byte) 0); // the number of hands, filled in once they have been counted
+        byte entries = 0;
+        for(byte seat = 1; seat <= TableState.MAX_SEATS; seat++){
+            if(table.isDealtIn(seat)){
+                SeatHands hands = table.getHands(seat);
+                for(int i = 0; i < hands.size(); i++){
+                    Outcome outcome = hands.getOutcome(i);
+                    out.put(pack(seat, outcome == null ? NO_OUTCOME : outcome.getCode()));
+                    writeCards(hands.get(i), out);
+                    entries++;
+                }
+            }
+        }
+        out.put(count, entries);
+        endFrame(start, out);
+    }
+
+    /**
+     * writes a frame holding nothing but a seat, SEATED, or a hand as written by hand, TURN or SPLIT_EVENT
+     * @param opcode the opcode of the frame
+     * @param seat the seat or hand
+     * @param out the buffer to write to
+     */
+    public static void writeSeat(byte opcode, byte seat, ByteBuffer out){
+        out.putShort((short) (SEAT_LENGTH - LENGTH_FIELD)).put(opcode).put(seat);
+    }
+
+    /**
+     * writes a hint frame, the same in every version
+     * @param hint the hint
+     * @param out the buffer to write to
+     */
+    public static void writeHint(Hint hint, ByteBuffer out){
+        out.putShort((short) 6).put(HINT_EVENT).put(hint.getAction());
+        out.putShort(thousandths(hint.getHitValue())).putShort(thousandths(hint.getStayValue()));
+    }
+
+    /**
+     * @param value a value between -1 and 1 units
+     * @return the value in thousandths of a unit
+     */
+    private static short thousandths(double value){
+        return (short) Math.round(value * 1000);
+    }
+
+    /**
+     * reads the payload of a hint frame
+     * @param payload the payload after the opcode
+     * @return the hint
+     * @throws IOException if the play is not HIT or STAY
+     */
+    private static Hint readHint(ByteBuffer payload) throws IOException{
+        byte action = payload.get();
+        if(action != HIT && action != STAY){
+            throw new StreamCorruptedException("not a hint play: " + action);
+        }
+        double hitValue = payload.getShort() / 1000.0;
+        return new Hint(action, hitValue, payload.getShort() / 1000.0);
+    }
+
+    /**
+     * writes a batch result frame
+     * @param results the result of each command of the batch
+     * @param count the number of commands in the batch
+     * @param out the buffer to write to
+     */
+    public static void writeBatchResult(byte[] results, int count, ByteBuffer out){
+        out.putShort((short) (1 + count)).put(BATCH_RESULT).put(results, 0, count);
+    }
+
+    /**
+     * reads the payload of a batch result frame
+     * @param payload the payload after the opcode
+     * @return the result of each command of the batch
+     */
+    private static byte[] readBatchResult(ByteBuffer payload){
+        byte[] results = new byte[payload.remaining()];
+        payload.get(results);
+        return results;
+    }
+
+    /**
+     * writes a count followed by the rank of each card
+     * @param hand the cards to write
+     * @param out the buffer to write to
+     */
+    private static void writeCards(Hand hand, ByteBuffer out){
+        writeCards(hand, 0, out);
+    }
+
+    /**
+     * writes a count followed by the rank of each card from a position in a hand onwards
+     * @param hand the cards to write
+     * @param from the index of the first card to write
+     * @param out the buffer to write to
+     */
+    private static void writeCards(Hand hand, int from, ByteBuffer out){
+        out.put((byte) (hand.size() - from));
+        for(int i = from; i < hand.size(); i++){
+            out.put(hand.get(i));
+        }
+    }
+
+    /**
+     * fills in the length of a frame once the payload has been written
+     * @param start the position the frame started at
+     * @param out the buffer the frame was written to
+     */
+    private static void endFrame(int start, ByteBuffer out){
+        out.putShort(start, (short) (out.position() - start - LENGTH_FIELD));
+    }
+
+    /**
+     * works out what a buffer of version 2 frames sent to a seat at a shared table does to the table the client keeps,
+     * so a full outbound queue knows what it can throw away
+     * @param frames one or more whole frames, positioned at the first, left as they were
+     * @param seat the seat they are sent to
+     * @return OutboundQueue.SNAPSHOT if a frame is a snapshot, OutboundQueue.OTHER_SEATS if every frame deals to or
+     *         gives the turn to another seat, OutboundQueue.OWN_CHANGE if a frame changes the table in any other way,
+     *         and OutboundQueue.OTHER if none of them change it
+     */
+    public static int kind(ByteBuffer frames, byte seat){
+        boolean changes = false;
+        boolean own = false;
+        for(int at = frames.position(); at + LENGTH_FIELD < frames.limit(); at += LENGTH_FIELD + (frames.getShort(at) & 0xffff)){
+            switch (frames.get(at + LENGTH_FIELD)) {
+                case SNAPSHOT:
+                    return OutboundQueue.SNAPSHOT;
+                case DEAL:
+                case TURN:
+                case SPLIT_EVENT: {
+                    byte about = handSeat(frames.get(at + LENGTH_FIELD + 1));
+                    changes = true;
+                    own |= about == seat || about == DEALER_SEAT;
+                    break;
+                }
+                case RESULT:
+                    changes = true;
+                    own = true;
+                    break;
+                default:
+                    own = true; // kept whatever else is in the buffer
+                    break;
+            }
+        }
+        if(!changes){
+            return OutboundQueue.OTHER;
+        }
+        return own ? OutboundQueue.OWN_CHANGE : OutboundQueue.OTHER_SEATS;
+    }
+
+    /**
+     * writes a batch frame
+     * @param opcodes the opcode of each command in the order they are to be played, at most MAX_BATCH of them
+     * @param out the buffer to write to
+     */
+    public static void writeBatch(byte[] opcodes, ByteBuffer out){
+        if(opcodes.length > MAX_BATCH){
+            throw new IllegalArgumentException("a batch holds at most " + MAX_BATCH + " commands: " + opcodes.length);
+        }
+        out.putShort((short) (1 + opcodes.length)).put(BATCH).put(opcodes);
+    }
+
+    /**
+     * writes a bet frame
+     * @param chips the chips to bet on each hand
+     * @param out the buffer to write to
+     */
+    public static void writeBet(int chips, ByteBuffer out){
+        out.putShort((short) 5).put(BET).putInt(chips);
+    }
+
+    /**
+     * writes a name frame
+     * @param name the name of the player, at most MAX_NAME bytes once encoded
+     * @param out the buffer to write to
+     */
+    public static void writeName(String name, ByteBuffer out){
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > MAX_NAME){
+            throw new IllegalArgumentException("a name is at most " + MAX_NAME + " bytes: " + bytes.length);
+        }
+        out.putShort((short) (1 + bytes.length)).put(NAME).put(bytes);
+    }
+
+    /**
+     * writes a bankroll frame
+     * @param balance the chips of the player
+     * @param bet the bet of the player, 0 if the bankroll does not cover it
+     * @param out the buffer to write to
+     */
+    public static void writeBankroll(long balance, long bet, ByteBuffer out){
+        out.putShort((short) 13).put(BANKROLL).putLong(balance).putInt((int) bet);
+    }
+
+    /**
+     * writes a watch frame
+     * @param table the number of the table to watch, 0 for the one with the most players
+     * @param out the buffer to write to
+     */
+    public static void writeWatch(int table, ByteBuffer out){
+        out.putShort((short) 5).put(WATCH).putInt(table);
+    }
+
+    /**
+     * reads a watch frame from the buffer
+     * @param in the bytes received so far, left positioned after the frame when it is whole
+     * @return the number of the table to watch, or -1 if the buffer does not hold the whole frame yet
+     * @throws IOException if the frame is not a watch frame
+     */
+    public static int decodeWatch(ByteBuffer in) throws IOException{
+        if(in.remaining() < WATCH_LENGTH){
+            return -1;
+        }
+        if((in.getShort() & 0xffff) != WATCH_LENGTH - LENGTH_FIELD || in.get() != WATCH){
+            throw new StreamCorruptedException("a spectator can only watch a table");
+        }
+        return Math.max(0, in.getInt());
+    }
+
+    /**
+     * reads the next command frame from the buffer
+     * @param in the bytes received so far, left positioned after the frame when one is returned
+     * @param batch where the commands are put if the frame is a batch
+     * @return the opcode of the command, or -1 if the buffer does not hold a whole frame yet
+     * @throws IOException if the frame is empty or a batch or name is too long
+     */
+    public static int decodeCommand(ByteBuffer in, CommandBatch batch) throws IOException{
+        if(in.remaining() < LENGTH_FIELD){
+            return -1;
+        }
+        int length = in.getShort(in.position()) & 0xffff;
+        if(length == 0){
+            throw new StreamCorruptedException("empty frame");
+        }
+        if(in.remaining() < LENGTH_FIELD + length){
+            return -1;
+        }
+        in.position(in.position() + LENGTH_FIELD);
+        int opcode = in.get();
+        if(opcode == BATCH){
+            checkBatch(length);
+            batch.clear();
+            for(int i = 1; i < length; i++){
+                batch.add(in.get());
+            }
+            return opcode;
+        }
+        if(opcode == BET){
+            checkBet(length);
+            batch.setBet(in.getInt());
+            length -= 4;
+        }
+        if(opcode == NAME){
+            checkName(length);
+            byte[] name = new byte[length - 1];
+            in.get(name);
+            batch.setName(new String(name, StandardCharsets.UTF_8));
+            return opcode;
+        }
+        in.position(in.position() + length - 1); // skips any payload this version does not use
+        return opcode;
+    }
+
+    /**
+     * reads the next command frame from a stream, waiting until it arrives
+     * @param in the stream to read from
+     * @param batch where the commands are put if the frame is a batch
+     * @return the opcode of the command
+     * @throws IOException if the stream ends, the frame is empty or a batch or name is too long
+     */
+    public static int readCommand(DataInputStream in, CommandBatch batch) throws IOException{
+        int length = in.readUnsignedShort();
+        if(length == 0){
+            throw new StreamCorruptedException("empty frame");
+        }
+        int opcode = in.readByte();
+        if(opcode == BATCH){
+            checkBatch(length);
+            batch.clear();
+            for(int i = 1; i < length; i++){
+                batch.add(in.readByte());
+            }
+            return opcode;
+        }
+        if(opcode == BET){
+            checkBet(length);
+            batch.setBet(in.readInt());
+            length -= 4;
+        }
+        if(opcode == NAME){
+            checkName(length);
+            byte[] name = new byte[length - 1];
+            in.readFully(name);
+            batch.setName(new String(name, StandardCharsets.UTF_8));
+            return opcode;
+        }
+        in.skipNBytes(length - 1);
+        return opcode;
+    }
+
+    /**
+     * checks a bet frame holds the chips
+     * @param length the length of the frame, counting its opcode
+     * @throws StreamCorruptedException if the frame is too short
+     */
+    private static void checkBet(int length) throws StreamCorruptedException{
+        if(length < 5){
+            throw new StreamCorruptedException("a bet needs its chips");
+        }
+    }
+
+    /**
+     * checks a name frame is not too long
+     * @param length the length of the frame, counting its opcode
+     * @throws StreamCorruptedException if the name is longer than MAX_NAME bytes
+     */
+    private static void checkName(int length) throws StreamCorruptedException{
+        if(length - 1 > MAX_NAME){
+            throw new StreamCorruptedException("name too long: " + (length - 1) + " bytes");
+        }
+    }
+
+    /**
+     * checks a batch frame is not too long
+     * @param length the length of the frame, counting its opcode
+     * @throws StreamCorruptedException if the batch holds more than MAX_BATCH commands
+     */
+    private static void checkBatch(int length) throws StreamCorruptedException{
+        if(length - 1 > MAX_BATCH){
+            throw new StreamCorruptedException("a batch holds at most " + MAX_BATCH + " commands: " + (length - 1));
+        }
+    }
+
+    /**
+     * reads the next frame from the server and passes what it holds to a game output
+     * @param in the stream to read from
+     * @param output where the event is sent
+     * @return the opcode of the frame
+     * @throws IOException if the stream ends or the frame is not understood
+     */
+    public static int readEvent(DataInputStream in, GameOutput output) throws IOException{
+        ByteBuffer payload = readFrame(in);
+        int opcode = payload.get();
+        // the scores are sent for clients that do not keep a hand, this one works them out from the cards
+        switch (opcode) {
+            case OPENING_HAND: {
+                Hand playerHand = readCards(payload);
+                payload.get(); // player score
+                output.openingHand(playerHand, rank(payload.get()));
+                break;
+            }
+            case PLAYER_HAND: {
+                Hand playerHand = readCards(payload);
+                payload.get(); // player score
+                output.playerHand(playerHand, rank(payload.get()));
+                break;
+            }
+            case OUTCOME: {
+                Outcome outcome = Outcome.fromCode(payload.get());
+                payload.get(); // player score
+                Hand playerHand = readCards(payload);
+                payload.get(); // dealer score
+                Hand dealerHand = readCards(payload);
+                output.outcome(outcome, playerHand, dealerHand);
+                break;
+            }
+            case HINT_EVENT:
+                output.hint(readHint(payload));
+                break;
+            case BATCH_RESULT:
+                output.batchPlayed(readBatchResult(payload));
+                break;
+            case BANKROLL:
+                output.bankroll(payload.getLong(), payload.getInt());
+                break;
+            default:
+                break; // welcome and anything newer than this version carry nothing to show
+        }
+        return opcode;
+    }
+
+    /**
+     * reads the next frame from the server in version 2, applies it to the table the client keeps
+     * and passes what the player should be shown to a game output
+     * a score that does not match the table marks the table out of sync, the caller should then send SYNC
+     * @param in the stream to read from
+     * @param table the table as the client has seen it so far
+     * @param output where the event is sent
+     * @return the opcode of the frame
+     * @throws IOException if the stream ends or the frame is not understood
+     */
+    public static int readDeltaEvent(DataInputStream in, TableState table, GameOutput output) throws IOException{
+        ByteBuffer payload = readFrame(in);
+        int opcode = payload.get();
+        switch (opcode) {
+            case DEAL: {
+                int packed = payload.get();
+                byte seat = handSeat(packed);
+                if(seat != DEALER_SEAT){
+                    seat(seat);
+                }
+                int index = handIndex(packed);
+                byte rank = rank(payload.get());
+                Hand hand = table.deal(seat, index, rank);
+                table.check(hand, payload.get());
+                if(seat == table.getSeat() && hand == table.getPlayerHand() && table.getDealerHand().size() > 0){
+                    output.playerHand(hand, table.getDealerHand().get(0));
+                }
+                break;
+            }
+            case RESULT: {
+                int dealerScore = payload.get();
+                readCards(payload, table.getDealerHand());
+                table.check(table.getDealerHand(), dealerScore);
+                int entries = payload.get();
+                int last = -1;
+                int index = 0;
+                for(int i = 0; i < entries; i++){
+                    int packed = payload.get();
+                    byte seat = seat((byte) (packed >> 4));
+                    index = seat == last ? index + 1 : 0; // the hands of a seat that split come one after the other
+                    last = seat;
+                    Outcome outcome = Outcome.fromCode(packed & 0x0f);
+                    int score = payload.get();
+                    Hand hand = table.open(seat, index(index));
+                    readCards(payload, hand);
+                    table.check(hand, score);
+                    table.finish(seat, index, outcome);
+                }
+                table.finishHand();
+                if(table.getOutcome() != null){
+                    output.outcomes(table.getPlayerHands(), table.getDealerHand());
+                }
+                break;
+            }
+            case SNAPSHOT: {
+                int phase = payload.get() & 0xff;
+                table.restore((byte) (phase >> 4 & 0x03), (byte) (phase & 0x0f));
+                readCards(payload, table.getDealerHand());
+                int entries = payload.get();
+                int last = -1;
+                int index = 0;
+                for(int i = 0; i < entries; i++){
+                    int packed = payload.get();
+                    byte seat = seat((byte) (packed >> 4));
+                    index = seat == last ? index + 1 : 0;
+                    last = seat;
+                    Hand hand = table.open(seat, index(index));
+                    if((packed & 0x0f) != NO_OUTCOME){
+                        table.finish(seat, index, Outcome.fromCode(packed & 0x0f));
+                    }
+                    readCards(payload, hand);
+                }
+                if(table.getTurn() != 0){
+                    table.getHands(table.getTurn()).setActive(phase >> 6);
+                }
+                Hand playerHand = table.getPlayerHand();
+                if(table.getPhase() == TableState.HAND_OVER && table.getOutcome() != null){
+                    output.outcomes(table.getPlayerHands(), table.getDealerHand());
+                }else if(table.getPhase() == TableState.IN_HAND && playerHand.size() == 2){
+                    output.openingHand(playerHand, table.getDealerHand().get(0));
+                }else if(table.getPhase() == TableState.IN_HAND && playerHand.size() > 2){
+                    output.playerHand(playerHand, table.getDealerHand().get(0));
+                }
+                break;
+            }
+            case SEATED:
+                table.setSeat(seat(payload.get()));
+                break;
+            case TURN: {
+                int packed = payload.get();
+                byte seat = handSeat(packed);
+                table.setTurn(seat);
+                if(seat != DEALER_SEAT){
+                    int index = handIndex(packed);
+                    table.getHands(seat).setActive(index);
+                    if(seat == table.getSeat() && index > 0){ // moved on to the next hand of a split
+                        output.playerHand(table.getPlayerHand(), table.getDealerHand().get(0));
+                    }
+                }
+                break;
+            }
+            case SPLIT_EVENT: {
+                int packed = payload.get();
+                table.split(seat(handSeat(packed)), handIndex(packed));
+                break;
+            }
+            case HINT_EVENT:
+                output.hint(readHint(payload));
+                break;
+            case BATCH_RESULT:
+                output.batchPlayed(readBatchResult(payload));
+                break;
+            case BANKROLL:
+                output.bankroll(payload.getLong(), payload.getInt());
+                break;
+            default:
+                break; // welcome and anything newer than this version carry nothing to show
+        }
+        return opcode;
+    }
+
+    /**
+     * reads the length of the next frame and then the whole frame
+     * @param in the stream to read from
+     * @return the opcode and payload of the frame
+     * @throws IOException if the stream ends or the frame is empty
+     */
+    private static ByteBuffer readFrame(DataInputStream in) throws IOException{
+        int length = in.readUnsignedShort();
+        if(length == 0){
+            throw new StreamCorruptedException("empty frame");
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return ByteBuffer.wrap(frame);
+    }
+
+    /**
+     * reads a count followed by the rank of each card
+     * @param in the payload to read from
+     * @return the hand read
+     * @throws IOException if a rank is not a legal card
+     */
+    private static Hand readCards(ByteBuffer in) throws IOException{
+        Hand hand = new Hand();
+        readCards(in, hand);
+        return hand;
+    }
+
+    /**
+     * reads a count followed by the rank of each card, adding the cards to a hand
+     * @param in the payload to read from
+     * @param hand the hand the cards are added to
+     * @throws IOException if a rank is not a legal card
+     */
+    private static void readCards(ByteBuffer in, Hand hand) throws IOException{
+        int count = in.get() & 0xff;
+        for(int i = 0; i < count; i++){
+            hand.add(rank(in.get()));
+        }
+    }
+}
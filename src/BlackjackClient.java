@@ -2,10 +2,8 @@
 import java.awt.*;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import javax.swing.*;
@@ -25,35 +23,56 @@ public class BlackjackClient extends JFrame{
      */
     private JButton stayButton;
 
+    /**
+     * double button to be pressed when the user wants to double their bet and take one more card
+     */
+    private JButton doubleButton;
+
+    /**
+     * split button to be pressed when the user wants to split a pair into two hands
+     */
+    private JButton splitButton;
+
+    /**
+     * insurance button to be pressed when the dealer shows an ace and the user wants to insure against a blackjack
+     */
+    private JButton insuranceButton;
+
     /**
      * restart button to be pressed when the user wants to start a new hand
      */
     private JButton restartButton;
 
     /**
-     * disconnect button to be pressed to disconnect from the server
+     * hint button to be pressed when the user wants to know the better play for their hand
      */
-    private JButton disconnect;
+    private JButton hintButton;
 
     /**
-     * the display area to display information about the game
+     * the field the user types a bet into, sent when they press enter
      */
-    private JTextArea displayArea;
+    private JTextField betField;
 
     /**
-     * the output stream to the server
+     * disconnect button to be pressed to disconnect from the server
      */
-    private ObjectOutputStream output;
+    private JButton disconnect;
 
     /**
-     * the input stream from the server
+     * the display area to display information about the game
      */
-    private ObjectInputStream input;
+    private JTextArea displayArea;
+
 
     /**
-     * the message sent from the server
+     * turns the events sent from the server into text for the display area
      */
-    private String message = "";
+    private final TextGameOutput events = new TextGameOutput() {
+        @Override
+        protected void sendData(String message) {
+            displayMessage("\n" + message);
+        }
+    };
 
     /**
      * the ip address of the server
@@ -61,9 +80,14 @@ public class BlackjackClient extends JFrame{
     private String server;
 
     /**
-     * this clients socket
+     * stores weather server is a lobby that says which server to play on
+     */
+    private final boolean lobby;
+
+    /**
+     * this clients connection to the server
      */
-    private Socket client;
+    private BlackjackConnection client;
 
 
     /**
@@ -71,17 +95,38 @@ public class BlackjackClient extends JFrame{
      * @param host ip address of the server
      */
     public BlackjackClient(String host){
+        this(host, false);
+    }
+
+    /**
+     * constructor for the blackjack client
+     * @param host ip address of the server, or of the lobby
+     * @param lobby true if host is a lobby, which sends the player to one of its servers
+     */
+    public BlackjackClient(String host, boolean lobby){
         super("Blackjack Client");
         server = host;
+        this.lobby = lobby;
 
         JPanel topButtons = new JPanel();
-        topButtons.setLayout(new GridLayout(1,4));
+        topButtons.setLayout(new GridLayout(1,9));
         hitButton = new JButton("Hit");
         topButtons.add(hitButton);
         stayButton = new JButton("Stay");
         topButtons.add(stayButton);
+        doubleButton = new JButton("Double");
+        topButtons.add(doubleButton);
+        splitButton = new JButton("Split");
+        topButtons.add(splitButton);
+        insuranceButton = new JButton("Insurance");
+        topButtons.add(insuranceButton);
         restartButton = new JButton("New Hand");
         topButtons.add(restartButton);
+        hintButton = new JButton("Hint");
+        topButtons.add(hintButton);
+        betField = new JTextField();
+        betField.setToolTipText("Bet, press enter to place it");
+        topButtons.add(betField);
         disconnect = new JButton("Disconnect");
         topButtons.add(disconnect);
         add(topButtons,BorderLayout.NORTH); //puts a row of buttons on the top of the frame
@@ -103,6 +148,27 @@ public class BlackjackClient extends JFrame{
             }
         });
 
+        doubleButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                sendData("Double"); //sends to the server the user wants to double down
+            }
+        });
+
+        splitButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                sendData("Split"); //sends to the server the user wants to split their pair
+            }
+        });
+
+        insuranceButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                sendData("Insurance"); //sends to the server the user wants insurance
+            }
+        });
+
         restartButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
@@ -110,6 +176,20 @@ public class BlackjackClient extends JFrame{
             }
         });
 
+        hintButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                sendData("Hint"); //asks the server which play is better
+            }
+        });
+
+        betField.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent actionEvent) {
+                sendBet(betField.getText()); // places the bet for the next hands
+            }
+        });
+
         disconnect.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
@@ -117,7 +197,7 @@ public class BlackjackClient extends JFrame{
             }
         });
 
-        setSize(500,300);
+        setSize(760,300);
         setVisible(true); //shows the frame to the user
 
     }
@@ -146,36 +226,45 @@ public class BlackjackClient extends JFrame{
      */
     private void connectToServer() throws IOException{
         displayMessage("attempting connection\n");
-        client = new Socket(InetAddress.getByName(server), 23716);
+        InetAddress address = InetAddress.getByName(server);
+        int port = BlackjackConnection.DEFAULT_PORT;
+        if(lobby){ // the same player is sent back to the same server while it is up
+            InetSocketAddress node = LobbyProtocol.route(new InetSocketAddress(address, LobbyProtocol.DEFAULT_PORT),
+                    System.getProperty("user.name"));
+            displayMessage("the lobby sent this player to " + node + "\n");
+            address = node.getAddress();
+            port = node.getPort();
+        }
+        client = new BlackjackConnection(address, port);
         displayMessage("Connected to: " + client.getInetAddress().getHostName());
     }
 
     /**
-     * attempts to get the IO streams
+     * attempts to get the IO streams and agree on the binary protocol with the server
      * @throws IOException otherwise throws IO exception
      */
     private void getStreams() throws  IOException{
-        output = new ObjectOutputStream(client.getOutputStream());
-        output.flush();
-        input = new ObjectInputStream(client.getInputStream());
+        client.getStreams();
         displayMessage("\ngot IO streams\n");
     }
 
     /**
-     * reads data sent from the server and relays it to the user
+     * reads events sent from the server and relays them to the user, until the server closes the connection
+     * the server sends only what changed, the connection keeps the table and rebuilds the text of each event from it
      * @throws IOException otherwise throws an IO exception
      */
     private void processConnection() throws IOException{
-        do{
-            try{
-                message = (String) input.readObject(); // read new message
-                displayMessage("\n" + message); // display message
+        while (true){
+            int opcode = client.readEvent(events); // read and display the next event
+            TableState table = client.getTable();
+            if(opcode == BinaryProtocol.WELCOME){
+                displayMessage("\nConnection Successful");
+            }else if(opcode == BinaryProtocol.SEATED){
+                displayMessage("\nYou are sitting in seat " + table.getSeat());
+            }else if(opcode == BinaryProtocol.TURN && table.getTurn() == table.getSeat()){
+                displayMessage("\nIt is your turn");
             }
-            catch (ClassNotFoundException classNotFoundException){
-                displayMessage("\nUnknown object type received");
-            }
-
-        } while (!message.equals("Disconnect")); // while still connected to the server
+        }
     }
 
     /**
@@ -186,9 +275,9 @@ public class BlackjackClient extends JFrame{
         displayMessage("\nClosing Connection");
 
         try{
-            output.close(); //closes all the input and output connections
-            input.close();
-            client.close();
+            if(client != null){
+                client.close(); //closes all the input and output connections
+            }
         }
         catch (IOException ioException){
             ioException.printStackTrace();
@@ -196,14 +285,27 @@ public class BlackjackClient extends JFrame{
     }
 
     /**
-     * sends data to the server
-     * @param message message to be sent to the server
+     * sends a command to the server
+     * @param message the command to be sent to the server, for example "Hit"
      */
     private void sendData(String message){
 
         try{
-            output.writeObject(message);
-            output.flush();
+            client.send(BinaryProtocol.commandCode(message));
+        }catch (IOException e){
+            displayArea.append("\n error writing object");
+        }
+    }
+
+    /**
+     * sends a bet to the server
+     * @param chips the chips typed into the bet field
+     */
+    private void sendBet(String chips){
+        try{
+            client.sendBet(Integer.parseInt(chips.trim()));
+        }catch (NumberFormatException e){
+            displayMessage("\nA bet is a whole number of chips");
         }catch (IOException e){
             displayArea.append("\n error writing object");
         }
@@ -8,7 +8,7 @@ public class BlackjackClientRunner {
 
     /**
      * main mated to create a blackjack client
-     * @param args the arguments for the main method
+     * @param args the arguments for the main method, the address of the server and then --lobby if it is a lobby
      */
     public static void main( String[] args){
 
@@ -16,7 +16,7 @@ public class BlackjackClientRunner {
         if (args.length == 0) {
             client = new BlackjackClient("127.0.0.1"); // connect to localhost
         }else {
-            client = new BlackjackClient(args[0]); // use args to connect
+            client = new BlackjackClient(args[0], args.length > 1 && args[1].equals("--lobby")); // use args to connect
         }
         client.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         client.runClient();
@@ -0,0 +1,202 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * the client side of a connection to the server speaking the binary protocol,
+ * shared by the windowed client and the load generator
+ */
+public class BlackjackConnection implements Closeable {
+
+    /**
+     * the port the server listens on unless told otherwise
+     */
+    public static final int DEFAULT_PORT = 23716;
+
+    /**
+     * this clients socket
+     */
+    private final Socket client;
+
+    /**
+     * the output stream to the server
+     */
+    private DataOutputStream output;
+
+    /**
+     * the input stream from the server
+     */
+    private DataInputStream input;
+
+    /**
+     * the version of the protocol spoken on this connection
+     */
+    private final int version;
+
+    /**
+     * the table as this client has seen it, kept from the changes the server sends in version 2
+     */
+    private final TableState table = new TableState();
+
+    /**
+     * a frame holding a single command, reused for every command sent, with room for the chips of a bet or a name
+     */
+    private final ByteBuffer command = ByteBuffer.allocate(BinaryProtocol.LENGTH_FIELD + 1 + BinaryProtocol.MAX_NAME);
+
+    /**
+     * a frame holding a batch of commands, reused for every batch sent
+     */
+    private final ByteBuffer batch = ByteBuffer.allocate(BinaryProtocol.LENGTH_FIELD + 1 + BinaryProtocol.MAX_BATCH);
+
+    /**
+     * connects to the server speaking the newest version of the protocol, call getStreams before sending anything
+     * @param server the address of the server
+     * @param port the port the server listens on
+     * @throws IOException if the server cannot be reached
+     */
+    public BlackjackConnection(InetAddress server, int port) throws IOException{
+        this(server, port, BinaryProtocol.VERSION);
+    }
+
+    /**
+     * connects to the server, call getStreams before sending anything
+     * @param server the address of the server
+     * @param port the port the server listens on
+     * @param version the version of the protocol to speak
+     * @throws IOException if the server cannot be reached
+     */
+    public BlackjackConnection(InetAddress server, int port, int version) throws IOException{
+        this.version = version;
+        client = new Socket(server, port);
+        client.setTcpNoDelay(true); // commands are a few bytes and each one waits for its reply
+    }
+
+    /**
+     * @return the address of the server
+     */
+    public InetAddress getInetAddress(){
+        return client.getInetAddress();
+    }
+
+    /**
+     * gets the IO streams and agrees on the binary protocol with the server
+     * @throws IOException if the server does not speak a version of the protocol this client understands
+     */
+    public void getStreams() throws IOException{
+        output = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+        ByteBuffer preamble = ByteBuffer.allocate(BinaryProtocol.PREAMBLE_LENGTH);
+        BinaryProtocol.writePreamble(preamble, version);
+        output.write(preamble.array());
+        output.flush();
+        input = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        if(BinaryProtocol.readPreamble(input) != version){
+            throw new StreamCorruptedException("server answered in a different protocol version");
+        }
+    }
+
+    /**
+     * sends a command to the server
+     * @param opcode the opcode of the command, for example BinaryProtocol.HIT
+     * @throws IOException if the command cannot be written
+     */
+    public void send(byte opcode) throws IOException{
+        command.clear();
+        BinaryProtocol.writeEmpty(opcode, command);
+        output.write(command.array(), 0, command.position());
+        output.flush();
+    }
+
+    /**
+     * places the bet for the next hands, the server answers with a BANKROLL event if it takes bets
+     * @param chips the chips to bet on each hand
+     * @throws IOException if the command cannot be written
+     */
+    public void sendBet(int chips) throws IOException{
+        command.clear();
+        BinaryProtocol.writeBet(chips, command);
+        output.write(command.array(), 0, command.position());
+        output.flush();
+    }
+
+    /**
+     * names the player, the server keeps their bankroll under the name and this address and answers with a BANKROLL
+     * event if it takes bets. only taken between hands
+     * @param name the name, at most BinaryProtocol.MAX_NAME letters, digits, '.', '-' and '_'
+     * @throws IOException if the command cannot be written
+     */
+    public void sendName(String name) throws IOException{
+        command.clear();
+        BinaryProtocol.writeName(name, command);
+        output.write(command.array(), 0, command.position());
+        output.flush();
+    }
+
+    /**
+     * sends several commands in one frame, the server plays them in order and answers with every event they cause
+     * followed by a BATCH_RESULT, so a client that knows its next commands waits for one reply instead of one each
+     * @param opcodes the opcode of each command, at most BinaryProtocol.MAX_BATCH of them
+     * @throws IOException if the commands cannot be written
+     */
+    public void sendBatch(byte... opcodes) throws IOException{
+        batch.clear();
+        BinaryProtocol.writeBatch(opcodes, batch);
+        output.write(batch.array(), 0, batch.position());
+        output.flush();
+    }
+
+    /**
+     * waits for the next event from the server and passes what it holds to a game output
+     * in version 2 the event is applied to the table kept here first, and a snapshot is asked for
+     * if the event shows a change was missed
+     * @param events where the event is sent
+     * @return the opcode of the event
+     * @throws IOException if the connection ends or the event is not understood
+     */
+    public int readEvent(GameOutput events) throws IOException{
+        if(version == BinaryProtocol.FULL_HAND_VERSION){
+            return BinaryProtocol.readEvent(input, events);
+        }
+        int opcode = BinaryProtocol.readDeltaEvent(input, table, events);
+        if(table.isOutOfSync()){
+            send(BinaryProtocol.SYNC);
+        }
+        return opcode;
+    }
+
+    /**
+     * @return the table as this client has seen it, only kept in version 2
+     */
+    public TableState getTable(){
+        return table;
+    }
+
+    /**
+     * @return the version of the protocol spoken on this connection
+     */
+    public int getVersion(){
+        return version;
+    }
+
+    /**
+     * closes all the input and output connections
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException{
+        if(output != null){
+            output.close();
+        }
+        if(input != null){
+            input.close();
+        }
+        client.close();
+    }
+}
@@ -0,0 +1,498 @@
+
+/**
+ * the rules and state of a single blackjack game between one player and the dealer,
+ * kept apart from the connection so any transport can drive it
+ *
+ * what each command does is looked up in the SeatMachine table for where the player is in the round, so a command
+ * that cannot be played is turned away without being compared to anything. the player can double, split a pair
+ * into as many as SeatHands.MAX_HANDS hands played one after the other, and insure when the dealer shows an ace
+ */
+public class BlackjackGame implements GameInput {
+
+    /**
+     * where everything that happens in the game is sent
+     */
+    private final GameOutput output;
+
+    /**
+     * where shuffled shoes come from and finished ones go back to
+     */
+    private final ShoePool shoes;
+
+    /**
+     * where the hands dealt, their outcomes and the time each step takes are recorded
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * where every card, command and outcome is written down, null if the server keeps no journal
+     */
+    private final HandJournal journal;
+
+    /**
+     * the id the hand being played has in the journal
+     */
+    private long hand;
+
+    /**
+     * where every finished hand is stored, null if the server keeps no hand history
+     */
+    private final HandHistory history;
+
+    /**
+     * where hints come from, null if the server gives no hints
+     */
+    private final StrategyTable strategy;
+
+    /**
+     * the address the player connected from
+     */
+    private final String address;
+
+    /**
+     * who is playing, the address they connected from or the name they gave at it
+     */
+    private String player;
+
+    /**
+     * where the bankroll of the player is kept, null if hands are played without stakes
+     */
+    private final Ledger ledger;
+
+    /**
+     * the account of the player in the ledger, null if hands are played without stakes
+     */
+    private Ledger.Account account;
+
+    /**
+     * the chips the player bets on each hand
+     */
+    private long bet;
+
+    /**
+     * the chips bet on each hand of the round being played, 0 if there is none
+     */
+    private long staked = 0;
+
+    /**
+     * the chips insuring the round being played against a dealer blackjack, 0 if it is not insured
+     */
+    private long insurance = 0;
+
+    /**
+     * every chip staked on the round being played, the bets on its hands, what doubling them added and the insurance
+     */
+    private long inPlay = 0;
+
+    /**
+     * the shoe the cards are currently dealt from
+     */
+    private Shoe shoe;
+
+    /**
+     * the shuffle of the shoe the hand was dealt from, -1 if it cannot be replayed
+     */
+    private int shuffle;
+
+    /**
+     * the hands of the player, more than one once they split
+     */
+    private final SeatHands hands = new SeatHands();
+
+    /**
+     * the cards in the dealers hand and their score, index 0 represents the card the player can see
+     */
+    private final Hand dealerHand = new Hand();
+
+    /**
+     * where the player is in the round, which decides what each command does
+     */
+    private SeatMachine.State state = SeatMachine.State.IDLE;
+
+    /**
+     * constructor for a game
+     * @param output where everything that happens in the game is sent
+     * @param shoes where shuffled shoes come from
+     * @param metrics where the hands dealt, their outcomes and the time each step takes are recorded
+     * @param journal where every card, command and outcome is written down, null to keep no journal
+     * @param history where every finished hand is stored, null to keep no hand history
+     * @param strategy where hints come from, null to give no hints
+     * @param player who is playing, the address they connected from
+     * @param ledger where the bankroll of the player is kept, null to play without stakes
+     */
+    public BlackjackGame(GameOutput output, ShoePool shoes, ServerMetrics metrics, HandJournal journal,
+                         HandHistory history, StrategyTable strategy, String player, Ledger ledger){
+        this.output = output;
+        this.shoes = shoes;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.history = history;
+        this.strategy = strategy;
+        this.address = player;
+        this.player = player;
+        this.ledger = ledger;
+        account = ledger == null ? null : ledger.open(player);
+        bet = ledger == null ? 0 : ledger.getDefaultBet();
+
+        shoe = shoes.take();
+    }
+
+    /**
+     * starts the blackjack game
+     */
+    private void startGame(){
+        long start = System.nanoTime();
+        output.newHand();
+        Hand playerHand = hands.getActive();
+        shuffle = shoe.getShuffle();
+        BlackjackRules.dealOpeningHands(shoe, playerHand, dealerHand); // the hands keep their own score
+        if(journal != null){
+            hand = journal.newHand();
+            record(HandJournal.START, (byte) 0, (byte) 1);
+            recordCards(BinaryProtocol.PLAYER_SEAT, playerHand, 0);
+            recordCards(BinaryProtocol.DEALER_SEAT, dealerHand, 0);
+        }
+
+        if(playerHand.isBlackjack()){ //if the player has a blackjack goes to end the game and exit the method before the message gets sent to the client
+            metrics.gameStarted(System.nanoTime() - start);
+            endGame();
+            return;
+        }
+
+        //tells the client what their opening hand is and what card the dealer has up
+        output.openingHand(playerHand, dealerHand.get(0));
+        state = SeatMachine.turn(hands, dealerHand.get(0));
+        metrics.gameStarted(System.nanoTime() - start);
+
+    }
+
+    /**
+     * plays a command from the client, what it does is looked up from where the player is in the round
+     * @param command the command from the client
+     * @param chips the chips of a bet
+     * @return true if the command was played, false if it was ignored
+     */
+    @Override
+    public boolean processInput(Command command, long chips){
+        long start = System.nanoTime();
+        boolean played = true;
+        switch (SeatMachine.action(state, command)){
+            case HIT:
+                record(HandJournal.ACTION, active(), BinaryProtocol.HIT);
+                draw();
+                break;
+            case STAY:
+                record(HandJournal.ACTION, active(), BinaryProtocol.STAY);
+                nextHand();
+                break;
+            case DOUBLE:
+                played = doubleDown();
+                break;
+            case SPLIT:
+                played = split();
+                break;
+            case INSURE:
+                played = insure();
+                break;
+            case REDEAL: // the hand being played is given up for the new one
+                abandon();
+                played = deal();
+                break;
+            case DEAL:
+                played = deal();
+                break;
+            case BET: // a new bet, only placed between hands
+                played = account != null && ledger.isAllowed(chips);
+                if(played){
+                    bet = chips;
+                    output.bankroll(ledger.getBalance(account), bet);
+                }
+                break;
+            case SYNC: // the client lost track of the game and wants all of it again
+                output.snapshot();
+                break;
+            case HINT: // only answered while there is a hand to play
+                played = strategy != null;
+                if(played){
+                    output.hint(strategy.hint(hands.getActive(), dealerHand, shoe));
+                }
+                break;
+            default:
+                played = false;
+        }
+        metrics.command(command, System.nanoTime() - start);
+        return played;
+    }
+
+    /**
+     * names the player, their account is the one kept under the name from then on
+     * @param name the name the player gave
+     * @return true if the name was taken, false if a hand is being played or the name is not allowed
+     */
+    @Override
+    public boolean name(String name){
+        String named = Command.player(address, name);
+        if(named == null || SeatMachine.action(state, Command.NAME) != SeatMachine.Action.NAME){
+            return false;
+        }
+        player = named;
+        if(ledger != null){
+            account = ledger.open(player);
+            output.bankroll(ledger.getBalance(account), bet);
+        }
+        return true;
+    }
+
+    /**
+     * takes the bet and deals a new round
+     * @return false if the bankroll does not cover the bet, nothing is dealt then
+     */
+    private boolean deal(){
+        if(account != null && !stake()){ // the bet is taken before a card is dealt
+            return false;
+        }
+        hands.clear(); // resets the player and dealer hands
+        dealerHand.clear();
+        if(shoe.isCutCardReached()){ // swaps in a shoe that was shuffled in the background
+            shoes.recycle(shoe);
+            shoe = shoes.take();
+        }
+        startGame(); // starts the game again
+        return true;
+    }
+
+    /**
+     * deals a card to the active hand, moving on to the next hand once it cannot take another
+     */
+    private void draw(){
+        Hand playerHand = hands.getActive();
+        playerHand.add(shoe.dealCard());
+        recordCards(active(), playerHand, playerHand.size() - 1);
+        if(hands.isDone()){ // 21 or more, or the one card of a doubled hand
+            if(hands.getActiveIndex() + 1 < hands.size()){
+                output.playerHand(playerHand, dealerHand.get(0)); // the card that ended it, before the next hand is played
+            }
+            nextHand();
+        }else{ // if the hand is not over gives the client information about what card was drawn and what information they have
+            state = SeatMachine.of(hands);
+            output.playerHand(playerHand, dealerHand.get(0));
+        }
+    }
+
+    /**
+     * doubles the bet on the active hand and deals it its one more card
+     * @return false if the bankroll does not cover the extra bet
+     */
+    private boolean doubleDown(){
+        if(!raise(staked)){
+            return false;
+        }
+        record(HandJournal.ACTION, active(), BinaryProtocol.DOUBLE);
+        hands.doubleDown();
+        draw();
+        return true;
+    }
+
+    /**
+     * splits the active hand into two with a bet on each and deals a second card to both
+     * @return false if the hand is not a pair that can be split or the bankroll does not cover the extra bet
+     */
+    private boolean split(){
+        if(!hands.canSplit() || !raise(staked)){
+            return false;
+        }
+        record(HandJournal.ACTION, active(), BinaryProtocol.SPLIT);
+        int index = hands.split();
+        Hand first = hands.getActive();
+        Hand second = hands.get(index);
+        first.add(shoe.dealCard());
+        second.add(shoe.dealCard());
+        recordCards(active(), first, 1);
+        recordCards(BinaryProtocol.hand(BinaryProtocol.PLAYER_SEAT, index), second, 1);
+        output.split(hands, dealerHand.get(0));
+        state = SeatMachine.of(hands);
+        if(state == SeatMachine.State.WAITING){ // 21 straight away, or split aces which get one card each
+            nextHand();
+        }
+        return true;
+    }
+
+    /**
+     * insures the round against a dealer blackjack for half the bet, settled with the hands once the dealer has played
+     * @return false if the bet is too small to take half of or the bankroll does not cover it
+     */
+    private boolean insure(){
+        long stake = staked / 2;
+        if(account != null && (stake < 1 || !raise(stake))){
+            return false;
+        }
+        record(HandJournal.ACTION, active(), BinaryProtocol.INSURANCE);
+        hands.insure();
+        insurance = stake;
+        state = SeatMachine.of(hands); // insurance is only offered as the first decision
+        return true;
+    }
+
+    /**
+     * moves on to the next hand the player split into that can still be played, or ends the round if there is none
+     */
+    private void nextHand(){
+        if(hands.next()){
+            state = SeatMachine.of(hands);
+            output.nextHand(hands, dealerHand.get(0));
+        }else{
+            endGame();
+        }
+    }
+
+    /**
+     * ends the blackjack game informing the client of who won
+     */
+    private void endGame(){
+        endGame(true);
+    }
+
+    /**
+     * ends the blackjack game, settling every hand
+     * @param shown false if the player has left, the hands are settled without sending them anything
+     */
+    private void endGame(boolean shown){
+        long start = System.nanoTime();
+        state = SeatMachine.State.IDLE;
+        BlackjackRules.playDealer(shoe, dealerHand); // plays the dealer as per the rules of blackjack
+        recordCards(BinaryProtocol.DEALER_SEAT, dealerHand, 2);
+        for(int i = 0; i < hands.size(); i++){
+            Outcome outcome = BlackjackRules.settle(hands.get(i), hands.isNatural(i), dealerHand);
+            hands.finish(i, outcome);
+            record(HandJournal.OUTCOME, BinaryProtocol.hand(BinaryProtocol.PLAYER_SEAT, i), (byte) outcome.getCode());
+            if(history != null){
+                history.add(hand, player, BinaryProtocol.PLAYER_SEAT, outcome, hands.get(i), dealerHand,
+                        shoe.getSeed(), shuffle);
+            }
+        }
+        record(HandJournal.END, (byte) 0, HandJournal.FINISHED);
+        if(shown){
+            output.outcomes(hands, dealerHand);
+        }
+        if(inPlay > 0){
+            long balance = 0;
+            for(int i = 0; i < hands.size(); i++){
+                long handBet = hands.isDoubled(i) ? 2 * staked : staked;
+                balance = ledger.settle(account, handBet, hands.getOutcome(i), hands.isNatural(i));
+            }
+            if(insurance > 0){
+                balance = ledger.insurance(account, insurance, dealerHand.isBlackjack());
+            }
+            staked = 0;
+            insurance = 0;
+            inPlay = 0;
+            if(shown){
+                output.bankroll(balance, bet);
+            }
+        }
+        long taken = System.nanoTime() - start;
+        for(int i = 0; i < hands.size(); i++){
+            metrics.gameEnded(hands.getOutcome(i), taken);
+        }
+    }
+
+    /**
+     * the player has left, a hand they were in the middle of stays on every hand not yet played and is settled,
+     * as a seat that leaves a shared table is
+     */
+    @Override
+    public void leave(){
+        if(state != SeatMachine.State.IDLE){
+            record(HandJournal.ACTION, active(), BinaryProtocol.STAY);
+            endGame(false);
+        }
+    }
+
+    /**
+     * gives up the round being played for a new one, if there is one, writing it down as abandoned and losing its bets
+     */
+    private void abandon(){
+        if(state != SeatMachine.State.IDLE){
+            state = SeatMachine.State.IDLE;
+            record(HandJournal.END, (byte) 0, HandJournal.ABANDONED);
+            forfeit();
+        }
+    }
+
+    /**
+     * takes the bet of the player out of their bankroll for the hand about to be dealt and tells them what is left
+     * @return false if the bankroll does not cover the bet, the hand is not dealt then
+     */
+    private boolean stake(){
+        if(!ledger.stake(account, bet)){
+            output.bankroll(ledger.getBalance(account), 0);
+            return false;
+        }
+        staked = bet;
+        inPlay = bet;
+        output.bankroll(ledger.getBalance(account), bet);
+        return true;
+    }
+
+    /**
+     * takes more chips out of the bankroll of the player for the round being played, to double, split or insure
+     * @param chips the chips to take
+     * @return false if the bankroll does not cover them, true straight away if the hand is played without stakes
+     */
+    private boolean raise(long chips){
+        if(account == null){
+            return true;
+        }
+        if(!ledger.stake(account, chips)){
+            output.bankroll(ledger.getBalance(account), 0);
+            return false;
+        }
+        inPlay += chips;
+        output.bankroll(ledger.getBalance(account), bet);
+        return true;
+    }
+
+    /**
+     * gives every chip staked on a round the player gave up for a new one to the house, if there were any
+     */
+    private void forfeit(){
+        if(inPlay > 0){
+            ledger.forfeit(account, inPlay);
+            staked = 0;
+            insurance = 0;
+            inPlay = 0;
+        }
+    }
+
+    /**
+     * @return the active hand of the player as the journal names it
+     */
+    private byte active(){
+        return BinaryProtocol.hand(BinaryProtocol.PLAYER_SEAT, hands.getActiveIndex());
+    }
+
+    /**
+     * writes a record of the hand being played to the journal, if there is one
+     * @param type what happened
+     * @param seat the seat it happened to
+     * @param value the card, command, outcome or ending
+     */
+    private void record(byte type, byte seat, byte value){
+        if(journal != null){
+            journal.record(hand, type, seat, value);
+        }
+    }
+
+    /**
+     * writes every card of a hand from an index onwards to the journal, if there is one
+     * @param seat the seat the hand belongs to
+     * @param cards the hand
+     * @param from the index of the first card to write
+     */
+    private void recordCards(byte seat, Hand cards, int from){
+        for(int i = from; i < cards.size(); i++){
+            record(HandJournal.CARD, seat, cards.get(i));
+        }
+    }
+
+}
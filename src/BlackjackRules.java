@@ -0,0 +1,77 @@
+
+/**
+ * the rules of the game in one place, shared by the server and the simulator so both always play the same game
+ */
+public final class BlackjackRules {
+
+    /**
+     * the dealer must stay once their score gets to this and must hit before that
+     */
+    public static final int DEALER_STANDS_ON = 17;
+
+    /**
+     * no instances, only static rules
+     */
+    private BlackjackRules(){
+    }
+
+    /**
+     * deals 2 cards to the players hand and dealers hand, alternating as a dealer would
+     * @param shoe the shoe to deal from
+     * @param playerHand the players empty hand
+     * @param dealerHand the dealers empty hand, the first card dealt to it is the one the player can see
+     */
+    public static void dealOpeningHands(Shoe shoe, Hand playerHand, Hand dealerHand){
+        playerHand.add(shoe.dealCard());
+        playerHand.add(shoe.dealCard());
+        dealerHand.add(shoe.dealCard());
+        dealerHand.add(shoe.dealCard());
+    }
+
+    /**
+     * checks if the player can no longer act on their hand
+     * @param playerHand the players hand
+     * @return true if the score is 21 or more, so the player has either busted or got a maximum score
+     */
+    public static boolean isPlayerDone(Hand playerHand){
+        return playerHand.getScore() >= Hand.BLACKJACK;
+    }
+
+    /**
+     * plays the dealers hand as per the rule that the dealer must stay after their score gets to 17 and must hit before that
+     * @param shoe the shoe to deal from
+     * @param dealerHand the dealers hand
+     */
+    public static void playDealer(Shoe shoe, Hand dealerHand){
+        while (dealerHand.getScore() < DEALER_STANDS_ON){
+            dealerHand.add(shoe.dealCard());
+        }
+    }
+
+    /**
+     * works out how a finished hand ended
+     * @param playerHand the players final hand
+     * @param dealerHand the dealers final hand
+     * @return the outcome for the player
+     */
+    public static Outcome settle(Hand playerHand, Hand dealerHand){
+        return settle(playerHand, playerHand.isBlackjack(), dealerHand);
+    }
+
+    /**
+     * works out how a finished hand ended, for a hand that may have come from a split
+     * @param playerHand the players final hand
+     * @param natural true if the hand is a blackjack dealt with the opening cards, 21 from two cards after a split is not
+     * @param dealerHand the dealers final hand
+     * @return the outcome for the player
+     */
+    public static Outcome settle(Hand playerHand, boolean natural, Hand dealerHand){
+        if(natural && !dealerHand.isBlackjack() && !dealerHand.isBust()){
+            return Outcome.PLAYER_HIGHER; // a blackjack beats 21 made with more cards
+        }
+        if(dealerHand.isBlackjack() && !natural && !playerHand.isBust()){
+            return Outcome.PLAYER_LOWER; // a dealer blackjack beats every other hand, doubled and split ones too
+        }
+        return Outcome.of(playerHand.getScore(), dealerHand.getScore());
+    }
+}
@@ -1,318 +1,370 @@
 
-import java.awt.BorderLayout;
-import java.io.EOFException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.*;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Formatter;
-import java.util.Scanner;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.Condition;
-import javax.swing.*;
 
 /**
  * the server implementation for blackjack
+ * needs no window, everything it does is written to an event log that a ServerViewer can show
  */
-public class BlackjackServer extends JFrame{
+public class BlackjackServer {
 
     /**
-     * the server side text display box
+     * where everything the server does is recorded
      */
-    private JTextArea displayArea;
+    private final EventLog eventLog;
 
     /**
-     * the output to be sent to each of the clients
+     * the settings the server was started with
      */
-    private ObjectOutputStream output;
+    private final ServerConfig config;
 
     /**
-     * the input from the client
+     * the shuffled shoes shared by every game on this server
      */
-    private ObjectInputStream input;
+    private final ShoePool shoes;
 
     /**
-     * keeps the correct port and other server information
+     * the counters and latencies of every session on this server
      */
-    private ServerSocket server;
+    private final ServerMetrics metrics = new ServerMetrics();
 
     /**
-     * the connected client
+     * seats clients at shared tables, null when every client has a game of their own
      */
-    private Socket connection;
+    private final TableScheduler tables;
 
     /**
-     * keeps track of what number of clients have connected so far
+     * where every card, command and outcome is written down, null if the server keeps no journal
      */
-    private int count = 1;
+    private final HandJournal journal;
 
     /**
-     * the deck used to preform the blackjack options
+     * where every finished hand is stored, null if the server keeps no hand history
      */
-    private Deck deck;
+    private final HandHistory history;
 
     /**
-     * an array list storing all of the cards in the players hand
+     * where the bankroll of every player is kept, null if hands are played without stakes
      */
-    private ArrayList<String> playerHand;
+    private final Ledger ledger;
 
     /**
-     * an array list storing all of the cards in the dealers hand, index 0 represents the card the player can see
+     * the best play for every hand, used to answer hints, null if the server gives no hints
      */
-    private ArrayList<String> dealerHand;
+    private final StrategyTable strategy;
 
     /**
-     * keeps the players score as to not have to restore every time
+     * decides which connections are accepted and how fast each address can send commands
      */
-    private int playerScore;
+    private final AdmissionControl admission;
 
     /**
-     * keeps the dealers score as to not have to restore every time
+     * the buffers messages wait in until they are written to clients of the blocking transport
      */
-    private int dealerScore;
+    private final BufferPool buffers = new BufferPool(OutboundQueue.MESSAGE_SIZE, 1024);
 
     /**
-     * stores weather a blackjack game has been started
-     * the hit and stay button will do nothing when this is false
+     * keeps the correct port and other server information
+     */
+    private ServerSocket server;
+
+    /**
+     * runs one game session per connected client
+     */
+    private ExecutorService sessions;
+
+    /**
+     * keeps track of what number of clients have connected so far
      */
-    private boolean gameStarted = false;
+    private int count = 1;
 
     /**
-     * constructor for the server, initializes the variables and makes it visible to the user
+     * constructor for the server with the default settings, initializes the variables
      */
     public BlackjackServer(){
+        this(new ServerConfig());
+    }
 
-        super("Blackjack Sever");
+    /**
+     * constructor for the server, initializes the variables
+     * @param config the settings the server is started with
+     */
+    public BlackjackServer(ServerConfig config){
+        this(config, null, null);
+    }
 
-        deck = new Deck();
-        playerHand = new ArrayList<>();
-        dealerHand = new ArrayList<>();
+    /**
+     * constructor for the server, initializes the variables and finishes any hands the journal shows were
+     * in progress when the server last stopped
+     * @param config the settings the server is started with
+     * @param journal where every card, command and outcome is written down, null to keep no journal
+     * @param history where every finished hand is stored, null to keep no hand history
+     */
+    public BlackjackServer(ServerConfig config, HandJournal journal, HandHistory history){
+        this(config, journal, history, null);
+    }
 
-        displayArea = new JTextArea();
-        add(new JScrollPane(displayArea), BorderLayout.CENTER);
-        setSize(400, 300);
-        setVisible(true);
+    /**
+     * constructor for the server, initializes the variables and finishes any hands the journal shows were
+     * in progress when the server last stopped
+     * @param config the settings the server is started with
+     * @param journal where every card, command and outcome is written down, null to keep no journal
+     * @param history where every finished hand is stored, null to keep no hand history
+     * @param ledger where the bankroll of every player is kept, null to play hands without stakes
+     */
+    public BlackjackServer(ServerConfig config, HandJournal journal, HandHistory history, Ledger ledger){
+        this.config = config;
+        this.journal = journal;
+        this.history = history;
+        this.ledger = ledger;
+        eventLog = new EventLog(config.getLogCapacity());
+        admission = new AdmissionControl(config, metrics);
+        shoes = new ShoePool(config.getDecks(), config.getPenetration(), config.getShoePool(),
+                RandomSource.factory(config.getRandom(), config.getSeed()), metrics);
+        shoes.start();
+        strategy = config.getHints() == ServerConfig.Hints.OFF
+                ? null : new StrategyTable(config.getDecks(), config.getHints() == ServerConfig.Hints.COMPOSITION);
+        tables = config.getSeats() > 1
+                ? new TableScheduler(config.getSeats(), (long) (config.getTurnTimeout() * 1000), shoes, metrics, journal, history, strategy,
+                        ledger, config.getSpectatorPort() > 0 ? config.getSpectatorBuffer() : 0) : null;
+        if(journal != null){
+            recover();
+            journal.start();
+        }
+        if(history != null){
+            history.start();
+        }
+        if(ledger != null){
+            metrics.watch(ledger);
+            ledger.start();
+        }
+    }
 
+    /**
+     * finishes every hand that was in progress when the server last stopped, the players stay on the cards
+     * they had and the dealer plays out from a fresh shoe, as a seat at a table does when its turn runs out.
+     * a hand stopped before all of its opening cards were dealt cannot be played and is written down as void.
+     * so is every hand when the server keeps a ledger, which gives back the bets on hands still being played
+     * when it restarts, so the journal never records an outcome that was not paid
+     */
+    private void recover(){
+        List<HandJournal.Interrupted> hands = journal.getInterrupted();
+        if(hands.isEmpty()){
+            return;
+        }
+        Shoe shoe = shoes.take();
+        for(HandJournal.Interrupted hand:hands){
+            long id = hand.getId();
+            Hand dealerHand = hand.getHand(BinaryProtocol.DEALER_SEAT);
+            boolean dealt = dealerHand.size() >= 2;
+            for(int seat = 1; seat <= TableState.MAX_SEATS; seat++){
+                if(hand.getHand(seat).size() == 1){
+                    dealt = false;
+                }
+            }
+            if(!dealt){
+                journal.record(id, HandJournal.END, (byte) 0, HandJournal.VOID);
+                displayMessage("\nhand " + id + " was stopped while being dealt and is void");
+                continue;
+            }
+            if(ledger != null){
+                journal.record(id, HandJournal.END, (byte) 0, HandJournal.VOID);
+                displayMessage("\nhand " + id + " was stopped while being played and is void, its bets were given back");
+                continue;
+            }
+            if(shoe.isCutCardReached()){
+                shoes.recycle(shoe);
+                shoe = shoes.take();
+            }
+            int before = dealerHand.size();
+            BlackjackRules.playDealer(shoe, dealerHand);
+            for(int i = before; i < dealerHand.size(); i++){
+                journal.record(id, HandJournal.CARD, BinaryProtocol.DEALER_SEAT, dealerHand.get(i));
+            }
+            for(byte seat = 1; seat <= TableState.MAX_SEATS; seat++){
+                SeatHands seatHands = hand.getHands(seat);
+                for(int i = 0; i < seatHands.size(); i++){
+                    Hand playerHand = seatHands.get(i);
+                    if(playerHand.size() > 0 && seatHands.getOutcome(i) == null){
+                        Outcome outcome = BlackjackRules.settle(playerHand, seatHands.isNatural(i), dealerHand);
+                        journal.record(id, HandJournal.OUTCOME, BinaryProtocol.hand(seat, i), (byte) outcome.getCode());
+                        displayMessage("\nhand " + id + " recovered, seat " + seat + (seatHands.isSplit() ? " hand " + (i + 1) : "")
+                                + " " + outcome.name().toLowerCase() + " with " + playerHand.getScore() + " against " + dealerHand.getScore());
+                    }
+                }
+            }
+            journal.record(id, HandJournal.END, (byte) 0, HandJournal.RECOVERED);
+        }
+        shoes.recycle(shoe);
+        journal.force(); // the hands are only finished once, even if the server stops again straight away
     }
 
     /**
      * runner for the server, once this is called the program will continue to run until disconnection
+     * each connection is handed to its own session so the next client can be accepted straight away
      */
     public  void runServer(){
         try{
-            server = new ServerSocket(23716, 100); // create ServerSocket
-            while (true) { //runs while the server is open, repeats trying to get connection and after it's closed finds another one
-                try {
-                    waitForConnection();
-                    getStreams();
-                    processConnection();
-                }
-                catch (EOFException eofException) {
-                    displayMessage("\nServer terminated connection");
-                }
-                finally {
-                    closeConnection();
-                    count++;
+            server = new ServerSocket(config.getPort(), config.getBacklog()); // create ServerSocket
+            sessions = newSessionExecutor();
+            while (true) { //runs while the server is open, accepting a connection and starting a session for it
+                Socket connection = waitForConnection();
+                AdmissionControl.Host host = admission.admit(connection.getInetAddress());
+                if(host == null){
+                    displayMessage("Connection " + count + " refused");
+                    refuse(connection);
+                }else{
+                    metrics.sessionOpened();
+                    sessions.execute(new GameSession(this, connection, count, host));
                 }
+                count++;
             }
         }
       catch (IOException ioException){
             ioException.printStackTrace();
         }
+        finally {
+            if(sessions != null){
+                sessions.shutdown();
+            }
+        }
     }
 
     /**
      * halts the server until a client is connected, and displays messages when a client is connected
+     * @return the socket of the client that connected
      * @throws IOException otherwise throws an IO exception
      */
-    private void waitForConnection() throws IOException{
+    private Socket waitForConnection() throws IOException{
         displayMessage("waiting for connection\n");
-        connection = server.accept();
-        displayMessage("Connection " + count + " received from: " + connection.getInetAddress().getHostName());
-
-
+        Socket connection = server.accept();
+        // the address is shown as it is, looking its name up could hold up the next accept for seconds
+        displayMessage("Connection " + count + " received from: " + connection.getInetAddress().getHostAddress());
+        return connection;
     }
 
     /**
-     * gets the input and output streams from the client that just connected
-     * @throws IOException otherwise throws an IO exception
+     * closes a connection that was not admitted
+     * @param connection the socket of the client
      */
-    private void getStreams() throws IOException{
-        output = new ObjectOutputStream(connection.getOutputStream());
-        output.flush();
-
-        input = new ObjectInputStream(connection.getInputStream());
-        displayMessage("\ngot IO streams\n");
+    private static void refuse(Socket connection){
+        try{
+            connection.close();
+        }
+        catch (IOException ioException){
+            ioException.printStackTrace();
+        }
     }
 
     /**
-     * while the client is connected, this continues to read what the client writes and processes it to usable information
-     * @throws IOException otherwise throws an IO exception
+     * creates the executor the sessions run on, using a virtual thread per session when the jvm supports it
+     * and otherwise a cached pool of platform threads
+     * @return the executor to run sessions on
      */
-    private void processConnection() throws IOException{
-        String message = "Connection Successful";
-        sendData(message);
-
-        do{
-            try{
-                message = (String) input.readObject(); // reads the message sent from the client
-                displayMessage("\n" + message);
-                processInput(message); //sends to another method to run the blackjack game
-            }
-            catch (ClassNotFoundException classNotFoundException){
-                displayMessage("\nUnknown object type received");
-            }
+    static ExecutorService newSessionExecutor(){
+        try{
+            // looked up reflectively so the server still builds and runs on jdks without virtual threads
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e){
+            return Executors.newCachedThreadPool();
+        }
+    }
 
-        } while (!message.equals("Disconnect")); // as long as the client does not press the disconnect button
+    /**
+     * runs a task for a session on the executor the sessions run on, such as the thread writing to its client
+     * @param task the task
+     */
+    void execute(Runnable task){
+        sessions.execute(task);
     }
 
     /**
-     * after the client has disconnected closes all of the IO streams and the connection
+     * @return decides which connections are accepted and how fast each address can send commands
      */
-    private void closeConnection(){
-        displayMessage("\nconnection ended\n");
-        try {
-            output.close(); // close output stream
-            input.close(); // close input stream
-            connection.close(); // close socket
-        }
-        catch (IOException ioException) {
-            ioException.printStackTrace();
-        }
+    AdmissionControl getAdmission(){
+        return admission;
     }
 
     /**
-     * sends a message to the client
-     * @param message the message to be sent to the client
+     * @return the settings the server was started with
      */
-    private void sendData(String message){
-        try{
-            output.writeObject(message);
-            output.flush(); // flush output to client
-            displayMessage("\nSERVER>>> " + message);
-        }
-        catch (IOException ioException) {
-            displayArea.append("\nError writing object");
-        }
+    ServerConfig getConfig(){
+        return config;
     }
 
     /**
-     * displays the message to the display area
-     * @param message the message to be displayed
+     * @return the buffers messages wait in until they are written to clients of the blocking transport
      */
-    private void displayMessage(final String message){
-        SwingUtilities.invokeLater(
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        displayArea.append(message);
-                    }
-                }
-        );
+    BufferPool getBuffers(){
+        return buffers;
     }
 
     /**
-     * starts the blackjack game
+     * @return the shuffled shoes shared by every game on this server
      */
-    private void startGame(){
-        gameStarted = true;
-        playerHand.add(deck.dealACard());
-        playerHand.add(deck.dealACard());
-        dealerHand.add(deck.dealACard());
-        dealerHand.add(deck.dealACard()); // deals 2 cards to the players hand and dealers hand
-        playerScore = deck.score(playerHand);
-        dealerScore = deck.score(dealerHand); //updates the score variable
+    ShoePool getShoePool(){
+        return shoes;
+    }
 
-        if(playerScore == 21){ //if the player has a blackjack goes to end the game and exit the method before the message gets sent to the client
-            endGame();
-            return;
-        }
+    /**
+     * @return the scheduler seating clients at shared tables, null when every client has a game of their own
+     */
+    TableScheduler getTables(){
+        return tables;
+    }
 
-        //tells the client what their opening hand is and what card the dealer has up
-        sendData("You have " + playerHand.get(0) + " " + playerHand.get(1) + " making a score of " + playerScore);
-        sendData("The dealer has a " + dealerHand.get(0) + " showing");
+    /**
+     * @return where every card, command and outcome is written down, null if the server keeps no journal
+     */
+    HandJournal getJournal(){
+        return journal;
+    }
 
+    /**
+     * @return where every finished hand is stored, null if the server keeps no hand history
+     */
+    HandHistory getHistory(){
+        return history;
     }
 
     /**
-     * sends the input from the client and makes the buttons do the correct things
-     * @param input the input from the client
-     */
-    private void processInput(String input){
-        if(input.equals("Hit")){ // if the hit button is pressed
-            if(gameStarted){ // cant do anything with hit if game start has not been called
-                playerHand.add(deck.dealACard());
-                playerScore = deck.score(playerHand);
-                if(playerScore >= 21){ // if the score is >= 21 the game is over and the player has either busted or got a maximum score
-                    endGame();
-                }else { // if the game is not over gives the client information about what card was drawn and what information they have
-                    String message = "You now have "; // creates a message to add all of the cards in the players hand to
-                    for (String card : playerHand) {
-                        message = message + card + " "; // adds each card one by one
-                    }
-                    // adds information about score and dealers showing card
-                    message = message + "making a score of " + playerScore + " and the dealer has a " + dealerHand.get(0) + " showing";
-                    sendData(message); //sends the message to the client
-                }
-            }
-        }else if(input.equals("Stay")){ // the stay button is pressed
-            if(gameStarted) { //makes sure the game has started and ends the game
-                endGame();
-            }
-        }else if(input.equals("New Hand")){ // the new hand button was pressed
-            playerHand = new ArrayList<>(); // resets the player and dealer hands
-            dealerHand = new ArrayList<>();
-            deck.resetDeck(); // resents the deck to a normal shuffled 52 card deck
-            startGame(); // starts the game again
-        }
+     * @return where the bankroll of every player is kept, null if hands are played without stakes
+     */
+    Ledger getLedger(){
+        return ledger;
     }
 
     /**
-     * ends the blackjack game informing the client of who won
-     */
-    private void endGame(){
-        gameStarted= false;
-        playDealer(); // plays the dealer as per the rules of blackjack
-        String message =  ""; // creates a message to be appended with specific information
-        //goes through every possible game outcome and adds a specific message for each case
-        if(playerScore > 21 && dealerScore <= 21){
-            message  = "You busted and the dealer did not, you lost with ";
-        }else if(playerScore > 21 && dealerScore > 21){
-            message = "You busted and so did the dealer, you lost with ";
-        }else if(playerScore <= 21 && dealerScore >21){
-            message = "You did not bust and the dealer did, you win with ";
-        }else if(playerScore > dealerScore){
-            message = "You had a higher score than the dealer without busting, you win with ";
-        }else if(playerScore < dealerScore){
-            message = "You had a lower score than the dealer without busting, you lost with ";
-        }else if(playerScore == dealerScore){
-            message = "You got the same score as the dealer, you tied with ";
-        }
-        message = message + playerScore + " points \nwith these cards: ";
-        for(String card:playerHand){
-           message = message + card + " "; // shows all of the cards the player hand
-        }
-        message = message + "\n and the dealer had " + dealerScore + " points with these cards: ";
-        for(String card:dealerHand){
-            message = message + card + " "; // shows all the cards the dealer ended up with
-        }
-        sendData(message);
+     * @return the best play for every hand, null if the server gives no hints
+     */
+    StrategyTable getStrategy(){
+        return strategy;
+    }
 
+    /**
+     * @return the counters and latencies of every session on this server
+     */
+    public ServerMetrics getMetrics(){
+        return metrics;
     }
 
     /**
-     * plays the dealers hand as per the rule that the dealer must stay after their score gets to 17 and must hit before that
+     * @return where everything the server does is recorded
      */
-    private void playDealer(){
-        while (dealerScore < 17){
-            dealerHand.add(deck.dealACard());
-            dealerScore = deck.score(dealerHand);
-        }
+    public EventLog getEventLog(){
+        return eventLog;
     }
 
+    /**
+     * records a message in the event log, safe to call from any session and never blocks
+     * @param message the message to be displayed
+     */
+    void displayMessage(String message){
+        eventLog.log(message);
+    }
 
 }
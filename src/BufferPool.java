@@ -0,0 +1,73 @@
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a pool of fixed size direct byte buffers, so connections only hold a buffer while they have data to write
+ */
+public class BufferPool {
+
+    /**
+     * the buffers that are not in use
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    /**
+     * the number of buffers sitting in the free queue, kept separately because the queue size is not constant time
+     */
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    /**
+     * the size of each buffer in bytes
+     */
+    private final int bufferSize;
+
+    /**
+     * the most buffers kept in the free queue, extra released buffers are left to the garbage collector
+     */
+    private final int maxFree;
+
+    /**
+     * constructor for a buffer pool
+     * @param bufferSize the size of each buffer in bytes
+     * @param maxFree the most buffers kept around when not in use
+     */
+    public BufferPool(int bufferSize, int maxFree){
+        this.bufferSize = bufferSize;
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * takes a cleared buffer from the pool, allocating one if the pool is empty
+     * @param size the number of bytes needed, a heap buffer is given for anything bigger than the pooled size
+     * @return a buffer with at least size bytes remaining
+     */
+    public ByteBuffer acquire(int size){
+        if(size > bufferSize){
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = free.poll();
+        if(buffer == null){
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        freeCount.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * gives a buffer back to the pool
+     * @param buffer the buffer no longer in use
+     */
+    public void release(ByteBuffer buffer){
+        if(!buffer.isDirect() || buffer.capacity() != bufferSize){
+            return; // oversized heap buffers are never pooled
+        }
+        if(freeCount.incrementAndGet() > maxFree){
+            freeCount.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        free.offer(buffer);
+    }
+}
@@ -0,0 +1,94 @@
+
+/**
+ * helpers for cards stored as a single byte holding their rank
+ * ranks go from 1 (ace) to 13 (king), suits are not stored because they do not matter in blackjack
+ */
+public final class Card {
+
+    /**
+     * the rank of an ace
+     */
+    public static final byte ACE = 1;
+
+    /**
+     * the rank of a ten
+     */
+    public static final byte TEN = 10;
+
+    /**
+     * the rank of a king, the highest rank
+     */
+    public static final byte KING = 13;
+
+    /**
+     * the name of each rank, as the cards used to be stored and are still shown to the player
+     */
+    private static final String[] NAMES = {null, "A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K"};
+
+    /**
+     * the points each rank is worth, counting an ace as 1
+     */
+    private static final int[] VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 10, 10, 10};
+
+    /**
+     * no instances, only static helpers
+     */
+    private Card(){
+    }
+
+    /**
+     * checks a rank is a legal card
+     * @param rank the rank to check
+     * @return true if the rank is from ace to king
+     */
+    public static boolean isRank(int rank){
+        return rank >= ACE && rank <= KING;
+    }
+
+    /**
+     * gets the name of a card
+     * @param rank the rank of the card
+     * @return the name, for example "10" or "Q"
+     */
+    public static String name(int rank){
+        return NAMES[rank];
+    }
+
+    /**
+     * gets the points a card is worth, counting an ace as 1
+     * @param rank the rank of the card
+     * @return the points the card is worth
+     */
+    public static int value(int rank){
+        return VALUES[rank];
+    }
+
+    /**
+     * finds the rank of a card from its name
+     * @param card the name of the card, for example "10" or "Q"
+     * @return the rank of the card
+     */
+    public static byte parse(String card){
+        if(card.length() == 1){
+            char c = card.charAt(0);
+            if(c >= '2' && c <= '9'){
+                return (byte) (c - '0');
+            }
+            switch (c) {
+                case 'A':
+                    return ACE;
+                case 'J':
+                    return 11;
+                case 'Q':
+                    return 12;
+                case 'K':
+                    return KING;
+                default:
+                    break;
+            }
+        }else if(card.equals("10")){
+            return TEN;
+        }
+        throw new IllegalArgumentException("not a legal card: " + card);
+    }
+}
@@ -0,0 +1,203 @@
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * every command a player can send, with the opcode it has on the wire and the name it has as legacy text
+ *
+ * a binary command is found from its opcode with one array lookup and a legacy one from its text with one map
+ * lookup, so the game only ever switches on the command and never compares strings
+ */
+public enum Command {
+
+    /**
+     * the player wants another card
+     */
+    HIT(BinaryProtocol.HIT, "Hit"),
+
+    /**
+     * the player keeps their hand
+     */
+    STAY(BinaryProtocol.STAY, "Stay"),
+
+    /**
+     * the player wants a new hand
+     */
+    NEW_HAND(BinaryProtocol.NEW_HAND, "New Hand"),
+
+    /**
+     * the player is disconnecting
+     */
+    DISCONNECT(BinaryProtocol.DISCONNECT, "Disconnect"),
+
+    /**
+     * the player wants the whole table again
+     */
+    SYNC(BinaryProtocol.SYNC, "Sync"),
+
+    /**
+     * the player wants to know the better play for their hand
+     */
+    HINT(BinaryProtocol.HINT, "Hint"),
+
+    /**
+     * the player places the bet for their next hands, sent as text as "Bet " followed by the chips
+     */
+    BET(BinaryProtocol.BET, "Bet"),
+
+    /**
+     * the player doubles their bet on the hand and takes exactly one more card
+     */
+    DOUBLE(BinaryProtocol.DOUBLE, "Double"),
+
+    /**
+     * the player splits a pair into two hands with a bet on each
+     */
+    SPLIT(BinaryProtocol.SPLIT, "Split"),
+
+    /**
+     * the player takes insurance against a dealer blackjack when the dealer shows an ace
+     */
+    INSURANCE(BinaryProtocol.INSURANCE, "Insurance"),
+
+    /**
+     * the player names themselves between hands, sent as text as "Name " followed by the name
+     */
+    NAME(BinaryProtocol.NAME, "Name");
+
+    /**
+     * what a bet is sent as in legacy text, before the chips
+     */
+    private static final String BET_PREFIX = "Bet ";
+
+    /**
+     * what a name is sent as in legacy text, before the name
+     */
+    private static final String NAME_PREFIX = "Name ";
+
+    /**
+     * every command indexed by opcode, null for an opcode that is not a command
+     */
+    private static final Command[] BY_OPCODE = new Command[BinaryProtocol.NAME + 1];
+
+    /**
+     * every command by its legacy text
+     */
+    private static final Map<String, Command> BY_NAME = new HashMap<>();
+
+    static {
+        for(Command command:values()){
+            BY_OPCODE[command.opcode] = command;
+            BY_NAME.put(command.name, command);
+        }
+    }
+
+    /**
+     * the opcode of the command on the wire
+     */
+    private final byte opcode;
+
+    /**
+     * the name of the command, what legacy clients send
+     */
+    private final String name;
+
+    /**
+     * constructor for a command
+     * @param opcode the opcode of the command on the wire
+     * @param name the name of the command, what legacy clients send
+     */
+    Command(byte opcode, String name){
+        this.opcode = opcode;
+        this.name = name;
+    }
+
+    /**
+     * finds the command for an opcode
+     * @param opcode the opcode read off the wire
+     * @return the command, or null if the opcode is not a command
+     */
+    public static Command of(int opcode){
+        return opcode > 0 && opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+    }
+
+    /**
+     * finds the command a legacy client sent as text
+     * @param text the text, for example "Hit", "Bet 25" or "Name alice"
+     * @return the command, or null if the text is not a command
+     */
+    public static Command parse(String text){
+        if(text.startsWith(BET_PREFIX)){
+            return BET;
+        }
+        return text.startsWith(NAME_PREFIX) ? NAME : BY_NAME.get(text);
+    }
+
+    /**
+     * reads the chips of a bet a legacy client sent as text
+     * @param text the text, "Bet " followed by the chips
+     * @return the chips, -1 if they are not a number and 0 if the text is not a bet
+     */
+    public static long chips(String text){
+        if(!text.startsWith(BET_PREFIX)){
+            return 0;
+        }
+        try{
+            return Long.parseLong(text.substring(BET_PREFIX.length()).trim());
+        }
+        catch (NumberFormatException numberFormatException){
+            return -1;
+        }
+    }
+
+    /**
+     * reads the name a legacy client sent as text
+     * @param text the text, "Name " followed by the name
+     * @return the name, null if the text is not a name
+     */
+    public static String name(String text){
+        return text.startsWith(NAME_PREFIX) ? text.substring(NAME_PREFIX.length()).trim() : null;
+    }
+
+    /**
+     * works out who a player is from the address they connect from and the name they gave
+     * @param address the address the player connects from
+     * @param name the name the player gave
+     * @return the name and the address, or null if the name is empty, too long or has anything but letters, digits,
+     * '.', '-' and '_' in it
+     */
+    public static String player(String address, String name){
+        if(name == null || name.isEmpty() || name.length() > BinaryProtocol.MAX_NAME){
+            return null;
+        }
+        for(int i = 0; i < name.length(); i++){
+            char c = name.charAt(i);
+            if(!(c < 128 && (Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_'))){
+                return null;
+            }
+        }
+        return name + "@" + address;
+    }
+
+    /**
+     * @return the opcode of the command on the wire
+     */
+    public byte getOpcode(){
+        return opcode;
+    }
+
+    /**
+     * @return the name of the command, what legacy clients send
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @param chips the chips of a bet, ignored for any other command
+     * @return the command as a legacy client would send it, for showing in the log
+     */
+    public String describe(long chips){
+        return this == BET ? BET_PREFIX + chips : name;
+    }
+}
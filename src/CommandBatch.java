@@ -0,0 +1,142 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * the commands of one batch frame from a client and the result of each, reused for every batch on a connection
+ */
+public final class CommandBatch {
+
+    /**
+     * the opcode of each command in the order they are to be played
+     */
+    private final byte[] opcodes = new byte[BinaryProtocol.MAX_BATCH];
+
+    /**
+     * the result of each command once it has been played
+     */
+    private final byte[] results = new byte[BinaryProtocol.MAX_BATCH];
+
+    /**
+     * the number of commands in the batch
+     */
+    private int size = 0;
+
+    /**
+     * the chips of the last bet frame read, a bet is never part of a batch but is read with the same object
+     */
+    private int bet = 0;
+
+    /**
+     * the name in the last name frame read, which like a bet is never part of a batch
+     */
+    private String name = null;
+
+    /**
+     * the buffer the batch result frame is written into
+     */
+    private final ByteBuffer frame = ByteBuffer.allocate(BinaryProtocol.LENGTH_FIELD + 1 + BinaryProtocol.MAX_BATCH);
+
+    /**
+     * empties the batch before the commands of a new frame are added
+     */
+    void clear(){
+        size = 0;
+    }
+
+    /**
+     * adds a command to the end of the batch
+     * @param opcode the opcode of the command
+     */
+    void add(byte opcode){
+        opcodes[size++] = opcode;
+    }
+
+    /**
+     * @param bet the chips of the bet frame just read
+     */
+    void setBet(int bet){
+        this.bet = bet;
+    }
+
+    /**
+     * @return the chips of the last bet frame read
+     */
+    public int getBet(){
+        return bet;
+    }
+
+    /**
+     * @param name the name in the name frame just read
+     */
+    void setName(String name){
+        this.name = name;
+    }
+
+    /**
+     * @return the name in the last name frame read
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * plays a command sent in a frame of its own, with the chips of a bet or the name of a player read with it
+     * @param game where the command goes
+     * @param command the command
+     * @return true if the command was played, false if it was ignored
+     */
+    public boolean play(GameInput game, Command command){
+        return command == Command.NAME ? game.name(name) : game.processInput(command, bet);
+    }
+
+    /**
+     * @return the number of commands in the batch
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * marks every command of the batch as ignored without playing it, for a batch sent faster than the client is allowed
+     * @return false if the batch held a disconnect, which is never refused, the connection should then be closed
+     */
+    public boolean refuse(){
+        for(int i = 0; i < size; i++){
+            if(opcodes[i] == BinaryProtocol.DISCONNECT){
+                return false;
+            }
+            results[i] = BinaryProtocol.IGNORED;
+        }
+        return true;
+    }
+
+    /**
+     * plays every command of the batch in order, stopping at a disconnect as nothing can be sent after it
+     * @param game where the commands go
+     * @return false if the batch held a disconnect, the connection should then be closed
+     */
+    public boolean play(GameInput game){
+        for(int i = 0; i < size; i++){
+            if(opcodes[i] == BinaryProtocol.DISCONNECT){
+                return false;
+            }
+            Command command = Command.of(opcodes[i]);
+            if(command == null || command == Command.BET || command == Command.NAME){ // a batch carries no payload
+                results[i] = BinaryProtocol.UNKNOWN;
+            }else{
+                results[i] = game.processInput(command) ? BinaryProtocol.PLAYED : BinaryProtocol.IGNORED;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * writes the batch result frame once every command has been played
+     * @return the frame, only valid until the next batch is played
+     */
+    public ByteBuffer result(){
+        frame.clear();
+        BinaryProtocol.writeBatchResult(results, size, frame);
+        return frame.flip();
+    }
+}
@@ -1,44 +1,87 @@
 
 import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
- * a deck class to have a normal 52 card deck
+ * a deck class to have a normal 52 card deck, or several of them shuffled together
  */
 public class Deck {
 
     /**
-     * a basic un-shuffled deck array list, storing each "card" as a string with the value
+     * the number of cards in a deck
+     */
+    public static final int SIZE = 52;
+
+    /**
+     * the cards of the deck stored as their rank, see Card
      * because suit is not relevant in blackjack does not store the suit of each card
+     * the array always holds every card, dealing only moves the next index along
+     */
+    private final byte[] cards;
+
+    /**
+     * the index of the next card to be dealt, every card before it has already been dealt
      */
-    private final ArrayList<String> START_DECK = new ArrayList<>(Arrays.asList("A", "A", "A", "A", "2", "2", "2", "2", "3", "3", "3", "3", "4", "4", "4", "4", "5", "5", "5", "5", "6", "6", "6", "6", "7", "7", "7", "7", "8", "8", "8", "8", "9", "9", "9", "9", "10", "10", "10", "10", "J", "J", "J", "J", "Q", "Q", "Q", "Q", "K", "K", "K", "K"));
+    private int next;
 
     /**
-     * stores the current deck as an array list of strings
+     * where the random numbers used to shuffle this deck come from
      */
-    private ArrayList<String> currentDeck;
+    private final RandomSource random;
 
     /**
      * constructor for a deck
      */
     public Deck(){
-        currentDeck = START_DECK; // makes the current deck the same as a normal un-shuffled 52 card deck
+        this(1);
+    }
+
+    /**
+     * constructor for several decks shuffled together, using the random number generator of whichever thread shuffles
+     * @param decks the number of 52 card decks
+     */
+    public Deck(int decks){
+        this(decks, RandomSource.threadLocal());
+    }
+
+    /**
+     * constructor for several decks shuffled together
+     * @param decks the number of 52 card decks
+     * @param random where the random numbers used to shuffle come from
+     */
+    public Deck(int decks, RandomSource random){
+        this.random = random;
+        if(decks <= 0){
+            throw new IllegalArgumentException("a deck needs at least one set of 52 cards");
+        }
+        cards = new byte[SIZE * decks];
+        for(int i = 0; i < cards.length; i++){
+            cards[i] = (byte) (i % SIZE / 4 + 1); // four of each rank in every deck, from aces up to kings
+        }
         shuffleDeck(); // shuffles the current deck
     }
 
     /**
-     * shuffles current deck to be in a random order
+     * shuffles the cards that have not been dealt yet into a random order
+     * uses a fisher-yates shuffle in place, so every order is equally likely and nothing is allocated
      */
     public void shuffleDeck(){
-        int deckSize = currentDeck.size();
-        ArrayList<String> temp = new ArrayList<>();
-        for(int i = 0; i < deckSize; i++){
-            int rand = (int)(Math.round( Math.random() * (currentDeck.size()-1)));
-            temp.add(currentDeck.get(rand));
-            currentDeck.remove(rand);
+        for(int i = cards.length - 1; i > next; i--){
+            int j = next + random.nextInt(i - next + 1);
+            byte card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
         }
-        currentDeck = temp;
+    }
 
+    /**
+     * deals the top card of the deck
+     * @return the rank of the top card of the deck
+     */
+    public byte dealCard(){
+        if(next == cards.length){
+            throw new IllegalStateException("there are no cards left in the deck");
+        }
+        return cards[next++];
     }
 
     /**
@@ -46,67 +89,78 @@ public class Deck {
      * @return the top card of the deck
      */
     public String dealACard(){
-        String card = currentDeck.get(0);
-        currentDeck.remove(0);
-        return card;
+        return Card.name(dealCard());
     }
 
     /**
-     * resets current deck to a basic 52 card deck
+     * @return the number of cards that have not been dealt yet
+     */
+    public int cardsLeft(){
+        return cards.length - next;
+    }
+
+    /**
+     * @return the number of cards dealt since the deck was last reset
+     */
+    public int cardsDealt(){
+        return next;
+    }
+
+    /**
+     * @return the number of cards in the deck when it is full
+     */
+    public int size(){
+        return cards.length;
+    }
+
+    /**
+     * @return where the random numbers used to shuffle this deck come from
+     */
+    public RandomSource getRandom(){
+        return random;
+    }
+
+    /**
+     * counts the cards that have not been dealt yet by their value, a ten and the picture cards all count as 10
+     * @param counts added to at the index of each value
+     * @return the number of cards counted
+     */
+    public int countUnseen(int[] counts){
+        for(int i = next; i < cards.length; i++){
+            counts[Card.value(cards[i])]++;
+        }
+        return cards.length - next;
+    }
+
+    /**
+     * resets current deck to all of its cards and shuffles it
+     * the dealt cards are still in the array so this only has to move the next index back to the start
      */
     public void resetDeck(){
-        //for some reason invoking the START_DECK variable here is empty so sets it to a full new deck
-        currentDeck = new ArrayList<>(Arrays.asList("A", "A", "A", "A", "2", "2", "2", "2", "3", "3", "3", "3", "4", "4", "4", "4", "5", "5", "5", "5", "6", "6", "6", "6", "7", "7", "7", "7", "8", "8", "8", "8", "9", "9", "9", "9", "10", "10", "10", "10", "J", "J", "J", "J", "Q", "Q", "Q", "Q", "K", "K", "K", "K"));
+        next = 0;
         shuffleDeck();
     }
 
     /**
      * scores the hand in accordance with blackjack rules
+     * kept for callers that still hold their cards as strings, the game itself keeps a Hand up to date instead
      * @param hand an array list of the cards in the hand
      * @return the score of the hand
      */
     public int score(ArrayList<String> hand){
-        int score = 0;
-        int numOfAces = 0;
+        int hardTotal = 0;
+        boolean hasAce = false;
         for(String card:hand){
-            if(card.equals("10") || card.equals("J") || card.equals("Q") || card.equals("K")){
-                score += 10;
-            }else if(card.equals("A")){
-                numOfAces++;
-            }else{
-                int points;
-                try{
-                    points = Integer.parseInt(card);
-                }catch (NumberFormatException e){
-                    throw new IllegalArgumentException("at least one of the cards given to the score method was not a legal card");
-                }
-                if(points > 9){
-                    throw new IllegalArgumentException("at least one of the cards given to the score method was not a legal card");
-                }
-                score += points;
-            }
-        }
-        int acesAs11 = 0;
-        if(numOfAces > 0){
-            if(score <= 21){
-                for(int i = numOfAces; i >= 0; i--){
-                    if(score + 11*i <= 21){
-                        acesAs11 = i;
-                        break;
-                    }
-                }
-                if(acesAs11 != 0){
-                    score += 11 * acesAs11 + numOfAces - acesAs11;
-                }else{
-                    score += numOfAces;
-                }
-            }else{
-                score += numOfAces;
+            byte rank;
+            try{
+                rank = Card.parse(card);
+            }catch (IllegalArgumentException e){
+                throw new IllegalArgumentException("at least one of the cards given to the score method was not a legal card");
             }
+            hardTotal += Card.value(rank);
+            hasAce |= rank == Card.ACE;
         }
-
-        return score;
-
+        return hasAce && hardTotal + 10 <= Hand.BLACKJACK ? hardTotal + 10 : hardTotal;
     }
 
 }
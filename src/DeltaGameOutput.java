@@ -0,0 +1,183 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * turns what happens in a game into version 2 frames, sending only the cards the client has not seen yet
+ * instead of both whole hands on every event
+ *
+ * the table as the client has seen it is kept alongside so that the changes can be worked out,
+ * and so that a snapshot of it can be sent when a hand opens or whenever the client asks
+ */
+public abstract class DeltaGameOutput extends BinaryGameOutput {
+
+    /**
+     * the table as the client has been told it is
+     */
+    private final TableState table = new TableState();
+
+    /**
+     * forgets the last hand, which may not have finished, so a blackjack dealt next is sent as a snapshot
+     */
+    @Override
+    public void newHand(){
+        table.restore(TableState.EMPTY, (byte) 0);
+    }
+
+    /**
+     * opens the hand with a snapshot, the client needs nothing from earlier hands to show it
+     */
+    @Override
+    public void openingHand(Hand playerHand, byte dealerCard){
+        table.startHand();
+        for(int i = 0; i < playerHand.size(); i++){
+            table.deal(BinaryProtocol.PLAYER_SEAT, playerHand.get(i));
+        }
+        table.deal(BinaryProtocol.DEALER_SEAT, dealerCard);
+        snapshot();
+    }
+
+    /**
+     * sends just the cards dealt to the hand the player is playing since the last event
+     */
+    @Override
+    public void playerHand(Hand playerHand, byte dealerCard){
+        int index = table.getPlayerHands().getActiveIndex();
+        Hand sent = table.getPlayerHand();
+        ByteBuffer out = clear(BinaryProtocol.DEAL_LENGTH * (playerHand.size() - sent.size()));
+        for(int i = sent.size(); i < playerHand.size(); i++){
+            table.deal(BinaryProtocol.PLAYER_SEAT, index, playerHand.get(i));
+            BinaryProtocol.writeDeal(BinaryProtocol.hand(BinaryProtocol.PLAYER_SEAT, index), playerHand.get(i), sent.getScore(), out);
+        }
+        send(out.flip());
+    }
+
+    /**
+     * sends the split, then the card dealt to each of the two hands
+     */
+    @Override
+    public void split(SeatHands hands, byte dealerCard){
+        int index = table.getPlayerHands().getActiveIndex();
+        ByteBuffer out = clear(BinaryProtocol.SEAT_LENGTH + BinaryProtocol.DEAL_LENGTH * unsent(hands));
+        BinaryProtocol.writeSeat(BinaryProtocol.SPLIT_EVENT, BinaryProtocol.hand(BinaryProtocol.PLAYER_SEAT, index), out);
+        table.split(BinaryProtocol.PLAYER_SEAT, index);
+        writeDeals(hands, out);
+        send(out.flip());
+    }
+
+    /**
+     * sends the cards the finished hand was dealt since the last event, then a turn naming the hand now played
+     */
+    @Override
+    public void nextHand(SeatHands hands, byte dealerCard){
+        ByteBuffer out = clear(BinaryProtocol.DEAL_LENGTH * unsent(hands) + BinaryProtocol.SEAT_LENGTH);
+        writeDeals(hands, out);
+        BinaryProtocol.writeSeat(BinaryProtocol.TURN, BinaryProtocol.hand(BinaryProtocol.PLAYER_SEAT, hands.getActiveIndex()), out);
+        table.setTurn(BinaryProtocol.PLAYER_SEAT);
+        table.getPlayerHands().setActive(hands.getActiveIndex());
+        send(out.flip());
+    }
+
+    /**
+     * sends the outcome with the cards the client has not seen, or a snapshot if the hand never opened
+     * because the player was dealt a blackjack
+     */
+    @Override
+    public void outcome(Outcome outcome, Hand playerHand, Hand dealerHand){
+        if(table.getPhase() != TableState.IN_HAND){
+            table.startHand();
+            addFrom(playerHand, BinaryProtocol.PLAYER_SEAT, 0, 0);
+            addFrom(dealerHand, BinaryProtocol.DEALER_SEAT, 0, 0);
+            table.finish(BinaryProtocol.PLAYER_SEAT, 0, outcome);
+            table.finishHand();
+            snapshot();
+            return;
+        }
+        int playerSent = table.getPlayerHand().size();
+        int dealerSent = table.getDealerHand().size();
+        ByteBuffer out = clear(BinaryProtocol.maxFrameLength(playerHand, dealerHand));
+        int start = BinaryProtocol.beginResult(dealerHand, dealerSent, 1, out);
+        BinaryProtocol.writeSeatResult(BinaryProtocol.PLAYER_SEAT, outcome, playerHand, playerSent, out);
+        BinaryProtocol.endResult(start, out);
+        addFrom(playerHand, BinaryProtocol.PLAYER_SEAT, 0, playerSent);
+        addFrom(dealerHand, BinaryProtocol.DEALER_SEAT, 0, dealerSent);
+        table.finish(BinaryProtocol.PLAYER_SEAT, 0, outcome);
+        table.finishHand();
+        send(out.flip());
+    }
+
+    /**
+     * sends one result for every hand the player split into, with the cards the client has not seen
+     */
+    @Override
+    public void outcomes(SeatHands hands, Hand dealerHand){
+        if(hands.size() == 1){
+            outcome(hands.getOutcome(0), hands.get(0), dealerHand);
+            return;
+        }
+        int dealerSent = table.getDealerHand().size();
+        ByteBuffer out = clear(BinaryProtocol.maxFrameLength(hands, dealerHand));
+        int start = BinaryProtocol.beginResult(dealerHand, dealerSent, hands.size(), out);
+        for(int i = 0; i < hands.size(); i++){
+            int sent = table.open(BinaryProtocol.PLAYER_SEAT, i).size();
+            BinaryProtocol.writeSeatResult(BinaryProtocol.PLAYER_SEAT, hands.getOutcome(i), hands.get(i), sent, out);
+            addFrom(hands.get(i), BinaryProtocol.PLAYER_SEAT, i, sent);
+            table.finish(BinaryProtocol.PLAYER_SEAT, i, hands.getOutcome(i));
+        }
+        BinaryProtocol.endResult(start, out);
+        addFrom(dealerHand, BinaryProtocol.DEALER_SEAT, 0, dealerSent);
+        table.finishHand();
+        send(out.flip());
+    }
+
+    /**
+     * sends a snapshot of the whole table as the client has seen it
+     */
+    @Override
+    public void snapshot(){
+        ByteBuffer out = clear(BinaryProtocol.maxFrameLength(table));
+        BinaryProtocol.writeSnapshot(table, out);
+        send(out.flip());
+    }
+
+    /**
+     * adds the cards of a hand from a position onwards to the table
+     * @param hand the hand
+     * @param seat the seat the hand belongs to
+     * @param index the index of the hand in its seat
+     * @param from the index of the first card to add
+     */
+    private void addFrom(Hand hand, byte seat, int index, int from){
+        for(int i = from; i < hand.size(); i++){
+            table.deal(seat, index, hand.get(i));
+        }
+    }
+
+    /**
+     * @param hands every hand of the player
+     * @return the number of cards in them the client has not been sent
+     */
+    private int unsent(SeatHands hands){
+        SeatHands sent = table.getPlayerHands();
+        int count = 0;
+        for(int i = 0; i < hands.size(); i++){
+            count += hands.get(i).size() - (i < sent.size() ? sent.get(i).size() : 0);
+        }
+        return count;
+    }
+
+    /**
+     * writes a deal for every card of every hand of the player the client has not been sent
+     * @param hands every hand of the player
+     * @param out the buffer to write to
+     */
+    private void writeDeals(SeatHands hands, ByteBuffer out){
+        for(int index = 0; index < hands.size(); index++){
+            Hand hand = hands.get(index);
+            Hand sent = table.open(BinaryProtocol.PLAYER_SEAT, index);
+            for(int i = sent.size(); i < hand.size(); i++){
+                table.deal(BinaryProtocol.PLAYER_SEAT, index, hand.get(i));
+                BinaryProtocol.writeDeal(BinaryProtocol.hand(BinaryProtocol.PLAYER_SEAT, index), hand.get(i), sent.getScore(), out);
+            }
+        }
+    }
+}
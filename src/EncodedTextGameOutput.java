@@ -0,0 +1,252 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * writes the same sentences as TextGameOutput, but straight into a reused buffer as the bytes of a String
+ * on the legacy object stream, so sending a message to an old client creates no garbage at all
+ *
+ * every fixed phrase and card name is encoded once when the class loads and only copied after that,
+ * the scores are written digit by digit
+ */
+public abstract class EncodedTextGameOutput implements GameOutput {
+
+    /**
+     * the first message sent on every connection
+     */
+    private static final byte[] CONNECTED = LegacyStreamCodec.modifiedUtf("Connection Successful");
+
+    /**
+     * the start of the opening hand message
+     */
+    private static final byte[] YOU_HAVE = LegacyStreamCodec.modifiedUtf("You have ");
+
+    /**
+     * the start of the message after a hit
+     */
+    private static final byte[] YOU_NOW_HAVE = LegacyStreamCodec.modifiedUtf("You now have ");
+
+    /**
+     * comes between the players cards and their score
+     */
+    private static final byte[] MAKING_A_SCORE_OF = LegacyStreamCodec.modifiedUtf("making a score of ");
+
+    /**
+     * the start of the message with the dealers card
+     */
+    private static final byte[] THE_DEALER_HAS_A = LegacyStreamCodec.modifiedUtf("The dealer has a ");
+
+    /**
+     * comes between the players score and the dealers card after a hit
+     */
+    private static final byte[] AND_THE_DEALER_HAS_A = LegacyStreamCodec.modifiedUtf(" and the dealer has a ");
+
+    /**
+     * the end of a message with the dealers card
+     */
+    private static final byte[] SHOWING = LegacyStreamCodec.modifiedUtf(" showing");
+
+    /**
+     * comes between the players score and their cards at the end of a hand
+     */
+    private static final byte[] POINTS_WITH_THESE_CARDS = LegacyStreamCodec.modifiedUtf(" points \nwith these cards: ");
+
+    /**
+     * comes between the players cards and the dealers score at the end of a hand
+     */
+    private static final byte[] AND_THE_DEALER_HAD = LegacyStreamCodec.modifiedUtf("\n and the dealer had ");
+
+    /**
+     * comes between the dealers score and their cards at the end of a hand
+     */
+    private static final byte[] DEALER_POINTS_WITH_THESE_CARDS = LegacyStreamCodec.modifiedUtf(" points with these cards: ");
+
+    /**
+     * the name of each card on its own, indexed by rank
+     */
+    private static final byte[][] CARDS = new byte[Card.KING + 1][];
+
+    /**
+     * the name of each card followed by a space, indexed by rank, as cards are listed in a hand
+     */
+    private static final byte[][] LISTED_CARDS = new byte[Card.KING + 1][];
+
+    /**
+     * the start of the message for each outcome, indexed by outcome code
+     */
+    private static final byte[][] OUTCOMES = new byte[Outcome.values().length][];
+
+    /**
+     * the most bytes any message takes apart from its cards, covers the type code, length, phrases and two scores
+     */
+    private static final int FIXED_LENGTH;
+
+    /**
+     * the most bytes a listed card takes
+     */
+    private static final int CARD_LENGTH;
+
+    static {
+        int card = 0;
+        for(byte rank = Card.ACE; rank <= Card.KING; rank++){
+            CARDS[rank] = LegacyStreamCodec.modifiedUtf(Card.name(rank));
+            LISTED_CARDS[rank] = LegacyStreamCodec.modifiedUtf(Card.name(rank) + " ");
+            card = Math.max(card, LISTED_CARDS[rank].length);
+        }
+        int outcome = 0;
+        for(Outcome each:Outcome.values()){
+            OUTCOMES[each.getCode()] = LegacyStreamCodec.modifiedUtf(each.getMessage());
+            outcome = Math.max(outcome, OUTCOMES[each.getCode()].length);
+        }
+        CARD_LENGTH = card;
+        // the outcome is the longest message, every phrase is counted so the bound holds for the others too
+        FIXED_LENGTH = 3 + CONNECTED.length + YOU_HAVE.length + YOU_NOW_HAVE.length + MAKING_A_SCORE_OF.length
+                + THE_DEALER_HAS_A.length + AND_THE_DEALER_HAS_A.length + SHOWING.length + POINTS_WITH_THESE_CARDS.length
+                + AND_THE_DEALER_HAD.length + DEALER_POINTS_WITH_THESE_CARDS.length + outcome + 2 * 11 + card;
+    }
+
+    /**
+     * the buffer every message is written into, grown only if a hand ever holds more cards than it has room for
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    /**
+     * sends a message to the player
+     * @param message the bytes of a String on the legacy object stream, from its type code to its last byte,
+     *                only valid until the next message is written
+     */
+    protected abstract void send(ByteBuffer message);
+
+    /**
+     * tells the client it has connected
+     */
+    public void welcome(){
+        int length = begin(0);
+        buffer.put(CONNECTED);
+        end(length);
+    }
+
+    /**
+     * tells the client what their opening hand is and what card the dealer has up
+     */
+    @Override
+    public void openingHand(Hand playerHand, byte dealerCard){
+        int length = begin(2);
+        buffer.put(YOU_HAVE);
+        buffer.put(LISTED_CARDS[playerHand.get(0)]);
+        buffer.put(LISTED_CARDS[playerHand.get(1)]);
+        buffer.put(MAKING_A_SCORE_OF);
+        putNumber(playerHand.getScore());
+        end(length);
+
+        length = begin(1);
+        buffer.put(THE_DEALER_HAS_A);
+        buffer.put(CARDS[dealerCard]);
+        buffer.put(SHOWING);
+        end(length);
+    }
+
+    /**
+     * gives the client information about what card was drawn and what information they have
+     */
+    @Override
+    public void playerHand(Hand playerHand, byte dealerCard){
+        int length = begin(playerHand.size() + 1);
+        buffer.put(YOU_NOW_HAVE);
+        putCards(playerHand);
+        buffer.put(MAKING_A_SCORE_OF);
+        putNumber(playerHand.getScore());
+        buffer.put(AND_THE_DEALER_HAS_A);
+        buffer.put(CARDS[dealerCard]);
+        buffer.put(SHOWING);
+        end(length);
+    }
+
+    /**
+     * informs the client of who won
+     */
+    @Override
+    public void outcome(Outcome outcome, Hand playerHand, Hand dealerHand){
+        int length = begin(playerHand.size() + dealerHand.size());
+        buffer.put(OUTCOMES[outcome.getCode()]);
+        putNumber(playerHand.getScore());
+        buffer.put(POINTS_WITH_THESE_CARDS);
+        putCards(playerHand);
+        buffer.put(AND_THE_DEALER_HAD);
+        putNumber(dealerHand.getScore());
+        buffer.put(DEALER_POINTS_WITH_THESE_CARDS);
+        putCards(dealerHand);
+        end(length);
+    }
+
+    /**
+     * tells the client which play is better, the one message that is encoded when it is sent as the values
+     * change with every hand, hints are asked for rarely enough that the garbage does not matter
+     */
+    @Override
+    public void hint(Hint hint){
+        int length = begin(0); // a hint is far shorter than the fixed length of the outcome message
+        buffer.put(LegacyStreamCodec.modifiedUtf(hint.getMessage()));
+        end(length);
+    }
+
+    /**
+     * tells the client their bankroll, encoded when it is sent like a hint as it changes with every hand
+     */
+    @Override
+    public void bankroll(long balance, long bet){
+        int length = begin(0);
+        buffer.put(LegacyStreamCodec.modifiedUtf(Ledger.message(balance, bet)));
+        end(length);
+    }
+
+    /**
+     * clears the buffer, growing it first if it might not hold the message, and starts a String
+     * @param cards the number of cards in the message
+     * @return the position of the length of the String
+     */
+    private int begin(int cards){
+        int needed = FIXED_LENGTH + cards * CARD_LENGTH;
+        if(buffer.capacity() < needed){
+            buffer = ByteBuffer.allocate(Integer.highestOneBit(needed) << 1);
+        }
+        buffer.clear();
+        return LegacyStreamCodec.beginString(buffer);
+    }
+
+    /**
+     * finishes the String and sends it
+     * @param length the position of the length of the String
+     */
+    private void end(int length){
+        LegacyStreamCodec.endString(buffer, length);
+        buffer.flip();
+        send(buffer);
+    }
+
+    /**
+     * writes every card in a hand, each followed by a space
+     * @param hand the hand
+     */
+    private void putCards(Hand hand){
+        for(int i = 0; i < hand.size(); i++){
+            buffer.put(LISTED_CARDS[hand.get(i)]);
+        }
+    }
+
+    /**
+     * writes a number that is not negative in decimal without making a String of it
+     * @param number the number
+     */
+    private void putNumber(int number){
+        int digits = 1;
+        for(int rest = number / 10; rest > 0; rest /= 10){
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for(int i = end - 1; i >= buffer.position(); i--){
+            buffer.put(i, (byte) ('0' + number % 10));
+            number /= 10;
+        }
+        buffer.position(end);
+    }
+}
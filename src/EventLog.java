@@ -0,0 +1,193 @@
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a fixed size ring buffer of server messages that any thread can add to without waiting
+ *
+ * every message gets a sequence number and goes in the slot that number maps to, overwriting whatever was there,
+ * so memory never grows however fast messages arrive. readers keep their own cursor and read at their own pace,
+ * a reader that falls a whole ring behind skips ahead to the oldest message still held and is told how many it missed.
+ * a background writer thread reads in batches to a file or the console, and once it falls more than half a ring behind
+ * only one message in every SAMPLE_RATE is kept until it catches up
+ */
+public class EventLog {
+
+    /**
+     * while sampling, one message in this many is kept
+     */
+    private static final int SAMPLE_RATE = 8;
+
+    /**
+     * the most messages the writer reads before flushing
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * the messages in the ring, indexed by sequence number modulo the capacity
+     */
+    private final AtomicReferenceArray<String> messages;
+
+    /**
+     * the sequence number held in each slot, set after the message so readers know when it is safe to read
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * the capacity minus one, the capacity is a power of two so this masks a sequence number down to a slot
+     */
+    private final int mask;
+
+    /**
+     * the sequence number the next message will be given
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * the number of messages thrown away while sampling or overwritten before the writer read them
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * counts messages while sampling so that one in every SAMPLE_RATE is kept
+     */
+    private final AtomicLong sampled = new AtomicLong();
+
+    /**
+     * the sequence number the writer will read next, producers compare against it to decide when to sample
+     */
+    private volatile long writerCursor = 0;
+
+    /**
+     * stores weather a writer has been started, sampling only happens when there is one to fall behind
+     */
+    private volatile boolean writing = false;
+
+    /**
+     * constructor for an event log
+     * @param capacity the most messages held, rounded up to a power of two
+     */
+    public EventLog(int capacity){
+        if(capacity <= 0){
+            throw new IllegalArgumentException("capacity must be above zero: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if(size <= 0){
+            size = 1;
+        }
+        messages = new AtomicReferenceArray<>(size);
+        published = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++){
+            published.set(i, -1); // no sequence number has been written to any slot yet
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * adds a message to the log, never blocks
+     * @param message the message to add
+     */
+    public void log(String message){
+        if(writing && next.get() - writerCursor > (mask + 1) / 2 && sampled.getAndIncrement() % SAMPLE_RATE != 0){
+            dropped.incrementAndGet(); // the writer is falling behind, only a sample of messages is kept
+            return;
+        }
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        messages.set(slot, message);
+        published.set(slot, sequence);
+    }
+
+    /**
+     * @return the sequence number the next message will be given, a new reader starting here sees only new messages
+     */
+    public long head(){
+        return next.get();
+    }
+
+    /**
+     * @return the number of messages dropped so far
+     */
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    /**
+     * reads the messages from a cursor onwards
+     * @param cursor the sequence number to start reading at
+     * @param max the most messages to read
+     * @param out the list the messages are added to
+     * @return the cursor to read from next time, more than cursor plus the number read if messages were missed
+     */
+    public long read(long cursor, int max, List<String> out){
+        long oldest = next.get() - (mask + 1);
+        if(cursor < oldest){
+            cursor = oldest; // the reader fell a whole ring behind, skips to the oldest message still held
+        }
+        for(int i = 0; i < max; i++){
+            int slot = (int) (cursor & mask);
+            long sequence = published.get(slot);
+            if(sequence < cursor){
+                break; // not written yet
+            }
+            String message = messages.get(slot);
+            if(sequence > cursor || published.get(slot) != cursor){
+                // overwritten while reading, moves on to the oldest message that is still there
+                cursor = Math.max(cursor + 1, next.get() - (mask + 1));
+                continue;
+            }
+            out.add(message);
+            cursor++;
+        }
+        return cursor;
+    }
+
+    /**
+     * starts a background thread writing every message to a writer in batches, flushing once per batch
+     * @param writer where the messages are written
+     */
+    public void startWriter(Writer writer){
+        writing = true;
+        Thread thread = new Thread(() -> {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            long reported = 0;
+            while (true){
+                batch.clear();
+                long cursor = writerCursor;
+                long after = read(cursor, BATCH_SIZE, batch);
+                long missed = after - cursor - batch.size();
+                if(missed > 0){
+                    dropped.addAndGet(missed);
+                }
+                writerCursor = after;
+                try{
+                    long total = dropped.get();
+                    if(total != reported){
+                        writer.write("\n[" + (total - reported) + " messages dropped]\n");
+                        reported = total;
+                    }
+                    for(String message:batch){
+                        writer.write(message);
+                    }
+                    if(!batch.isEmpty()){
+                        writer.flush();
+                    }
+                }
+                catch (IOException ioException){
+                    ioException.printStackTrace();
+                }
+                if(batch.size() < BATCH_SIZE){
+                    LockSupport.parkNanos(1_000_000); // nothing more waiting, checks again in a millisecond
+                }
+            }
+        }, "blackjack-event-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,185 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * the events of one shared table, kept for spectators in a ring of bytes allocated once when the table opens
+ *
+ * the table is the only writer, it copies each version 2 frame it sends its seats into the ring once, and any number
+ * of readers send the bytes straight out of the ring at their own pace, each keeping its own position. the writer
+ * never waits for a reader, it writes over the oldest bytes, so a reader that falls a whole window behind has lost
+ * frames and starts again from the latest snapshot, which the ring remembers the position of
+ *
+ * positions count every byte ever published, so they only grow and the place in the ring is the position masked
+ */
+public class EventRing {
+
+    /**
+     * the smallest ring, it has to hold a snapshot of a full table and the frames of a hand after it
+     */
+    public static final int MIN_CAPACITY = 4096;
+
+    /**
+     * the bytes of the ring, direct so they are written to spectators without being copied first
+     */
+    private final ByteBuffer ring;
+
+    /**
+     * the number of bytes in the ring, a power of two
+     */
+    private final int capacity;
+
+    /**
+     * the bytes behind the newest that a reader can still send, a quarter less than the ring so the writer has room
+     * to publish that quarter before it reaches a byte a reader could be sending at that moment
+     */
+    private final int window;
+
+    /**
+     * the position after the last byte published
+     */
+    private volatile long published = 0;
+
+    /**
+     * the position of the latest snapshot frame
+     */
+    private volatile long snapshot = 0;
+
+    /**
+     * stores weather the table has closed and nothing more will be published
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * constructor for an empty ring
+     * @param capacity the number of bytes in the ring, a power of two of at least MIN_CAPACITY
+     */
+    public EventRing(int capacity){
+        if(capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1){
+            throw new IllegalArgumentException("a ring is a power of two of at least " + MIN_CAPACITY + " bytes: " + capacity);
+        }
+        this.capacity = capacity;
+        window = capacity - capacity / 4;
+        ring = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * copies frames into the ring, only ever called by the table that owns it while holding its lock
+     * @param frames whole frames from their position to their limit, which are left as they were
+     * @throws IllegalArgumentException if the frames do not fit in the quarter of the ring the writer has to itself
+     */
+    void publish(ByteBuffer frames){
+        int length = frames.remaining();
+        if(length > capacity / 4){
+            throw new IllegalArgumentException("frames of " + length + " bytes do not fit a ring of " + capacity);
+        }
+        long start = published;
+        int at = index(start);
+        int first = Math.min(length, capacity - at);
+        ring.put(at, frames, frames.position(), first);
+        ring.put(0, frames, frames.position() + first, length - first);
+        published = start + length;
+        if(frames.get(frames.position() + BinaryProtocol.LENGTH_FIELD) == BinaryProtocol.SNAPSHOT){
+            snapshot = start; // after published, so a reader that sees it never sees published before it
+        }
+    }
+
+    /**
+     * marks the ring as finished, readers stop once they have sent what was published
+     */
+    void close(){
+        closed = true;
+    }
+
+    /**
+     * @param position a position a reader has reached
+     * @return true if the bytes from the position may have been written over, so the reader has to skip ahead
+     */
+    public boolean isLapped(long position){
+        return published - position > window;
+    }
+
+    /**
+     * checked by a reader after sending bytes straight from the ring, the send cannot be taken back if the writer
+     * went past them meanwhile, which it can only do by publishing the quarter of the ring outside the window
+     * in the time of one write to a socket
+     * @param position the position of the first byte sent
+     * @return true if any of the bytes from the position have been written over
+     */
+    public boolean isOverwritten(long position){
+        return published - position > capacity;
+    }
+
+    /**
+     * points two views of the ring at the bytes between two positions, the second is empty unless the bytes wrap round
+     * @param from the position of the first byte
+     * @param to the position after the last byte
+     * @param first a view of the ring from duplicate, set to the bytes up to the end of the ring
+     * @param second a view of the ring from duplicate, set to the bytes from the start of the ring
+     */
+    public void slice(long from, long to, ByteBuffer first, ByteBuffer second){
+        int at = index(from);
+        int length = (int) (to - from);
+        int end = Math.min(capacity, at + length);
+        first.limit(end).position(at);
+        second.limit(length - (end - at)).position(0);
+    }
+
+    /**
+     * reads the length of the frame at a position, which a reader keeps track of so it only ever skips between frames
+     * @param position the position of the first byte of the frame
+     * @return the number of bytes in the frame, counting its length field
+     */
+    public int frameLength(long position){
+        int high = ring.get(index(position)) & 0xff;
+        int low = ring.get(index(position + 1)) & 0xff;
+        return BinaryProtocol.LENGTH_FIELD + (high << 8 | low);
+    }
+
+    /**
+     * copies the bytes between two positions out of the ring
+     * @param from the position of the first byte
+     * @param to the position after the last byte
+     * @param out the buffer to copy into, with room for them
+     */
+    public void copy(long from, long to, ByteBuffer out){
+        for(long position = from; position < to; position++){
+            out.put(ring.get(index(position)));
+        }
+    }
+
+    /**
+     * @return a view of the ring for a reader to point at the bytes it sends, with slice
+     */
+    public ByteBuffer duplicate(){
+        return ring.duplicate();
+    }
+
+    /**
+     * @return the position after the last byte published
+     */
+    public long getPublished(){
+        return published;
+    }
+
+    /**
+     * @return the position of the latest snapshot frame, where a new reader or one that fell behind starts
+     */
+    public long getSnapshot(){
+        return snapshot;
+    }
+
+    /**
+     * @return true if the table has closed and nothing more will be published
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+
+    /**
+     * @param position a position
+     * @return the place of the position in the ring
+     */
+    private int index(long position){
+        return (int) position & (capacity - 1);
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * somewhere the commands of a player go, either a game of their own or a seat at a shared table
+ */
+public interface GameInput {
+
+    /**
+     * plays a command from the player
+     * @param command the command
+     * @param chips the chips of a bet, ignored for any other command
+     * @return true if the command was played, false if it was ignored as it cannot be played right now
+     */
+    boolean processInput(Command command, long chips);
+
+    /**
+     * plays a command from the player that is not a bet
+     * @param command the command
+     * @return true if the command was played, false if it was ignored as it cannot be played right now
+     */
+    default boolean processInput(Command command){
+        return processInput(command, 0);
+    }
+
+    /**
+     * names the player, only between hands, their bankroll and hand history are kept under the name from then on
+     * @param name the name the player gave
+     * @return true if the name was taken, false if a hand is being played or the name is not allowed
+     */
+    boolean name(String name);
+
+    /**
+     * plays a command a legacy client sent as text
+     * @param text the text, for example "Hit", "Bet 25" or "Name alice"
+     * @return true if the command was played, false if it was ignored or is not a command
+     */
+    default boolean processInput(String text){
+        Command command = Command.parse(text);
+        if(command == Command.NAME){
+            return name(Command.name(text));
+        }
+        return command != null && processInput(command, Command.chips(text));
+    }
+
+    /**
+     * the player has left, called once when their connection closes
+     */
+    default void leave(){
+    }
+}
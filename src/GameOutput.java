@@ -0,0 +1,96 @@
+
+/**
+ * somewhere a blackjack game can send what happens to, lets the same game logic run behind
+ * every transport and be sent as either text or binary frames
+ */
+public interface GameOutput {
+
+    /**
+     * a new hand is about to be dealt, before either openingHand or, if the player was dealt a blackjack, outcome
+     * nothing is shown for this, it only marks where one hand ends and the next begins
+     */
+    default void newHand(){
+    }
+
+    /**
+     * the client asked to be sent the whole of the game again, nothing to do for outputs that always send all of it
+     */
+    default void snapshot(){
+    }
+
+    /**
+     * the first two cards have been dealt to the player and the dealer
+     * @param playerHand the players hand
+     * @param dealerCard the rank of the card the dealer has showing
+     */
+    void openingHand(Hand playerHand, byte dealerCard);
+
+    /**
+     * the player hit and is still in the hand
+     * @param playerHand the players hand
+     * @param dealerCard the rank of the card the dealer has showing
+     */
+    void playerHand(Hand playerHand, byte dealerCard);
+
+    /**
+     * the hand is over
+     * @param outcome how the hand ended
+     * @param playerHand the players final hand
+     * @param dealerHand the dealers final hand
+     */
+    void outcome(Outcome outcome, Hand playerHand, Hand dealerHand);
+
+    /**
+     * the player split the hand they were playing and a card was dealt to each of the two hands, outputs that can
+     * only show one hand show the one being played
+     * @param hands every hand of the player, the one being played is the active hand
+     * @param dealerCard the rank of the card the dealer has showing
+     */
+    default void split(SeatHands hands, byte dealerCard){
+        playerHand(hands.getActive(), dealerCard);
+    }
+
+    /**
+     * the player finished a hand they split into and moves on to the next, outputs that can only show one hand
+     * show the one now being played
+     * @param hands every hand of the player, the one now being played is the active hand
+     * @param dealerCard the rank of the card the dealer has showing
+     */
+    default void nextHand(SeatHands hands, byte dealerCard){
+        playerHand(hands.getActive(), dealerCard);
+    }
+
+    /**
+     * the round is over, outputs that can only show one hand show the outcome of each in the order they were played
+     * @param hands every hand of the player, each with its outcome
+     * @param dealerHand the dealers final hand
+     */
+    default void outcomes(SeatHands hands, Hand dealerHand){
+        for(int i = 0; i < hands.size(); i++){
+            outcome(hands.getOutcome(i), hands.get(i), dealerHand);
+        }
+    }
+
+    /**
+     * the player asked which play is better for their hand, nothing is shown by outputs that have no way to show it
+     * @param hint the better play and what hitting and staying are each worth
+     */
+    default void hint(Hint hint){
+    }
+
+    /**
+     * the bankroll of the player changed or they asked to change their bet, nothing is shown by outputs with no way
+     * to show it
+     * @param balance the chips of the player, not counting a bet on a hand being played
+     * @param bet the bet of the player, 0 if the bankroll does not cover it
+     */
+    default void bankroll(long balance, long bet){
+    }
+
+    /**
+     * every command of a batch the player sent has been played, after every event the batch caused
+     * @param results the result of each command in the order they were sent, BinaryProtocol.PLAYED, IGNORED or UNKNOWN
+     */
+    default void batchPlayed(byte[] results){
+    }
+}
@@ -0,0 +1,476 @@
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a single connected client on the blocking transport, each session has its own game
+ * so that any number of clients can play against the server at the same time
+ *
+ * what is sent to the client waits in a bounded outbound queue and a second thread of the session writes it,
+ * so a client that reads slowly only ever holds up its own writer and never a shared table sending to every seat
+ */
+public class GameSession implements Runnable {
+
+    /**
+     * the most bytes copied out of the outbound queue for one write, unless a single message is bigger
+     */
+    private static final int WRITE_SIZE = 8192;
+
+    /**
+     * the server this session belongs to, used to display messages
+     */
+    private final BlackjackServer server;
+
+    /**
+     * the connected client
+     */
+    private final Socket connection;
+
+    /**
+     * the number of this connection, used when displaying messages
+     */
+    private final int number;
+
+    /**
+     * the address the client connected from, which the session and its commands count against
+     */
+    private final AdmissionControl.Host host;
+
+    /**
+     * the input from a client on the legacy object stream
+     */
+    private ObjectInputStream input;
+
+    /**
+     * where the commands of the client go, a game of their own or a seat at a shared table
+     */
+    private GameInput game;
+
+    /**
+     * messages waiting to be written to the client, guarded by the lock of this session
+     */
+    private final OutboundQueue outbound;
+
+    /**
+     * stores weather what is sent to the client is held back and written later in one go,
+     * while the commands the client has already sent are played
+     */
+    private boolean holding = false;
+
+    /**
+     * stores weather the client should be sent a snapshot of their table, the writer asks the table for it
+     */
+    private boolean resync = false;
+
+    /**
+     * stores weather the client was found too slow and is being disconnected, nothing more is queued for it
+     */
+    private boolean slow = false;
+
+    /**
+     * stores weather the session is ending, the writer stops once everything waiting has been written
+     */
+    private boolean closing = false;
+
+    /**
+     * stores weather the writer has stopped
+     */
+    private boolean stopped = false;
+
+    /**
+     * constructor for a session
+     * @param server the server that accepted the connection
+     * @param connection the socket of the connected client
+     * @param number the number of this connection
+     * @param host the address the client connected from, as admitted by the server
+     */
+    public GameSession(BlackjackServer server, Socket connection, int number, AdmissionControl.Host host){
+        this.server = server;
+        this.connection = connection;
+        this.number = number;
+        this.host = host;
+        ServerConfig config = server.getConfig();
+        outbound = new OutboundQueue(config.getOutboundQueue(), config.getOverflow(), config.getWriteTimeout(),
+                server.getBuffers(), server.getMetrics());
+    }
+
+    /**
+     * runs the session until the client disconnects, speaking whichever protocol the client opened with
+     */
+    @Override
+    public void run(){
+        try{
+            server.execute(this::write);
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            in.mark(BinaryProtocol.PREAMBLE_LENGTH);
+            int first = in.read();
+            int second = in.read();
+            if(BinaryProtocol.isPreamble(first, second)){
+                processBinaryConnection(in, BinaryProtocol.checkPreamble(first, second, in.read()));
+            }else{ // an old client, the bytes read were the start of the object stream header
+                in.reset();
+                getStreams(in);
+                processConnection();
+            }
+        }
+        catch (EOFException eofException){
+            displayMessage("\nServer terminated connection");
+        }
+        catch (IOException ioException){
+            displayMessage("\nError on connection: " + ioException.getMessage());
+        }
+        finally {
+            closeConnection();
+        }
+    }
+
+    /**
+     * gets the object streams for a client on the legacy object stream
+     * @param in the input from the client
+     * @throws IOException otherwise throws an IO exception
+     */
+    private void getStreams(InputStream in) throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(LegacyStreamCodec.HEADER_LENGTH);
+        LegacyStreamCodec.writeHeader(header);
+        queue(header.flip(), OutboundQueue.OTHER); // the client waits for the header before it sends anything
+
+        input = new ObjectInputStream(in);
+        displayMessage("\ngot IO streams\n");
+    }
+
+    /**
+     * while the client is connected, this continues to read what the client writes and processes it to usable information
+     * @throws IOException otherwise throws an IO exception
+     */
+    private void processConnection() throws IOException{
+        EncodedTextGameOutput events = new EncodedTextGameOutput() {
+            @Override
+            protected void send(ByteBuffer message) {
+                sendData(message);
+            }
+        };
+        game = new BlackjackGame(events, server.getShoePool(), server.getMetrics(), server.getJournal(),
+                server.getHistory(), server.getStrategy(), player(), server.getLedger());
+        events.welcome();
+        String message = "";
+
+        do{
+            try{
+                message = (String) input.readObject(); // reads the message sent from the client
+                displayMessage("\n" + message);
+                if(!message.equals("Disconnect") && throttled(1)){
+                    continue;
+                }
+                hold(true); // a command can send more than one message, they are flushed together
+                game.processInput(message); //sends to the game to run the blackjack game
+                hold(false);
+            }
+            catch (ClassNotFoundException classNotFoundException){
+                displayMessage("\nUnknown object type received");
+            }
+
+        } while (!message.equals("Disconnect")); // as long as the client does not press the disconnect button
+    }
+
+    /**
+     * while a client on the binary protocol is connected, reads each command frame and plays it
+     * @param in the input from the client, positioned after the preamble
+     * @param version the version of the protocol the client asked for
+     * @throws IOException otherwise throws an IO exception
+     */
+    private void processBinaryConnection(InputStream in, int version) throws IOException{
+        DataInputStream commands = new DataInputStream(in);
+        ByteBuffer preamble = ByteBuffer.allocate(BinaryProtocol.PREAMBLE_LENGTH);
+        BinaryProtocol.writePreamble(preamble, version);
+        queue(preamble.flip(), OutboundQueue.OTHER);
+
+        BinaryGameOutput events;
+        if(version == BinaryProtocol.FULL_HAND_VERSION){
+            events = new BinaryGameOutput() {
+                @Override
+                protected void send(ByteBuffer frame) {
+                    sendFrame(frame, OutboundQueue.OTHER);
+                }
+            };
+        }else{
+            events = new DeltaGameOutput() {
+                @Override
+                protected void send(ByteBuffer frame) {
+                    sendFrame(frame, OutboundQueue.OTHER);
+                }
+            };
+        }
+        events.welcome();
+        TableScheduler tables = server.getTables();
+        if(tables != null && version >= BinaryProtocol.DELTA_VERSION){ // only version 2 can show other players
+            Seat seat = new Seat(player()) {
+                @Override
+                protected void send(ByteBuffer frame) {
+                    sendFrame(frame, BinaryProtocol.kind(frame, getNumber()));
+                }
+            };
+            outbound.setResendable();
+            tables.seat(seat);
+            game = seat;
+        }else{
+            game = new BlackjackGame(events, server.getShoePool(), server.getMetrics(), server.getJournal(),
+                    server.getHistory(), server.getStrategy(), player(), server.getLedger());
+        }
+
+        CommandBatch batch = new CommandBatch();
+        int opcode;
+        do{
+            opcode = BinaryProtocol.readCommand(commands, batch);
+            hold(true); // nothing is flushed until every command the client has already sent is played
+            if(opcode == BinaryProtocol.BATCH){
+                displayMessage("\nbatch of " + batch.size() + " commands");
+                boolean open = throttled(batch.size()) ? batch.refuse() : batch.play(game);
+                if(!open){
+                    hold(false); // the events of the commands before the disconnect are still sent
+                    return;
+                }
+                sendFrame(batch.result(), OutboundQueue.OTHER);
+            }else{
+                Command command = Command.of(opcode);
+                if(command == null){
+                    displayMessage("\nUnknown command received");
+                }else{
+                    displayMessage("\n" + command.describe(batch.getBet()));
+                    if(opcode == BinaryProtocol.DISCONNECT || !throttled(1)){
+                        batch.play(game, command);
+                    }
+                }
+            }
+            if(!frameWaiting(in)){
+                hold(false);
+            }
+        } while (opcode != BinaryProtocol.DISCONNECT);
+    }
+
+    /**
+     * checks commands from the client against the rate its address is allowed
+     * @param count the number of commands
+     * @return true if they came too fast and are not played
+     */
+    private boolean throttled(int count){
+        if(server.getAdmission().allowCommands(host, count)){
+            return false;
+        }
+        displayMessage("\ncommand refused, sent too fast");
+        return true;
+    }
+
+    /**
+     * checks if a whole frame from the client can be read without waiting
+     * @param in the input from the client, positioned at the start of a frame
+     * @return true if every byte of the next frame has arrived
+     * @throws IOException if the input cannot be read
+     */
+    private static boolean frameWaiting(InputStream in) throws IOException{
+        int available = in.available();
+        if(available < BinaryProtocol.LENGTH_FIELD){
+            return false;
+        }
+        in.mark(BinaryProtocol.LENGTH_FIELD);
+        int length = in.read() << 8 | in.read();
+        in.reset();
+        return available >= BinaryProtocol.LENGTH_FIELD + length;
+    }
+
+    /**
+     * starts or stops holding back what is sent to the client, everything held is written when holding stops
+     * @param holding true to start holding, false to write
+     */
+    private synchronized void hold(boolean holding){
+        this.holding = holding;
+        if(!holding){
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return who is playing, the address the client connected from
+     */
+    private String player(){
+        return connection.getInetAddress().getHostAddress();
+    }
+
+    /**
+     * after the client has disconnected closes all of the IO streams and the connection
+     */
+    private void closeConnection(){
+        if(game != null){
+            game.leave();
+        }
+        server.getMetrics().sessionClosed();
+        server.getAdmission().release(host);
+        displayMessage("\nconnection ended\n");
+        synchronized (this){ // the writer has until the write timeout to send what is still waiting
+            closing = true;
+            holding = false;
+            notifyAll();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(server.getConfig().getWriteTimeout());
+            try{
+                long left;
+                while (!stopped && (left = deadline - System.nanoTime()) > 0){
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                }
+            }
+            catch (InterruptedException interruptedException){
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if(input != null){
+                input.close(); // close input stream
+            }
+        }
+        catch (IOException ioException) {
+            ioException.printStackTrace();
+        }
+        closeSocket();
+    }
+
+    /**
+     * closes the socket, a reader or writer waiting on it stops with an error
+     */
+    private void closeSocket(){
+        try {
+            connection.close(); // close socket
+        }
+        catch (IOException ioException) {
+            ioException.printStackTrace();
+        }
+    }
+
+    /**
+     * sends a message to a client on the legacy object stream
+     * @param message the message to be sent to the client, already encoded as a String on the stream
+     */
+    private void sendData(ByteBuffer message){
+        long start = System.nanoTime();
+        int length = message.remaining();
+        queue(message, OutboundQueue.OTHER);
+        server.getMetrics().sent(System.nanoTime() - start);
+        displayMessage("\nSERVER>>> message of " + length + " bytes");
+    }
+
+    /**
+     * sends a frame to a client on the binary protocol, at a shared table other sessions send through this too
+     * @param frame the frame to be sent to the client
+     * @param kind what the frame is to the queue, OutboundQueue.OTHER unless the client is at a shared table
+     */
+    private void sendFrame(ByteBuffer frame, int kind){
+        long start = System.nanoTime();
+        int length = frame.remaining();
+        queue(frame, kind);
+        server.getMetrics().sent(System.nanoTime() - start);
+        displayMessage("\nSERVER>>> frame of " + length + " bytes");
+    }
+
+    /**
+     * adds a message to the outbound queue and wakes the writer unless messages are being held
+     * a client whose queue overflows or whose writes time out has its socket closed, which ends the session
+     * @param message the message, copied into the queue
+     * @param kind what the message is to the queue
+     */
+    private synchronized void queue(ByteBuffer message, int kind){
+        if(slow){
+            return;
+        }
+        if(!outbound.offer(message, kind)){
+            slow = true;
+            displayMessage("\nclient reading too slowly, disconnecting");
+            closeSocket();
+            return;
+        }
+        resync |= outbound.takeResync();
+        if(!holding || resync){
+            notifyAll();
+        }
+    }
+
+    /**
+     * writes what is waiting to the client until the session ends, run on a thread of its own
+     * the messages are copied out of the queue together and written without the lock of the session,
+     * so the table can keep queueing messages while a write waits on the client
+     */
+    private void write(){
+        byte[] bytes = new byte[WRITE_SIZE];
+        try{
+            OutputStream out = connection.getOutputStream();
+            while (true){
+                int length = 0;
+                boolean sync;
+                synchronized (this){
+                    while (!closing && !resync && (outbound.isEmpty() || holding)){
+                        wait();
+                    }
+                    if(closing && outbound.isEmpty()){
+                        return;
+                    }
+                    sync = resync && !closing;
+                    resync = false;
+                    while (!outbound.isEmpty() && !holding){
+                        ByteBuffer message = outbound.get(0);
+                        int size = message.remaining();
+                        if(length + size > bytes.length){
+                            if(length > 0){
+                                break;
+                            }
+                            bytes = new byte[size]; // a message bigger than any before it
+                        }
+                        message.get(bytes, length, size);
+                        length += size;
+                        outbound.remove();
+                    }
+                    if(length > 0){
+                        outbound.blocked(true);
+                    }
+                }
+                if(sync){
+                    game.processInput(Command.SYNC); // the table sends the snapshot to the seat, it is queued after the changes it replaces
+                }
+                if(length > 0){
+                    out.write(bytes, 0, length);
+                    synchronized (this){
+                        outbound.blocked(false);
+                    }
+                }
+            }
+        }
+        catch (IOException ioException){
+            if(!slow){
+                displayMessage("\nError writing object");
+            }
+            closeSocket();
+        }
+        catch (InterruptedException interruptedException){
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            synchronized (this){
+                stopped = true;
+                outbound.clear();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * displays a message on the server tagged with the number of this connection
+     * @param message the message to be displayed
+     */
+    private void displayMessage(String message){
+        server.displayMessage(message.replace("\n", "\n[" + number + "] "));
+    }
+
+}
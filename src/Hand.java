@@ -0,0 +1,138 @@
+
+/**
+ * the cards in a blackjack hand along with their value, kept up to date as each card is added
+ * so the score never has to be worked out again from every card in the hand
+ */
+public class Hand {
+
+    /**
+     * the most points a hand can have without busting
+     */
+    public static final int BLACKJACK = 21;
+
+    /**
+     * the ranks of the cards in the hand in the order they were dealt, see Card
+     */
+    private byte[] cards = new byte[8];
+
+    /**
+     * the number of cards in the hand
+     */
+    private int size;
+
+    /**
+     * the points in the hand counting every ace as 1
+     */
+    private int hardTotal;
+
+    /**
+     * the number of aces in the hand
+     */
+    private int aces;
+
+    /**
+     * adds a card to the hand
+     * @param rank the rank of the card
+     */
+    public void add(byte rank){
+        if(size == cards.length){
+            byte[] bigger = new byte[size * 2];
+            System.arraycopy(cards, 0, bigger, 0, size);
+            cards = bigger;
+        }
+        cards[size++] = rank;
+        hardTotal += Card.value(rank);
+        if(rank == Card.ACE){
+            aces++;
+        }
+    }
+
+    /**
+     * takes the last card out of the hand, as when a pair is split and its second card starts a hand of its own
+     * @return the rank of the card taken
+     */
+    public byte removeLast(){
+        if(size == 0){
+            throw new IndexOutOfBoundsException("the hand has no cards");
+        }
+        byte rank = cards[--size];
+        hardTotal -= Card.value(rank);
+        if(rank == Card.ACE){
+            aces--;
+        }
+        return rank;
+    }
+
+    /**
+     * empties the hand so it can be used again
+     */
+    public void clear(){
+        size = 0;
+        hardTotal = 0;
+        aces = 0;
+    }
+
+    /**
+     * @return the number of cards in the hand
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * gets a card in the hand
+     * @param index the position of the card, 0 being the first dealt
+     * @return the rank of the card
+     */
+    public byte get(int index){
+        if(index >= size){
+            throw new IndexOutOfBoundsException("the hand only has " + size + " cards");
+        }
+        return cards[index];
+    }
+
+    /**
+     * @return the points in the hand counting every ace as 1
+     */
+    public int getHardTotal(){
+        return hardTotal;
+    }
+
+    /**
+     * @return the number of aces in the hand
+     */
+    public int getAces(){
+        return aces;
+    }
+
+    /**
+     * a hand is soft when one of its aces can be counted as 11 without busting
+     * only one ace can ever be 11, two would already be 22
+     * @return true if the hand is soft
+     */
+    public boolean isSoft(){
+        return aces > 0 && hardTotal + 10 <= BLACKJACK;
+    }
+
+    /**
+     * scores the hand in accordance with blackjack rules
+     * @return the best score of the hand
+     */
+    public int getScore(){
+        return isSoft() ? hardTotal + 10 : hardTotal;
+    }
+
+    /**
+     * @return true if the hand is an ace and a ten valued card and nothing else
+     */
+    public boolean isBlackjack(){
+        return size == 2 && getScore() == BLACKJACK;
+    }
+
+    /**
+     * @return true if the hand is over 21 points
+     */
+    public boolean isBust(){
+        return hardTotal > BLACKJACK;
+    }
+}
@@ -0,0 +1,801 @@
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a store of every finished hand, one row per seat, that can be asked which hands a player played between two times
+ *
+ * the rows are kept as columns, one file each, so a query reads only the columns it needs. rows are appended in the
+ * order hands finish, which makes the time column sorted and a binary search over it the time index. the player index
+ * is a column holding the previous row of the same player and a heads file holding the last row of every player,
+ * so a query for one player follows their chain and reads only their rows however many others there are.
+ * the shoe column holds the seed of the shoe each hand was dealt from and which of its shuffles, so a hand dealt
+ * with seeded random numbers can be dealt again exactly.
+ * games hand finished rows to a queue and a background thread writes them in batches, so a game never waits for the disk.
+ * a column is mapped in windows of a whole number of rows, each under 2 GiB, so a column can grow past what one
+ * mapping can hold. rows are numbered with ints, the player index holds them in 4 bytes
+ *
+ * a player is known by the name they gave and the address they connect from, or the address alone if they gave none
+ */
+public class HandHistory {
+
+    /**
+     * the most cards kept of each hand, no hand can have more before reaching 21
+     */
+    static final int MAX_CARDS = 22;
+
+    /**
+     * the bytes taken by each hand in the cards column, a count and then the ranks packed two to a byte
+     */
+    private static final int HAND_BYTES = 1 + MAX_CARDS / 2;
+
+    /**
+     * the bytes of each row in the cards column, the players hand and then the dealers
+     */
+    static final int CARDS_BYTES = 2 * HAND_BYTES;
+
+    /**
+     * the bytes of each row in the shoe column, the seed of the shoe and then the shuffle
+     */
+    private static final int SHOE_BYTES = 12;
+
+    /**
+     * the file name of the shoe column, which a store written before it was added does not have
+     */
+    private static final String SHOE_COLUMN = "shoe.col";
+
+    /**
+     * the most rows written in one batch
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * how long the writer waits for more rows before writing the ones it has, in nanoseconds
+     */
+    private static final long BATCH_NANOS = 100_000_000;
+
+    /**
+     * the directory the column files are kept in
+     */
+    private final Path directory;
+
+    /**
+     * the players known to the store, each one's position in the list is its id
+     */
+    private final List<String> players = new ArrayList<>();
+
+    /**
+     * the id of each player known to the store
+     */
+    private final Map<String, Integer> playerIds = new HashMap<>();
+
+    /**
+     * rows waiting to be written
+     */
+    private final ConcurrentLinkedQueue<Row> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * the number of rows waiting to be written, used to wake the writer once there is a full batch
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * the number of rows in the store
+     */
+    private volatile long rows;
+
+    /**
+     * true if rows are added to this store, false if it is only queried
+     */
+    private final boolean writing;
+
+    /**
+     * the last row of each player, indexed by id, -1 for a player without one, only kept when writing
+     */
+    private int[] lastRows;
+
+    /**
+     * the background thread writing the rows, null until the store is started
+     */
+    private Thread writer;
+
+    /**
+     * constructor for a hand history the server writes to, reads the players and the number of rows of a store
+     * that already exists
+     * @param directory the directory the column files are kept in, created if it does not exist
+     * @throws IOException if the directory cannot be read
+     */
+    public HandHistory(Path directory) throws IOException{
+        this(directory, true);
+    }
+
+    /**
+     * constructor for a hand history
+     * @param directory the directory the column files are kept in
+     * @param writing true if rows will be added, false to only query a store that a server may be writing to
+     * @throws IOException if the directory cannot be read
+     */
+    private HandHistory(Path directory, boolean writing) throws IOException{
+        this.directory = directory;
+        this.writing = writing;
+        if(writing){
+            Files.createDirectories(directory);
+        }else if(!Files.isDirectory(directory)){
+            throw new IOException("no hand history in " + directory);
+        }
+        Path names = file("players.txt");
+        if(Files.exists(names)){
+            for(String name:Files.readAllLines(names, StandardCharsets.UTF_8)){
+                playerIds.put(name, players.size());
+                players.add(name);
+            }
+        }
+        if(writing){
+            addShoeColumn();
+        }
+        rows = complete(writing); // a crash can leave some columns a little longer than the others
+        if(writing){
+            loadLastRows();
+        }
+    }
+
+    /**
+     * opens a hand history to query it, leaving the files as they are so a running server can keep writing them
+     * @param directory the directory the column files are kept in
+     * @return the hand history
+     * @throws IOException if the directory cannot be read
+     */
+    public static HandHistory open(Path directory) throws IOException{
+        return new HandHistory(directory, false);
+    }
+
+    /**
+     * starts the thread writing the rows added to the store
+     */
+    public void start(){
+        writer = new Thread(() -> {
+            List<Row> batch = new ArrayList<>(BATCH_SIZE);
+            while (true){
+                LockSupport.parkNanos(this, BATCH_NANOS); // a full batch wakes it up early
+                Row row;
+                while ((row = pending.poll()) != null){
+                    batch.add(row);
+                }
+                if(batch.isEmpty()){
+                    continue;
+                }
+                waiting.addAndGet(-batch.size());
+                try{
+                    write(batch);
+                }
+                catch (IOException ioException){
+                    ioException.printStackTrace();
+                }
+                batch.clear();
+            }
+        }, "blackjack-history");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * adds a finished hand to the store, it is written by the background thread with others in a batch
+     * @param hand the id of the hand in the journal, 0 if no journal is kept
+     * @param player who played it
+     * @param seat the seat it was played at
+     * @param outcome how it ended
+     * @param playerHand the cards of the player
+     * @param dealerHand the cards of the dealer
+     * @param seed the seed of the shoe it was dealt from
+     * @param shuffle which shuffle of the shoe it was dealt from, -1 if the shoe cannot be replayed
+     */
+    public void add(long hand, String player, byte seat, Outcome outcome, Hand playerHand, Hand dealerHand,
+                    long seed, int shuffle){
+        pending.add(new Row(System.currentTimeMillis(), hand, player, seat, outcome, pack(playerHand, dealerHand),
+                seed, shuffle));
+        if(waiting.incrementAndGet() >= BATCH_SIZE){
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return the number of rows in the store
+     */
+    public long getRows(){
+        return rows;
+    }
+
+    /**
+     * finds every row for a player between two times, in the order they were played
+     * @param player the player, null for every player
+     * @param from the earliest time, in milliseconds since 1970
+     * @param to the time after the last, in milliseconds since 1970
+     * @param results called with each row found, until it returns false
+     * @throws IOException if the columns cannot be read
+     */
+    public void query(String player, long from, long to, Results results) throws IOException{
+        long count = writing ? rows : complete(false); // a server may have added rows since this was opened
+        if(count == 0){
+            return;
+        }
+        Integer id;
+        synchronized (players){
+            id = player == null ? null : playerIds.get(player);
+        }
+        if(player != null && id == null){
+            return; // never played here
+        }
+        try(FileChannel times = FileChannel.open(file("time.col"));
+            FileChannel hands = FileChannel.open(file("hand.col"));
+            FileChannel playerColumn = FileChannel.open(file("player.col"));
+            FileChannel prevColumn = FileChannel.open(file("prev.col"));
+            FileChannel seats = FileChannel.open(file("seat.col"));
+            FileChannel outcomes = FileChannel.open(file("outcome.col"));
+            FileChannel cards = FileChannel.open(file("cards.col"));
+            FileChannel shoes = Files.exists(file(SHOE_COLUMN)) ? FileChannel.open(file(SHOE_COLUMN)) : null){
+            Column time = new Column(times, count, 8);
+            int first = lowerBound(time, from);
+            int end = lowerBound(time, to);
+            if(first >= end){
+                return;
+            }
+            Column ids = new Column(playerColumn, count, 4);
+            Column handIds = new Column(hands, count, 8);
+            Column seatBytes = new Column(seats, count, 1);
+            Column outcomeBytes = new Column(outcomes, count, 1);
+            Column cardBytes = new Column(cards, count, CARDS_BYTES);
+            Column shoeBytes = shoes == null ? null : new Column(shoes, count, SHOE_BYTES);
+            int[] found;
+            int size;
+            if(id == null){
+                found = null;
+                size = end - first;
+            }else{
+                // follows the chain of the player back from their last row, then turns it round to play order
+                Column prev = new Column(prevColumn, count, 4);
+                found = new int[64];
+                size = 0;
+                for(int row = lastRow(id, ids); row >= first; row = prev.getInt(row)){
+                    if(row < end){
+                        if(size == found.length){
+                            found = Arrays.copyOf(found, size * 2);
+                        }
+                        found[size++] = row;
+                    }
+                }
+            }
+            String[] names = names();
+            Hand playerHand = new Hand();
+            Hand dealerHand = new Hand();
+            for(int i = 0; i < size; i++){
+                int row = found == null ? first + i : found[size - 1 - i];
+                unpack(cardBytes.window(row), cardBytes.offset(row), playerHand);
+                unpack(cardBytes.window(row), cardBytes.offset(row) + HAND_BYTES, dealerHand);
+                long seed = 0;
+                int shuffle = -1;
+                if(shoeBytes != null){
+                    seed = shoeBytes.getLong(row);
+                    shuffle = shoeBytes.window(row).getInt(shoeBytes.offset(row) + 8);
+                }
+                if(!results.row(time.getLong(row), handIds.getLong(row), names[ids.getInt(row)], seatBytes.get(row),
+                        Outcome.fromCode(outcomeBytes.get(row)), playerHand, dealerHand, seed, shuffle)){
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * finds the last row of a player, from the heads file and then the rows written after it
+     * @param id the id of the player
+     * @param ids the player column
+     * @return the last row, -1 if they have none
+     * @throws IOException if the heads file cannot be read
+     */
+    private int lastRow(int id, Column ids) throws IOException{
+        int count = ids.rows;
+        int last = -1;
+        int covered = 0;
+        Path heads = file("heads.idx");
+        if(Files.exists(heads)){
+            try(FileChannel channel = FileChannel.open(heads)){
+                ByteBuffer header = ByteBuffer.allocate(8);
+                ByteBuffer entry = ByteBuffer.allocate(4);
+                channel.read(header, 0);
+                covered = (int) Math.min(header.getLong(0), count);
+                if(channel.read(entry, 8 + id * 4L) == 4 && entry.getInt(0) < covered){
+                    last = entry.getInt(0);
+                }
+            }
+        }
+        for(int row = covered; row < count; row++){ // at most the batch written since the heads file
+            if(ids.getInt(row) == id){
+                last = row;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * writes a batch of rows to the end of every column and updates the player index
+     * @param batch the rows, sorted here by the time they finished
+     * @throws IOException if a column cannot be written
+     */
+    private void write(List<Row> batch) throws IOException{
+        batch.sort(Comparator.comparingLong(row -> row.time));
+        int size = batch.size();
+        ByteBuffer time = ByteBuffer.allocate(size * 8);
+        ByteBuffer hand = ByteBuffer.allocate(size * 8);
+        ByteBuffer player = ByteBuffer.allocate(size * 4);
+        ByteBuffer prev = ByteBuffer.allocate(size * 4);
+        ByteBuffer seat = ByteBuffer.allocate(size);
+        ByteBuffer outcome = ByteBuffer.allocate(size);
+        ByteBuffer cards = ByteBuffer.allocate(size * CARDS_BYTES);
+        ByteBuffer shoe = ByteBuffer.allocate(size * SHOE_BYTES);
+        int first = (int) rows;
+        long last = first == 0 ? 0 : lastTime();
+        for(int i = 0; i < size; i++){
+            Row row = batch.get(i);
+            last = Math.max(last, row.time); // a row that finished just before the last batch was written keeps the column sorted
+            time.putLong(last);
+            hand.putLong(row.hand);
+            int id = playerId(row.player);
+            player.putInt(id);
+            prev.putInt(lastRows[id]);
+            lastRows[id] = first + i;
+            seat.put(row.seat);
+            outcome.put((byte) row.outcome.getCode());
+            cards.put(row.cards);
+            shoe.putLong(row.seed).putInt(row.shuffle);
+        }
+        // the time column is written last, a row only counts once every column holds it
+        append("hand.col", hand);
+        append("player.col", player);
+        append("prev.col", prev);
+        append("seat.col", seat);
+        append("outcome.col", outcome);
+        append("cards.col", cards);
+        append(SHOE_COLUMN, shoe);
+        append("time.col", time);
+        rows = first + size;
+        try(FileChannel heads = FileChannel.open(file("heads.idx"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)){
+            int known = players.size();
+            ByteBuffer out = ByteBuffer.allocate(known * 4);
+            for(int id = 0; id < known; id++){
+                out.putInt(lastRows[id]);
+            }
+            write(heads, out.flip(), 8);
+            write(heads, ByteBuffer.allocate(8).putLong(0, rows), 0); // the rows covered go last, after the rows they cover
+        }
+    }
+
+    /**
+     * reads the heads file into the last row of each player, and brings it up to date with any rows written after it
+     * @throws IOException if the heads file or the player column cannot be read
+     */
+    private void loadLastRows() throws IOException{
+        lastRows = new int[Math.max(16, players.size())];
+        Arrays.fill(lastRows, -1);
+        long covered = 0;
+        Path heads = file("heads.idx");
+        if(Files.exists(heads)){
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(heads));
+            covered = bytes.getLong(0);
+            for(int id = 0; id < players.size() && 8 + id * 4 + 4 <= bytes.limit(); id++){
+                lastRows[id] = bytes.getInt(8 + id * 4);
+            }
+        }
+        if(covered > rows){ // the columns were cut back after a crash, so the heads are rebuilt from the start
+            covered = 0;
+            Arrays.fill(lastRows, -1);
+        }
+        if(covered < rows){
+            try(FileChannel channel = FileChannel.open(file("player.col"))){
+                Column ids = new Column(channel, rows, 4);
+                for(int row = (int) covered; row < rows; row++){
+                    lastRows[ids.getInt(row)] = row;
+                }
+            }
+        }
+    }
+
+    /**
+     * looks up the id of a player, giving them a new one the first time they are seen
+     * @param name the player
+     * @return their id
+     * @throws IOException if a new player cannot be added to the list of players
+     */
+    private int playerId(String name) throws IOException{
+        synchronized (players){
+            Integer id = playerIds.get(name);
+            if(id == null){
+                id = players.size();
+                Files.writeString(file("players.txt"), name + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                players.add(name);
+                playerIds.put(name, id);
+                if(id == lastRows.length){
+                    lastRows = Arrays.copyOf(lastRows, id * 2);
+                    Arrays.fill(lastRows, id, lastRows.length, -1);
+                }
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @return the name of every player, indexed by id
+     */
+    private String[] names(){
+        synchronized (players){
+            return players.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * @return the time of the last row in the store
+     * @throws IOException if the time column cannot be read
+     */
+    private long lastTime() throws IOException{
+        try(FileChannel channel = FileChannel.open(file("time.col"))){
+            ByteBuffer last = ByteBuffer.allocate(8);
+            channel.read(last, (rows - 1) * 8);
+            return last.getLong(0);
+        }
+    }
+
+    /**
+     * gives a store written before the shoe column was added one, with every row it already has marked as a hand
+     * that cannot be replayed
+     * @throws IOException if the column cannot be written
+     */
+    private void addShoeColumn() throws IOException{
+        Path times = file("time.col");
+        if(Files.exists(file(SHOE_COLUMN)) || !Files.exists(times)){
+            return;
+        }
+        long count = Files.size(times) / 8;
+        Files.createFile(file(SHOE_COLUMN));
+        ByteBuffer unknown = ByteBuffer.allocate(BATCH_SIZE * SHOE_BYTES);
+        for(long row = 0; row < count; row += BATCH_SIZE){
+            unknown.clear();
+            for(long i = row; i < Math.min(count, row + BATCH_SIZE); i++){
+                unknown.putLong(0).putInt(-1);
+            }
+            append(SHOE_COLUMN, unknown);
+        }
+    }
+
+    /**
+     * works out the number of rows every column holds and cuts any longer column back to it
+     * @param cut true to cut the longer columns, false to leave them for the server writing them
+     * @return the number of rows
+     * @throws IOException if a column cannot be read or cut
+     */
+    private long complete(boolean cut) throws IOException{
+        String[] columns = {"time.col", "hand.col", "player.col", "prev.col", "seat.col", "outcome.col", "cards.col",
+                SHOE_COLUMN};
+        int[] widths = {8, 8, 4, 4, 1, 1, CARDS_BYTES, SHOE_BYTES};
+        long count = Long.MAX_VALUE;
+        for(int i = 0; i < columns.length; i++){
+            Path column = file(columns[i]);
+            if(!cut && columns[i].equals(SHOE_COLUMN) && !Files.exists(column)){
+                continue; // a store no server has opened since the column was added, its hands cannot be replayed
+            }
+            count = Math.min(count, Files.exists(column) ? Files.size(column) / widths[i] : 0);
+        }
+        for(int i = 0; i < columns.length; i++){
+            Path column = file(columns[i]);
+            if(cut && Files.exists(column) && Files.size(column) > count * widths[i]){
+                try(FileChannel channel = FileChannel.open(column, StandardOpenOption.WRITE)){
+                    channel.truncate(count * widths[i]);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * appends bytes to the end of a column
+     * @param name the file name of the column
+     * @param bytes the bytes, from the start of the buffer to its position
+     * @throws IOException if the column cannot be written
+     */
+    private void append(String name, ByteBuffer bytes) throws IOException{
+        try(FileChannel channel = FileChannel.open(file(name), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)){
+            bytes.flip();
+            while (bytes.hasRemaining()){
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * writes all of a buffer to a file at a position
+     * @param channel the file
+     * @param bytes the bytes to write
+     * @param position where in the file they go
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(FileChannel channel, ByteBuffer bytes, long position) throws IOException{
+        while (bytes.hasRemaining()){
+            position += channel.write(bytes, position);
+        }
+    }
+
+    /**
+     * @param name the name of a file of the store
+     * @return where it is kept
+     */
+    private Path file(String name){
+        return directory.resolve(name);
+    }
+
+    /**
+     * @param times the sorted time column
+     * @param time a time
+     * @return the first row at or after the time
+     * @throws IOException if the time column cannot be mapped
+     */
+    private static int lowerBound(Column times, long time) throws IOException{
+        int low = 0;
+        int high = times.rows;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if(times.getLong(middle) < time){
+                low = middle + 1;
+            }else{
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * packs the cards of a hand into the cards column format
+     * @param playerHand the cards of the player
+     * @param dealerHand the cards of the dealer
+     * @return the packed cards
+     */
+    private static byte[] pack(Hand playerHand, Hand dealerHand){
+        byte[] cards = new byte[CARDS_BYTES];
+        pack(playerHand, cards, 0);
+        pack(dealerHand, cards, HAND_BYTES);
+        return cards;
+    }
+
+    /**
+     * packs one hand, two ranks to a byte after its count
+     * @param hand the hand
+     * @param cards where it is packed
+     * @param offset where in the array the hand starts
+     */
+    private static void pack(Hand hand, byte[] cards, int offset){
+        int count = Math.min(hand.size(), MAX_CARDS);
+        cards[offset] = (byte) count;
+        for(int i = 0; i < count; i++){
+            cards[offset + 1 + i / 2] |= (byte) (hand.get(i) << (i % 2 == 0 ? 4 : 0));
+        }
+    }
+
+    /**
+     * reads one hand out of the cards column
+     * @param cards the cards column
+     * @param offset where the hand starts
+     * @param hand cleared and filled with the cards
+     */
+    private static void unpack(ByteBuffer cards, int offset, Hand hand){
+        hand.clear();
+        int count = cards.get(offset);
+        for(int i = 0; i < count; i++){
+            int packed = cards.get(offset + 1 + i / 2);
+            hand.add((byte) ((i % 2 == 0 ? packed >> 4 : packed) & 0x0f));
+        }
+    }
+
+    /**
+     * receives the rows found by a query
+     */
+    public interface Results {
+
+        /**
+         * called with each row found, the hands are reused for the next row
+         * @param time when the hand finished, in milliseconds since 1970
+         * @param hand the id of the hand in the journal, 0 if no journal was kept
+         * @param player who played it
+         * @param seat the seat it was played at
+         * @param outcome how it ended
+         * @param playerHand the cards of the player
+         * @param dealerHand the cards of the dealer
+         * @param seed the seed of the shoe it was dealt from
+         * @param shuffle which shuffle of the shoe it was dealt from, -1 if the shoe cannot be replayed
+         * @return false to stop the query
+         */
+        boolean row(long time, long hand, String player, byte seat, Outcome outcome, Hand playerHand, Hand dealerHand,
+                    long seed, int shuffle);
+    }
+
+    /**
+     * the first rows of a column mapped into memory for reading, a window at a time as they are asked for
+     */
+    private static final class Column {
+
+        /**
+         * the column file
+         */
+        private final FileChannel channel;
+
+        /**
+         * the bytes of each row
+         */
+        private final int width;
+
+        /**
+         * the number of rows that can be read
+         */
+        private final int rows;
+
+        /**
+         * the rows in each window, as many whole rows as fit in one mapping
+         */
+        private final int windowRows;
+
+        /**
+         * the windows mapped so far, null for one not yet asked for
+         */
+        private final MappedByteBuffer[] windows;
+
+        /**
+         * constructor for a column, maps nothing until a row is read
+         * @param channel the column file
+         * @param count the number of rows to read, cut to the rows the file holds
+         * @param width the bytes of each row
+         * @throws IOException if the size of the file cannot be read
+         */
+        private Column(FileChannel channel, long count, int width) throws IOException{
+            this.channel = channel;
+            this.width = width;
+            this.rows = (int) Math.min(Math.min(count, channel.size() / width), Integer.MAX_VALUE);
+            this.windowRows = Integer.MAX_VALUE / width;
+            this.windows = new MappedByteBuffer[(int) ((rows + (long) windowRows - 1) / windowRows)];
+        }
+
+        /**
+         * @param row a row
+         * @return the window holding it, mapped the first time it is asked for
+         * @throws IOException if the column cannot be mapped
+         */
+        private ByteBuffer window(int row) throws IOException{
+            int index = row / windowRows;
+            MappedByteBuffer window = windows[index];
+            if(window == null){
+                long start = (long) index * windowRows;
+                long length = Math.min(windowRows, rows - start) * width;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start * width, length);
+                window.order(ByteOrder.BIG_ENDIAN);
+                windows[index] = window;
+            }
+            return window;
+        }
+
+        /**
+         * @param row a row
+         * @return where it starts in its window
+         */
+        private int offset(int row){
+            return row % windowRows * width;
+        }
+
+        /**
+         * @param row a row of an 8 byte column
+         * @return its value
+         * @throws IOException if the column cannot be mapped
+         */
+        private long getLong(int row) throws IOException{
+            return window(row).getLong(offset(row));
+        }
+
+        /**
+         * @param row a row of a 4 byte column
+         * @return its value
+         * @throws IOException if the column cannot be mapped
+         */
+        private int getInt(int row) throws IOException{
+            return window(row).getInt(offset(row));
+        }
+
+        /**
+         * @param row a row of a 1 byte column
+         * @return its value
+         * @throws IOException if the column cannot be mapped
+         */
+        private byte get(int row) throws IOException{
+            return window(row).get(offset(row));
+        }
+    }
+
+    /**
+     * a finished hand waiting to be written
+     */
+    private static final class Row {
+
+        /**
+         * when the hand finished, in milliseconds since 1970
+         */
+        private final long time;
+
+        /**
+         * the id of the hand in the journal
+         */
+        private final long hand;
+
+        /**
+         * who played it
+         */
+        private final String player;
+
+        /**
+         * the seat it was played at
+         */
+        private final byte seat;
+
+        /**
+         * how it ended
+         */
+        private final Outcome outcome;
+
+        /**
+         * the cards of the player and the dealer, packed
+         */
+        private final byte[] cards;
+
+        /**
+         * the seed of the shoe it was dealt from
+         */
+        private final long seed;
+
+        /**
+         * which shuffle of the shoe it was dealt from
+         */
+        private final int shuffle;
+
+        /**
+         * constructor for a row
+         * @param time when the hand finished
+         * @param hand the id of the hand in the journal
+         * @param player who played it
+         * @param seat the seat it was played at
+         * @param outcome how it ended
+         * @param cards the packed cards
+         * @param seed the seed of the shoe
+         * @param shuffle which shuffle of the shoe
+         */
+        private Row(long time, long hand, String player, byte seat, Outcome outcome, byte[] cards, long seed, int shuffle){
+            this.time = time;
+            this.hand = hand;
+            this.player = player;
+            this.seat = seat;
+            this.outcome = outcome;
+            this.cards = cards;
+            this.seed = seed;
+            this.shuffle = shuffle;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * answers questions about the hand history of a server from the command line, such as which hands a player
+ * played between two times and what they drew, and exports the answer as text or csv. a hand dealt from a seeded
+ * shoe is shown with the seed and shuffle it came from, which deal it again
+ *
+ * settings are written as --name=value: dir, player, from, to, format, limit and count.
+ * times can be an instant such as 2026-10-18T09:00:00Z, a day such as 2026-10-18, or milliseconds since 1970
+ */
+public class HandHistoryTool {
+
+    /**
+     * the directory the hand history is kept in
+     */
+    private String dir = "history";
+
+    /**
+     * the player to find the hands of, null for every player
+     */
+    private String player = null;
+
+    /**
+     * the earliest time to find hands from, in milliseconds since 1970
+     */
+    private long from = Long.MIN_VALUE;
+
+    /**
+     * the time to find hands until, in milliseconds since 1970
+     */
+    private long to = Long.MAX_VALUE;
+
+    /**
+     * how the hands are written, "text" or "csv"
+     */
+    private String format = "text";
+
+    /**
+     * the most hands written
+     */
+    private long limit = Long.MAX_VALUE;
+
+    /**
+     * stores weather only the number of hands found is written
+     */
+    private boolean count = false;
+
+    /**
+     * main method to run the tool
+     * @param args the settings, written as --name=value
+     * @throws IOException if the hand history cannot be read
+     */
+    public static void main(String[] args) throws IOException{
+        HandHistoryTool tool = new HandHistoryTool();
+        for(String arg:args){
+            int equals = arg.indexOf('=');
+            if(!arg.startsWith("--") || equals < 0){
+                throw new IllegalArgumentException("arguments must be written as --name=value: " + arg);
+            }
+            tool.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        tool.run(System.out);
+    }
+
+    /**
+     * changes a single setting
+     * @param name the name of the setting
+     * @param value the new value of the setting
+     */
+    private void set(String name, String value){
+        switch (name) {
+            case "dir":
+                dir = value;
+                break;
+            case "player":
+                player = value;
+                break;
+            case "from":
+                from = time(value);
+                break;
+            case "to":
+                to = time(value);
+                break;
+            case "format":
+                if(!value.equals("text") && !value.equals("csv")){
+                    throw new IllegalArgumentException("format must be text or csv: " + value);
+                }
+                format = value;
+                break;
+            case "limit":
+                limit = Long.parseLong(value);
+                break;
+            case "count":
+                count = Boolean.parseBoolean(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting " + name);
+        }
+    }
+
+    /**
+     * reads a time setting
+     * @param value an instant, a day or milliseconds since 1970
+     * @return the time in milliseconds since 1970
+     */
+    private static long time(String value){
+        if(value.contains("T")){
+            return Instant.parse(value).toEpochMilli();
+        }
+        if(value.contains("-")){
+            return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+        return Long.parseLong(value);
+    }
+
+    /**
+     * runs the query and writes the hands found
+     * @param out where the hands are written
+     * @throws IOException if the hand history cannot be read
+     */
+    private void run(PrintStream out) throws IOException{
+        HandHistory history = HandHistory.open(Paths.get(dir));
+        long start = System.nanoTime();
+        long[] found = {0};
+        boolean csv = format.equals("csv");
+        if(csv && !count){
+            out.println("time,hand,player,seat,outcome,player_cards,player_score,dealer_cards,dealer_score,shoe_seed,shuffle");
+        }
+        StringBuilder line = new StringBuilder();
+        history.query(player, from, to, (time, hand, who, seat, outcome, playerHand, dealerHand, seed, shuffle) -> {
+            if(found[0] == limit){
+                return false;
+            }
+            found[0]++;
+            if(count){
+                return true;
+            }
+            line.setLength(0);
+            String between = csv ? "," : " ";
+            line.append(Instant.ofEpochMilli(time)).append(between);
+            line.append(csv ? "" : "hand ").append(hand).append(between);
+            line.append(who).append(between);
+            line.append(csv ? "" : "seat ").append(seat).append(between);
+            line.append(outcome.name().toLowerCase()).append(between);
+            cards(line.append(csv ? "" : "player "), playerHand, csv).append(between);
+            line.append(playerHand.getScore()).append(between);
+            cards(line.append(csv ? "" : "dealer "), dealerHand, csv).append(between);
+            line.append(dealerHand.getScore());
+            if(shuffle >= 0){ // the shoe was seeded, so the hand can be dealt again
+                line.append(between).append(csv ? "" : "shoe ").append(seed).append(between);
+                line.append(csv ? "" : "shuffle ").append(shuffle);
+            }else if(csv){
+                line.append(",,");
+            }
+            out.println(line);
+            return true;
+        });
+        if(count){
+            out.println(found[0]);
+        }
+        System.err.printf("%d hands found in %.2f ms out of %d%n", found[0], (System.nanoTime() - start) / 1e6, history.getRows());
+    }
+
+    /**
+     * writes the names of the cards of a hand
+     * @param line where they are written
+     * @param hand the hand
+     * @param csv true to separate them with spaces inside one csv field
+     * @return the line
+     */
+    private static StringBuilder cards(StringBuilder line, Hand hand, boolean csv){
+        for(int i = 0; i < hand.size(); i++){
+            if(i > 0){
+                line.append(csv ? ' ' : '-');
+            }
+            line.append(Card.name(hand.get(i)));
+        }
+        return line;
+    }
+}
@@ -0,0 +1,539 @@
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * an append only record of every card dealt, command played and outcome settled, kept so that hands in progress
+ * when the server died can be finished on the next start and so that every hand can be audited afterwards
+ *
+ * records are a fixed RECORD_SIZE bytes and are written into segment files mapped into memory, so writing one is a
+ * plain memory write with no system call. a game claims the next slot of the current segment with one atomic add,
+ * and only the game that fills a segment opens the next one. the mapped pages reach the disk when the operating system
+ * writes them back, which survives the process crashing, or when a background thread forces them, which also survives
+ * the machine losing power. how often that happens is set by the sync policy, nothing that plays a hand ever waits for it
+ *
+ * a checkpoint file holds the first segment a hand still in progress started in, it moves on as segments fill and
+ * their hands end. a start replays only the segments from there, the older ones are kept for auditing but never read
+ * again, so they can be moved away without touching the server
+ */
+public class HandJournal {
+
+    /**
+     * when the mapped pages are forced to the disk
+     */
+    public enum Sync {
+        /**
+         * never, the operating system writes them back in its own time
+         */
+        NONE,
+        /**
+         * every sync interval
+         */
+        INTERVAL,
+        /**
+         * as soon as a hand ends, every hand that ends while the disk is busy is covered by the next force together,
+         * and every sync interval if no hand ends
+         */
+        HAND
+    }
+
+    /**
+     * the size of every record in bytes
+     * the hand id (8), the type, seat and value (1 each), a spare byte and a check of the rest (4)
+     */
+    static final int RECORD_SIZE = 16;
+
+    /**
+     * a hand was dealt, the seat is the number of seats dealt in
+     */
+    static final byte START = 1;
+
+    /**
+     * a card was dealt, the value is its rank. the seat of this and of an action or outcome is the hand as
+     * BinaryProtocol.hand packs it, which is just the seat for the first hand of a seat
+     */
+    static final byte CARD = 2;
+
+    /**
+     * a player played a command, the value is its opcode
+     */
+    static final byte ACTION = 3;
+
+    /**
+     * a seat was settled, the value is the outcome code
+     */
+    static final byte OUTCOME = 4;
+
+    /**
+     * the hand is over, the value is how it ended
+     */
+    static final byte END = 5;
+
+    /**
+     * END value for a hand played to the end
+     */
+    static final byte FINISHED = 0;
+
+    /**
+     * END value for a hand thrown away because the player asked for a new one in the middle of it
+     */
+    static final byte ABANDONED = 1;
+
+    /**
+     * END value for a hand finished when the server started after dying in the middle of it
+     */
+    static final byte RECOVERED = 2;
+
+    /**
+     * END value for a hand the server died in the middle of dealing, too early for it to be finished, or at any point
+     * when the server keeps a ledger, which gives its bets back instead
+     */
+    static final byte VOID = 3;
+
+    /**
+     * the size of the pages the operating system writes back, a force always covers whole pages
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    /**
+     * the start of the name of every segment file, followed by its number
+     */
+    private static final String PREFIX = "journal-";
+
+    /**
+     * the end of the name of every segment file
+     */
+    private static final String SUFFIX = ".log";
+
+    /**
+     * the name of the checkpoint file, the first segment a start has to read and the id the next hand will be given
+     */
+    private static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * the directory the segment files are kept in
+     */
+    private final Path directory;
+
+    /**
+     * the size of every segment file in bytes, a whole number of records
+     */
+    private final int segmentSize;
+
+    /**
+     * when the mapped pages are forced to the disk
+     */
+    private final Sync sync;
+
+    /**
+     * how often the pages are forced to the disk at the latest, in nanoseconds
+     */
+    private final long syncNanos;
+
+    /**
+     * the segment being written
+     */
+    private volatile Segment current;
+
+    /**
+     * full segments that still have to be forced to the disk one last time
+     */
+    private final ConcurrentLinkedQueue<Segment> retired = new ConcurrentLinkedQueue<>();
+
+    /**
+     * the id the next hand will be given
+     */
+    private final AtomicLong nextHand = new AtomicLong(1);
+
+    /**
+     * the hands that were still in progress when the journal was last written
+     */
+    private final List<Interrupted> interrupted = new ArrayList<>();
+
+    /**
+     * the segment each hand started and not yet ended was started in, at the latest
+     */
+    private final ConcurrentHashMap<Long, Integer> unfinished = new ConcurrentHashMap<>();
+
+    /**
+     * the first segment the checkpoint file says a start has to read, only touched by the sync thread,
+     * or by the game that fills a segment if there is none
+     */
+    private int checkpointed;
+
+    /**
+     * the background thread forcing the pages to the disk, null if the sync policy is NONE
+     */
+    private Thread syncer;
+
+    /**
+     * constructor for a journal, reads the segments already in the directory and starts a new segment after them
+     * @param directory the directory the segment files are kept in, created if it does not exist
+     * @param segmentSize the size of every segment file in bytes
+     * @param sync when the mapped pages are forced to the disk
+     * @param syncMillis how often the pages are forced to the disk at the latest, in milliseconds
+     * @throws IOException if the directory cannot be read or the first segment cannot be created
+     */
+    public HandJournal(Path directory, int segmentSize, Sync sync, long syncMillis) throws IOException{
+        if(segmentSize < RECORD_SIZE){
+            throw new IllegalArgumentException("a segment must hold at least one record: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+        this.sync = sync;
+        this.syncNanos = syncMillis * 1_000_000;
+        Files.createDirectories(directory);
+        int last = replay();
+        current = new Segment(last + 1);
+    }
+
+    /**
+     * starts the thread forcing the pages to the disk, if the sync policy asks for one
+     */
+    public void start(){
+        if(sync == Sync.NONE){
+            return;
+        }
+        syncer = new Thread(() -> {
+            while (true){
+                LockSupport.parkNanos(this, syncNanos); // the end of a hand wakes it up early under the HAND policy
+                int first = firstNeeded(); // before the force, so the hands it leaves out have their ends on the disk
+                force();
+                checkpoint(first);
+            }
+        }, "blackjack-journal");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * @return an id for a new hand, never given out before by this journal
+     */
+    public long newHand(){
+        return nextHand.getAndIncrement();
+    }
+
+    /**
+     * adds a record to the journal, a memory write that never waits for the disk
+     * @param hand the id of the hand
+     * @param type what happened
+     * @param seat the seat it happened to, 0 for the dealer
+     * @param value the card, command, outcome or ending
+     */
+    public void record(long hand, byte type, byte seat, byte value){
+        if(type == START){
+            unfinished.put(hand, current.number); // before the record, which can only land in this segment or a later one
+        }
+        while (true){
+            Segment segment = current;
+            int offset = segment.claimed.getAndAdd(RECORD_SIZE);
+            if(offset + RECORD_SIZE <= segmentSize){
+                segment.map.putLong(offset, hand);
+                segment.map.put(offset + 8, type);
+                segment.map.put(offset + 9, seat);
+                segment.map.put(offset + 10, value);
+                segment.map.putInt(offset + 12, check(hand, type, seat, value)); // written last, a record is only read once this matches
+                break;
+            }
+            roll(segment);
+        }
+        if(type == END){
+            unfinished.remove(hand);
+            if(sync == Sync.HAND){
+                LockSupport.unpark(syncer);
+            }
+        }
+    }
+
+    /**
+     * @return the hands that were still in progress when the journal was last written, in the order they started
+     */
+    public List<Interrupted> getInterrupted(){
+        return interrupted;
+    }
+
+    /**
+     * forces every page written so far to the disk, called by the sync thread
+     */
+    public void force(){
+        Segment segment;
+        while ((segment = retired.poll()) != null){
+            segment.force();
+        }
+        current.force();
+    }
+
+    /**
+     * replaces a full segment with a new one, unless another game has already done so
+     * @param full the segment that is full
+     */
+    private synchronized void roll(Segment full){
+        if(current != full){
+            return;
+        }
+        try{
+            current = new Segment(full.number + 1);
+        }
+        catch (IOException ioException){
+            throw new IllegalStateException("could not open journal segment " + (full.number + 1), ioException);
+        }
+        retired.add(full);
+        if(sync == Sync.NONE){ // there is no sync thread to move the checkpoint on
+            checkpoint(firstNeeded());
+        }
+    }
+
+    /**
+     * @return the first segment a hand still in progress started in, the current segment if there is none
+     */
+    private int firstNeeded(){
+        int first = current.number; // read before the hands, one started after this is in this segment or a later one
+        for(int number:unfinished.values()){
+            first = Math.min(first, number);
+        }
+        return first;
+    }
+
+    /**
+     * writes the checkpoint file if the first segment a start has to read has moved on, forcing it to the disk first
+     * unless the sync policy is NONE. a checkpoint that cannot be written only makes the next start read more
+     * @param first the first segment a start has to read
+     */
+    private void checkpoint(int first){
+        if(first == checkpointed){
+            return;
+        }
+        Path file = directory.resolve(CHECKPOINT);
+        Path written = file.resolveSibling(CHECKPOINT + ".tmp");
+        ByteBuffer bytes = ByteBuffer.allocate(12).putInt(first).putLong(nextHand.get());
+        try{
+            try(FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)){
+                channel.write(bytes.flip());
+                if(sync != Sync.NONE){
+                    channel.force(true);
+                }
+            }
+            Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpointed = first;
+        }
+        catch (IOException ioException){
+            ioException.printStackTrace();
+        }
+    }
+
+    /**
+     * reads every record in the segments from the checkpoint on, keeping the hands that never ended
+     * a record that does not match its check was being written when the server died and is skipped
+     * @return the number of the last segment, 0 if there are none
+     * @throws IOException if a segment cannot be read
+     */
+    private int replay() throws IOException{
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        long next = 1;
+        if(Files.exists(checkpoint)){
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            checkpointed = bytes.getInt(0);
+            next = bytes.getLong(4);
+        }
+        List<Path> segments = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)){
+            for(Path file:files){
+                segments.add(file);
+            }
+        }
+        segments.sort(null); // the numbers are zero padded so the names sort in the order they were written
+        Map<Long, Interrupted> open = new LinkedHashMap<>();
+        long highest = 0;
+        int last = 0;
+        for(Path file:segments){
+            String name = file.getFileName().toString();
+            int number = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            last = Math.max(last, number);
+            if(number < checkpointed){
+                continue; // every hand started in it had ended
+            }
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(file));
+            for(int offset = 0; offset + RECORD_SIZE <= records.limit(); offset += RECORD_SIZE){
+                long hand = records.getLong(offset);
+                byte type = records.get(offset + 8);
+                byte seat = records.get(offset + 9);
+                byte value = records.get(offset + 10);
+                if(type == 0 || records.getInt(offset + 12) != check(hand, type, seat, value)){
+                    continue; // never written, or torn
+                }
+                highest = Math.max(highest, hand);
+                Interrupted state = open.get(hand);
+                if(type == START){
+                    open.put(hand, new Interrupted(hand));
+                    unfinished.put(hand, number);
+                }else if(type == END){
+                    open.remove(hand);
+                    unfinished.remove(hand);
+                }else if(state != null){
+                    state.apply(type, seat, value);
+                }
+            }
+        }
+        interrupted.addAll(open.values());
+        nextHand.set(Math.max(highest + 1, next));
+        return last;
+    }
+
+    /**
+     * mixes the fields of a record into a check that an unwritten or half written record will not match
+     * @param hand the id of the hand
+     * @param type what happened
+     * @param seat the seat it happened to
+     * @param value the card, command, outcome or ending
+     * @return the check
+     */
+    private static int check(long hand, byte type, byte seat, byte value){
+        long fields = (type & 0xff) << 16 | (seat & 0xff) << 8 | (value & 0xff);
+        return (int) SeededRandom.mix(hand * SeededRandom.GAMMA + fields + 1);
+    }
+
+    /**
+     * one segment file mapped into memory
+     */
+    private final class Segment {
+
+        /**
+         * the number of the segment, in the order they are written
+         */
+        private final int number;
+
+        /**
+         * the whole file mapped into memory
+         */
+        private final MappedByteBuffer map;
+
+        /**
+         * the offset of the next record to be written, past the end once the segment is full
+         */
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        /**
+         * the offset everything before has been forced to the disk, only touched by the sync thread
+         */
+        private int forced = 0;
+
+        /**
+         * constructor for a segment, creates the file at its full size and maps it
+         * @param number the number of the segment
+         * @throws IOException if the file cannot be created or mapped
+         */
+        private Segment(int number) throws IOException{
+            this.number = number;
+            Path file = directory.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX));
+            try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")){
+                raf.setLength(segmentSize);
+                map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize); // stays mapped after the file is closed
+            }
+        }
+
+        /**
+         * forces the records claimed since the last force to the disk, the last page is forced again next time
+         * as records claimed on it may still have been being written
+         */
+        private void force(){
+            int end = Math.min(claimed.get(), segmentSize);
+            if(end > forced){
+                map.force(forced, end - forced);
+                forced = end & -PAGE_SIZE;
+            }
+        }
+    }
+
+    /**
+     * a hand that was still in progress when the journal was last written, rebuilt from its records
+     */
+    public static final class Interrupted {
+
+        /**
+         * the id of the hand
+         */
+        private final long id;
+
+        /**
+         * the hands of every seat and the outcome of each already settled, indexed by seat number with the dealer at 0
+         */
+        private final SeatHands[] hands = new SeatHands[TableState.MAX_SEATS + 1];
+
+        /**
+         * constructor for an interrupted hand
+         * @param id the id of the hand
+         */
+        private Interrupted(long id){
+            this.id = id;
+            for(int i = 0; i < hands.length; i++){
+                hands[i] = new SeatHands();
+            }
+        }
+
+        /**
+         * applies a record to the hand
+         * @param type what happened
+         * @param hand the hand it happened to, as BinaryProtocol.hand packs it
+         * @param value the card, command or outcome
+         */
+        private void apply(byte type, byte hand, byte value){
+            int seat = BinaryProtocol.handSeat(hand);
+            int index = (hand & 0xff) >> 4;
+            if(seat >= hands.length || index >= SeatHands.MAX_HANDS){
+                return;
+            }
+            if(type == CARD){
+                hands[seat].open(index).add(value);
+            }else if(type == ACTION && value == BinaryProtocol.SPLIT){
+                hands[seat].setActive(index);
+                if(hands[seat].canSplit()){ // the cards dealt to both hands after it follow as their own records
+                    hands[seat].split();
+                }
+            }else if(type == OUTCOME){
+                hands[seat].open(index);
+                hands[seat].finish(index, Outcome.fromCode(value));
+            }
+        }
+
+        /**
+         * @return the id of the hand
+         */
+        public long getId(){
+            return id;
+        }
+
+        /**
+         * @param seat the seat number, 0 for the dealer
+         * @return the cards the first hand of the seat was dealt
+         */
+        public Hand getHand(int seat){
+            return hands[seat].get(0);
+        }
+
+        /**
+         * @param seat the seat number
+         * @return every hand of the seat and the outcome of each settled so far
+         */
+        public SeatHands getHands(int seat){
+            return hands[seat];
+        }
+    }
+}
@@ -0,0 +1,100 @@
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * a consistent hash ring, every node is put on the ring at many points and a key belongs to the first node found
+ * going round from the point of the key. adding or losing a node only moves the keys next to its own points,
+ * every other player keeps being sent to the same server
+ *
+ * a ring never changes once built, the lobby builds a new one when a node joins
+ */
+public final class HashRing {
+
+    /**
+     * the number of points each node is put at, more points spread the keys more evenly
+     */
+    public static final int POINTS_PER_NODE = 128;
+
+    /**
+     * the points on the ring, in order
+     */
+    private final long[] points;
+
+    /**
+     * the node at each point
+     */
+    private final String[] owners;
+
+    /**
+     * constructor for a ring
+     * @param nodes the nodes to put on the ring
+     */
+    public HashRing(Collection<String> nodes){
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for(String node:nodes){
+            for(int i = 0; i < POINTS_PER_NODE; i++){
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+        points = new long[ring.size()];
+        owners = new String[ring.size()];
+        int i = 0;
+        for(Map.Entry<Long, String> point:ring.entrySet()){
+            points[i] = point.getKey();
+            owners[i++] = point.getValue();
+        }
+    }
+
+    /**
+     * finds the node a key belongs to, going on round the ring past any node that cannot take it
+     * @param key the key, such as the name of a player
+     * @param accepts says which nodes can take the key, each node is asked at most once
+     * @return the first node going round from the key that can take it, null if none can
+     */
+    public String route(String key, Predicate<String> accepts){
+        if(points.length == 0){
+            return null;
+        }
+        int start = Arrays.binarySearch(points, hash(key));
+        if(start < 0){
+            start = -start - 1; // the first point after the key
+        }
+        Set<String> refused = new HashSet<>();
+        for(int i = 0; i < points.length; i++){
+            String node = owners[(start + i) % points.length];
+            if(!refused.contains(node)){
+                if(accepts.test(node)){
+                    return node;
+                }
+                refused.add(node);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * spreads a string over the whole range of a long, the same on every machine
+     * @param key the string
+     * @return its point on the ring
+     */
+    static long hash(String key){
+        long hash = 0xcbf29ce484222325L; // 64 bit fnv-1a
+        for(int i = 0; i < key.length(); i++){
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // finished with the murmur3 mix, fnv alone leaves keys that differ only at the end close together
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
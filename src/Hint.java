@@ -0,0 +1,73 @@
+
+/**
+ * the better of hitting and staying for a hand, with what each is worth to the player
+ */
+public final class Hint {
+
+    /**
+     * the better play, BinaryProtocol.HIT or BinaryProtocol.STAY
+     */
+    private final byte action;
+
+    /**
+     * the units the player can expect to win by hitting and then playing on as well as possible
+     */
+    private final double hitValue;
+
+    /**
+     * the units the player can expect to win by staying
+     */
+    private final double stayValue;
+
+    /**
+     * constructor for a hint, the better play is whichever is worth more
+     * @param hitValue the units the player can expect to win by hitting
+     * @param stayValue the units the player can expect to win by staying
+     */
+    public Hint(double hitValue, double stayValue){
+        this(hitValue > stayValue ? BinaryProtocol.HIT : BinaryProtocol.STAY, hitValue, stayValue);
+    }
+
+    /**
+     * constructor for a hint read from the server, where the values were rounded after the better play was chosen
+     * @param action the better play, BinaryProtocol.HIT or BinaryProtocol.STAY
+     * @param hitValue the units the player can expect to win by hitting
+     * @param stayValue the units the player can expect to win by staying
+     */
+    public Hint(byte action, double hitValue, double stayValue){
+        this.action = action;
+        this.hitValue = hitValue;
+        this.stayValue = stayValue;
+    }
+
+    /**
+     * @return the better play, BinaryProtocol.HIT or BinaryProtocol.STAY
+     */
+    public byte getAction(){
+        return action;
+    }
+
+    /**
+     * @return the units the player can expect to win by hitting and then playing on as well as possible
+     */
+    public double getHitValue(){
+        return hitValue;
+    }
+
+    /**
+     * @return the units the player can expect to win by staying
+     */
+    public double getStayValue(){
+        return stayValue;
+    }
+
+    /**
+     * @return the hint as it is shown to the player
+     */
+    public String getMessage(){
+        if(action == BinaryProtocol.HIT){
+            return String.format("Hint: hit, it is worth %.3f units a hand against %.3f for staying", hitValue, stayValue);
+        }
+        return String.format("Hint: stay, it is worth %.3f units a hand against %.3f for hitting", stayValue, hitValue);
+    }
+}
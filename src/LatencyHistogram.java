@@ -0,0 +1,175 @@
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a histogram of latencies in nanoseconds that any number of threads can record into without locking
+ *
+ * values are counted in log-linear buckets in the style of HdrHistogram: every power of two is split into
+ * 64 equal buckets, so any recorded value is reported to within about 1.5% while the whole range of a long
+ * fits in a few thousand counters
+ */
+public class LatencyHistogram {
+
+    /**
+     * the number of bits of each value kept exactly, values below 2 to this power get a bucket each
+     */
+    private static final int PRECISION_BITS = 7;
+
+    /**
+     * the number of values that get a bucket each
+     */
+    private static final int EXACT = 1 << PRECISION_BITS;
+
+    /**
+     * the number of buckets each power of two above EXACT is split into
+     */
+    private static final int HALF = EXACT / 2;
+
+    /**
+     * the number of buckets needed for every positive long
+     */
+    private static final int BUCKETS = EXACT + (Long.SIZE - PRECISION_BITS) * HALF;
+
+    /**
+     * the number of values recorded in each bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * the number of values recorded
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * the sum of every value recorded, for the mean
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * the largest value recorded
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * records a value
+     * @param nanos the value, negative values are recorded as 0
+     */
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long largest;
+        while (value > (largest = max.get()) && !max.compareAndSet(largest, value)){
+            // another thread raised the max at the same time, checks again against the new max
+        }
+    }
+
+    /**
+     * adds every value recorded in another histogram to this one
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other){
+        for(int i = 0; i < BUCKETS; i++){
+            long bucket = other.counts.get(i);
+            if(bucket != 0){
+                counts.addAndGet(i, bucket);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * @return the largest value recorded
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * @return the sum of every value recorded
+     */
+    public long getSum(){
+        return sum.get();
+    }
+
+    /**
+     * @return the mean of every value recorded, 0 if there are none
+     */
+    public double getMean(){
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) sum.get() / recorded;
+    }
+
+    /**
+     * finds the value a given fraction of recorded values are at or below
+     * @param fraction the fraction, for example 0.99 for the 99th percentile
+     * @return the value, to within the precision of the buckets, 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction){
+        long recorded = count.get();
+        if(recorded == 0){
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * recorded));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts.get(i);
+            if(seen >= target){
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @param upTo the value to count up to
+     * @return the number of values recorded that are at or below a value, to within the precision of the buckets
+     */
+    public long getCountAtOrBelow(long upTo){
+        int last = bucket(Math.max(0, upTo));
+        long total = 0;
+        for(int i = 0; i <= last; i++){
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * finds the bucket a value is counted in
+     * @param value the value, not negative
+     * @return the index of the bucket
+     */
+    private static int bucket(long value){
+        if(value < EXACT){
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+        int top = (int) (value >>> shift); // the highest PRECISION_BITS bits, from HALF up to EXACT - 1
+        return EXACT + (shift - 1) * HALF + (top - HALF);
+    }
+
+    /**
+     * finds the largest value counted in a bucket
+     * @param bucket the index of the bucket
+     * @return the largest value
+     */
+    private static long highest(int bucket){
+        if(bucket < EXACT){
+            return bucket;
+        }
+        int shift = (bucket - EXACT) / HALF + 1;
+        long top = (bucket - EXACT) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+}
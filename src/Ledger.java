@@ -0,0 +1,386 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * the bankroll of every player and what the house has won or lost, in whole chips
+ *
+ * a bet is taken out of the bankroll of a player before the hand is dealt and the payout is put back when it is
+ * settled, a win pays 1 to 1, a blackjack 3 to 2 rounded down to a whole chip and a tie gives the bet back.
+ * doubling or splitting a hand stakes another bet the same size, and insurance stakes half a bet.
+ * each account is guarded by one of STRIPES locks picked by the hash of the player, so tables settling at the
+ * same time only wait for each other when their players share a stripe, and what the house has won is a LongAdder
+ * added to under the same lock, which every table can add to at once without meeting on one counter
+ *
+ * every few seconds the ledger takes all the stripes at once, copies every account and the house in the moment no
+ * bet is being moved, and writes the copy to a file in one atomic rename. a player who starts again after a restart
+ * gets the bankroll they had in the last copy, and a bet that was on a hand still being played is given back.
+ * the hand is not played out either, the server writes it down in the journal as void when it restarts
+ *
+ * a player is who the game says they are, the name they gave with a NAME command and the address they connect from,
+ * or the address alone if they gave none. players who share an address, behind one router or on one machine, share
+ * one bankroll until they name themselves, and anyone at that address can play on a name they know
+ */
+public class Ledger {
+
+    /**
+     * the number of locks the accounts are spread over, a power of two
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * the first four bytes of a ledger file, "BJLG"
+     */
+    private static final int MAGIC = 0x424a4c47;
+
+    /**
+     * the version of the ledger file written
+     */
+    private static final int FORMAT = 1;
+
+    /**
+     * the file the ledger is kept in
+     */
+    private final Path file;
+
+    /**
+     * the chips a player starts with the first time they play
+     */
+    private final long bankroll;
+
+    /**
+     * the bet of a player who has not placed one
+     */
+    private final int defaultBet;
+
+    /**
+     * the largest bet a player can place
+     */
+    private final int maxBet;
+
+    /**
+     * how often the ledger is written to its file, in milliseconds
+     */
+    private final long snapshotMillis;
+
+    /**
+     * the account of every player who has played, by player
+     */
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * the locks guarding the accounts, an account is guarded by the one its player hashes to
+     */
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    /**
+     * the chips the house has won less what it has paid out, only added to under the lock of an account
+     */
+    private final LongAdder house = new LongAdder();
+
+    /**
+     * constructor for a ledger, reads the file if there is one
+     * @param file the file the ledger is kept in
+     * @param bankroll the chips a player starts with the first time they play
+     * @param defaultBet the bet of a player who has not placed one
+     * @param maxBet the largest bet a player can place
+     * @param snapshotMillis how often the ledger is written to its file, in milliseconds
+     * @throws IOException if the file is there and cannot be read
+     */
+    public Ledger(Path file, long bankroll, int defaultBet, int maxBet, long snapshotMillis) throws IOException{
+        if(defaultBet < 1 || defaultBet > maxBet){
+            throw new IllegalArgumentException("the default bet must be from 1 to the largest bet: " + defaultBet);
+        }
+        this.file = file;
+        this.bankroll = bankroll;
+        this.defaultBet = defaultBet;
+        this.maxBet = maxBet;
+        this.snapshotMillis = snapshotMillis;
+        for(int i = 0; i < STRIPES; i++){
+            stripes[i] = new ReentrantLock();
+        }
+        if(Files.exists(file)){
+            load();
+        }
+    }
+
+    /**
+     * starts the thread writing the ledger to its file
+     */
+    public void start(){
+        Thread writer = new Thread(() -> {
+            while (true){
+                try{
+                    Thread.sleep(snapshotMillis);
+                    snapshot();
+                }
+                catch (InterruptedException interruptedException){
+                    return;
+                }
+                catch (IOException ioException){
+                    System.err.println("ledger not written: " + ioException.getMessage());
+                }
+            }
+        }, "blackjack-ledger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * finds the account of a player, opening one with the starting bankroll the first time they play
+     * @param player who is playing
+     * @return their account
+     */
+    public Account open(String player){
+        return accounts.computeIfAbsent(player, name -> new Account(name, bankroll, stripes[name.hashCode() & (STRIPES - 1)]));
+    }
+
+    /**
+     * takes a bet out of a bankroll for a hand about to be dealt
+     * @param account the account of the player
+     * @param bet the bet
+     * @return false if the bankroll does not cover the bet, nothing is taken then
+     */
+    public boolean stake(Account account, long bet){
+        account.lock.lock();
+        try{
+            if(account.balance < bet){
+                return false;
+            }
+            account.balance -= bet;
+            account.inPlay += bet;
+            return true;
+        }
+        finally {
+            account.lock.unlock();
+        }
+    }
+
+    /**
+     * pays out a bet once its hand is settled
+     * @param account the account of the player
+     * @param bet the bet that was staked on the hand
+     * @param outcome how the hand ended
+     * @param blackjack true if the player won with a blackjack
+     * @return the bankroll of the player after the payout
+     */
+    public long settle(Account account, long bet, Outcome outcome, boolean blackjack){
+        return pay(account, bet, payout(bet, outcome, blackjack));
+    }
+
+    /**
+     * pays out an insurance bet once the dealer has played, insurance pays 2 to 1 if the dealer has a blackjack
+     * @param account the account of the player
+     * @param stake the insurance that was staked, half the bet on the hand
+     * @param dealerBlackjack true if the dealer had a blackjack
+     * @return the bankroll of the player after the payout
+     */
+    public long insurance(Account account, long stake, boolean dealerBlackjack){
+        return pay(account, stake, dealerBlackjack ? 3 * stake : 0);
+    }
+
+    /**
+     * gives a bet to the house without finishing its hand, for a hand the player gave up for a new one
+     * @param account the account of the player
+     * @param bet the bet that was staked on the hand
+     * @return the bankroll of the player
+     */
+    public long forfeit(Account account, long bet){
+        return pay(account, bet, 0);
+    }
+
+    /**
+     * moves a bet out of play, paying the player and giving the house the rest
+     * @param account the account of the player
+     * @param bet the bet that was staked on the hand
+     * @param payout what the player gets back, counting their bet
+     * @return the bankroll of the player after the payout
+     */
+    private long pay(Account account, long bet, long payout){
+        account.lock.lock();
+        try{
+            account.inPlay -= bet;
+            account.balance += payout;
+            house.add(bet - payout); // under the lock, so a snapshot sees the bankroll and the house move together
+            return account.balance;
+        }
+        finally {
+            account.lock.unlock();
+        }
+    }
+
+    /**
+     * @param account the account of a player
+     * @return the bankroll of the player, not counting bets on hands being played
+     */
+    public long getBalance(Account account){
+        account.lock.lock();
+        try{
+            return account.balance;
+        }
+        finally {
+            account.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the chips the house has won less what it has paid out, as of the hands settled so far
+     */
+    public long getHouse(){
+        return house.sum();
+    }
+
+    /**
+     * @return the bet of a player who has not placed one
+     */
+    public int getDefaultBet(){
+        return defaultBet;
+    }
+
+    /**
+     * @param bet a bet a player asked to place
+     * @return true if the bet is from 1 chip to the largest bet
+     */
+    public boolean isAllowed(long bet){
+        return bet >= 1 && bet <= maxBet;
+    }
+
+    /**
+     * works out what a bet pays back
+     * @param bet the bet
+     * @param outcome how the hand ended
+     * @param blackjack true if the player won with a blackjack
+     * @return what the player gets back, counting their bet
+     */
+    public static long payout(long bet, Outcome outcome, boolean blackjack){
+        if(outcome.getUnits() > 0){
+            return blackjack ? bet + bet * 3 / 2 : 2 * bet;
+        }
+        return outcome.getUnits() == 0 ? bet : 0;
+    }
+
+    /**
+     * @param balance the bankroll of a player
+     * @param bet the bet of the player, 0 if none is placed
+     * @return the message telling the player their bankroll
+     */
+    public static String message(long balance, long bet){
+        return "Your bankroll is " + balance + " chips" + (bet > 0 ? ", your bet is " + bet : ", you cannot cover your bet");
+    }
+
+    /**
+     * writes every account and the house to the file, as they all were at one moment
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void snapshot() throws IOException{
+        List<String> players = new ArrayList<>();
+        List<Long> balances = new ArrayList<>();
+        long won;
+        for(ReentrantLock stripe:stripes){ // always taken in the same order, so two snapshots cannot deadlock
+            stripe.lock();
+        }
+        try{
+            for(Account account:accounts.values()){ // one opened meanwhile is guarded by a stripe held here too
+                players.add(account.player);
+                balances.add(account.balance + account.inPlay); // its hand is void after a restart
+            }
+            won = house.sum();
+        }
+        finally {
+            for(ReentrantLock stripe:stripes){
+                stripe.unlock();
+            }
+        }
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(written)))){
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(won);
+            out.writeInt(players.size());
+            for(int i = 0; i < players.size(); i++){
+                out.writeUTF(players.get(i));
+                out.writeLong(balances.get(i));
+            }
+        }
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * reads the accounts and the house back from the file
+     * @throws IOException if the file cannot be read or is not a ledger
+     */
+    private void load() throws IOException{
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+            if(in.readInt() != MAGIC){
+                throw new StreamCorruptedException(file + " is not a ledger");
+            }
+            int format = in.readInt();
+            if(format != FORMAT){
+                throw new StreamCorruptedException("unsupported ledger format " + format);
+            }
+            house.add(in.readLong());
+            int count = in.readInt();
+            for(int i = 0; i < count; i++){
+                Account account = open(in.readUTF());
+                account.balance = in.readLong();
+            }
+        }
+    }
+
+    /**
+     * the chips of one player, only read or changed while holding its lock
+     */
+    public static final class Account {
+
+        /**
+         * who the account belongs to
+         */
+        private final String player;
+
+        /**
+         * the stripe guarding this account, shared with the other accounts that hash to it
+         */
+        private final ReentrantLock lock;
+
+        /**
+         * the chips the player has, not counting bets on hands being played
+         */
+        private long balance;
+
+        /**
+         * the chips bet on hands being played
+         */
+        private long inPlay = 0;
+
+        /**
+         * constructor for an account
+         * @param player who the account belongs to
+         * @param balance the chips the player starts with
+         * @param lock the stripe guarding the account
+         */
+        private Account(String player, long balance, ReentrantLock lock){
+            this.player = player;
+            this.balance = balance;
+            this.lock = lock;
+        }
+
+        /**
+         * @return who the account belongs to
+         */
+        public String getPlayer(){
+            return player;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * reads and writes the subset of the java object serialization stream format that the client uses,
+ * a stream header followed by String objects, so the non-blocking transport can talk to the
+ * existing client without an ObjectInputStream or ObjectOutputStream per connection
+ */
+public class LegacyStreamCodec {
+
+    /**
+     * the magic number at the start of every object stream
+     */
+    private static final short STREAM_MAGIC = (short) 0xaced;
+
+    /**
+     * the object stream protocol version
+     */
+    private static final short STREAM_VERSION = 5;
+
+    /**
+     * a String shorter than 65536 bytes
+     */
+    private static final byte TC_STRING = (byte) 0x74;
+
+    /**
+     * a String of 65536 bytes or more
+     */
+    private static final byte TC_LONGSTRING = (byte) 0x7c;
+
+    /**
+     * a reference back to an object already written to the stream
+     */
+    private static final byte TC_REFERENCE = (byte) 0x71;
+
+    /**
+     * tells the reader to forget all of the objects written so far
+     */
+    private static final byte TC_RESET = (byte) 0x79;
+
+    /**
+     * the first handle given out to an object in the stream
+     */
+    private static final int BASE_WIRE_HANDLE = 0x7e0000;
+
+    /**
+     * the number of bytes in the stream header
+     */
+    public static final int HEADER_LENGTH = 4;
+
+    /**
+     * the longest String a client may send in bytes, every command is a few words so anything longer is refused
+     * before the server waits for it to arrive
+     */
+    public static final int MAX_READ_LENGTH = 256;
+
+    /**
+     * every String read so far, indexed by handle, so back references can be resolved
+     * ObjectOutputStream writes a reference instead of the String again when the same object is sent twice
+     */
+    private final ArrayList<String> handles = new ArrayList<>();
+
+    /**
+     * stores weather the stream header has been read yet
+     */
+    private boolean headerRead = false;
+
+    /**
+     * reads the next String from the buffer
+     * @param in the bytes received so far, left positioned after the String when one is returned
+     * @return the String read, or null if the buffer does not hold a whole String yet
+     * @throws IOException if the bytes are not a stream of Strings, or a String is longer than MAX_READ_LENGTH
+     */
+    public String decode(ByteBuffer in) throws IOException{
+        if(!headerRead){
+            if(in.remaining() < HEADER_LENGTH){
+                return null;
+            }
+            if(in.getShort() != STREAM_MAGIC || in.getShort() != STREAM_VERSION){
+                throw new StreamCorruptedException("invalid stream header");
+            }
+            headerRead = true;
+        }
+        while (in.hasRemaining()){
+            int start = in.position();
+            byte tag = in.get();
+            if(tag == TC_RESET){
+                handles.clear();
+                continue;
+            }
+            if(tag == TC_REFERENCE){
+                if(in.remaining() < 4){
+                    in.position(start);
+                    return null;
+                }
+                int handle = in.getInt() - BASE_WIRE_HANDLE;
+                if(handle < 0 || handle >= handles.size()){
+                    throw new StreamCorruptedException("invalid handle " + handle);
+                }
+                return handles.get(handle);
+            }
+            if(tag == TC_LONGSTRING){
+                throw new StreamCorruptedException("String too long, over 65535 bytes");
+            }
+            if(tag != TC_STRING){
+                throw new StreamCorruptedException("unexpected type code " + tag + ", only Strings are supported");
+            }
+            if(in.remaining() < 2){
+                in.position(start);
+                return null;
+            }
+            int length = in.getShort() & 0xffff;
+            if(length > MAX_READ_LENGTH){
+                throw new StreamCorruptedException("String too long: " + length + " bytes");
+            }
+            if(in.remaining() < length){
+                in.position(start);
+                return null;
+            }
+            String message = readModifiedUtf(in, length);
+            handles.add(message);
+            return message;
+        }
+        return null;
+    }
+
+    /**
+     * writes the stream header, this must be the first thing sent on a connection
+     * @param out the buffer to write to
+     */
+    public static void writeHeader(ByteBuffer out){
+        out.putShort(STREAM_MAGIC);
+        out.putShort(STREAM_VERSION);
+    }
+
+    /**
+     * works out how many bytes a String will take up once encoded
+     * @param message the String to be encoded
+     * @return the number of bytes encode will write
+     */
+    public static int encodedLength(String message){
+        long length = utfLength(message);
+        return (int) (length > 0xffff ? 1 + 8 + length : 1 + 2 + length);
+    }
+
+    /**
+     * writes a String the same way ObjectOutputStream.writeObject does, without ever writing a back reference
+     * @param message the String to be written
+     * @param out the buffer to write to, must have at least encodedLength bytes remaining
+     */
+    public static void encode(String message, ByteBuffer out){
+        long length = utfLength(message);
+        if(length > 0xffff){
+            out.put(TC_LONGSTRING);
+            out.putLong(length);
+        }else{
+            out.put(TC_STRING);
+            out.putShort((short) length);
+        }
+        putModifiedUtf(message, out);
+    }
+
+    /**
+     * starts a String whose bytes are written straight into the buffer afterwards, finish it with endString
+     * only for Strings shorter than 65536 bytes
+     * @param out the buffer to write to
+     * @return the position of the length, to pass to endString
+     */
+    public static int beginString(ByteBuffer out){
+        out.put(TC_STRING);
+        int lengthPosition = out.position();
+        out.putShort((short) 0); // filled in by endString once the length is known
+        return lengthPosition;
+    }
+
+    /**
+     * finishes a String started with beginString by filling in its length
+     * @param out the buffer the String was written to
+     * @param lengthPosition the position returned by beginString
+     */
+    public static void endString(ByteBuffer out, int lengthPosition){
+        int length = out.position() - lengthPosition - 2;
+        if(length > 0xffff){
+            throw new IllegalStateException("String too long to write in place: " + length + " bytes");
+        }
+        out.putShort(lengthPosition, (short) length);
+    }
+
+    /**
+     * encodes text as modified utf-8 once, so it can be copied into many Strings with no further work
+     * @param text the text to encode
+     * @return the modified utf-8 bytes, without a type code or length
+     */
+    public static byte[] modifiedUtf(String text){
+        ByteBuffer bytes = ByteBuffer.allocate((int) utfLength(text));
+        putModifiedUtf(text, bytes);
+        return bytes.array();
+    }
+
+    /**
+     * writes the modified utf-8 bytes of a String
+     * @param message the String to be written
+     * @param out the buffer to write to
+     */
+    private static void putModifiedUtf(String message, ByteBuffer out){
+        for(int i = 0; i < message.length(); i++){
+            char c = message.charAt(i);
+            if(c >= 0x0001 && c <= 0x007f){
+                out.put((byte) c);
+            }else if(c <= 0x07ff){ // includes the null character, which modified utf-8 writes as two bytes
+                out.put((byte) (0xc0 | ((c >> 6) & 0x1f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }else{
+                out.put((byte) (0xe0 | ((c >> 12) & 0x0f)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    /**
+     * counts the bytes in the modified utf-8 form of a String
+     * @param message the String to be measured
+     * @return the number of bytes
+     */
+    private static long utfLength(String message){
+        long length = 0;
+        for(int i = 0; i < message.length(); i++){
+            char c = message.charAt(i);
+            if(c >= 0x0001 && c <= 0x007f){
+                length++;
+            }else if(c <= 0x07ff){
+                length += 2;
+            }else{
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * reads modified utf-8 bytes into a String
+     * @param in the buffer to read from
+     * @param length the number of bytes to read
+     * @return the String that was read
+     * @throws IOException if the bytes are not valid modified utf-8
+     */
+    private static String readModifiedUtf(ByteBuffer in, int length) throws IOException{
+        char[] chars = new char[length];
+        int count = 0;
+        int end = in.position() + length;
+        while (in.position() < end){
+            int a = in.get() & 0xff;
+            if(a < 0x80){
+                chars[count++] = (char) a;
+            }else if((a & 0xe0) == 0xc0 && in.position() < end){
+                int b = in.get() & 0xff;
+                chars[count++] = (char) (((a & 0x1f) << 6) | (b & 0x3f));
+            }else if((a & 0xf0) == 0xe0 && in.position() + 1 < end){
+                int b = in.get() & 0xff;
+                int c = in.get() & 0xff;
+                chars[count++] = (char) (((a & 0x0f) << 12) | ((b & 0x3f) << 6) | (c & 0x3f));
+            }else{
+                throw new StreamCorruptedException("malformed String");
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,383 @@
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * opens a large number of sessions against a running server without any windows, each one playing hands
+ * with a scripted strategy as fast as the server answers, and reports the hands played per second and the
+ * 50th, 99th and 99.9th percentile time the server took to answer each kind of command
+ *
+ * settings are written as --name=value: host, port, sessions, seconds, hands, strategy, ramp, version, batch and lobby.
+ * the run stops after the given number of seconds, or once every session has played the given number of hands.
+ * with batch each session sends the stay that ends a hand and the new hand after it as one batch, the way a bot
+ * that knows its next command would, and waits for the batch result instead of a reply to each.
+ * with lobby, as host:port, each session asks the lobby which server to play on under a name of its own and the
+ * report shows how many sessions each server was given.
+ * every command is expected to get exactly one reply, so the server must give each session a game of its own (--seats=1)
+ */
+public class LoadGenerator {
+
+    /**
+     * the percentiles reported for each command
+     */
+    private static final double[] PERCENTILES = {0.50, 0.99, 0.999};
+
+    /**
+     * the name of the server to connect to
+     */
+    private String host = "127.0.0.1";
+
+    /**
+     * the port the server listens on
+     */
+    private int port = BlackjackConnection.DEFAULT_PORT;
+
+    /**
+     * the number of sessions open at the same time
+     */
+    private int sessions = 1000;
+
+    /**
+     * how long to play for, in seconds
+     */
+    private long seconds = 30;
+
+    /**
+     * the number of hands each session plays, 0 to play until the time runs out
+     */
+    private long hands = 0;
+
+    /**
+     * how each session decides to hit or stay
+     */
+    private PlayerStrategy strategy = PlayerStrategy.BASIC;
+
+    /**
+     * the number of seconds over which the sessions are opened, so the server is not sent every connection at once
+     */
+    private double ramp = 1;
+
+    /**
+     * the version of the binary protocol the sessions speak
+     */
+    private int version = BinaryProtocol.VERSION;
+
+    /**
+     * stores weather commands that can be sent together are sent as one batch
+     */
+    private boolean batch = false;
+
+    /**
+     * the lobby that says which server each session plays on, as host:port, null to play on host and port
+     */
+    private String lobby = null;
+
+    /**
+     * the number of sessions the lobby sent to each server
+     */
+    private final ConcurrentHashMap<String, LongAdder> routed = new ConcurrentHashMap<>();
+
+    /**
+     * the time the server took to answer each command, indexed by opcode, batches are kept under BATCH
+     */
+    private final LatencyHistogram[] latencies = new LatencyHistogram[BinaryProtocol.BATCH];
+
+    /**
+     * the number of hands played to the end by every session
+     */
+    private final AtomicLong played = new AtomicLong();
+
+    /**
+     * the number of sessions that ended with an error
+     */
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * constructor for a load generator
+     */
+    public LoadGenerator(){
+        for(int i = 0; i < latencies.length; i++){
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * main method to run the load generator
+     * @param args the settings, written as --name=value
+     * @throws Exception if the server cannot be found or the run is interrupted
+     */
+    public static void main(String[] args) throws Exception{
+        LoadGenerator generator = new LoadGenerator();
+        for(String arg:args){
+            int equals = arg.indexOf('=');
+            if(!arg.startsWith("--") || equals < 0){
+                throw new IllegalArgumentException("arguments must be written as --name=value: " + arg);
+            }
+            generator.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        System.out.printf("%d sessions against %s:%d, %s strategy, protocol version %d%s%n",
+                generator.sessions, generator.host, generator.port, generator.strategy, generator.version,
+                generator.batch ? ", batched" : "");
+        double elapsed = generator.run();
+        System.out.print(generator.report(elapsed));
+    }
+
+    /**
+     * changes a single setting
+     * @param name the name of the setting
+     * @param value the new value of the setting
+     */
+    private void set(String name, String value){
+        switch (name) {
+            case "host":
+                host = value;
+                break;
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "sessions":
+                sessions = Integer.parseInt(value);
+                break;
+            case "seconds":
+                seconds = Long.parseLong(value);
+                break;
+            case "hands":
+                hands = Long.parseLong(value);
+                break;
+            case "strategy":
+                strategy = PlayerStrategy.valueOf(value.toUpperCase());
+                break;
+            case "ramp":
+                ramp = Double.parseDouble(value);
+                break;
+            case "version":
+                version = Integer.parseInt(value);
+                break;
+            case "batch":
+                batch = Boolean.parseBoolean(value);
+                break;
+            case "lobby":
+                lobby = value;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting " + name);
+        }
+    }
+
+    /**
+     * opens every session and waits for them all to finish
+     * @return the number of seconds the run took
+     * @throws IOException if the host cannot be found
+     * @throws InterruptedException if interrupted while waiting for the sessions
+     */
+    public double run() throws IOException, InterruptedException{
+        InetAddress server = InetAddress.getByName(host);
+        InetSocketAddress lobbyAddress = lobby == null ? null : LobbyProtocol.address(lobby, LobbyProtocol.DEFAULT_PORT);
+        CountDownLatch finished = new CountDownLatch(sessions);
+        ExecutorService executor = BlackjackServer.newSessionExecutor();
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        long spacing = (long) (ramp * 1e9 / Math.max(1, sessions));
+        try{
+            for(int i = 0; i < sessions; i++){
+                long opensAt = start + i * spacing;
+                String name = "player-" + i;
+                executor.execute(() -> {
+                    try{
+                        long wait = opensAt - System.nanoTime();
+                        if(wait > 0){
+                            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                        }
+                        if(lobbyAddress == null){
+                            play(server, port, deadline);
+                        }else{
+                            InetSocketAddress node = LobbyProtocol.route(lobbyAddress, name);
+                            routed.computeIfAbsent(node.getHostString() + ":" + node.getPort(), key -> new LongAdder()).increment();
+                            play(node.getAddress(), node.getPort(), deadline);
+                        }
+                    }
+                    catch (IOException | InterruptedException e){
+                        errors.incrementAndGet();
+                    }
+                    finally {
+                        finished.countDown();
+                    }
+                });
+            }
+            finished.await();
+        }
+        finally {
+            executor.shutdown();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * plays hands on a single session until the deadline or the hand limit is reached
+     * @param server the address of the server
+     * @param port the port the server listens on
+     * @param deadline the time, from System.nanoTime, to stop at
+     * @throws IOException if the connection fails
+     */
+    private void play(InetAddress server, int port, long deadline) throws IOException{
+        try (BlackjackConnection connection = new BlackjackConnection(server, port, version)){
+            connection.getStreams();
+            Player player = new Player();
+            connection.readEvent(player); // the welcome
+            if(batch){
+                playBatched(connection, player, deadline);
+            }else{
+                for(long hand = 0; (hands == 0 || hand < hands) && System.nanoTime() < deadline; hand++){
+                    command(connection, BinaryProtocol.NEW_HAND, player);
+                    while (!player.handOver && strategy.shouldHit(player.hand, player.dealerCard)){
+                        command(connection, BinaryProtocol.HIT, player);
+                    }
+                    if(!player.handOver){
+                        command(connection, BinaryProtocol.STAY, player);
+                    }
+                    played.incrementAndGet();
+                }
+            }
+            connection.send(BinaryProtocol.DISCONNECT);
+        }
+    }
+
+    /**
+     * plays hands on a single session sending the end of each hand and the start of the next as one batch
+     * @param connection the connection to the server
+     * @param player where the answers are sent
+     * @param deadline the time, from System.nanoTime, to stop at
+     * @throws IOException if the connection fails
+     */
+    private void playBatched(BlackjackConnection connection, Player player, long deadline) throws IOException{
+        batch(connection, player, BinaryProtocol.NEW_HAND);
+        long hand = 0;
+        while (true){
+            if(!player.handOver && strategy.shouldHit(player.hand, player.dealerCard)){
+                batch(connection, player, BinaryProtocol.HIT);
+                continue;
+            }
+            hand++;
+            played.incrementAndGet();
+            boolean more = (hands == 0 || hand < hands) && System.nanoTime() < deadline;
+            if(player.handOver && more){ // a blackjack or a bust, there is nothing to stay on
+                batch(connection, player, BinaryProtocol.NEW_HAND);
+            }else if(!player.handOver && more){
+                batch(connection, player, BinaryProtocol.STAY, BinaryProtocol.NEW_HAND);
+            }else if(!player.handOver){
+                batch(connection, player, BinaryProtocol.STAY);
+            }
+            if(!more){
+                break;
+            }
+        }
+    }
+
+    /**
+     * sends a batch of commands and times how long the server takes to answer all of them
+     * @param connection the connection to the server
+     * @param player where the answers are sent
+     * @param opcodes the opcode of each command
+     * @throws IOException if the connection fails
+     */
+    private void batch(BlackjackConnection connection, Player player, byte... opcodes) throws IOException{
+        long sent = System.nanoTime();
+        connection.sendBatch(opcodes);
+        while (connection.readEvent(player) != BinaryProtocol.BATCH_RESULT){
+            // every event the batch causes comes before its result
+        }
+        latencies[BinaryProtocol.BATCH - 1].record(System.nanoTime() - sent);
+    }
+
+    /**
+     * sends a command and times how long the server takes to answer it
+     * @param connection the connection to the server
+     * @param opcode the opcode of the command
+     * @param player where the answer is sent
+     * @throws IOException if the connection fails
+     */
+    private void command(BlackjackConnection connection, byte opcode, Player player) throws IOException{
+        long sent = System.nanoTime();
+        connection.send(opcode);
+        connection.readEvent(player);
+        latencies[opcode - 1].record(System.nanoTime() - sent);
+    }
+
+    /**
+     * @param elapsed the number of seconds the run took
+     * @return the hands per second, the percentiles of each command, in microseconds, and the sessions each server was sent
+     */
+    public String report(double elapsed){
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d hands in %.2f seconds, %.0f hands per second, %d sessions failed%n%n",
+                played.get(), elapsed, played.get() / elapsed, errors.get()));
+        report.append(String.format("%-10s %10s %10s %10s %10s %10s%n", "command", "count", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for(int i = 0; i < latencies.length; i++){
+            LatencyHistogram latency = latencies[i];
+            if(latency.getCount() == 0){
+                continue;
+            }
+            String name = i + 1 == BinaryProtocol.BATCH ? "Batch" : BinaryProtocol.commandName(i + 1);
+            report.append(String.format("%-10s %10d", name, latency.getCount()));
+            for(double percentile:PERCENTILES){
+                report.append(String.format(" %10.1f", latency.getPercentile(percentile) / 1e3));
+            }
+            report.append(String.format(" %10.1f%n", latency.getMax() / 1e3));
+        }
+        if(!routed.isEmpty()){
+            report.append(String.format("%n%-24s %10s%n", "server", "sessions"));
+            for(Map.Entry<String, LongAdder> server:new TreeMap<>(routed).entrySet()){
+                report.append(String.format("%-24s %10d%n", server.getKey(), server.getValue().sum()));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * keeps the cards from the last event so the strategy can decide what to do next
+     */
+    private static final class Player implements GameOutput {
+
+        /**
+         * the players hand as of the last event
+         */
+        private Hand hand = new Hand();
+
+        /**
+         * the rank of the card the dealer has showing
+         */
+        private byte dealerCard;
+
+        /**
+         * stores weather the last event ended the hand
+         */
+        private boolean handOver = false;
+
+        @Override
+        public void openingHand(Hand playerHand, byte dealerCard){
+            handOver = false;
+            hand = playerHand;
+            this.dealerCard = dealerCard;
+        }
+
+        @Override
+        public void playerHand(Hand playerHand, byte dealerCard){
+            hand = playerHand;
+            this.dealerCard = dealerCard;
+        }
+
+        @Override
+        public void outcome(Outcome outcome, Hand playerHand, Hand dealerHand){
+            handOver = true;
+            hand = playerHand;
+        }
+    }
+}
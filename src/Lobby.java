@@ -0,0 +1,372 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the lobby players contact first, it sends each of them to one of several game servers so one server process is not
+ * the limit of the whole deployment. game servers started with --lobby=host:port send it a heartbeat every second
+ * with the number of sessions they have, a server that misses heartbeats for the heartbeat timeout gets no new players
+ *
+ * players are placed by consistent hashing on their name, so a player goes back to the same server while it is up and
+ * losing or adding a server only moves the players next to it on the ring. a server is passed over for the next one
+ * round the ring while it has more than LOAD_FACTOR times the average load, so a crowd of players whose names hash
+ * close together still spreads out. a server being drained for a deploy is told to refuse new players, the hands its
+ * players are in carry on and it can be stopped once LobbyTool shows it has no sessions left
+ *
+ * settings are written as --name=value: port and heartbeat-timeout, in seconds
+ */
+public class Lobby {
+
+    /**
+     * how far above the average load a server can go before players are sent on round the ring
+     */
+    private static final double LOAD_FACTOR = 1.25;
+
+    /**
+     * a server with fewer sessions than this is never passed over, so a quiet deployment keeps each player on their server
+     */
+    private static final int MIN_LOAD = 16;
+
+    /**
+     * how long a server that stopped sending heartbeats is remembered, in nanoseconds
+     */
+    private static final long FORGET = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * the port the lobby listens on
+     */
+    private int port = LobbyProtocol.DEFAULT_PORT;
+
+    /**
+     * how long a server can go without a heartbeat before it gets no new players, in nanoseconds
+     */
+    private long heartbeatTimeout = TimeUnit.SECONDS.toNanos(3);
+
+    /**
+     * every server that has sent a heartbeat, by the name it is known by
+     */
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * the ring of every server in nodes, replaced when one joins
+     */
+    private volatile HashRing ring = new HashRing(new ArrayList<>());
+
+    /**
+     * main method to run the lobby
+     * @param args the settings, written as --name=value
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException{
+        Lobby lobby = new Lobby();
+        for(String arg:args){
+            int equals = arg.indexOf('=');
+            if(!arg.startsWith("--") || equals < 0){
+                throw new IllegalArgumentException("arguments must be written as --name=value: " + arg);
+            }
+            lobby.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        lobby.run();
+    }
+
+    /**
+     * changes a single setting
+     * @param name the name of the setting
+     * @param value the new value of the setting
+     */
+    private void set(String name, String value){
+        switch (name) {
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "heartbeat-timeout":
+                double seconds = Double.parseDouble(value);
+                if(!(seconds > 0)){
+                    throw new IllegalArgumentException("heartbeat timeout must be above zero: " + value);
+                }
+                heartbeatTimeout = (long) (seconds * 1e9);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting " + name);
+        }
+    }
+
+    /**
+     * accepts connections until the process is stopped, each one is answered on a thread of its own
+     * @throws IOException if the port cannot be bound
+     */
+    private void run() throws IOException{
+        ExecutorService connections = BlackjackServer.newSessionExecutor();
+        try (ServerSocket server = new ServerSocket(port)){
+            log("lobby listening on port " + server.getLocalPort());
+            while (true){
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            }
+        }
+        finally {
+            connections.shutdown();
+        }
+    }
+
+    /**
+     * answers every request sent on a connection until it is closed
+     * @param socket the connection
+     */
+    private void serve(Socket socket){
+        try (socket){
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            int opcode;
+            while ((opcode = in.read()) >= 0){
+                switch (opcode) {
+                    case LobbyProtocol.ROUTE:
+                        Node node = route(in.readUTF());
+                        if(node == null){
+                            out.writeByte(LobbyProtocol.NO_NODE);
+                        }else{
+                            out.writeByte(LobbyProtocol.ROUTED);
+                            out.writeUTF(node.host);
+                            out.writeShort(node.port);
+                        }
+                        break;
+                    case LobbyProtocol.HEARTBEAT:
+                        Node beating = heartbeat(in.readUTF(), in.readUnsignedShort(), in.readInt(), in.readInt(), in.readBoolean());
+                        out.writeByte(LobbyProtocol.HEARTBEAT_ACK);
+                        out.writeBoolean(beating.drainWanted);
+                        break;
+                    case LobbyProtocol.DRAIN:
+                        drain(in.readUTF(), in.readBoolean());
+                        writeNodes(out);
+                        break;
+                    case LobbyProtocol.STATUS:
+                        writeNodes(out);
+                        break;
+                    default:
+                        throw new StreamCorruptedException("unknown lobby request " + opcode);
+                }
+                out.flush();
+            }
+        }
+        catch (EOFException eofException){
+            // the other end hung up part way through a request
+        }
+        catch (IOException ioException){
+            log("error on lobby connection: " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * picks the server a player should play on
+     * @param player the name the player is routed by
+     * @return the server, null if none can take the player
+     */
+    private Node route(String player){
+        long now = System.nanoTime();
+        int load = 0;
+        int open = 0;
+        for(Node node:nodes.values()){
+            if(node.isAccepting(now)){
+                load += node.getLoad();
+                open++;
+            }
+        }
+        if(open == 0){
+            return null;
+        }
+        // at least one server is always below the average, so this only fails when every server is full
+        int limit = Math.max(MIN_LOAD, (int) Math.ceil((load + 1) * LOAD_FACTOR / open));
+        String id = ring.route(player, name -> {
+            Node node = nodes.get(name);
+            return node != null && node.isAccepting(now) && node.getLoad() < limit;
+        });
+        Node node = id == null ? null : nodes.get(id);
+        if(node == null){
+            return null;
+        }
+        node.routed.incrementAndGet(); // counted until the next heartbeat, so a rush of players spreads out
+        return node;
+    }
+
+    /**
+     * records a heartbeat from a server, adding it to the ring if it is new
+     * @param host the host players connect to the server at
+     * @param port the port the server listens on
+     * @param sessions the number of sessions open on the server
+     * @param capacity the most sessions the server takes, 0 for no limit
+     * @param draining true if the server is refusing new players
+     * @return the server
+     */
+    private Node heartbeat(String host, int port, int sessions, int capacity, boolean draining){
+        String id = LobbyProtocol.nodeId(host, port);
+        Node node = nodes.get(id);
+        if(node == null){
+            node = join(id, host, port, draining);
+        }
+        node.sessions = sessions;
+        node.capacity = capacity;
+        node.draining = draining;
+        node.routed.set(0);
+        node.lastHeartbeat = System.nanoTime();
+        return node;
+    }
+
+    /**
+     * adds a server to the ring and forgets any that have been gone a long time
+     * @param id the name the server is known by
+     * @param host the host players connect to the server at
+     * @param port the port the server listens on
+     * @param draining true if the server was draining already, such as when the lobby was restarted during a deploy
+     * @return the server
+     */
+    private synchronized Node join(String id, String host, int port, boolean draining){
+        Node node = nodes.get(id);
+        if(node != null){
+            return node; // joined on another connection at the same time
+        }
+        node = new Node(host, port);
+        node.drainWanted = draining;
+        node.lastHeartbeat = System.nanoTime();
+        nodes.put(id, node);
+        long now = System.nanoTime();
+        nodes.values().removeIf(old -> now - old.lastHeartbeat > FORGET);
+        ring = new HashRing(nodes.keySet());
+        log("server " + id + " joined, " + nodes.size() + " servers");
+        return node;
+    }
+
+    /**
+     * starts or stops draining a server
+     * @param id the name the server is known by
+     * @param drain true to send it no new players and have it refuse them, false to send it players again
+     */
+    private void drain(String id, boolean drain){
+        Node node = nodes.get(id);
+        if(node != null && node.drainWanted != drain){
+            node.drainWanted = drain;
+            log((drain ? "draining server " : "no longer draining server ") + id);
+        }
+    }
+
+    /**
+     * writes every server known and its load
+     * @param out where they are written
+     * @throws IOException if they cannot be written
+     */
+    private void writeNodes(DataOutputStream out) throws IOException{
+        long now = System.nanoTime();
+        ArrayList<String> ids = new ArrayList<>(nodes.keySet());
+        ids.sort(null);
+        out.writeByte(LobbyProtocol.NODES);
+        out.writeInt(ids.size());
+        for(String id:ids){
+            Node node = nodes.get(id);
+            out.writeUTF(id);
+            out.writeInt(node.sessions);
+            out.writeInt(node.capacity);
+            out.writeBoolean(node.drainWanted || node.draining);
+            out.writeBoolean(node.isAlive(now));
+        }
+    }
+
+    /**
+     * writes a line about what the lobby is doing
+     * @param message the line
+     */
+    private static void log(String message){
+        System.out.println(LocalTime.now().withNano(0) + " " + message);
+    }
+
+    /**
+     * a game server as the lobby last heard of it
+     */
+    private final class Node {
+
+        /**
+         * the host players connect to the server at
+         */
+        private final String host;
+
+        /**
+         * the port the server listens on
+         */
+        private final int port;
+
+        /**
+         * the number of sessions open on the server at its last heartbeat
+         */
+        private volatile int sessions;
+
+        /**
+         * the most sessions the server takes, 0 for no limit
+         */
+        private volatile int capacity;
+
+        /**
+         * stores weather the server said it is refusing new players
+         */
+        private volatile boolean draining;
+
+        /**
+         * stores weather the server has been asked to drain
+         */
+        private volatile boolean drainWanted;
+
+        /**
+         * when the last heartbeat came, from System.nanoTime
+         */
+        private volatile long lastHeartbeat;
+
+        /**
+         * the number of players sent to the server since its last heartbeat
+         */
+        private final AtomicInteger routed = new AtomicInteger();
+
+        /**
+         * constructor for a server
+         * @param host the host players connect to the server at
+         * @param port the port the server listens on
+         */
+        private Node(String host, int port){
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * @return the sessions open at the last heartbeat and the players sent there since
+         */
+        private int getLoad(){
+            return sessions + routed.get();
+        }
+
+        /**
+         * @param now the time, from System.nanoTime
+         * @return true if the server has sent a heartbeat within the heartbeat timeout
+         */
+        private boolean isAlive(long now){
+            return now - lastHeartbeat <= heartbeatTimeout;
+        }
+
+        /**
+         * @param now the time, from System.nanoTime
+         * @return true if new players can be sent to the server
+         */
+        private boolean isAccepting(long now){
+            return isAlive(now) && !drainWanted && !draining && (capacity == 0 || getLoad() < capacity);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * keeps a game server known to the lobby, sending a heartbeat with the number of sessions every second over one
+ * connection, and refusing new players while the lobby says the server is draining. the connection is made again
+ * whenever it is lost, so the lobby and the servers can be started and restarted in any order
+ */
+public class LobbyAgent implements Runnable {
+
+    /**
+     * how often a heartbeat is sent, in milliseconds
+     */
+    private static final long INTERVAL = 1000;
+
+    /**
+     * the server whose sessions are reported
+     */
+    private final BlackjackServer server;
+
+    /**
+     * the address of the lobby
+     */
+    private final InetSocketAddress lobby;
+
+    /**
+     * the host players connect to this server at
+     */
+    private final String host;
+
+    /**
+     * the port this server listens on
+     */
+    private final int port;
+
+    /**
+     * constructor for the agent of a server
+     * @param server the server whose sessions are reported
+     * @param config the settings saying where the lobby is and where players can reach this server
+     */
+    public LobbyAgent(BlackjackServer server, ServerConfig config){
+        this.server = server;
+        lobby = LobbyProtocol.address(config.getLobby(), LobbyProtocol.DEFAULT_PORT);
+        host = config.getAdvertise();
+        port = config.getPort();
+    }
+
+    /**
+     * sends heartbeats until the thread is interrupted
+     */
+    @Override
+    public void run(){
+        boolean reported = false; // the lobby being down is only shown once each time it goes
+        while (!Thread.currentThread().isInterrupted()){
+            try (Socket socket = new Socket()){
+                socket.connect(lobby, (int) INTERVAL);
+                server.displayMessage("connected to the lobby at " + lobby + "\n");
+                reported = false;
+                beat(socket);
+            }
+            catch (IOException ioException){
+                if(!reported){
+                    server.displayMessage("lobby at " + lobby + " not reachable: " + ioException.getMessage() + "\n");
+                    reported = true;
+                }
+            }
+            catch (InterruptedException interruptedException){
+                return;
+            }
+            try{
+                Thread.sleep(INTERVAL);
+            }
+            catch (InterruptedException interruptedException){
+                return;
+            }
+        }
+    }
+
+    /**
+     * sends a heartbeat every INTERVAL over a connection until it is lost
+     * @param socket the connection to the lobby
+     * @throws IOException if the connection is lost
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void beat(Socket socket) throws IOException, InterruptedException{
+        socket.setSoTimeout((int) (INTERVAL * 5));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        AdmissionControl admission = server.getAdmission();
+        while (true){
+            out.writeByte(LobbyProtocol.HEARTBEAT);
+            out.writeUTF(host);
+            out.writeShort(port);
+            out.writeInt((int) server.getMetrics().getActiveSessions());
+            out.writeInt(server.getConfig().getMaxSessions());
+            out.writeBoolean(admission.isDraining());
+            out.flush();
+            LobbyProtocol.expect(LobbyProtocol.HEARTBEAT_ACK, in.readByte());
+            boolean drain = in.readBoolean();
+            if(drain != admission.isDraining()){
+                admission.setDraining(drain);
+                server.displayMessage(drain ? "draining, new players are refused\n" : "no longer draining\n");
+            }
+            Thread.sleep(INTERVAL);
+        }
+    }
+}
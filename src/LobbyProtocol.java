@@ -0,0 +1,142 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * the messages spoken with the lobby, which tells each player which game server to play on
+ *
+ * each message is an opcode followed by its fields written with a DataOutputStream, strings with writeUTF.
+ * a connection can send any number of requests and gets one answer to each in order. a player asks for a route
+ * and hangs up, a game server keeps its connection open and sends a heartbeat over it every second
+ *
+ * ROUTE player                                       answered by ROUTED host port, or NO_NODE if no server can take them
+ * HEARTBEAT host port sessions capacity draining     answered by HEARTBEAT_ACK drain, what the lobby wants the server to do
+ * DRAIN node drain                                   answered by NODES, starts or stops draining a node
+ * STATUS                                             answered by NODES
+ * NODES count, then for each node: id sessions capacity draining alive
+ */
+public final class LobbyProtocol {
+
+    /**
+     * the port the lobby listens on unless told otherwise
+     */
+    public static final int DEFAULT_PORT = 23715;
+
+    /**
+     * a player asking which server to play on
+     */
+    public static final byte ROUTE = 1;
+
+    /**
+     * the server a player should connect to
+     */
+    public static final byte ROUTED = 2;
+
+    /**
+     * no server can take the player
+     */
+    public static final byte NO_NODE = 3;
+
+    /**
+     * a game server saying it is alive and how many sessions it has
+     */
+    public static final byte HEARTBEAT = 4;
+
+    /**
+     * the answer to a heartbeat, saying if the server should drain
+     */
+    public static final byte HEARTBEAT_ACK = 5;
+
+    /**
+     * asks the lobby to start or stop draining a server, so it gets no new players
+     */
+    public static final byte DRAIN = 6;
+
+    /**
+     * asks the lobby for every server it knows
+     */
+    public static final byte STATUS = 7;
+
+    /**
+     * every server the lobby knows and its load
+     */
+    public static final byte NODES = 8;
+
+    /**
+     * how long a player waits for the lobby, in milliseconds
+     */
+    private static final int TIMEOUT = 5000;
+
+    /**
+     * not constructed, everything is static
+     */
+    private LobbyProtocol(){
+    }
+
+    /**
+     * asks the lobby which server a player should play on
+     * @param lobby the address of the lobby
+     * @param player the key the player is routed by, the same player is sent to the same server while it is up
+     * @return the address of the server
+     * @throws IOException if the lobby cannot be reached or has no server that can take the player
+     */
+    public static InetSocketAddress route(InetSocketAddress lobby, String player) throws IOException{
+        try (Socket socket = new Socket()){
+            socket.connect(lobby, TIMEOUT);
+            socket.setSoTimeout(TIMEOUT);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(ROUTE);
+            out.writeUTF(player);
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte answer = in.readByte();
+            if(answer == NO_NODE){
+                throw new IOException("no game server can take " + player);
+            }
+            expect(ROUTED, answer);
+            String host = in.readUTF();
+            return new InetSocketAddress(host, in.readUnsignedShort());
+        }
+    }
+
+    /**
+     * checks the answer is the one asked for
+     * @param expected the opcode of the answer asked for
+     * @param opcode the opcode read
+     * @throws StreamCorruptedException if they differ
+     */
+    public static void expect(byte expected, byte opcode) throws StreamCorruptedException{
+        if(opcode != expected){
+            throw new StreamCorruptedException("lobby answered " + opcode + " instead of " + expected);
+        }
+    }
+
+    /**
+     * reads an address written as host:port, or just host for the default port
+     * @param value the address
+     * @param port the port used if none is given
+     * @return the address
+     */
+    public static InetSocketAddress address(String value, int port){
+        int colon = value.lastIndexOf(':');
+        if(colon < 0){
+            return new InetSocketAddress(value, port);
+        }
+        return new InetSocketAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+    }
+
+    /**
+     * @param host the host players connect to a server at
+     * @param port the port the server listens on
+     * @return the name a server is known by in the lobby
+     */
+    public static String nodeId(String host, int port){
+        return host + ":" + port;
+    }
+}
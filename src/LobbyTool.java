@@ -0,0 +1,111 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * shows the game servers a lobby knows from the command line, and drains one for a deploy or brings it back
+ *
+ * settings are written as --name=value: lobby, drain and resume. drain and resume take the name of a server as the
+ * lobby shows it, such as 127.0.0.1:23716. a drained server can be stopped once it shows no sessions
+ */
+public class LobbyTool {
+
+    /**
+     * the address of the lobby, as host:port
+     */
+    private String lobby = "127.0.0.1:" + LobbyProtocol.DEFAULT_PORT;
+
+    /**
+     * the server to start draining, null for none
+     */
+    private String drain = null;
+
+    /**
+     * the server to stop draining, null for none
+     */
+    private String resume = null;
+
+    /**
+     * main method to run the tool
+     * @param args the settings, written as --name=value
+     * @throws IOException if the lobby cannot be reached
+     */
+    public static void main(String[] args) throws IOException{
+        LobbyTool tool = new LobbyTool();
+        for(String arg:args){
+            int equals = arg.indexOf('=');
+            if(!arg.startsWith("--") || equals < 0){
+                throw new IllegalArgumentException("arguments must be written as --name=value: " + arg);
+            }
+            tool.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        tool.run(System.out);
+    }
+
+    /**
+     * changes a single setting
+     * @param name the name of the setting
+     * @param value the new value of the setting
+     */
+    private void set(String name, String value){
+        switch (name) {
+            case "lobby":
+                lobby = value;
+                break;
+            case "drain":
+                drain = value;
+                break;
+            case "resume":
+                resume = value;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting " + name);
+        }
+    }
+
+    /**
+     * sends the request and writes every server the lobby knows
+     * @param out where the servers are written
+     * @throws IOException if the lobby cannot be reached
+     */
+    private void run(PrintStream out) throws IOException{
+        InetSocketAddress address = LobbyProtocol.address(lobby, LobbyProtocol.DEFAULT_PORT);
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())){
+            DataOutputStream requests = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if(drain != null || resume != null){
+                requests.writeByte(LobbyProtocol.DRAIN);
+                requests.writeUTF(drain != null ? drain : resume);
+                requests.writeBoolean(drain != null);
+            }else{
+                requests.writeByte(LobbyProtocol.STATUS);
+            }
+            requests.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            LobbyProtocol.expect(LobbyProtocol.NODES, in.readByte());
+            int count = in.readInt();
+            out.printf("%-24s %9s %9s  %s%n", "server", "sessions", "capacity", "state");
+            for(int i = 0; i < count; i++){
+                String id = in.readUTF();
+                int sessions = in.readInt();
+                int capacity = in.readInt();
+                boolean draining = in.readBoolean();
+                boolean alive = in.readBoolean();
+                String state;
+                if(!alive){
+                    state = "lost";
+                }else if(draining){
+                    state = sessions == 0 ? "drained" : "draining";
+                }else{
+                    state = "up";
+                }
+                out.printf("%-24s %9d %9s  %s%n", id, sessions, capacity == 0 ? "-" : Integer.toString(capacity), state);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * a small http server on the loopback address that answers GET /metrics with the metrics of the server
+ * in the prometheus text format, so they can be scraped without attaching a profiler
+ */
+public class MetricsEndpoint {
+
+    /**
+     * the content type of the prometheus text format
+     */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * the http server answering scrapes
+     */
+    private final HttpServer http;
+
+    /**
+     * starts answering scrapes on a background thread
+     * @param metrics the metrics to serve
+     * @param port the port to listen on, only connections from this machine are accepted
+     * @throws IOException if the port cannot be bound
+     */
+    public MetricsEndpoint(ServerMetrics metrics, int port) throws IOException{
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", exchange -> answer(exchange, metrics));
+        http.start();
+    }
+
+    /**
+     * answers a single scrape
+     * @param exchange the request and its response
+     * @param metrics the metrics to serve
+     * @throws IOException if the response cannot be written
+     */
+    private static void answer(HttpExchange exchange, ServerMetrics metrics) throws IOException{
+        try (exchange){
+            if(!exchange.getRequestMethod().equals("GET")){
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()){
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * @return the port the endpoint listens on
+     */
+    public int getPort(){
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * stops answering scrapes
+     */
+    public void stop(){
+        http.stop(0);
+    }
+}
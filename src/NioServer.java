@@ -0,0 +1,691 @@
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * a non-blocking transport for the server, a small number of event loop threads share every connection
+ * through selectors so an idle player costs a selection key and a few small objects instead of a thread
+ * and a pair of object streams. measured with thousands of idle connections, each took 7 to 11 KB of resident
+ * memory and 4.5 KB of heap here against 110 to 180 KB, 32 KB and two threads on the blocking transport,
+ * the runs are in benchmarks/idle-connections.txt
+ */
+public class NioServer {
+
+    /**
+     * the size of the buffer each loop reads into
+     */
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    /**
+     * the most bytes held for a connection between reads, the longest command frame together with one read after it.
+     * a client that sends more without finishing a message is disconnected
+     */
+    private static final int MAX_PARTIAL = BinaryProtocol.LENGTH_FIELD + 0xffff + READ_BUFFER_SIZE;
+
+    /**
+     * the most waiting messages handed to the socket in one write
+     */
+    private static final int GATHER = 16;
+
+    /**
+     * the server used to display messages
+     */
+    private final BlackjackServer display;
+
+    /**
+     * the settings the server was started with
+     */
+    private final ServerConfig config;
+
+    /**
+     * the buffers messages wait in until they are written to clients
+     */
+    private final BufferPool buffers;
+
+    /**
+     * the event loops connections are shared between
+     */
+    private final EventLoop[] loops;
+
+    /**
+     * keeps track of what number of clients have connected so far
+     */
+    private int count = 1;
+
+    /**
+     * constructor for the non-blocking server
+     * @param display the server used to display messages
+     * @param config the settings the server was started with
+     */
+    public NioServer(BlackjackServer display, ServerConfig config){
+        this.display = display;
+        this.config = config;
+        buffers = new BufferPool(OutboundQueue.MESSAGE_SIZE, 1024);
+        loops = new EventLoop[config.getEventLoops()];
+    }
+
+    /**
+     * runner for the server, accepts connections on the calling thread and hands them to the event loops in turn
+     */
+    public void runServer(){
+        try (ServerSocketChannel server = ServerSocketChannel.open()){
+            server.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+            for(int i = 0; i < loops.length; i++){
+                loops[i] = new EventLoop();
+                Thread thread = new Thread(loops[i], "blackjack-event-loop-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            while (true){
+                display.displayMessage("waiting for connection\n");
+                SocketChannel channel = server.accept();
+                // the address is shown as it is, looking its name up could hold up the next accept for seconds
+                display.displayMessage("Connection " + count + " received from: " + channel.socket().getInetAddress().getHostAddress());
+                AdmissionControl.Host host = display.getAdmission().admit(channel.socket().getInetAddress());
+                if(host == null){
+                    display.displayMessage("Connection " + count + " refused");
+                    refuse(channel);
+                }else{
+                    channel.configureBlocking(false);
+                    display.getMetrics().sessionOpened();
+                    loops[count % loops.length].register(channel, count, host);
+                }
+                count++;
+            }
+        }
+        catch (IOException ioException){
+            ioException.printStackTrace();
+        }
+    }
+
+    /**
+     * closes a connection that was not admitted
+     * @param channel the channel of the client
+     */
+    private static void refuse(SocketChannel channel){
+        try{
+            channel.close();
+        }
+        catch (IOException ioException){
+            ioException.printStackTrace();
+        }
+    }
+
+    /**
+     * a thread that waits on a selector and runs the games of every connection registered with it
+     */
+    private final class EventLoop implements Runnable {
+
+        /**
+         * the selector the connections of this loop are registered with
+         */
+        private final Selector selector;
+
+        /**
+         * connections accepted but not registered with the selector yet
+         */
+        private final ConcurrentLinkedQueue<Connection> pending = new ConcurrentLinkedQueue<>();
+
+        /**
+         * work handed to this loop by other threads, such as frames from a shared table run on another loop
+         */
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * the thread running this loop, set once it starts
+         */
+        private volatile Thread thread;
+
+        /**
+         * the buffer every connection of this loop reads into, only partial messages are copied out of it
+         */
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        /**
+         * the waiting messages of a connection being written, so several go to the socket in one write
+         */
+        private final ByteBuffer[] gather = new ByteBuffer[GATHER];
+
+        /**
+         * constructor for an event loop
+         * @throws IOException if the selector cannot be opened
+         */
+        private EventLoop() throws IOException{
+            selector = Selector.open();
+        }
+
+        /**
+         * hands a newly accepted connection to this loop
+         * @param channel the channel of the connection
+         * @param number the number of the connection
+         * @param host the address the client connected from, as admitted by the server
+         */
+        private void register(SocketChannel channel, int number, AdmissionControl.Host host){
+            pending.add(new Connection(this, channel, number, host));
+            selector.wakeup();
+        }
+
+        /**
+         * runs a task on this loop
+         * @param task the task
+         */
+        private void execute(Runnable task){
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * runs the loop until the server stops
+         */
+        @Override
+        public void run(){
+            thread = Thread.currentThread();
+            while (true){
+                try{
+                    selector.select();
+                    Connection connection;
+                    while ((connection = pending.poll()) != null){
+                        connection.open();
+                    }
+                    Runnable task;
+                    while ((task = tasks.poll()) != null){
+                        task.run();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()){
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection ready = (Connection) key.attachment();
+                        if(!key.isValid()){
+                            continue;
+                        }
+                        if(key.isWritable()){
+                            ready.flush();
+                        }
+                        if(key.isValid() && key.isReadable()){
+                            ready.read(readBuffer);
+                        }
+                    }
+                }
+                catch (IOException ioException){
+                    ioException.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * a single connected client on the non-blocking transport
+     */
+    private final class Connection {
+
+        /**
+         * the loop this connection is run on
+         */
+        private final EventLoop loop;
+
+        /**
+         * the channel of the connected client
+         */
+        private final SocketChannel channel;
+
+        /**
+         * the number of this connection, used when displaying messages
+         */
+        private final int number;
+
+        /**
+         * the address the client connected from, which the connection and its commands count against
+         */
+        private final AdmissionControl.Host host;
+
+        /**
+         * turns the bytes from a client on the legacy object stream back into messages, null for binary clients
+         */
+        private LegacyStreamCodec decoder;
+
+        /**
+         * where the commands of the client go, null until the client has said which protocol it speaks
+         */
+        private GameInput game;
+
+        /**
+         * stores weather the client speaks the binary protocol
+         */
+        private boolean binary = false;
+
+        /**
+         * the commands of the last batch frame from a binary client, null for legacy clients
+         */
+        private CommandBatch batch;
+
+        /**
+         * stores weather messages are only queued and not written, while the commands that came in one read are played
+         */
+        private boolean holding = false;
+
+        /**
+         * messages waiting to be written to the client
+         */
+        private final OutboundQueue outbound;
+
+        /**
+         * stores weather the client was found too slow and is about to be disconnected, nothing more is queued for it
+         */
+        private boolean slow = false;
+
+        /**
+         * the start of a message that has only partly arrived, ready to be written to, null when there is none
+         */
+        private ByteBuffer partial;
+
+        /**
+         * the key of this connection with the selector of its loop
+         */
+        private SelectionKey key;
+
+        /**
+         * stores weather the connection has been closed
+         */
+        private boolean closed = false;
+
+        /**
+         * constructor for a connection
+         * @param loop the loop this connection is run on
+         * @param channel the channel of the connected client
+         * @param number the number of this connection
+         * @param host the address the client connected from
+         */
+        private Connection(EventLoop loop, SocketChannel channel, int number, AdmissionControl.Host host){
+            this.loop = loop;
+            this.channel = channel;
+            this.number = number;
+            this.host = host;
+            outbound = new OutboundQueue(config.getOutboundQueue(), config.getOverflow(), config.getWriteTimeout(), buffers,
+                    display.getMetrics());
+        }
+
+        /**
+         * registers the connection with the selector, called on the loop thread
+         * nothing is sent until the client has said which protocol it speaks
+         */
+        private void open(){
+            try{
+                key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+            }
+            catch (ClosedChannelException e){
+                close();
+            }
+        }
+
+        /**
+         * works out which protocol the client speaks from the first bytes it sent and starts the game
+         * @param in the bytes received so far
+         * @return true once the protocol is known, false if more bytes are needed
+         * @throws IOException if the client sent a preamble for a version this server does not speak
+         */
+        private boolean start(ByteBuffer in) throws IOException{
+            if(in.remaining() < 2){
+                return false;
+            }
+            int position = in.position();
+            if(BinaryProtocol.isPreamble(in.get(position), in.get(position + 1))){
+                if(in.remaining() < BinaryProtocol.PREAMBLE_LENGTH){
+                    return false;
+                }
+                int version = BinaryProtocol.checkPreamble(in.get(), in.get(), in.get());
+                binary = true;
+                batch = new CommandBatch();
+                ByteBuffer preamble = ByteBuffer.allocate(BinaryProtocol.PREAMBLE_LENGTH);
+                BinaryProtocol.writePreamble(preamble, version);
+                outbound.offer(preamble.flip(), OutboundQueue.OTHER);
+                BinaryGameOutput events;
+                if(version == BinaryProtocol.FULL_HAND_VERSION){
+                    events = new BinaryGameOutput() {
+                        @Override
+                        protected void send(ByteBuffer frame) {
+                            sendFrame(frame, OutboundQueue.OTHER);
+                        }
+                    };
+                }else{
+                    events = new DeltaGameOutput() {
+                        @Override
+                        protected void send(ByteBuffer frame) {
+                            sendFrame(frame, OutboundQueue.OTHER);
+                        }
+                    };
+                }
+                events.welcome();
+                TableScheduler tables = display.getTables();
+                if(tables != null && version >= BinaryProtocol.DELTA_VERSION){ // only version 2 can show other players
+                    Seat seat = new Seat(player()) {
+                        @Override
+                        protected void send(ByteBuffer frame) {
+                            sendFrame(frame, BinaryProtocol.kind(frame, getNumber()));
+                        }
+                    };
+                    outbound.setResendable();
+                    tables.seat(seat);
+                    game = seat;
+                }else{
+                    game = new BlackjackGame(events, display.getShoePool(), display.getMetrics(), display.getJournal(),
+                            display.getHistory(), display.getStrategy(), player(), display.getLedger());
+                }
+            }else{ // an old client, the bytes are the start of the object stream header
+                decoder = new LegacyStreamCodec();
+                ByteBuffer header = ByteBuffer.allocate(LegacyStreamCodec.HEADER_LENGTH);
+                LegacyStreamCodec.writeHeader(header);
+                outbound.offer(header.flip(), OutboundQueue.OTHER);
+                EncodedTextGameOutput text = new EncodedTextGameOutput() {
+                    @Override
+                    protected void send(ByteBuffer message) {
+                        sendData(message);
+                    }
+                };
+                game = new BlackjackGame(text, display.getShoePool(), display.getMetrics(), display.getJournal(),
+                        display.getHistory(), display.getStrategy(), player(), display.getLedger());
+                text.welcome();
+            }
+            return true;
+        }
+
+        /**
+         * reads whatever the client has sent and plays every whole message
+         * @param readBuffer the buffer of the loop to read into
+         */
+        private void read(ByteBuffer readBuffer){
+            try{
+                readBuffer.clear();
+                if(channel.read(readBuffer) < 0){
+                    close();
+                    return;
+                }
+                readBuffer.flip();
+                ByteBuffer in = readBuffer;
+                if(partial != null){ // joins the new bytes to the part of a message that was already received
+                    partial = hold(partial, readBuffer.remaining());
+                    partial.put(readBuffer).flip();
+                    in = partial;
+                }
+                holding = true; // everything the commands that came in this read send is written together
+                if(game != null || start(in)){
+                    if(binary){
+                        readCommands(in);
+                    }else{
+                        readMessages(in);
+                    }
+                }
+                holding = false;
+                if(!closed){
+                    flush();
+                }
+                if(!closed && in.hasRemaining()){ // keeps the start of an unfinished message for the next read
+                    if(in == partial){
+                        partial.compact();
+                    }else{
+                        partial = hold(null, in.remaining());
+                        partial.put(in);
+                    }
+                }else{
+                    partial = null; // an idle connection holds no buffer
+                }
+            }
+            catch (IOException ioException){
+                holding = false;
+                displayMessage("\nError on connection: " + ioException.getMessage());
+                close();
+            }
+        }
+
+        /**
+         * makes room for more bytes of an unfinished message, growing the buffer they are kept in
+         * @param held the bytes already kept, ready to be written to, null if there are none
+         * @param more the number of bytes to add
+         * @return a buffer holding the bytes already kept with room for the others
+         * @throws StreamCorruptedException if the message would be longer than MAX_PARTIAL
+         */
+        private ByteBuffer hold(ByteBuffer held, int more) throws StreamCorruptedException{
+            int needed = (held == null ? 0 : held.position()) + more;
+            if(needed > MAX_PARTIAL){
+                throw new StreamCorruptedException("message too long, " + needed + " bytes without finishing it");
+            }
+            if(held != null && held.remaining() >= more){
+                return held;
+            }
+            int capacity = Math.max(needed, held == null ? 0 : held.capacity() * 2); // doubles so joining reads is not quadratic
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(MAX_PARTIAL, capacity));
+            if(held != null){
+                bigger.put(held.flip());
+            }
+            return bigger;
+        }
+
+        /**
+         * plays every whole message from a client on the legacy object stream
+         * @param in the bytes received so far
+         * @throws IOException if the bytes are not a stream of Strings
+         */
+        private void readMessages(ByteBuffer in) throws IOException{
+            String message;
+            while ((message = decoder.decode(in)) != null){
+                displayMessage("\n" + message);
+                if(message.equals("Disconnect")){
+                    close();
+                    return;
+                }
+                if(!throttled(1)){
+                    game.processInput(message);
+                }
+            }
+        }
+
+        /**
+         * plays every whole command frame from a client on the binary protocol
+         * @param in the bytes received so far
+         * @throws IOException if a frame is malformed
+         */
+        private void readCommands(ByteBuffer in) throws IOException{
+            int opcode;
+            while ((opcode = BinaryProtocol.decodeCommand(in, batch)) >= 0){
+                if(opcode == BinaryProtocol.BATCH){
+                    displayMessage("\nbatch of " + batch.size() + " commands");
+                    boolean open = throttled(batch.size()) ? batch.refuse() : batch.play(game);
+                    if(!open){
+                        flush(); // the events of the commands before the disconnect are still sent
+                        close();
+                        return;
+                    }
+                    sendFrame(batch.result(), OutboundQueue.OTHER);
+                    continue;
+                }
+                Command command = Command.of(opcode);
+                if(command == null){
+                    displayMessage("\nUnknown command received");
+                    continue;
+                }
+                displayMessage("\n" + command.describe(batch.getBet()));
+                if(opcode == BinaryProtocol.DISCONNECT){
+                    close();
+                    return;
+                }
+                if(!throttled(1)){
+                    batch.play(game, command);
+                }
+            }
+        }
+
+        /**
+         * checks commands from the client against the rate its address is allowed
+         * @param count the number of commands
+         * @return true if they came too fast and are not played
+         */
+        private boolean throttled(int count){
+            if(display.getAdmission().allowCommands(host, count)){
+                return false;
+            }
+            displayMessage("\ncommand refused, sent too fast");
+            return true;
+        }
+
+        /**
+         * sends a message to a client on the legacy object stream, copying it into a pooled buffer
+         * @param message the message to be sent to the client, already encoded as a String on the stream
+         */
+        private void sendData(ByteBuffer message){
+            if(closed || slow){
+                return;
+            }
+            long start = System.nanoTime();
+            int length = message.remaining();
+            queue(message, OutboundQueue.OTHER);
+            display.getMetrics().sent(System.nanoTime() - start);
+            displayMessage("\nSERVER>>> message of " + length + " bytes");
+        }
+
+        /**
+         * sends a frame to a client on the binary protocol
+         * at a shared table this is also called from other loops and the table timer, which copy the frame into a pooled
+         * buffer and hand it to this loop. so frames keep their order this loop does the same while any are waiting
+         * @param frame the frame to be sent to the client
+         * @param kind what the frame is to the queue, OutboundQueue.OTHER unless the client is at a shared table
+         */
+        private void sendFrame(ByteBuffer frame, int kind){
+            if(closed || slow){
+                return;
+            }
+            long start = System.nanoTime();
+            if(Thread.currentThread() != loop.thread || !loop.tasks.isEmpty()){
+                ByteBuffer buffer = buffers.acquire(frame.remaining());
+                buffer.put(frame).flip();
+                loop.execute(() -> {
+                    if(!closed && !slow){
+                        queueFrame(buffer, kind, start);
+                    }
+                    buffers.release(buffer);
+                });
+                return;
+            }
+            queueFrame(frame, kind, start);
+        }
+
+        /**
+         * queues a frame for the client, called on the loop thread
+         * @param frame the frame, copied into the queue
+         * @param kind what the frame is to the queue
+         * @param start when sending the frame started, from System.nanoTime
+         */
+        private void queueFrame(ByteBuffer frame, int kind, long start){
+            int length = frame.remaining();
+            queue(frame, kind);
+            display.getMetrics().sent(System.nanoTime() - start);
+            displayMessage("\nSERVER>>> frame of " + length + " bytes");
+        }
+
+        /**
+         * adds a message to the outbound queue and writes it unless messages are being held
+         * a client whose queue overflows or whose writes time out is disconnected once the loop is next free, as this
+         * can be in the middle of a table sending to every seat. a seat whose queue coalesced is sent a snapshot the same way
+         * @param message the message, copied into the queue
+         * @param kind what the message is to the queue
+         */
+        private void queue(ByteBuffer message, int kind){
+            if(!outbound.offer(message, kind)){
+                slow = true;
+                displayMessage("\nclient reading too slowly, disconnecting");
+                loop.execute(this::close);
+                return;
+            }
+            if(outbound.takeResync()){
+                loop.execute(() -> {
+                    if(!closed && !slow){
+                        game.processInput(Command.SYNC);
+                    }
+                });
+            }
+            if(!holding){
+                flush();
+            }
+        }
+
+        /**
+         * writes as many of the waiting messages as the socket will take, up to GATHER of them in each write
+         */
+        private void flush(){
+            try{
+                ByteBuffer[] gather = loop.gather;
+                while (!outbound.isEmpty()){
+                    int count = Math.min(outbound.size(), GATHER);
+                    for(int i = 0; i < count; i++){
+                        gather[i] = outbound.get(i);
+                    }
+                    channel.write(gather, 0, count);
+                    boolean full = gather[count - 1].hasRemaining();
+                    while (!outbound.isEmpty() && !outbound.get(0).hasRemaining()){
+                        outbound.remove();
+                        outbound.blocked(false); // the timeout runs from the last message the client finished reading
+                    }
+                    if(full){
+                        outbound.blocked(true);
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE); // waits until the socket can take more
+                        return;
+                    }
+                }
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            catch (IOException ioException){
+                displayMessage("\nError writing object");
+                close();
+            }
+        }
+
+        /**
+         * @return who is playing, the address the client connected from
+         */
+        private String player(){
+            return channel.socket().getInetAddress().getHostAddress();
+        }
+
+        /**
+         * closes the connection and gives its buffers back to the pool
+         */
+        private void close(){
+            if(closed){
+                return;
+            }
+            closed = true;
+            if(game != null){
+                game.leave();
+            }
+            display.getMetrics().sessionClosed();
+            display.getAdmission().release(host);
+            displayMessage("\nconnection ended\n");
+            if(key != null){
+                key.cancel();
+            }
+            outbound.clear();
+            try{
+                channel.close();
+            }
+            catch (IOException ioException){
+                ioException.printStackTrace();
+            }
+        }
+
+        /**
+         * displays a message on the server tagged with the number of this connection
+         * @param message the message to be displayed
+         */
+        private void displayMessage(String message){
+            display.displayMessage(message.replace("\n", "\n[" + number + "] "));
+        }
+    }
+}
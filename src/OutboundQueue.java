@@ -0,0 +1,311 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * the messages waiting to be written to one client, bounded so a client that reads slowly or not at all
+ * can never hold up a table or take more than a set amount of memory
+ *
+ * every message is copied into a pooled buffer when it is offered, so the game can reuse its own buffer at once.
+ * when the queue is full the overflow policy decides what gives. coalescing and dropping both lean on the version 2
+ * client noticing a change it missed: dropped updates about other seats make a later score check fail and the client
+ * asks for a snapshot, and a coalesced queue is replaced by a snapshot the server sends itself. only a seat at a
+ * shared table can be sent a snapshot, any other client that fills its queue is disconnected under every policy.
+ * a client that has not read a whole message for longer than the write timeout while a write waits on them is also
+ * disconnected, the next time a message is offered
+ *
+ * not thread safe, the blocking transport guards it with its own lock and the non-blocking one only uses it on its loop
+ */
+public class OutboundQueue {
+
+    /**
+     * what happens when a message is offered to a full queue
+     */
+    public enum Overflow {
+        /**
+         * every change waiting is thrown away and the client is sent a snapshot of the table in their place
+         */
+        COALESCE,
+        /**
+         * updates about other seats are thrown away, the oldest first, the client is disconnected if there are none
+         */
+        DROP,
+        /**
+         * the client is disconnected
+         */
+        DISCONNECT
+    }
+
+    /**
+     * the size of the pooled buffers messages are copied into, large enough for any message the game sends
+     */
+    public static final int MESSAGE_SIZE = 512;
+
+    /**
+     * a message that does not change the table the client keeps, such as a batch result, or any message to a client
+     * that is not at a shared table. never thrown away
+     */
+    public static final int OTHER = 0;
+
+    /**
+     * a message changing the players own seat or the whole table, such as their cards or the result of the hand
+     */
+    public static final int OWN_CHANGE = 1;
+
+    /**
+     * a message that only changes other seats, the first to go under the DROP policy
+     */
+    public static final int OTHER_SEATS = 2;
+
+    /**
+     * a message holding a snapshot of the whole table, everything before it that changed the table is not needed
+     */
+    public static final int SNAPSHOT = 3;
+
+    /**
+     * the messages waiting, in the order they are written, as a ring
+     */
+    private final ByteBuffer[] messages;
+
+    /**
+     * what each waiting message is, OTHER, OWN_CHANGE, OTHER_SEATS or SNAPSHOT
+     */
+    private final int[] kinds;
+
+    /**
+     * the index of the oldest message in the ring
+     */
+    private int head = 0;
+
+    /**
+     * the number of messages waiting
+     */
+    private int size = 0;
+
+    /**
+     * what happens when a message is offered to a full queue
+     */
+    private final Overflow overflow;
+
+    /**
+     * how long a write can take before the client is disconnected, in nanoseconds
+     */
+    private final long writeTimeout;
+
+    /**
+     * where the messages are copied into
+     */
+    private final BufferPool buffers;
+
+    /**
+     * where the depth of the queue and what was thrown away are recorded
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * stores weather the client can be sent a snapshot, true only for a seat at a shared table
+     */
+    private boolean resendable = false;
+
+    /**
+     * stores weather changes were thrown away and the client has not been sent a snapshot since
+     */
+    private boolean stale = false;
+
+    /**
+     * stores weather a snapshot should be asked for, cleared once the transport has asked
+     */
+    private boolean resyncWanted = false;
+
+    /**
+     * when the write in progress started waiting for the client, from System.nanoTime, 0 if no write is waiting
+     */
+    private long blockedSince = 0;
+
+    /**
+     * constructor for a queue
+     * @param capacity the most messages waiting at once
+     * @param overflow what happens when a message is offered to a full queue
+     * @param writeTimeout how long a write can take before the client is disconnected, in milliseconds
+     * @param buffers where the messages are copied into
+     * @param metrics where the depth of the queue and what was thrown away are recorded
+     */
+    public OutboundQueue(int capacity, Overflow overflow, long writeTimeout, BufferPool buffers, ServerMetrics metrics){
+        messages = new ByteBuffer[capacity];
+        kinds = new int[capacity];
+        this.overflow = overflow;
+        this.writeTimeout = writeTimeout * 1_000_000;
+        this.buffers = buffers;
+        this.metrics = metrics;
+    }
+
+    /**
+     * lets the queue coalesce into a snapshot, for a seat at a shared table
+     */
+    public void setResendable(){
+        resendable = true;
+    }
+
+    /**
+     * copies a message onto the end of the queue, making room for it as the overflow policy says if the queue is full
+     * @param message the message, positioned at its first byte, left as it was
+     * @param kind what the message is, OTHER, OWN_CHANGE, OTHER_SEATS or SNAPSHOT
+     * @return false if the client should be disconnected, because the queue is full or a write has timed out
+     */
+    public boolean offer(ByteBuffer message, int kind){
+        if(blockedSince != 0 && System.nanoTime() - blockedSince > writeTimeout){
+            metrics.slowClientDisconnected();
+            return false;
+        }
+        if(stale && kind != OTHER){
+            if(kind != SNAPSHOT){
+                metrics.outboundDropped();
+                return true; // the snapshot on its way covers it
+            }
+            stale = false;
+        }
+        if(size == messages.length){
+            boolean room = makeRoom(kind);
+            if(stale && kind != OTHER || !room && kind == OTHER_SEATS && overflow == Overflow.DROP){
+                metrics.outboundDropped();
+                return true;
+            }
+            if(!room){
+                metrics.slowClientDisconnected();
+                return false;
+            }
+        }
+        ByteBuffer copy = buffers.acquire(message.remaining());
+        copy.put(message.duplicate()).flip();
+        int tail = (head + size) % messages.length;
+        messages[tail] = copy;
+        kinds[tail] = kind;
+        size++;
+        metrics.outboundQueued(1, size);
+        return true;
+    }
+
+    /**
+     * makes room in a full queue as the overflow policy says
+     * @param kind what the message to be added is
+     * @return true if there is room for it now
+     */
+    private boolean makeRoom(int kind){
+        if(overflow == Overflow.COALESCE && resendable){
+            for(int i = 0; i < size; i++){
+                if(kinds[index(i)] != OTHER && removable(i)){
+                    remove(i--);
+                }
+            }
+            metrics.outboundCoalesced();
+            stale = kind != SNAPSHOT;
+            resyncWanted = stale;
+            return size < messages.length;
+        }
+        if(overflow == Overflow.DROP && resendable){
+            for(int i = 0; i < size; i++){
+                if(kinds[index(i)] == OTHER_SEATS && removable(i)){
+                    remove(i);
+                    metrics.outboundDropped();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param position a position from the head
+     * @return false if the message there is partly written, the rest of it has to follow
+     */
+    private boolean removable(int position){
+        return position > 0 || messages[head].position() == 0;
+    }
+
+    /**
+     * takes a message out of the middle of the queue, moving the ones after it up
+     * @param position the position of the message from the head
+     */
+    private void remove(int position){
+        buffers.release(messages[index(position)]);
+        for(int i = position; i < size - 1; i++){
+            messages[index(i)] = messages[index(i + 1)];
+            kinds[index(i)] = kinds[index(i + 1)];
+        }
+        messages[index(size - 1)] = null;
+        size--;
+        metrics.outboundQueued(-1, size);
+    }
+
+    /**
+     * @param position a position from the head
+     * @return the index of that position in the ring
+     */
+    private int index(int position){
+        return (head + position) % messages.length;
+    }
+
+    /**
+     * @return true if no message is waiting
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * @return the number of messages waiting
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @param position a position from the head, less than size
+     * @return the message waiting there, its position is moved on as it is written
+     */
+    public ByteBuffer get(int position){
+        return messages[index(position)];
+    }
+
+    /**
+     * takes the oldest message off the queue once it has been written and gives its buffer back to the pool
+     */
+    public void remove(){
+        buffers.release(messages[head]);
+        messages[head] = null;
+        head = (head + 1) % messages.length;
+        size--;
+        metrics.outboundQueued(-1, size);
+    }
+
+    /**
+     * marks a write as waiting for the client to read, or as moving again
+     * @param blocked true when a write could not finish, false once the client has read a whole message
+     */
+    public void blocked(boolean blocked){
+        if(!blocked){
+            blockedSince = 0;
+        }else if(blockedSince == 0){
+            blockedSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * checks if the queue has coalesced and the client should be sent a snapshot, the caller sends it
+     * by playing a Sync for the seat once it is safe to, clearing the request
+     * @return true if a snapshot should be sent
+     */
+    public boolean takeResync(){
+        boolean wanted = resyncWanted;
+        resyncWanted = false;
+        return wanted;
+    }
+
+    /**
+     * throws away every message waiting and gives their buffers back to the pool, once the client has gone
+     */
+    public void clear(){
+        while (size > 0){
+            remove();
+        }
+    }
+}
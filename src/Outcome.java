@@ -0,0 +1,115 @@
+
+/**
+ * every way a hand of blackjack can end, from the point of view of the player
+ */
+public enum Outcome {
+
+    /**
+     * the player busted and the dealer did not
+     */
+    PLAYER_BUST("You busted and the dealer did not, you lost with ", -1),
+
+    /**
+     * the player and the dealer both busted, the player still loses
+     */
+    BOTH_BUST("You busted and so did the dealer, you lost with ", -1),
+
+    /**
+     * the dealer busted and the player did not
+     */
+    DEALER_BUST("You did not bust and the dealer did, you win with ", 1),
+
+    /**
+     * neither busted and the player had more points
+     */
+    PLAYER_HIGHER("You had a higher score than the dealer without busting, you win with ", 1),
+
+    /**
+     * neither busted and the player had fewer points
+     */
+    PLAYER_LOWER("You had a lower score than the dealer without busting, you lost with ", -1),
+
+    /**
+     * neither busted and the scores were the same
+     */
+    TIE("You got the same score as the dealer, you tied with ", 0);
+
+    /**
+     * every outcome indexed by its code, so a code read off the wire does not need values() copied each time
+     */
+    private static final Outcome[] BY_CODE = values();
+
+    /**
+     * the start of the message telling the player how the hand ended
+     */
+    private final String message;
+
+    /**
+     * what the player gets back for each unit bet, 1 for a win, -1 for a loss and 0 for a tie
+     */
+    private final int units;
+
+    /**
+     * constructor for an outcome
+     * @param message the start of the message telling the player how the hand ended
+     * @param units what the player gets back for each unit bet
+     */
+    Outcome(String message, int units){
+        this.message = message;
+        this.units = units;
+    }
+
+    /**
+     * works out the outcome of a finished hand
+     * @param playerScore the final score of the player
+     * @param dealerScore the final score of the dealer
+     * @return the outcome of the hand
+     */
+    public static Outcome of(int playerScore, int dealerScore){
+        if(playerScore > 21 && dealerScore <= 21){
+            return PLAYER_BUST;
+        }else if(playerScore > 21){
+            return BOTH_BUST;
+        }else if(dealerScore > 21){
+            return DEALER_BUST;
+        }else if(playerScore > dealerScore){
+            return PLAYER_HIGHER;
+        }else if(playerScore < dealerScore){
+            return PLAYER_LOWER;
+        }
+        return TIE;
+    }
+
+    /**
+     * finds the outcome with a given code
+     * @param code the code of the outcome
+     * @return the outcome
+     */
+    public static Outcome fromCode(int code){
+        if(code < 0 || code >= BY_CODE.length){
+            throw new IllegalArgumentException("no outcome with code " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * @return the code the outcome is sent as
+     */
+    public int getCode(){
+        return ordinal();
+    }
+
+    /**
+     * @return the start of the message telling the player how the hand ended
+     */
+    public String getMessage(){
+        return message;
+    }
+
+    /**
+     * @return what the player gets back for each unit bet, 1 for a win, -1 for a loss and 0 for a tie
+     */
+    public int getUnits(){
+        return units;
+    }
+}
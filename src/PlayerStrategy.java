@@ -0,0 +1,58 @@
+
+/**
+ * ways of deciding whether to hit or stay, used by the simulator and the load generator
+ */
+public enum PlayerStrategy {
+
+    /**
+     * never takes another card
+     */
+    ALWAYS_STAY {
+        @Override
+        public boolean shouldHit(Hand playerHand, byte dealerCard){
+            return false;
+        }
+    },
+
+    /**
+     * plays like the dealer, hitting until the score gets to 17
+     */
+    HIT_BELOW_17 {
+        @Override
+        public boolean shouldHit(Hand playerHand, byte dealerCard){
+            return playerHand.getScore() < BlackjackRules.DEALER_STANDS_ON;
+        }
+    },
+
+    /**
+     * the usual hit or stand chart for a game with no doubling or splitting
+     */
+    BASIC {
+        @Override
+        public boolean shouldHit(Hand playerHand, byte dealerCard){
+            int score = playerHand.getScore();
+            int up = dealerCard == Card.ACE ? 11 : Card.value(dealerCard);
+            if(playerHand.isSoft()){
+                return score <= 17 || (score == 18 && up >= 9);
+            }
+            if(score <= 11){
+                return true;
+            }
+            if(score == 12){
+                return up < 4 || up > 6;
+            }
+            if(score <= 16){
+                return up > 6;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * decides whether to take another card
+     * @param playerHand the players hand
+     * @param dealerCard the rank of the card the dealer has showing
+     * @return true to hit, false to stay
+     */
+    public abstract boolean shouldHit(Hand playerHand, byte dealerCard);
+}
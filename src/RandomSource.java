@@ -0,0 +1,80 @@
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * where a deck gets the random numbers it shuffles with
+ * every deck is given its own source so shuffling on many threads never shares a seed
+ */
+public interface RandomSource {
+
+    /**
+     * the kinds of random source the server can be started with
+     */
+    enum Mode {
+        /**
+         * the random number generator of whichever thread is shuffling, the fastest choice
+         */
+        THREAD,
+        /**
+         * a stream split off one root generator for every deck, independent and contention free
+         */
+        SPLIT,
+        /**
+         * a secure random number generator for every deck, slower but unpredictable
+         */
+        SECURE,
+        /**
+         * a deterministic generator for every deck seeded from one root seed, so every shuffle can be replayed
+         */
+        SEEDED
+    }
+
+    /**
+     * gives a random number
+     * @param bound the number the result must be below, must be above zero
+     * @return a number from 0 up to but not including bound, every number equally likely
+     */
+    int nextInt(int bound);
+
+    /**
+     * makes the factory giving each new deck its random source
+     * @param mode the kind of random source
+     * @param seed the root seed, only used by SEEDED
+     * @return the factory
+     */
+    static Supplier<RandomSource> factory(Mode mode, long seed){
+        switch (mode) {
+            case THREAD:
+                return RandomSource::threadLocal;
+            case SPLIT: {
+                SplittableRandom root = new SplittableRandom();
+                return () -> {
+                    SplittableRandom stream;
+                    synchronized (root){ // only taken when a deck is made, never while shuffling
+                        stream = root.split();
+                    }
+                    return stream::nextInt;
+                };
+            }
+            case SECURE:
+                return () -> new SecureRandom()::nextInt;
+            case SEEDED: {
+                AtomicLong decksMade = new AtomicLong();
+                return () -> new SeededRandom(SeededRandom.mix(seed + decksMade.getAndIncrement() * SeededRandom.GAMMA));
+            }
+            default:
+                throw new IllegalArgumentException("unknown random mode " + mode);
+        }
+    }
+
+    /**
+     * @return a source that uses the random number generator of the calling thread
+     */
+    static RandomSource threadLocal(){
+        return bound -> ThreadLocalRandom.current().nextInt(bound);
+    }
+}
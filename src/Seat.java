@@ -0,0 +1,121 @@
+
+import java.nio.ByteBuffer;
+
+/**
+ * a player sitting at a shared table, each session on a table makes one of these and sends its commands to it
+ */
+public abstract class Seat implements GameInput {
+
+    /**
+     * the table this seat is at, null until seated
+     */
+    private volatile Table table;
+
+    /**
+     * the number of this seat at its table, from 1 to TableState.MAX_SEATS
+     */
+    private byte number;
+
+    /**
+     * the address the player in this seat connected from
+     */
+    private final String address;
+
+    /**
+     * who is sitting in this seat, the address they connected from or the name they gave at it
+     */
+    private volatile String player;
+
+    /**
+     * constructor for a seat
+     * @param player who is sitting in it, the address they connected from
+     */
+    protected Seat(String player){
+        this.address = player;
+        this.player = player;
+    }
+
+    /**
+     * sends a frame to the player in this seat, the same buffer is sent to every seat so it must be written or copied
+     * and its position and limit left as they were
+     * @param frame the frame, positioned at its first byte
+     */
+    protected abstract void send(ByteBuffer frame);
+
+    /**
+     * called by the table when the player sits down
+     * @param table the table
+     * @param number the number of the seat
+     */
+    void sit(Table table, byte number){
+        this.table = table;
+        this.number = number;
+    }
+
+    /**
+     * @return who is sitting in this seat
+     */
+    public String getPlayer(){
+        return player;
+    }
+
+    /**
+     * @return the address the player in this seat connected from
+     */
+    public String getAddress(){
+        return address;
+    }
+
+    /**
+     * @param player who is sitting in this seat from now on, only changed by the table between hands
+     */
+    void setPlayer(String player){
+        this.player = player;
+    }
+
+    /**
+     * @return the number of this seat at its table
+     */
+    public byte getNumber(){
+        return number;
+    }
+
+    /**
+     * @return the table this seat is at, null until seated
+     */
+    public Table getTable(){
+        return table;
+    }
+
+    /**
+     * plays a command from the player, commands out of turn are ignored
+     * @param command the command
+     * @param chips the chips of a bet
+     * @return true if the command was played, false if it was ignored
+     */
+    @Override
+    public boolean processInput(Command command, long chips){
+        return table.command(this, command, chips);
+    }
+
+    /**
+     * names the player in this seat, only between the hands they are dealt into
+     * @param name the name the player gave
+     * @return true if the name was taken, false if the seat is in a hand or the name is not allowed
+     */
+    @Override
+    public boolean name(String name){
+        return table.name(this, name);
+    }
+
+    /**
+     * gets up from the table, the hand of the seat is played out as a stay if it is still in one
+     */
+    @Override
+    public void leave(){
+        Table at = table;
+        if(at != null){
+            at.leave(this);
+        }
+    }
+}
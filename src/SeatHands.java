@@ -0,0 +1,234 @@
+
+/**
+ * the hands of one seat in a round, a single hand until a pair is split and then up to MAX_HANDS played one after
+ * the other, the one being played is the active hand
+ *
+ * every hand is allocated once with the seat and reused for every round. a split moves the second card of the
+ * active hand into the next free hand, so splitting copies no cards and creates nothing
+ */
+public class SeatHands {
+
+    /**
+     * the most hands a seat can split into
+     */
+    public static final int MAX_HANDS = 4;
+
+    /**
+     * the hands of the seat, only the first count of them are in the round
+     */
+    private final Hand[] hands = new Hand[MAX_HANDS];
+
+    /**
+     * how each hand ended, null until it is over
+     */
+    private final Outcome[] outcomes = new Outcome[MAX_HANDS];
+
+    /**
+     * stores weather each hand was doubled, a doubled hand gets one more card and no more
+     */
+    private final boolean[] doubled = new boolean[MAX_HANDS];
+
+    /**
+     * the number of hands in the round
+     */
+    private int count = 1;
+
+    /**
+     * the index of the hand being played
+     */
+    private int active = 0;
+
+    /**
+     * stores weather a pair of aces was split, each of those hands gets one card and no more
+     */
+    private boolean acesSplit = false;
+
+    /**
+     * stores weather the seat took insurance against a dealer blackjack
+     */
+    private boolean insured = false;
+
+    /**
+     * constructor for the hands of a seat, with one empty hand
+     */
+    public SeatHands(){
+        for(int i = 0; i < hands.length; i++){
+            hands[i] = new Hand();
+        }
+    }
+
+    /**
+     * empties the seat for a new round, leaving one empty hand
+     */
+    public void clear(){
+        for(int i = 0; i < count; i++){
+            hands[i].clear();
+            outcomes[i] = null;
+            doubled[i] = false;
+        }
+        count = 1;
+        active = 0;
+        acesSplit = false;
+        insured = false;
+    }
+
+    /**
+     * @return the number of hands in the round
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * @param index the index of the hand, 0 for the hand dealt at the start of the round
+     * @return the hand
+     */
+    public Hand get(int index){
+        if(index >= count){
+            throw new IndexOutOfBoundsException("the seat only has " + count + " hands");
+        }
+        return hands[index];
+    }
+
+    /**
+     * gets a hand, adding empty hands up to it if the seat does not have it yet, as when a snapshot is read
+     * @param index the index of the hand
+     * @return the hand
+     */
+    public Hand open(int index){
+        while (count <= index){
+            hands[count].clear();
+            outcomes[count] = null;
+            doubled[count] = false;
+            count++;
+        }
+        return hands[index];
+    }
+
+    /**
+     * @return the hand being played
+     */
+    public Hand getActive(){
+        return hands[active];
+    }
+
+    /**
+     * @return the index of the hand being played
+     */
+    public int getActiveIndex(){
+        return active;
+    }
+
+    /**
+     * @param index the index of the hand now being played, as the server said
+     */
+    public void setActive(int index){
+        open(index);
+        active = index;
+    }
+
+    /**
+     * @return true if the active hand is a pair, by points, that can be split into a hand of its own
+     */
+    public boolean canSplit(){
+        Hand hand = hands[active];
+        return count < MAX_HANDS && !acesSplit && hand.size() == 2 && Card.value(hand.get(0)) == Card.value(hand.get(1));
+    }
+
+    /**
+     * splits the active hand, its second card is moved to start the next free hand
+     * @return the index of the new hand
+     */
+    public int split(){
+        Hand from = hands[active];
+        int index = count;
+        Hand to = open(index);
+        to.add(from.removeLast());
+        if(from.get(0) == Card.ACE){
+            acesSplit = true;
+        }
+        return index;
+    }
+
+    /**
+     * @return true if the seat has split, so none of its hands can be a blackjack
+     */
+    public boolean isSplit(){
+        return count > 1;
+    }
+
+    /**
+     * @param index the index of the hand
+     * @return true if the hand is a blackjack dealt with the opening cards, a split hand never is
+     */
+    public boolean isNatural(int index){
+        return count == 1 && hands[index].isBlackjack();
+    }
+
+    /**
+     * marks the active hand as doubled, it is done once its one more card is dealt
+     */
+    public void doubleDown(){
+        doubled[active] = true;
+    }
+
+    /**
+     * @param index the index of the hand
+     * @return true if the hand was doubled
+     */
+    public boolean isDoubled(int index){
+        return doubled[index];
+    }
+
+    /**
+     * @return true if the active hand can take no more cards, on 21 or more, once doubled or split from aces
+     */
+    public boolean isDone(){
+        return BlackjackRules.isPlayerDone(hands[active]) || doubled[active] || acesSplit;
+    }
+
+    /**
+     * moves on to the next hand that can still be played, passing over split hands already on 21
+     * @return false if every hand is done, the last hand stays active then
+     */
+    public boolean next(){
+        while (active + 1 < count){
+            active++;
+            if(!isDone()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * records how a hand ended
+     * @param index the index of the hand
+     * @param outcome how it ended
+     */
+    public void finish(int index, Outcome outcome){
+        outcomes[index] = outcome;
+    }
+
+    /**
+     * @param index the index of the hand
+     * @return how the hand ended, null until it is over
+     */
+    public Outcome getOutcome(int index){
+        return outcomes[index];
+    }
+
+    /**
+     * marks the seat as insured against a dealer blackjack
+     */
+    public void insure(){
+        insured = true;
+    }
+
+    /**
+     * @return true if the seat took insurance this round
+     */
+    public boolean isInsured(){
+        return insured;
+    }
+}
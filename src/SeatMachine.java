@@ -0,0 +1,188 @@
+
+import java.util.Arrays;
+
+/**
+ * the states a seat goes through in a round and what each command does in each of them, worked out once into a
+ * table when the class loads so a command is dispatched, or rejected, with a single array lookup
+ *
+ * a seat is IDLE between rounds and WAITING while it is dealt in but cannot act. on its turn it is in INSURANCE
+ * for its first decision when the dealer shows an ace, in OPENING while the active hand has its first two cards,
+ * which is when it can double or split, and in PLAYING once it has hit. the single player game and the shared
+ * tables use the same table, each playing the action it gets back in its own way
+ */
+public final class SeatMachine {
+
+    /**
+     * where a seat is in a round
+     */
+    public enum State {
+
+        /**
+         * no hand is being played, a bet can be placed and a hand asked for
+         */
+        IDLE,
+
+        /**
+         * dealt into the round but it is not the seats turn, or the seat has finished acting
+         */
+        WAITING,
+
+        /**
+         * the first decision of the round with the dealer showing an ace, insurance can be taken
+         */
+        INSURANCE,
+
+        /**
+         * the active hand has its first two cards, it can be doubled or split
+         */
+        OPENING,
+
+        /**
+         * the active hand has been hit, it can only be hit again or stayed on
+         */
+        PLAYING
+    }
+
+    /**
+     * what a command does
+     */
+    public enum Action {
+
+        /**
+         * nothing, the command cannot be played in this state
+         */
+        IGNORE,
+
+        /**
+         * deals a new round
+         */
+        DEAL,
+
+        /**
+         * gives up the round being played for a new one, a shared table does not allow it
+         */
+        REDEAL,
+
+        /**
+         * deals a card to the active hand
+         */
+        HIT,
+
+        /**
+         * finishes the active hand
+         */
+        STAY,
+
+        /**
+         * doubles the bet on the active hand and deals it one card
+         */
+        DOUBLE,
+
+        /**
+         * splits the active hand into two
+         */
+        SPLIT,
+
+        /**
+         * takes insurance against a dealer blackjack
+         */
+        INSURE,
+
+        /**
+         * places the bet for the next rounds
+         */
+        BET,
+
+        /**
+         * names the player in the seat
+         */
+        NAME,
+
+        /**
+         * sends the whole table again
+         */
+        SYNC,
+
+        /**
+         * sends the better play for the active hand
+         */
+        HINT
+    }
+
+    /**
+     * the action of every command in every state, indexed by state and then command
+     */
+    private static final Action[][] TRANSITIONS = new Action[State.values().length][Command.values().length];
+
+    static {
+        for(Action[] row:TRANSITIONS){
+            Arrays.fill(row, Action.IGNORE);
+        }
+        for(State state:State.values()){
+            allow(state, Command.SYNC, Action.SYNC);
+            allow(state, Command.NEW_HAND, state == State.IDLE ? Action.DEAL : Action.REDEAL);
+        }
+        allow(State.IDLE, Command.BET, Action.BET);
+        allow(State.IDLE, Command.NAME, Action.NAME);
+        for(State state:new State[]{State.INSURANCE, State.OPENING, State.PLAYING}){
+            allow(state, Command.HIT, Action.HIT);
+            allow(state, Command.STAY, Action.STAY);
+            allow(state, Command.HINT, Action.HINT);
+        }
+        for(State state:new State[]{State.INSURANCE, State.OPENING}){
+            allow(state, Command.DOUBLE, Action.DOUBLE);
+            allow(state, Command.SPLIT, Action.SPLIT);
+        }
+        allow(State.INSURANCE, Command.INSURANCE, Action.INSURE);
+    }
+
+    /**
+     * no instances, only the table
+     */
+    private SeatMachine(){
+    }
+
+    /**
+     * puts an action in the table
+     * @param state the state the command is played in
+     * @param command the command
+     * @param action what the command does in that state
+     */
+    private static void allow(State state, Command command, Action action){
+        TRANSITIONS[state.ordinal()][command.ordinal()] = action;
+    }
+
+    /**
+     * @param state the state of the seat
+     * @param command the command played
+     * @return what the command does, IGNORE if it cannot be played
+     */
+    public static Action action(State state, Command command){
+        return TRANSITIONS[state.ordinal()][command.ordinal()];
+    }
+
+    /**
+     * works out the state of a seat whose turn is starting
+     * @param hands the hands of the seat
+     * @param dealerCard the rank of the card the dealer has showing
+     * @return INSURANCE if the dealer shows an ace, otherwise the state the active hand puts the seat in
+     */
+    public static State turn(SeatHands hands, byte dealerCard){
+        if(dealerCard == Card.ACE && !hands.isDone()){
+            return State.INSURANCE;
+        }
+        return of(hands);
+    }
+
+    /**
+     * works out the state of a seat on its turn from its active hand, after it has acted on it
+     * @param hands the hands of the seat
+     * @return WAITING if the active hand is done, OPENING if it has two cards and PLAYING after it was hit
+     */
+    public static State of(SeatHands hands){
+        if(hands.isDone()){
+            return State.WAITING;
+        }
+        return hands.getActive().size() == 2 ? State.OPENING : State.PLAYING;
+    }
+}
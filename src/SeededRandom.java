@@ -0,0 +1,75 @@
+
+/**
+ * a small deterministic random number generator, the same seed always gives the same numbers
+ * so a shuffle, and every hand dealt from it, can be reproduced exactly in tests or when looking into a problem
+ * uses the splitmix64 algorithm, which allocates nothing and has no shared state
+ */
+public class SeededRandom implements RandomSource {
+
+    /**
+     * the amount the state moves on by for every number, an odd constant from the golden ratio
+     */
+    static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * the seed this generator was created with
+     */
+    private final long seed;
+
+    /**
+     * the current state of the generator
+     */
+    private long state;
+
+    /**
+     * constructor for a seeded random number generator
+     * @param seed the seed, the same seed always gives the same numbers
+     */
+    public SeededRandom(long seed){
+        this.seed = seed;
+        state = seed;
+    }
+
+    /**
+     * @return the seed this generator was created with, kept with every hand so its shuffle can be replayed
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * gives a random number without bias, rejecting the few values that would favour the low numbers
+     */
+    @Override
+    public int nextInt(int bound){
+        if(bound <= 0){
+            throw new IllegalArgumentException("bound must be above zero: " + bound);
+        }
+        int bits;
+        int result;
+        do{
+            bits = (int) (nextLong() >>> 33);
+            result = bits % bound;
+        } while (bits - result + (bound - 1) < 0); // the value fell in the incomplete range at the top
+        return result;
+    }
+
+    /**
+     * @return the next 64 random bits
+     */
+    private long nextLong(){
+        state += GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * scrambles the bits of a number, used to turn a counter into a well spread seed
+     * @param z the number to scramble
+     * @return the scrambled number
+     */
+    static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,748 @@
+
+/**
+ * the settings the server is started with, read from the command line arguments
+ * each argument is written as --name=value, anything not given keeps its default
+ */
+public class ServerConfig {
+
+    /**
+     * the ways clients can be connected to the server
+     */
+    public enum Transport {
+        /**
+         * a blocking socket and a thread for every connected client
+         */
+        BLOCKING,
+        /**
+         * a few event loop threads sharing every connection through selectors
+         */
+        NIO
+    }
+
+    /**
+     * how the server answers a client asking for a hint
+     */
+    public enum Hints {
+        /**
+         * from a table worked out once for a full shoe
+         */
+        TABLE,
+        /**
+         * worked out again for each hint from the cards the player has not seen yet
+         */
+        COMPOSITION,
+        /**
+         * hints are not answered
+         */
+        OFF
+    }
+
+    /**
+     * the port the server listens on
+     */
+    private int port = 23716;
+
+    /**
+     * the most connections waiting to be accepted
+     */
+    private int backlog = 100;
+
+    /**
+     * the transport clients are connected with
+     */
+    private Transport transport = Transport.BLOCKING;
+
+    /**
+     * the number of event loop threads used by the non-blocking transport
+     */
+    private int eventLoops = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * the number of 52 card decks in each shoe
+     */
+    private int decks = 1;
+
+    /**
+     * the fraction of each shoe dealt before the cut card comes out and the shoe is replaced,
+     * 0 gives a freshly shuffled shoe every hand as a single deck game always has
+     */
+    private double penetration = 0;
+
+    /**
+     * the number of shuffled shoes kept ready by the shoe pool
+     */
+    private int shoePool = 4;
+
+    /**
+     * the kind of random numbers decks are shuffled with
+     */
+    private RandomSource.Mode random = RandomSource.Mode.SPLIT;
+
+    /**
+     * the root seed when shuffling with seeded random numbers, the same seed deals the same shoes
+     */
+    private long seed = 0;
+
+    /**
+     * stores weather the server runs without a window, in which case no awt classes are used at all
+     */
+    private boolean headless = false;
+
+    /**
+     * where the event log is written, "stdout", "none" or a file name, null means stdout when headless and none otherwise
+     */
+    private String log = null;
+
+    /**
+     * the most messages held by the event log
+     */
+    private int logCapacity = 8192;
+
+    /**
+     * the most players at each table, 1 gives every client a game of their own
+     */
+    private int seats = 1;
+
+    /**
+     * how long a seat at a shared table has to act before it stays, in seconds
+     */
+    private double turnTimeout = 30;
+
+    /**
+     * the loopback port prometheus metrics are served on, 0 to not serve them
+     */
+    private int metricsPort = 0;
+
+    /**
+     * the port spectators connect to to watch the shared tables, 0 to take no spectators
+     */
+    private int spectatorPort = 0;
+
+    /**
+     * the size in bytes of the event ring each table keeps for its spectators, a power of two
+     */
+    private int spectatorBuffer = 65536;
+
+    /**
+     * stores weather the metrics are registered with jmx
+     */
+    private boolean jmx = true;
+
+    /**
+     * the directory the hand journal is kept in, null to keep no journal
+     */
+    private String journal = null;
+
+    /**
+     * when the hand journal is forced to the disk
+     */
+    private HandJournal.Sync journalSync = HandJournal.Sync.INTERVAL;
+
+    /**
+     * how often the hand journal is forced to the disk at the latest, in milliseconds
+     */
+    private int journalSyncMillis = 100;
+
+    /**
+     * the size of each hand journal segment file, in megabytes
+     */
+    private int journalSegment = 16;
+
+    /**
+     * the directory the hand history is kept in, null to keep no hand history
+     */
+    private String history = null;
+
+    /**
+     * the file the bankrolls of the players are kept in, null to play hands without stakes. a bankroll is kept for
+     * each name at each address, clients that send no name share one for their address
+     */
+    private String ledger = null;
+
+    /**
+     * the chips a player starts with the first time they play
+     */
+    private long bankroll = 1000;
+
+    /**
+     * the bet of a player who has not placed one
+     */
+    private int bet = 10;
+
+    /**
+     * the largest bet a player can place
+     */
+    private int maxBet = 500;
+
+    /**
+     * how often the ledger is written to its file, in seconds
+     */
+    private double ledgerSnapshot = 5;
+
+    /**
+     * how hints are answered
+     */
+    private Hints hints = Hints.TABLE;
+
+    /**
+     * the most messages waiting to be written to one client
+     */
+    private int outboundQueue = 256;
+
+    /**
+     * what happens when a message is sent to a client whose outbound queue is full
+     */
+    private OutboundQueue.Overflow overflow = OutboundQueue.Overflow.COALESCE;
+
+    /**
+     * how long a write to a client can take before they are disconnected, in seconds
+     */
+    private double writeTimeout = 10;
+
+    /**
+     * the most sessions open at once, 0 for no limit
+     */
+    private int maxSessions = 0;
+
+    /**
+     * the most sessions open at once from one address, 0 for no limit
+     */
+    private int maxSessionsPerAddress = 0;
+
+    /**
+     * the connections each address can make a second, 0 for no limit
+     */
+    private double connectRate = 0;
+
+    /**
+     * the connections an address can make at once before its connect rate applies
+     */
+    private int connectBurst = 10;
+
+    /**
+     * the commands each address can send a second, across all of its sessions, 0 for no limit
+     */
+    private double commandRate = 0;
+
+    /**
+     * the commands an address can send at once before its command rate applies, at least a full batch
+     */
+    private int commandBurst = 100;
+
+    /**
+     * the lobby this server sends heartbeats to, as host:port, null to run on its own
+     */
+    private String lobby = null;
+
+    /**
+     * the host players are sent to by the lobby to reach this server
+     */
+    private String advertise = "127.0.0.1";
+
+    /**
+     * reads the settings from the command line arguments
+     * @param args the arguments given to the main method
+     * @return the settings
+     */
+    public static ServerConfig parse(String[] args){
+        ServerConfig config = new ServerConfig();
+        for(String arg:args){
+            int equals = arg.indexOf('=');
+            if(!arg.startsWith("--") || equals < 0){
+                throw new IllegalArgumentException("arguments must be written as --name=value: " + arg);
+            }
+            config.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        if(config.spectatorPort > 0 && config.seats == 1){
+            throw new IllegalArgumentException("spectators watch shared tables, start with --seats above 1");
+        }
+        if(config.bet > config.maxBet){
+            throw new IllegalArgumentException("the bet cannot be above the largest bet: " + config.bet);
+        }
+        return config;
+    }
+
+    /**
+     * changes a single setting
+     * @param name the name of the setting
+     * @param value the new value of the setting
+     */
+    private void set(String name, String value){
+        try{
+            switch (name) {
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "backlog":
+                    backlog = Integer.parseInt(value);
+                    break;
+                case "transport":
+                    transport = Transport.valueOf(value.toUpperCase());
+                    break;
+                case "event-loops":
+                    eventLoops = positive(Integer.parseInt(value));
+                    break;
+                case "decks":
+                    decks = positive(Integer.parseInt(value));
+                    break;
+                case "penetration":
+                    penetration = Double.parseDouble(value);
+                    if(penetration < 0 || penetration > 1){
+                        throw new IllegalArgumentException("penetration must be between 0 and 1: " + value);
+                    }
+                    break;
+                case "shoe-pool":
+                    shoePool = positive(Integer.parseInt(value));
+                    break;
+                case "random":
+                    random = RandomSource.Mode.valueOf(value.toUpperCase());
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    random = RandomSource.Mode.SEEDED;
+                    break;
+                case "headless":
+                    headless = Boolean.parseBoolean(value);
+                    break;
+                case "log":
+                    log = value;
+                    break;
+                case "log-capacity":
+                    logCapacity = positive(Integer.parseInt(value));
+                    break;
+                case "seats":
+                    seats = positive(Integer.parseInt(value));
+                    if(seats > TableState.MAX_SEATS){
+                        throw new IllegalArgumentException("a table seats at most " + TableState.MAX_SEATS + " players: " + value);
+                    }
+                    break;
+                case "turn-timeout":
+                    turnTimeout = Double.parseDouble(value);
+                    if(!(turnTimeout > 0)){
+                        throw new IllegalArgumentException("turn timeout must be above zero: " + value);
+                    }
+                    break;
+                case "metrics-port":
+                    metricsPort = Integer.parseInt(value);
+                    break;
+                case "spectator-port":
+                    spectatorPort = notNegative(Integer.parseInt(value));
+                    break;
+                case "spectator-buffer":
+                    spectatorBuffer = Integer.parseInt(value);
+                    if(spectatorBuffer < EventRing.MIN_CAPACITY || Integer.bitCount(spectatorBuffer) != 1){
+                        throw new IllegalArgumentException("spectator buffer must be a power of two of at least " + EventRing.MIN_CAPACITY + ": " + value);
+                    }
+                    break;
+                case "jmx":
+                    jmx = Boolean.parseBoolean(value);
+                    break;
+                case "journal":
+                    journal = value.isEmpty() ? null : value;
+                    break;
+                case "journal-sync":
+                    journalSync = HandJournal.Sync.valueOf(value.toUpperCase());
+                    break;
+                case "journal-sync-millis":
+                    journalSyncMillis = positive(Integer.parseInt(value));
+                    break;
+                case "history":
+                    history = value.isEmpty() ? null : value;
+                    break;
+                case "ledger":
+                    ledger = value.isEmpty() ? null : value;
+                    break;
+                case "bankroll":
+                    bankroll = Long.parseLong(value);
+                    if(bankroll < 0){
+                        throw new IllegalArgumentException("bankroll must not be below zero: " + value);
+                    }
+                    break;
+                case "bet":
+                    bet = positive(Integer.parseInt(value));
+                    break;
+                case "max-bet":
+                    maxBet = positive(Integer.parseInt(value));
+                    break;
+                case "ledger-snapshot":
+                    ledgerSnapshot = Double.parseDouble(value);
+                    if(!(ledgerSnapshot > 0)){
+                        throw new IllegalArgumentException("ledger snapshot must be above zero: " + value);
+                    }
+                    break;
+                case "hints":
+                    hints = Hints.valueOf(value.toUpperCase());
+                    break;
+                case "outbound-queue":
+                    outboundQueue = positive(Integer.parseInt(value));
+                    break;
+                case "overflow":
+                    overflow = OutboundQueue.Overflow.valueOf(value.toUpperCase());
+                    break;
+                case "write-timeout":
+                    writeTimeout = Double.parseDouble(value);
+                    if(!(writeTimeout > 0)){
+                        throw new IllegalArgumentException("write timeout must be above zero: " + value);
+                    }
+                    break;
+                case "max-sessions":
+                    maxSessions = notNegative(Integer.parseInt(value));
+                    break;
+                case "max-sessions-per-address":
+                    maxSessionsPerAddress = notNegative(Integer.parseInt(value));
+                    break;
+                case "connect-rate":
+                    connectRate = rate(Double.parseDouble(value));
+                    break;
+                case "connect-burst":
+                    connectBurst = positive(Integer.parseInt(value));
+                    break;
+                case "command-rate":
+                    commandRate = rate(Double.parseDouble(value));
+                    break;
+                case "command-burst":
+                    commandBurst = positive(Integer.parseInt(value));
+                    if(commandBurst < BinaryProtocol.MAX_BATCH){ // a batch takes a token for each of its commands at once
+                        throw new IllegalArgumentException("the command burst must be at least a full batch of "
+                                + BinaryProtocol.MAX_BATCH + ": " + value);
+                    }
+                    break;
+                case "lobby":
+                    lobby = value.isEmpty() ? null : value;
+                    break;
+                case "advertise":
+                    advertise = value;
+                    break;
+                case "journal-segment":
+                    journalSegment = positive(Integer.parseInt(value));
+                    if(journalSegment > 1024){
+                        throw new IllegalArgumentException("a journal segment can be at most 1024 megabytes: " + value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown setting " + name);
+            }
+        }catch (NumberFormatException e){
+            throw new IllegalArgumentException("setting " + name + " must be a number: " + value);
+        }
+    }
+
+    /**
+     * checks that a number setting is above zero
+     * @param value the value of the setting
+     * @return the value
+     */
+    private static int positive(int value){
+        if(value <= 0){
+            throw new IllegalArgumentException("setting must be above zero: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * checks that a number setting where 0 turns a limit off is not below zero
+     * @param value the value of the setting
+     * @return the value
+     */
+    private static int notNegative(int value){
+        if(value < 0){
+            throw new IllegalArgumentException("setting must not be below zero: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * checks that a rate setting is not below zero
+     * @param value the value of the setting, 0 for no limit
+     * @return the value
+     */
+    private static double rate(double value){
+        if(!(value >= 0)){
+            throw new IllegalArgumentException("rate must not be below zero: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort(){
+        return port;
+    }
+
+    /**
+     * @return the most connections waiting to be accepted
+     */
+    public int getBacklog(){
+        return backlog;
+    }
+
+    /**
+     * @return the transport clients are connected with
+     */
+    public Transport getTransport(){
+        return transport;
+    }
+
+    /**
+     * @return the number of event loop threads used by the non-blocking transport
+     */
+    public int getEventLoops(){
+        return eventLoops;
+    }
+
+    /**
+     * @return the number of 52 card decks in each shoe
+     */
+    public int getDecks(){
+        return decks;
+    }
+
+    /**
+     * @return the fraction of each shoe dealt before the cut card comes out
+     */
+    public double getPenetration(){
+        return penetration;
+    }
+
+    /**
+     * @return the number of shuffled shoes kept ready by the shoe pool
+     */
+    public int getShoePool(){
+        return shoePool;
+    }
+
+    /**
+     * @return the kind of random numbers decks are shuffled with
+     */
+    public RandomSource.Mode getRandom(){
+        return random;
+    }
+
+    /**
+     * @return the root seed when shuffling with seeded random numbers
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * @return true if the server runs without a window
+     */
+    public boolean isHeadless(){
+        return headless;
+    }
+
+    /**
+     * @return where the event log is written, "stdout", "none" or a file name
+     */
+    public String getLog(){
+        if(log == null){
+            return headless ? "stdout" : "none";
+        }
+        return log;
+    }
+
+    /**
+     * @return the most messages held by the event log
+     */
+    public int getLogCapacity(){
+        return logCapacity;
+    }
+
+    /**
+     * @return the most players at each table, 1 if every client has a game of their own
+     */
+    public int getSeats(){
+        return seats;
+    }
+
+    /**
+     * @return how long a seat at a shared table has to act before it stays, in seconds
+     */
+    public double getTurnTimeout(){
+        return turnTimeout;
+    }
+
+    /**
+     * @return the loopback port prometheus metrics are served on, 0 if they are not served
+     */
+    public int getMetricsPort(){
+        return metricsPort;
+    }
+
+    /**
+     * @return the port spectators connect to to watch the shared tables, 0 if there are no spectators
+     */
+    public int getSpectatorPort(){
+        return spectatorPort;
+    }
+
+    /**
+     * @return the size in bytes of the event ring each table keeps for its spectators
+     */
+    public int getSpectatorBuffer(){
+        return spectatorBuffer;
+    }
+
+    /**
+     * @return true if the metrics are registered with jmx
+     */
+    public boolean isJmx(){
+        return jmx;
+    }
+
+    /**
+     * @return the directory the hand journal is kept in, null if no journal is kept
+     */
+    public String getJournal(){
+        return journal;
+    }
+
+    /**
+     * @return when the hand journal is forced to the disk
+     */
+    public HandJournal.Sync getJournalSync(){
+        return journalSync;
+    }
+
+    /**
+     * @return how often the hand journal is forced to the disk at the latest, in milliseconds
+     */
+    public int getJournalSyncMillis(){
+        return journalSyncMillis;
+    }
+
+    /**
+     * @return the size of each hand journal segment file, in bytes
+     */
+    public int getJournalSegment(){
+        return journalSegment << 20;
+    }
+
+    /**
+     * @return the directory the hand history is kept in, null if no hand history is kept
+     */
+    public String getHistory(){
+        return history;
+    }
+
+    /**
+     * @return the file the bankrolls of the players are kept in, null if hands are played without stakes
+     */
+    public String getLedger(){
+        return ledger;
+    }
+
+    /**
+     * @return the chips a player starts with the first time they play
+     */
+    public long getBankroll(){
+        return bankroll;
+    }
+
+    /**
+     * @return the bet of a player who has not placed one
+     */
+    public int getBet(){
+        return bet;
+    }
+
+    /**
+     * @return the largest bet a player can place
+     */
+    public int getMaxBet(){
+        return maxBet;
+    }
+
+    /**
+     * @return how often the ledger is written to its file, in seconds
+     */
+    public double getLedgerSnapshot(){
+        return ledgerSnapshot;
+    }
+
+    /**
+     * @return how hints are answered
+     */
+    public Hints getHints(){
+        return hints;
+    }
+
+    /**
+     * @return the most messages waiting to be written to one client
+     */
+    public int getOutboundQueue(){
+        return outboundQueue;
+    }
+
+    /**
+     * @return what happens when a message is sent to a client whose outbound queue is full
+     */
+    public OutboundQueue.Overflow getOverflow(){
+        return overflow;
+    }
+
+    /**
+     * @return how long a write to a client can take before they are disconnected, in milliseconds
+     */
+    public long getWriteTimeout(){
+        return (long) (writeTimeout * 1000);
+    }
+
+    /**
+     * @return the most sessions open at once, 0 for no limit
+     */
+    public int getMaxSessions(){
+        return maxSessions;
+    }
+
+    /**
+     * @return the most sessions open at once from one address, 0 for no limit
+     */
+    public int getMaxSessionsPerAddress(){
+        return maxSessionsPerAddress;
+    }
+
+    /**
+     * @return the connections each address can make a second, 0 for no limit
+     */
+    public double getConnectRate(){
+        return connectRate;
+    }
+
+    /**
+     * @return the connections an address can make at once before its connect rate applies
+     */
+    public int getConnectBurst(){
+        return connectBurst;
+    }
+
+    /**
+     * @return the commands each address can send a second, across all of its sessions, 0 for no limit
+     */
+    public double getCommandRate(){
+        return commandRate;
+    }
+
+    /**
+     * @return the commands an address can send at once before its command rate applies
+     */
+    public int getCommandBurst(){
+        return commandBurst;
+    }
+
+    /**
+     * @return the lobby this server sends heartbeats to, as host:port, null if it runs on its own
+     */
+    public String getLobby(){
+        return lobby;
+    }
+
+    /**
+     * @return the host players are sent to by the lobby to reach this server
+     */
+    public String getAdvertise(){
+        return advertise;
+    }
+}
@@ -0,0 +1,535 @@
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * counters and latency histograms for the hot paths of the server, cheap enough to leave on all the time
+ *
+ * counters are striped LongAdders so sessions on different threads never fight over one cache line,
+ * and latencies go into lock-free LatencyHistograms. everything can be read through jmx or scraped
+ * as prometheus text from a MetricsEndpoint
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    /**
+     * the name the metrics are registered under with jmx
+     */
+    public static final String OBJECT_NAME = "blackjack:type=ServerMetrics";
+
+    /**
+     * the quantiles written for every latency
+     */
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    /**
+     * the number of connections accepted
+     */
+    private final LongAdder connectionsAccepted = new LongAdder();
+
+    /**
+     * the number of sessions currently connected
+     */
+    private final LongAdder activeSessions = new LongAdder();
+
+    /**
+     * the number of hands dealt
+     */
+    private final LongAdder handsDealt = new LongAdder();
+
+    /**
+     * the number of hands ending in each outcome, indexed by outcome code
+     */
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+
+    /**
+     * the time processInput took for each command, indexed by the ordinal of the command
+     */
+    private final LatencyHistogram[] commands = new LatencyHistogram[Command.values().length];
+
+    /**
+     * the time taken to write and flush each message to a client
+     */
+    private final LatencyHistogram send = new LatencyHistogram();
+
+    /**
+     * the time taken to deal the opening hands and tell the player
+     */
+    private final LatencyHistogram startGame = new LatencyHistogram();
+
+    /**
+     * the time taken to play the dealer, settle the hand and tell the player
+     */
+    private final LatencyHistogram endGame = new LatencyHistogram();
+
+    /**
+     * the time taken to shuffle a shoe, in the background or inline
+     */
+    private final LatencyHistogram shuffle = new LatencyHistogram();
+
+    /**
+     * the number of messages waiting in the outbound queues of every session
+     */
+    private final LongAdder outboundQueued = new LongAdder();
+
+    /**
+     * the most messages that have waited in one outbound queue at once
+     */
+    private final LongAccumulator outboundDeepest = new LongAccumulator(Math::max, 0);
+
+    /**
+     * the number of times a full outbound queue was replaced by a snapshot
+     */
+    private final LongAdder outboundCoalesced = new LongAdder();
+
+    /**
+     * the number of messages thrown away by full or coalesced outbound queues
+     */
+    private final LongAdder outboundDropped = new LongAdder();
+
+    /**
+     * the number of clients disconnected for reading too slowly
+     */
+    private final LongAdder slowClientsDisconnected = new LongAdder();
+
+    /**
+     * the number of connections closed straight away as the server or their address had too many sessions
+     */
+    private final LongAdder connectionsRejected = new LongAdder();
+
+    /**
+     * the number of connections closed straight away as their address was connecting too fast
+     */
+    private final LongAdder connectionsThrottled = new LongAdder();
+
+    /**
+     * the number of commands not played as their address was sending them too fast
+     */
+    private final LongAdder commandsThrottled = new LongAdder();
+
+    /**
+     * the number of spectators watching a table
+     */
+    private final LongAdder spectators = new LongAdder();
+
+    /**
+     * the number of times a spectator fell too far behind its table and was skipped to the latest snapshot
+     */
+    private final LongAdder spectatorsSkipped = new LongAdder();
+
+    /**
+     * the ledger the house chips are read from, null if hands are played without stakes
+     */
+    private volatile Ledger ledger;
+
+    /**
+     * the time hands per second was last worked out, from System.nanoTime
+     */
+    private long rateSampledAt = System.nanoTime();
+
+    /**
+     * the number of hands dealt when hands per second was last worked out
+     */
+    private long rateSampledHands = 0;
+
+    /**
+     * the hands per second last worked out
+     */
+    private double handsPerSecond = 0;
+
+    /**
+     * constructor for the metrics of a server
+     */
+    public ServerMetrics(){
+        for(int i = 0; i < outcomes.length; i++){
+            outcomes[i] = new LongAdder();
+        }
+        for(int i = 0; i < commands.length; i++){
+            commands[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * registers the metrics with the platform mbean server so jmx clients can read them
+     * @throws JMException if metrics are already registered under the same name
+     */
+    public void registerWithJmx() throws JMException{
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * records that a connection was accepted and its session has started
+     */
+    public void sessionOpened(){
+        connectionsAccepted.increment();
+        activeSessions.increment();
+    }
+
+    /**
+     * records that a session has ended
+     */
+    public void sessionClosed(){
+        activeSessions.decrement();
+    }
+
+    /**
+     * records how long processInput took for a command
+     * @param command the command
+     * @param nanos the time taken
+     */
+    public void command(Command command, long nanos){
+        commands[command.ordinal()].record(nanos);
+    }
+
+    /**
+     * records how long it took to write and flush a message to a client
+     * @param nanos the time taken
+     */
+    public void sent(long nanos){
+        send.record(nanos);
+    }
+
+    /**
+     * records that a hand was dealt and how long starting the game took
+     * @param nanos the time taken
+     */
+    public void gameStarted(long nanos){
+        handsDealt.increment();
+        startGame.record(nanos);
+    }
+
+    /**
+     * records how a hand ended and how long ending the game took
+     * @param outcome how the hand ended
+     * @param nanos the time taken
+     */
+    public void gameEnded(Outcome outcome, long nanos){
+        outcomes[outcome.getCode()].increment();
+        endGame.record(nanos);
+    }
+
+    /**
+     * records how long a shoe took to shuffle
+     * @param nanos the time taken
+     */
+    public void shuffled(long nanos){
+        shuffle.record(nanos);
+    }
+
+    /**
+     * records a message added to or taken from an outbound queue
+     * @param change 1 if a message was added, -1 if one was taken
+     * @param depth the number of messages in that queue now
+     */
+    public void outboundQueued(int change, int depth){
+        outboundQueued.add(change);
+        outboundDeepest.accumulate(depth);
+    }
+
+    /**
+     * records a full outbound queue being replaced by a snapshot
+     */
+    public void outboundCoalesced(){
+        outboundCoalesced.increment();
+    }
+
+    /**
+     * records a message thrown away by an outbound queue
+     */
+    public void outboundDropped(){
+        outboundDropped.increment();
+    }
+
+    /**
+     * records a client disconnected as its outbound queue was full or a write to it timed out
+     */
+    public void slowClientDisconnected(){
+        slowClientsDisconnected.increment();
+    }
+
+    /**
+     * records a connection closed as the server or its address had too many sessions
+     */
+    public void connectionRejected(){
+        connectionsRejected.increment();
+    }
+
+    /**
+     * records a connection closed as its address was connecting too fast
+     */
+    public void connectionThrottled(){
+        connectionsThrottled.increment();
+    }
+
+    /**
+     * records commands not played as their address was sending them too fast
+     * @param count the number of commands
+     */
+    public void commandsThrottled(int count){
+        commandsThrottled.add(count);
+    }
+
+    /**
+     * records a spectator starting or stopping watching a table
+     * @param change 1 for a spectator starting, -1 for one stopping
+     */
+    public void spectators(int change){
+        spectators.add(change);
+    }
+
+    /**
+     * records a spectator skipped to the latest snapshot of its table as it fell too far behind
+     */
+    public void spectatorSkipped(){
+        spectatorsSkipped.increment();
+    }
+
+    /**
+     * reads what the house has won from a ledger from now on
+     * @param ledger the ledger of the server
+     */
+    public void watch(Ledger ledger){
+        this.ledger = ledger;
+    }
+
+    @Override
+    public long getConnectionsAccepted(){
+        return connectionsAccepted.sum();
+    }
+
+    @Override
+    public long getActiveSessions(){
+        return activeSessions.sum();
+    }
+
+    @Override
+    public long getHandsDealt(){
+        return handsDealt.sum();
+    }
+
+    @Override
+    public long getOutboundQueued(){
+        return outboundQueued.sum();
+    }
+
+    @Override
+    public long getOutboundDeepest(){
+        return outboundDeepest.get();
+    }
+
+    @Override
+    public long getOutboundCoalesced(){
+        return outboundCoalesced.sum();
+    }
+
+    @Override
+    public long getOutboundDropped(){
+        return outboundDropped.sum();
+    }
+
+    @Override
+    public long getSlowClientsDisconnected(){
+        return slowClientsDisconnected.sum();
+    }
+
+    @Override
+    public long getConnectionsRejected(){
+        return connectionsRejected.sum();
+    }
+
+    @Override
+    public long getConnectionsThrottled(){
+        return connectionsThrottled.sum();
+    }
+
+    @Override
+    public long getCommandsThrottled(){
+        return commandsThrottled.sum();
+    }
+
+    @Override
+    public long getSpectators(){
+        return spectators.sum();
+    }
+
+    @Override
+    public long getSpectatorsSkipped(){
+        return spectatorsSkipped.sum();
+    }
+
+    @Override
+    public long getHouseChips(){
+        Ledger ledger = this.ledger;
+        return ledger == null ? 0 : ledger.getHouse();
+    }
+
+    @Override
+    public synchronized double getHandsPerSecond(){
+        long now = System.nanoTime();
+        if(now - rateSampledAt >= 1_000_000_000L){ // a shorter window would swing too much to be useful
+            long hands = handsDealt.sum();
+            handsPerSecond = (hands - rateSampledHands) * 1e9 / (now - rateSampledAt);
+            rateSampledAt = now;
+            rateSampledHands = hands;
+        }
+        return handsPerSecond;
+    }
+
+    @Override
+    public Map<String, Long> getOutcomes(){
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(Outcome outcome:Outcome.values()){
+            counts.put(outcome.name().toLowerCase(Locale.ROOT), outcomes[outcome.getCode()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Micros(){
+        return percentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Micros(){
+        return percentiles(0.99);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP999Micros(){
+        return percentiles(0.999);
+    }
+
+    /**
+     * @param fraction the percentile, for example 0.99
+     * @return the percentile of every latency in microseconds, keyed by the name of what was timed
+     */
+    private Map<String, Double> percentiles(double fraction){
+        Map<String, Double> values = new LinkedHashMap<>();
+        for(Map.Entry<String, LatencyHistogram> timer:timers().entrySet()){
+            values.put(timer.getKey(), timer.getValue().getPercentile(fraction) / 1e3);
+        }
+        return values;
+    }
+
+    /**
+     * @return every latency histogram keyed by the name of what was timed
+     */
+    private Map<String, LatencyHistogram> timers(){
+        Map<String, LatencyHistogram> timers = new LinkedHashMap<>();
+        for(Command command:Command.values()){
+            timers.put("command." + label(command.getName()), commands[command.ordinal()]);
+        }
+        timers.put("send", send);
+        timers.put("start_game", startGame);
+        timers.put("end_game", endGame);
+        timers.put("shuffle", shuffle);
+        return timers;
+    }
+
+    /**
+     * writes every metric in the prometheus text format
+     * @return the metrics as text
+     */
+    public String toPrometheus(){
+        StringBuilder out = new StringBuilder(4096);
+        counter(out, "blackjack_connections_accepted_total", "connections accepted", getConnectionsAccepted());
+        gauge(out, "blackjack_active_sessions", "sessions currently connected", getActiveSessions());
+        counter(out, "blackjack_hands_dealt_total", "hands dealt", getHandsDealt());
+        gauge(out, "blackjack_outbound_queued", "messages waiting to be written to clients", getOutboundQueued());
+        gauge(out, "blackjack_outbound_deepest", "most messages waiting for one client at once", getOutboundDeepest());
+        counter(out, "blackjack_outbound_coalesced_total", "full outbound queues replaced by a snapshot", getOutboundCoalesced());
+        counter(out, "blackjack_outbound_dropped_total", "messages thrown away by full outbound queues", getOutboundDropped());
+        counter(out, "blackjack_slow_clients_disconnected_total", "clients disconnected for reading too slowly", getSlowClientsDisconnected());
+        counter(out, "blackjack_connections_rejected_total", "connections refused as there were too many sessions", getConnectionsRejected());
+        counter(out, "blackjack_connections_throttled_total", "connections refused as their address connected too fast", getConnectionsThrottled());
+        counter(out, "blackjack_commands_throttled_total", "commands refused as their address sent them too fast", getCommandsThrottled());
+        gauge(out, "blackjack_spectators", "spectators watching a table", getSpectators());
+        counter(out, "blackjack_spectators_skipped_total", "spectators skipped to a snapshot for falling behind", getSpectatorsSkipped());
+        gauge(out, "blackjack_house_chips", "chips the house has won less what it has paid out", getHouseChips());
+        out.append("# HELP blackjack_outcomes_total hands ended by outcome\n");
+        out.append("# TYPE blackjack_outcomes_total counter\n");
+        for(Map.Entry<String, Long> outcome:getOutcomes().entrySet()){
+            out.append("blackjack_outcomes_total{outcome=\"").append(outcome.getKey()).append("\"} ").append(outcome.getValue()).append('\n');
+        }
+        out.append("# HELP blackjack_command_seconds time processInput took for each command\n");
+        out.append("# TYPE blackjack_command_seconds summary\n");
+        for(Command command:Command.values()){
+            quantiles(out, "blackjack_command_seconds", "command=\"" + label(command.getName()) + "\"", commands[command.ordinal()]);
+        }
+        summary(out, "blackjack_send_seconds", "time to write and flush a message to a client", send);
+        summary(out, "blackjack_start_game_seconds", "time to deal the opening hands", startGame);
+        summary(out, "blackjack_end_game_seconds", "time to play the dealer and settle a hand", endGame);
+        summary(out, "blackjack_shuffle_seconds", "time to shuffle a shoe", shuffle);
+        return out.toString();
+    }
+
+    /**
+     * writes a gauge in the prometheus text format
+     * @param out where it is written
+     * @param name the name of the gauge
+     * @param help what it measures
+     * @param value its value
+     */
+    private static void gauge(StringBuilder out, String name, String help, long value){
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * writes a counter with its help and type lines
+     * @param out where the text is written
+     * @param name the name of the counter
+     * @param help what the counter counts
+     * @param value the value of the counter
+     */
+    private static void counter(StringBuilder out, String name, String help, long value){
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * writes a latency histogram as a summary with its help and type lines
+     * @param out where the text is written
+     * @param name the name of the summary
+     * @param help what was timed
+     * @param histogram the latencies
+     */
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram){
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" summary\n");
+        quantiles(out, name, null, histogram);
+    }
+
+    /**
+     * writes the quantiles, sum and count of a latency histogram
+     * @param out where the text is written
+     * @param name the name of the summary
+     * @param labels the labels to add to every line, null for none
+     * @param histogram the latencies
+     */
+    private static void quantiles(StringBuilder out, String name, String labels, LatencyHistogram histogram){
+        String prefix = labels == null ? "" : labels + ",";
+        String suffix = labels == null ? "" : "{" + labels + "}";
+        for(double quantile:QUANTILES){
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getPercentile(quantile) / 1e9).append('\n');
+        }
+        out.append(name).append("_sum").append(suffix).append(' ').append(histogram.getSum() / 1e9).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    /**
+     * @param command a command as the game understands it, for example "New Hand"
+     * @return the command as a label value, for example "new_hand"
+     */
+    private static String label(String command){
+        return command.toLowerCase(Locale.ROOT).replace(' ', '_');
+    }
+}
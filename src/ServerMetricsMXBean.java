@@ -0,0 +1,103 @@
+import java.util.Map;
+
+/**
+ * the metrics of a running server as seen through jmx, for example in jconsole under blackjack:type=ServerMetrics
+ * latencies are keyed by the name of what was timed, for example "command.hit" or "shuffle"
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * @return the number of connections accepted since the server started
+     */
+    long getConnectionsAccepted();
+
+    /**
+     * @return the number of sessions currently connected
+     */
+    long getActiveSessions();
+
+    /**
+     * @return the number of hands dealt since the server started
+     */
+    long getHandsDealt();
+
+    /**
+     * @return the number of messages waiting to be written to clients
+     */
+    long getOutboundQueued();
+
+    /**
+     * @return the most messages that have waited for one client at once
+     */
+    long getOutboundDeepest();
+
+    /**
+     * @return the number of times a full outbound queue was replaced by a snapshot
+     */
+    long getOutboundCoalesced();
+
+    /**
+     * @return the number of messages thrown away by full outbound queues
+     */
+    long getOutboundDropped();
+
+    /**
+     * @return the number of clients disconnected for reading too slowly
+     */
+    long getSlowClientsDisconnected();
+
+    /**
+     * @return the number of connections refused as the server or their address had too many sessions
+     */
+    long getConnectionsRejected();
+
+    /**
+     * @return the number of connections refused as their address was connecting too fast
+     */
+    long getConnectionsThrottled();
+
+    /**
+     * @return the number of commands refused as their address was sending them too fast
+     */
+    long getCommandsThrottled();
+
+    /**
+     * @return the number of spectators watching a table
+     */
+    long getSpectators();
+
+    /**
+     * @return the number of times a spectator fell too far behind its table and was skipped to the latest snapshot
+     */
+    long getSpectatorsSkipped();
+
+    /**
+     * @return the chips the house has won less what it has paid out, 0 if hands are played without stakes
+     */
+    long getHouseChips();
+
+    /**
+     * @return the hands dealt per second since this was last read, at most once a second
+     */
+    double getHandsPerSecond();
+
+    /**
+     * @return the number of hands that ended in each outcome
+     */
+    Map<String, Long> getOutcomes();
+
+    /**
+     * @return the median of each latency, in microseconds
+     */
+    Map<String, Double> getLatencyP50Micros();
+
+    /**
+     * @return the 99th percentile of each latency, in microseconds
+     */
+    Map<String, Double> getLatencyP99Micros();
+
+    /**
+     * @return the 99.9th percentile of each latency, in microseconds
+     */
+    Map<String, Double> getLatencyP999Micros();
+}
@@ -0,0 +1,106 @@
+
+import java.awt.BorderLayout;
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * a window showing what the server is doing, it reads the event log a batch at a time on the swing thread
+ * so the server never waits on it, and only keeps the most recent text so it cannot grow without limit
+ */
+@SuppressWarnings("serial") // a window that is never serialized
+public class ServerViewer extends JFrame {
+
+    /**
+     * how often the viewer checks the event log for new messages, in milliseconds
+     */
+    private static final int REFRESH_MILLIS = 100;
+
+    /**
+     * the most messages read on a single refresh
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * the most characters kept in the display area, the oldest text is removed beyond this
+     */
+    private static final int MAX_CHARS = 200_000;
+
+    /**
+     * the server side text display box
+     */
+    private final JTextArea displayArea;
+
+    /**
+     * the log being shown
+     */
+    private final EventLog eventLog;
+
+    /**
+     * the sequence number of the next message to show
+     */
+    private long cursor = 0;
+
+    /**
+     * opens a viewer that closes the program when it is closed
+     * @param eventLog the log to show
+     * @return false if there is no display to open a window on
+     */
+    public static boolean open(EventLog eventLog){
+        if(GraphicsEnvironment.isHeadless()){
+            return false;
+        }
+        ServerViewer viewer = new ServerViewer(eventLog);
+        viewer.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        return true;
+    }
+
+    /**
+     * constructor for the viewer, makes it visible to the user
+     * @param eventLog the log to show
+     */
+    public ServerViewer(EventLog eventLog){
+        super("Blackjack Sever");
+        this.eventLog = eventLog;
+
+        displayArea = new JTextArea();
+        add(new JScrollPane(displayArea), BorderLayout.CENTER);
+        setSize(400, 300);
+        setVisible(true);
+
+        new Timer(REFRESH_MILLIS, actionEvent -> refresh()).start();
+    }
+
+    /**
+     * appends every message added to the log since the last refresh, called on the swing thread
+     */
+    private void refresh(){
+        List<String> batch = new ArrayList<>();
+        long after = eventLog.read(cursor, BATCH_SIZE, batch);
+        if(after - cursor > batch.size()){
+            displayArea.append("\n[" + (after - cursor - batch.size()) + " messages skipped]\n");
+        }
+        cursor = after;
+        if(batch.isEmpty()){
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for(String message:batch){
+            text.append(message);
+        }
+        displayArea.append(text.toString());
+        Document document = displayArea.getDocument();
+        int extra = document.getLength() - MAX_CHARS;
+        if(extra > 0){
+            try{
+                document.remove(0, extra); // drops the oldest text
+            }
+            catch (BadLocationException e){
+                e.printStackTrace();
+            }
+        }
+    }
+}
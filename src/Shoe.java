@@ -0,0 +1,91 @@
+
+/**
+ * a casino style shoe, several decks shuffled together with a cut card placed part way through
+ * once the cut card has come out the hand in progress is finished and the shoe is replaced before the next one
+ */
+public class Shoe {
+
+    /**
+     * every card in the shoe
+     */
+    private final Deck deck;
+
+    /**
+     * the number of cards dealt before the cut card comes out
+     */
+    private final int cutCard;
+
+    /**
+     * the number of times the shoe has been shuffled since the shuffle it was made with
+     */
+    private int shuffles = 0;
+
+    /**
+     * constructor for a shoe, it starts shuffled
+     * @param decks the number of 52 card decks in the shoe
+     * @param penetration the fraction of the shoe dealt before the cut card, 0 means a new shoe every hand
+     * @param random where the random numbers used to shuffle come from
+     */
+    public Shoe(int decks, double penetration, RandomSource random){
+        if(penetration < 0 || penetration > 1){
+            throw new IllegalArgumentException("penetration must be between 0 and 1: " + penetration);
+        }
+        deck = new Deck(decks, random);
+        cutCard = (int) (deck.size() * penetration);
+    }
+
+    /**
+     * deals the next card from the shoe
+     * if a long hand runs the shoe out completely the cards are reshuffled in place so the hand can finish,
+     * this can only happen with a very deep cut card and a small shoe
+     * @return the rank of the card
+     */
+    public byte dealCard(){
+        if(deck.cardsLeft() == 0){
+            deck.resetDeck();
+            shuffles++;
+        }
+        return deck.dealCard();
+    }
+
+    /**
+     * counts the cards still to be dealt by their value
+     * @param counts added to at the index of each value
+     * @return the number of cards counted
+     */
+    public int countUnseen(int[] counts){
+        return deck.countUnseen(counts);
+    }
+
+    /**
+     * @return true once the cut card has come out and the shoe should be replaced before the next hand
+     */
+    public boolean isCutCardReached(){
+        return deck.cardsDealt() >= cutCard;
+    }
+
+    /**
+     * @return the seed the shoe was made with, 0 if it is not shuffled with seeded random numbers
+     */
+    public long getSeed(){
+        return deck.getRandom() instanceof SeededRandom ? ((SeededRandom) deck.getRandom()).getSeed() : 0;
+    }
+
+    /**
+     * a shoe made with the same number of decks on a SeededRandom of the same seed and then reshuffled this many times
+     * deals the same cards, in the same order, as this shoe does now
+     * @return the shuffle the cards are being dealt from, 0 for the one the shoe was made with,
+     * -1 if it is not shuffled with seeded random numbers and so cannot be replayed
+     */
+    public int getShuffle(){
+        return deck.getRandom() instanceof SeededRandom ? shuffles : -1;
+    }
+
+    /**
+     * puts every card back in the shoe and shuffles it, done by the shoe pool away from the game threads
+     */
+    public void reshuffle(){
+        deck.resetDeck();
+        shuffles++;
+    }
+}
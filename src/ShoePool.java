@@ -0,0 +1,138 @@
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * keeps a supply of shuffled shoes ready so that games never shuffle while a player is waiting
+ * a background thread reshuffles shoes that games have finished with and puts them back in the pool
+ */
+public class ShoePool implements Runnable {
+
+    /**
+     * the number of decks in each shoe
+     */
+    private final int decks;
+
+    /**
+     * the fraction of each shoe dealt before the cut card
+     */
+    private final double penetration;
+
+    /**
+     * gives every new shoe its own random source
+     */
+    private final Supplier<RandomSource> randoms;
+
+    /**
+     * where the time taken by every shuffle is recorded
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * shuffled shoes ready to be dealt from
+     */
+    private final BlockingQueue<Shoe> ready;
+
+    /**
+     * shoes games have finished with, waiting to be shuffled again
+     */
+    private final BlockingQueue<Shoe> used = new LinkedBlockingQueue<>();
+
+    /**
+     * constructor for a shoe pool, call start to begin filling it
+     * @param decks the number of decks in each shoe
+     * @param penetration the fraction of each shoe dealt before the cut card
+     * @param size the number of shuffled shoes kept ready
+     * @param randoms gives every new shoe its own random source
+     * @param metrics where the time taken by every shuffle is recorded
+     */
+    public ShoePool(int decks, double penetration, int size, Supplier<RandomSource> randoms, ServerMetrics metrics){
+        if(penetration < 0 || penetration > 1){
+            throw new IllegalArgumentException("penetration must be between 0 and 1: " + penetration);
+        }
+        this.decks = decks;
+        this.penetration = penetration;
+        this.randoms = randoms;
+        this.metrics = metrics;
+        ready = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * starts the background thread that keeps the pool full
+     */
+    public void start(){
+        Thread thread = new Thread(this, "blackjack-shoe-shuffler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * keeps the pool full, reusing finished shoes before making new ones
+     */
+    @Override
+    public void run(){
+        try{
+            while (true){
+                Shoe shoe = used.poll();
+                if(shoe == null){
+                    shoe = newShoe();
+                }else{
+                    reshuffle(shoe);
+                }
+                ready.put(shoe); // waits here while the pool is full
+            }
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * takes a shuffled shoe from the pool
+     * if the background thread has fallen behind a shoe is shuffled on the calling thread instead of waiting
+     * @return a shuffled shoe
+     */
+    public Shoe take(){
+        Shoe shoe = ready.poll();
+        if(shoe == null){
+            shoe = used.poll();
+            if(shoe == null){
+                return newShoe();
+            }
+            reshuffle(shoe);
+        }
+        return shoe;
+    }
+
+    /**
+     * gives a finished shoe back to be shuffled and used again
+     * @param shoe the shoe whose cut card has come out
+     */
+    public void recycle(Shoe shoe){
+        used.offer(shoe);
+    }
+
+    /**
+     * makes a new shoe, which comes out of the constructor already shuffled
+     * @return the shoe
+     */
+    private Shoe newShoe(){
+        long start = System.nanoTime();
+        Shoe shoe = new Shoe(decks, penetration, randoms.get());
+        metrics.shuffled(System.nanoTime() - start);
+        return shoe;
+    }
+
+    /**
+     * shuffles a finished shoe so it can be dealt from again
+     * @param shoe the shoe to shuffle
+     */
+    private void reshuffle(Shoe shoe){
+        long start = System.nanoTime();
+        shoe.reshuffle();
+        metrics.shuffled(System.nanoTime() - start);
+    }
+}
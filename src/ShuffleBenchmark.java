@@ -0,0 +1,70 @@
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * measures how many decks can be shuffled per second as the number of shuffling threads grows,
+ * for every random source mode and for the single shared generator behind Math.random the deck used to use
+ */
+public class ShuffleBenchmark {
+
+    /**
+     * how long each measurement runs for in milliseconds
+     */
+    private static final long MEASURE_MILLIS = 1000;
+
+    /**
+     * main method to run the benchmark
+     * @param args optionally the most threads to measure, defaults to twice the number of cores
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException{
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-8s", "threads");
+        System.out.printf("%14s", "MATH_RANDOM");
+        for(RandomSource.Mode mode:RandomSource.Mode.values()){
+            System.out.printf("%14s", mode);
+        }
+        System.out.println("   (shuffles per second of a 52 card deck)");
+        for(int threads = 1; threads <= maxThreads; threads *= 2){
+            System.out.printf("%-8d", threads);
+            // the old shuffle drew every number from the one generator Math.random shares across the jvm
+            System.out.printf("%14d", measure(threads, () -> bound -> (int) (Math.random() * bound)));
+            for(RandomSource.Mode mode:RandomSource.Mode.values()){
+                System.out.printf("%14d", measure(threads, RandomSource.factory(mode, 42)));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * shuffles decks on a number of threads at once
+     * @param threads the number of threads shuffling
+     * @param randoms gives each thread the random source for its deck
+     * @return the total shuffles per second across every thread
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static long measure(int threads, Supplier<RandomSource> randoms) throws InterruptedException{
+        LongAdder shuffles = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+        long end = System.currentTimeMillis() + MEASURE_MILLIS;
+        for(int i = 0; i < threads; i++){
+            Deck deck = new Deck(1, randoms.get());
+            Thread thread = new Thread(() -> {
+                long count = 0;
+                while (System.currentTimeMillis() < end){
+                    for(int j = 0; j < 100; j++){
+                        deck.resetDeck();
+                    }
+                    count += 100;
+                }
+                shuffles.add(count);
+                done.countDown();
+            });
+            thread.start();
+        }
+        done.await();
+        return shuffles.sum() * 1000 / MEASURE_MILLIS;
+    }
+}
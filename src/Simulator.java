@@ -0,0 +1,302 @@
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * plays a very large number of hands offline with the same rules as the server, spread over every core,
+ * and reports how often each outcome happens and the edge the house has over a strategy
+ *
+ * settings are written as --name=value: hands, decks, penetration, strategy, seed and threads
+ */
+public class Simulator {
+
+    /**
+     * the number of hands one task plays before it stops splitting the work
+     */
+    private static final long HANDS_PER_TASK = 1 << 16;
+
+    /**
+     * the z value for a 95% confidence interval
+     */
+    private static final double Z_95 = 1.96;
+
+    /**
+     * the number of hands to play
+     */
+    private long hands = 10_000_000;
+
+    /**
+     * the number of 52 card decks in each shoe
+     */
+    private int decks = 6;
+
+    /**
+     * the fraction of each shoe dealt before it is reshuffled
+     */
+    private double penetration = 0.75;
+
+    /**
+     * how the player decides to hit or stay
+     */
+    private PlayerStrategy strategy = PlayerStrategy.BASIC;
+
+    /**
+     * the root seed, each task seeds its shoe from this and its position so the same seed always gives the same results
+     */
+    private long seed = System.nanoTime();
+
+    /**
+     * the number of threads to play on
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * main method to run the simulator
+     * @param args the settings, written as --name=value
+     */
+    public static void main(String[] args){
+        Simulator simulator = new Simulator();
+        for(String arg:args){
+            int equals = arg.indexOf('=');
+            if(!arg.startsWith("--") || equals < 0){
+                throw new IllegalArgumentException("arguments must be written as --name=value: " + arg);
+            }
+            simulator.set(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        long start = System.nanoTime();
+        Tally tally = simulator.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d hands, %d decks, %.2f penetration, %s strategy, seed %d%n",
+                tally.hands, simulator.decks, simulator.penetration, simulator.strategy, simulator.seed);
+        System.out.printf("played in %.2f seconds on %d threads, %.0f hands per second%n%n", seconds, simulator.threads, tally.hands / seconds);
+        System.out.print(tally.report());
+    }
+
+    /**
+     * changes a single setting
+     * @param name the name of the setting
+     * @param value the new value of the setting
+     */
+    private void set(String name, String value){
+        switch (name) {
+            case "hands":
+                hands = Long.parseLong(value);
+                if(hands <= 0){
+                    throw new IllegalArgumentException("hands must be above zero: " + value);
+                }
+                break;
+            case "decks":
+                decks = Integer.parseInt(value);
+                if(decks <= 0){
+                    throw new IllegalArgumentException("decks must be above zero: " + value);
+                }
+                break;
+            case "penetration":
+                penetration = Double.parseDouble(value);
+                if(!(penetration > 0 && penetration <= 1)){
+                    throw new IllegalArgumentException("penetration must be above 0 and at most 1: " + value);
+                }
+                break;
+            case "strategy":
+                strategy = PlayerStrategy.valueOf(value.toUpperCase());
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                if(threads <= 0){
+                    throw new IllegalArgumentException("threads must be above zero: " + value);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting " + name);
+        }
+    }
+
+    /**
+     * plays every hand on a fork join pool and merges the results of each task
+     * @return the combined results
+     */
+    public Tally run(){
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            return pool.invoke(new Batch(0, (hands + HANDS_PER_TASK - 1) / HANDS_PER_TASK));
+        }finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * plays one task worth of hands on a shoe of its own, with nothing shared between threads
+     * @param task the position of the task, used to seed its shoe
+     * @return the results of the task
+     */
+    private Tally play(long task){
+        long count = Math.min(HANDS_PER_TASK, hands - task * HANDS_PER_TASK);
+        Shoe shoe = new Shoe(decks, penetration, new SeededRandom(SeededRandom.mix(seed + task * SeededRandom.GAMMA)));
+        Hand playerHand = new Hand();
+        Hand dealerHand = new Hand();
+        Tally tally = new Tally();
+        for(long i = 0; i < count; i++){
+            if(shoe.isCutCardReached()){
+                shoe.reshuffle();
+            }
+            playerHand.clear();
+            dealerHand.clear();
+            BlackjackRules.dealOpeningHands(shoe, playerHand, dealerHand);
+            boolean natural = playerHand.isBlackjack();
+            byte dealerCard = dealerHand.get(0);
+            while (!BlackjackRules.isPlayerDone(playerHand) && strategy.shouldHit(playerHand, dealerCard)){
+                playerHand.add(shoe.dealCard());
+            }
+            BlackjackRules.playDealer(shoe, dealerHand); // the server plays the dealer out even when the player busts
+            tally.add(BlackjackRules.settle(playerHand, dealerHand), natural);
+        }
+        return tally;
+    }
+
+    /**
+     * a range of tasks, split in half until only one is left
+     */
+    @SuppressWarnings("serial") // a task that is never serialized
+    private final class Batch extends RecursiveTask<Tally> {
+
+        /**
+         * the first task in the range
+         */
+        private final long from;
+
+        /**
+         * one past the last task in the range
+         */
+        private final long to;
+
+        /**
+         * constructor for a batch
+         * @param from the first task in the range
+         * @param to one past the last task in the range
+         */
+        private Batch(long from, long to){
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute(){
+            if(to - from <= 0){
+                return new Tally(); // nothing to play
+            }
+            if(to - from == 1){
+                return play(from);
+            }
+            long middle = (from + to) >>> 1;
+            Batch left = new Batch(from, middle);
+            left.fork();
+            Tally right = new Batch(middle, to).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * the counts kept by each task, merged together at the end
+     */
+    public static final class Tally {
+
+        /**
+         * the number of hands played
+         */
+        private long hands;
+
+        /**
+         * the number of hands ending in each outcome, indexed by outcome code
+         */
+        private final long[] outcomes = new long[Outcome.values().length];
+
+        /**
+         * the number of hands where the player was dealt a blackjack
+         */
+        private long naturals;
+
+        /**
+         * the units won by the player across every hand
+         */
+        private long net;
+
+        /**
+         * counts a finished hand
+         * @param outcome how the hand ended
+         * @param natural true if the player was dealt a blackjack
+         */
+        private void add(Outcome outcome, boolean natural){
+            hands++;
+            outcomes[outcome.getCode()]++;
+            net += outcome.getUnits();
+            if(natural){
+                naturals++;
+            }
+        }
+
+        /**
+         * adds the counts of another tally to this one
+         * @param other the other tally
+         * @return this tally
+         */
+        private Tally merge(Tally other){
+            hands += other.hands;
+            for(int i = 0; i < outcomes.length; i++){
+                outcomes[i] += other.outcomes[i];
+            }
+            naturals += other.naturals;
+            net += other.net;
+            return this;
+        }
+
+        /**
+         * @param outcomes the outcomes to add up
+         * @return the number of hands ending in any of them
+         */
+        private long count(Outcome... outcomes){
+            long total = 0;
+            for(Outcome outcome:outcomes){
+                total += this.outcomes[outcome.getCode()];
+            }
+            return total;
+        }
+
+        /**
+         * writes a line with a rate and its 95% confidence interval
+         * @param out where the line is written
+         * @param name what the rate is of
+         * @param count the number of hands it happened in
+         */
+        private void rate(StringBuilder out, String name, long count){
+            double p = (double) count / hands;
+            double interval = Z_95 * Math.sqrt(p * (1 - p) / hands);
+            out.append(String.format("%-22s %8.4f%% +/- %.4f%%%n", name, 100 * p, 100 * interval));
+        }
+
+        /**
+         * @return every rate with its 95% confidence interval, and the house edge
+         */
+        public String report(){
+            StringBuilder out = new StringBuilder();
+            rate(out, "win", count(Outcome.DEALER_BUST, Outcome.PLAYER_HIGHER));
+            rate(out, "loss", count(Outcome.PLAYER_BUST, Outcome.BOTH_BUST, Outcome.PLAYER_LOWER));
+            rate(out, "push", count(Outcome.TIE));
+            rate(out, "player bust", count(Outcome.PLAYER_BUST, Outcome.BOTH_BUST));
+            rate(out, "dealer bust", count(Outcome.DEALER_BUST, Outcome.BOTH_BUST));
+            rate(out, "player blackjack", naturals);
+            out.append(System.lineSeparator());
+            for(Outcome outcome:Outcome.values()){
+                rate(out, outcome.name().toLowerCase(), outcomes[outcome.getCode()]);
+            }
+            // every hand is worth 1, 0 or -1 units, so the sum of squares is the number of hands that were not ties
+            double mean = (double) net / hands;
+            double variance = (double) (hands - count(Outcome.TIE)) / hands - mean * mean;
+            double interval = Z_95 * Math.sqrt(variance / hands);
+            out.append(String.format("%nhouse edge             %8.4f%% +/- %.4f%%%n", -100 * mean, 100 * interval));
+            return out.toString();
+        }
+    }
+}
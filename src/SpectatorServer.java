@@ -0,0 +1,341 @@
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * lets any number of spectators watch the shared tables on a port of their own, one thread sends to all of them
+ *
+ * each table publishes its frames once into its EventRing and this thread writes those same bytes straight from
+ * the ring to every spectator watching it, checking the rings every INTERVAL instead of being woken by the tables,
+ * so a table never does more for a hand however many are watching. a spectator that reads too slowly to keep up is
+ * skipped to the latest snapshot of the table, nothing a spectator does can hold up the players
+ */
+public class SpectatorServer implements Runnable {
+
+    /**
+     * how often the rings are checked for new frames, in milliseconds
+     */
+    private static final long INTERVAL = 20;
+
+    /**
+     * the send buffer asked for on each spectator socket, kept small so a spectator that falls behind is caught by
+     * the ring and skipped, rather than being sent frames that waited seconds in the socket
+     */
+    private static final int SEND_BUFFER = 8192;
+
+    /**
+     * the bytes a spectator sends, the preamble and a watch frame
+     */
+    private static final int REQUEST_LENGTH = BinaryProtocol.PREAMBLE_LENGTH + BinaryProtocol.WATCH_LENGTH;
+
+    /**
+     * the server whose tables are watched, used to display messages
+     */
+    private final BlackjackServer server;
+
+    /**
+     * the tables spectators can watch
+     */
+    private final TableScheduler tables;
+
+    /**
+     * where the number of spectators and the times they were skipped are recorded
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * the channel spectators connect to
+     */
+    private final ServerSocketChannel listener;
+
+    /**
+     * the selector for the listener and every spectator
+     */
+    private final Selector selector;
+
+    /**
+     * every spectator watching a table
+     */
+    private final List<Spectator> watching = new ArrayList<>();
+
+    /**
+     * the buffer anything a spectator sends after its request is read into and thrown away
+     */
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+    /**
+     * constructor for the spectator server, it listens straight away but sends nothing until run
+     * @param server the server whose tables are watched
+     * @param port the port spectators connect to
+     * @throws IOException if the port cannot be bound
+     */
+    public SpectatorServer(BlackjackServer server, int port) throws IOException{
+        this.server = server;
+        tables = server.getTables();
+        metrics = server.getMetrics();
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(port));
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * accepts spectators and sends them their tables until the thread is interrupted
+     */
+    @Override
+    public void run(){
+        while (!Thread.currentThread().isInterrupted()){
+            try{
+                selector.select(INTERVAL);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(key.isValid() && key.isAcceptable()){
+                        accept();
+                    }else if(key.isValid() && key.isReadable()){
+                        ((Spectator) key.attachment()).read();
+                    }
+                }
+                Iterator<Spectator> spectators = watching.iterator();
+                while (spectators.hasNext()){
+                    Spectator spectator = spectators.next();
+                    if(!spectator.send()){
+                        spectators.remove();
+                    }
+                }
+            }
+            catch (IOException ioException){
+                ioException.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * accepts a spectator, who is sent nothing until they say which table to watch
+     * @throws IOException if the spectator cannot be registered
+     */
+    private void accept() throws IOException{
+        SocketChannel channel = listener.accept();
+        if(channel == null){
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().setSendBufferSize(SEND_BUFFER);
+        new Spectator(channel);
+    }
+
+    /**
+     * a single connected spectator, who keeps their own place in the ring of the table they watch
+     */
+    private final class Spectator {
+
+        /**
+         * the channel of the spectator
+         */
+        private final SocketChannel channel;
+
+        /**
+         * the key of the channel in the selector
+         */
+        private final SelectionKey key;
+
+        /**
+         * the preamble and watch frame as they arrive
+         */
+        private final ByteBuffer request = ByteBuffer.allocate(REQUEST_LENGTH);
+
+        /**
+         * the ring of the table being watched, null until the spectator has said which
+         */
+        private EventRing events;
+
+        /**
+         * the two views of the ring the bytes sent are pointed at, the second is only used when they wrap round
+         */
+        private final ByteBuffer[] views = new ByteBuffer[2];
+
+        /**
+         * bytes copied out of the ring to be sent before it, the preamble or the rest of a frame a write stopped in
+         * the middle of, so the spectator only ever leaves the ring between frames and can always be skipped
+         */
+        private ByteBuffer rest = ByteBuffer.allocate(256);
+
+        /**
+         * the position in the ring of the next byte to send
+         */
+        private long cursor;
+
+        /**
+         * while the spectator waits for a snapshot, the position the next one has to come after, otherwise -1
+         */
+        private long waiting = -1;
+
+        /**
+         * constructor for a spectator that has just connected
+         * @param channel the channel of the spectator
+         * @throws IOException if the channel cannot be registered
+         */
+        private Spectator(SocketChannel channel) throws IOException{
+            this.channel = channel;
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        /**
+         * reads the request of the spectator and starts them watching, anything sent after it is thrown away
+         */
+        private void read(){
+            try{
+                ByteBuffer in = events == null ? request : discard.clear();
+                if(channel.read(in) < 0){
+                    close();
+                    return;
+                }
+                if(events == null && !request.hasRemaining()){
+                    watch(request.flip());
+                }
+            }
+            catch (IOException ioException){
+                server.displayMessage("\nError on spectator: " + ioException.getMessage());
+                close();
+            }
+        }
+
+        /**
+         * starts the spectator watching the table they asked for, from its latest snapshot
+         * @param request the preamble and watch frame
+         * @throws IOException if the request is not a version 2 preamble and a watch frame
+         */
+        private void watch(ByteBuffer request) throws IOException{
+            if(BinaryProtocol.checkPreamble(request.get(), request.get(), request.get()) != BinaryProtocol.DELTA_VERSION){
+                throw new StreamCorruptedException("spectators need version " + BinaryProtocol.DELTA_VERSION);
+            }
+            int table = BinaryProtocol.decodeWatch(request);
+            EventRing ring = tables.watch(table);
+            if(ring == null){
+                server.displayMessage("\nSpectator asked for table " + table + ", which is not open");
+                close();
+                return;
+            }
+            events = ring;
+            views[0] = ring.duplicate();
+            views[1] = ring.duplicate();
+            cursor = ring.getSnapshot();
+            BinaryProtocol.writePreamble(rest.clear(), BinaryProtocol.DELTA_VERSION);
+            rest.flip();
+            watching.add(this);
+            metrics.spectators(1);
+            server.displayMessage("\nSpectator watching table " + (table == 0 ? "with the most players" : table));
+        }
+
+        /**
+         * sends what the table published since the last send, as much as the socket takes without waiting
+         * @return false if the spectator has gone, or their table has closed and everything has been sent
+         */
+        private boolean send(){
+            if(!channel.isOpen()){
+                return false; // hung up while being read from
+            }
+            try{
+                if(rest.hasRemaining()){
+                    channel.write(rest);
+                    if(rest.hasRemaining()){
+                        return true;
+                    }
+                }
+                if(waiting >= 0){
+                    long snapshot = events.getSnapshot();
+                    if(snapshot < waiting){
+                        if(events.isClosed()){
+                            close();
+                            return false;
+                        }
+                        return true;
+                    }
+                    cursor = snapshot;
+                    waiting = -1;
+                }
+                if(events.isLapped(cursor)){
+                    skip();
+                    if(waiting >= 0){
+                        return true;
+                    }
+                }
+                long published = events.getPublished();
+                if(cursor == published){
+                    if(events.isClosed() && published == events.getPublished()){
+                        close();
+                        return false;
+                    }
+                    return true;
+                }
+                long start = cursor;
+                events.slice(start, published, views[0], views[1]);
+                cursor += channel.write(views);
+                long frame = start;
+                while (frame < cursor){
+                    long end = frame + events.frameLength(frame);
+                    if(end > cursor){ // the socket took part of a frame, the rest is sent from a copy
+                        if(rest.capacity() < end - cursor){
+                            rest = ByteBuffer.allocate((int) (end - cursor));
+                        }
+                        events.copy(cursor, end, rest.clear());
+                        rest.flip();
+                        cursor = end;
+                    }
+                    frame = end;
+                }
+                if(events.isOverwritten(start)){
+                    throw new IOException("table published a quarter of its ring during a single write");
+                }
+                return true;
+            }
+            catch (IOException ioException){
+                close();
+                return false;
+            }
+        }
+
+        /**
+         * moves a spectator that fell a window behind to the latest snapshot, or has them wait for the next one
+         * if the latest has been written over as well
+         */
+        private void skip(){
+            metrics.spectatorSkipped();
+            long snapshot = events.getSnapshot();
+            if(events.isLapped(snapshot)){
+                waiting = events.getPublished();
+            }else{
+                cursor = snapshot;
+            }
+        }
+
+        /**
+         * disconnects the spectator
+         */
+        private void close(){
+            key.cancel();
+            try{
+                channel.close();
+            }
+            catch (IOException ioException){
+                // closing anyway
+            }
+            if(events != null){
+                metrics.spectators(-1);
+                events = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+
+/**
+ * the best play for every hand against every dealer card, worked out exactly from the cards in the shoe
+ *
+ * the dealer's final score is found by following every order the hole card and the dealer's hits could come out of
+ * the shoe, taking each card out as it is drawn and standing on 17 as BlackjackRules.playDealer does. the player's hits
+ * are then worked back from 21, so hitting is valued as if the player keeps playing as well as possible. the table
+ * is built once for a full shoe when the server starts and a hint is a lookup in it. in composition mode the same sums
+ * are done again for each hint from the cards the player has not seen yet, the shoe still to be dealt and the hole card
+ */
+public class StrategyTable {
+
+    /**
+     * the number of final dealer scores kept, 17 to 21 and then bust
+     */
+    private static final int DEALER_RESULTS = 6;
+
+    /**
+     * below this many unseen cards a hint comes from the table, the dealer could run the shoe out and it is reshuffled
+     */
+    private static final int MIN_UNSEEN = 20;
+
+    /**
+     * the number of 52 card decks in each shoe
+     */
+    private final int decks;
+
+    /**
+     * stores weather each hint is worked out from the cards the player has not seen instead of looked up
+     */
+    private final boolean composition;
+
+    /**
+     * the hint for every hand, indexed by score, 1 if soft and 0 if hard, and the value of the dealers card
+     */
+    private final Hint[][][] hints = new Hint[Hand.BLACKJACK + 1][2][11];
+
+    /**
+     * constructor for a strategy table, builds the table for a full shoe
+     * @param decks the number of 52 card decks in each shoe
+     * @param composition true to work each hint out from the cards the player has not seen, false to look it up
+     */
+    public StrategyTable(int decks, boolean composition){
+        this.decks = decks;
+        this.composition = composition;
+        for(int up = 1; up <= 10; up++){
+            int[] counts = fullShoe(decks);
+            counts[up]--;
+            Hint[] solved = solve(counts, up);
+            for(int score = 2; score < Hand.BLACKJACK; score++){
+                hints[score][0][up] = solved[score];
+                if(score >= 12){
+                    hints[score][1][up] = solved[score - 10 + 32];
+                }
+            }
+        }
+    }
+
+    /**
+     * finds the best play for the player
+     * @param playerHand the players hand, not yet finished
+     * @param dealerHand the dealers hand, index 0 is the card the player can see and index 1 the hole card
+     * @param shoe the shoe the hand is dealt from
+     * @return the hint
+     */
+    public Hint hint(Hand playerHand, Hand dealerHand, Shoe shoe){
+        int up = Card.value(dealerHand.get(0));
+        if(composition){
+            int[] counts = new int[11];
+            int unseen = shoe.countUnseen(counts);
+            counts[Card.value(dealerHand.get(1))]++; // the hole card has been dealt but the player has not seen it
+            if(unseen + 1 >= MIN_UNSEEN){
+                return solve(counts, up)[index(playerHand)];
+            }
+        }
+        return hints[playerHand.getScore()][playerHand.isSoft() ? 1 : 0][up];
+    }
+
+    /**
+     * @return the number of 52 card decks in each shoe the table was built for
+     */
+    public int getDecks(){
+        return decks;
+    }
+
+    /**
+     * @param hand a hand
+     * @return where it is in the array returned by solve, hard totals first and hands with an ace after them
+     */
+    private static int index(Hand hand){
+        int score = hand.getScore();
+        return hand.isSoft() ? score - 10 + 32 : score;
+    }
+
+    /**
+     * works out the hint for every hand against one dealer card
+     * @param counts the number of each card value the hole card and every hit can come from, indexed by value
+     * @param up the value of the dealers card
+     * @return the hint for each hard total at that index, and for each soft hand at 32 plus its hard total
+     */
+    private static Hint[] solve(int[] counts, int up){
+        double[] dealer = new double[DEALER_RESULTS];
+        int left = 0;
+        for(int value = 1; value <= 10; value++){
+            left += counts[value];
+        }
+        dealer(counts, left, up, up == 1, 1.0, dealer);
+        double[] chance = new double[11];
+        for(int value = 1; value <= 10; value++){
+            chance[value] = (double) counts[value] / left;
+        }
+        double[][] best = new double[32][2];
+        double[][] hit = new double[32][2];
+        // worked back from the highest hard total, a hit only ever raises it
+        for(int hard = 31; hard >= 2; hard--){
+            for(int ace = 1; ace >= 0; ace--){
+                int score = ace == 1 && hard + 10 <= Hand.BLACKJACK ? hard + 10 : hard;
+                double stay = stay(score, dealer);
+                if(score >= Hand.BLACKJACK){
+                    best[hard][ace] = stay; // the hand is over at 21 or more
+                    hit[hard][ace] = Double.NaN;
+                    continue;
+                }
+                double value = 0;
+                for(int card = 1; card <= 10; card++){
+                    if(chance[card] > 0){
+                        value += chance[card] * best[Math.min(hard + card, 31)][card == 1 ? 1 : ace];
+                    }
+                }
+                hit[hard][ace] = value;
+                best[hard][ace] = Math.max(stay, value);
+            }
+        }
+        Hint[] solved = new Hint[64];
+        for(int hard = 2; hard < 32; hard++){
+            int soft = hard + 10;
+            if(hard < Hand.BLACKJACK){
+                solved[hard] = new Hint(hit[hard][0], stay(hard, dealer));
+            }
+            if(soft < Hand.BLACKJACK){
+                solved[hard + 32] = new Hint(hit[hard][1], stay(soft, dealer));
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * adds up the chance of each final dealer score by drawing every card the shoe could give, taking it out as it goes
+     * @param counts the number of each card value left, changed while drawing and put back before returning
+     * @param left the number of cards left
+     * @param hard the dealers total counting aces as 1
+     * @param ace true if the dealer has an ace
+     * @param chance the chance of getting to this hand
+     * @param results the chance of each final score, 17 to 21 and then bust, added to
+     */
+    private static void dealer(int[] counts, int left, int hard, boolean ace, double chance, double[] results){
+        int score = ace && hard + 10 <= Hand.BLACKJACK ? hard + 10 : hard;
+        if(score >= BlackjackRules.DEALER_STANDS_ON || left == 0){
+            results[score > Hand.BLACKJACK ? DEALER_RESULTS - 1 : Math.max(score, 17) - 17] += chance;
+            return;
+        }
+        for(int value = 1; value <= 10; value++){
+            int count = counts[value];
+            if(count == 0){
+                continue;
+            }
+            counts[value]--;
+            dealer(counts, left - 1, hard + value, ace || value == 1, chance * count / left, results);
+            counts[value]++;
+        }
+    }
+
+    /**
+     * @param score the players final score
+     * @param dealer the chance of each final dealer score
+     * @return the units the player can expect to win by staying on the score
+     */
+    private static double stay(int score, double[] dealer){
+        if(score > Hand.BLACKJACK){
+            return -1; // a player who busts loses even if the dealer busts too
+        }
+        double value = dealer[DEALER_RESULTS - 1];
+        for(int result = 0; result < DEALER_RESULTS - 1; result++){
+            int dealerScore = result + 17;
+            if(score > dealerScore){
+                value += dealer[result];
+            }else if(score < dealerScore){
+                value -= dealer[result];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param decks the number of 52 card decks
+     * @return the number of each card value in a full shoe, indexed by value
+     */
+    private static int[] fullShoe(int decks){
+        int[] counts = new int[11];
+        for(int value = 1; value <= 9; value++){
+            counts[value] = 4 * decks;
+        }
+        counts[10] = 16 * decks; // tens and the three picture cards
+        return counts;
+    }
+}
@@ -0,0 +1,801 @@
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * a blackjack table where up to seven players share one dealer and one shoe
+ *
+ * a hand is dealt once every seated player has asked for one, or once the turn timeout has passed since the
+ * first of them did. the seats then act in order, each playing the hands it split into one after the other, a seat
+ * that does not act in time stays on the hand it is playing, and the dealer plays once for the whole table. what a
+ * command does is looked up for the state of its seat in the SeatMachine table. every change is encoded into one
+ * version 2 frame and that same frame is written to every seat, so the work of a hand does not grow with the number
+ * of players watching it. when the server has spectators the frame is also published once into the event ring of
+ * the table, which they read from
+ */
+public class Table {
+
+    /**
+     * the scheduler that opened this table, used for timeouts and to close the table once it is empty
+     */
+    private final TableScheduler scheduler;
+
+    /**
+     * the number of this table, tables are numbered from 1 in the order they open
+     */
+    private final int id;
+
+    /**
+     * the most players at this table
+     */
+    private final int capacity;
+
+    /**
+     * where shuffled shoes come from and finished ones go back to
+     */
+    private final ShoePool shoes;
+
+    /**
+     * where the hands dealt, their outcomes and the time each command takes are recorded
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * where every card, command and outcome is written down, null if the server keeps no journal
+     */
+    private final HandJournal journal;
+
+    /**
+     * the id the hand being played has in the journal
+     */
+    private long hand;
+
+    /**
+     * where every finished hand is stored, null if the server keeps no hand history
+     */
+    private final HandHistory history;
+
+    /**
+     * where hints come from, null if the server gives no hints
+     */
+    private final StrategyTable strategy;
+
+    /**
+     * where the bankrolls of the players are kept, null if hands are played without stakes
+     */
+    private final Ledger ledger;
+
+    /**
+     * the players at the table, indexed by seat, null for an empty seat
+     */
+    private final Seat[] seats = new Seat[TableState.MAX_SEATS + 1];
+
+    /**
+     * stores weather each seat has asked for the next hand
+     */
+    private final boolean[] ready = new boolean[TableState.MAX_SEATS + 1];
+
+    /**
+     * who was dealt into each seat of the hand being played, kept after they leave so their hand can be stored
+     */
+    private final String[] players = new String[TableState.MAX_SEATS + 1];
+
+    /**
+     * the player dealt into each seat of the hand being played, null for a seat left out. a player who takes a seat
+     * freed during the hand is not the one dealt in, so they sit out until the next deal rather than play its cards
+     */
+    private final Seat[] dealt = new Seat[TableState.MAX_SEATS + 1];
+
+    /**
+     * the account of who was dealt into each seat of the hand being played, kept after they leave so it is settled
+     */
+    private final Ledger.Account[] accounts = new Ledger.Account[TableState.MAX_SEATS + 1];
+
+    /**
+     * the chips bet on each hand of each seat of the hand being played, 0 for a seat with no bet
+     */
+    private final long[] staked = new long[TableState.MAX_SEATS + 1];
+
+    /**
+     * the chips each seat insured the hand being played with against a dealer blackjack, 0 for a seat not insured
+     */
+    private final long[] insurance = new long[TableState.MAX_SEATS + 1];
+
+    /**
+     * where each seat is in the hand being played, which decides what each of its commands does
+     */
+    private final SeatMachine.State[] states = new SeatMachine.State[TableState.MAX_SEATS + 1];
+
+    /**
+     * the chips the player in each seat bets on each hand
+     */
+    private final long[] bets = new long[TableState.MAX_SEATS + 1];
+
+    /**
+     * the bankroll each seat is told once the frames in the buffer are sent, -1 for none
+     */
+    private final long[] bankrolls = new long[TableState.MAX_SEATS + 1];
+
+    /**
+     * the table as every player has been shown it, the dealers hole card is not on it until the hand is over
+     */
+    private final TableState view = new TableState();
+
+    /**
+     * the dealers whole hand, index 0 is the card the players can see
+     */
+    private final Hand dealerHand = new Hand();
+
+    /**
+     * the shoe the cards are currently dealt from, null once the table is closed
+     */
+    private Shoe shoe;
+
+    /**
+     * the shuffle of the shoe the hand was dealt from, -1 if it cannot be replayed
+     */
+    private int shuffle;
+
+    /**
+     * the number of players seated
+     */
+    private int seated = 0;
+
+    /**
+     * the timeout waiting to fire, null if there is none
+     */
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * counts the timeouts started, a timeout that fires after a newer one was started does nothing
+     */
+    private long timeouts = 0;
+
+    /**
+     * the buffer frames are encoded into before being sent
+     */
+    private ByteBuffer frame = ByteBuffer.allocate(256);
+
+    /**
+     * the buffer a bankroll frame is encoded into, sent to one seat without touching the frames being built
+     */
+    private final ByteBuffer bankroll = ByteBuffer.allocate(BinaryProtocol.LENGTH_FIELD + 13);
+
+    /**
+     * every frame sent to all the seats, for spectators to read, null if the server has no spectators
+     */
+    private final EventRing events;
+
+    /**
+     * constructor for a table
+     * @param scheduler the scheduler opening the table
+     * @param id the number of the table
+     * @param capacity the most players at the table
+     * @param shoes where shuffled shoes come from
+     * @param metrics where the hands dealt, their outcomes and the time each command takes are recorded
+     * @param journal where every card, command and outcome is written down, null to keep no journal
+     * @param history where every finished hand is stored, null to keep no hand history
+     * @param strategy where hints come from, null to give no hints
+     * @param ledger where the bankrolls of the players are kept, null to play hands without stakes
+     * @param events the ring the frames sent to every seat are published to for spectators, null for none
+     */
+    Table(TableScheduler scheduler, int id, int capacity, ShoePool shoes, ServerMetrics metrics, HandJournal journal,
+          HandHistory history, StrategyTable strategy, Ledger ledger, EventRing events){
+        this.scheduler = scheduler;
+        this.id = id;
+        this.capacity = capacity;
+        this.shoes = shoes;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.history = history;
+        this.strategy = strategy;
+        this.ledger = ledger;
+        this.events = events;
+        Arrays.fill(bankrolls, -1);
+        Arrays.fill(states, SeatMachine.State.IDLE);
+        shoe = shoes.take();
+        if(events != null){ // spectators who come before the first hand start from the empty table
+            ByteBuffer out = clear(BinaryProtocol.maxFrameLength(view));
+            BinaryProtocol.writeSnapshot(view, out);
+            events.publish(out.flip());
+        }
+    }
+
+    /**
+     * sits a player in the lowest free seat and sends them the table as it is
+     * @param seat the seat of the player
+     * @return false if the table is full or closed
+     */
+    synchronized boolean join(Seat seat){
+        if(seated == capacity || shoe == null){
+            return false;
+        }
+        byte number = 1;
+        while (seats[number] != null){
+            number++;
+        }
+        seats[number] = seat;
+        seated++;
+        bets[number] = ledger == null ? 0 : ledger.getDefaultBet();
+        states[number] = SeatMachine.State.IDLE;
+        seat.sit(this, number);
+        ByteBuffer out = clear(BinaryProtocol.SEAT_LENGTH + BinaryProtocol.maxFrameLength(view));
+        BinaryProtocol.writeSeat(BinaryProtocol.SEATED, number, out);
+        BinaryProtocol.writeSnapshot(view, out);
+        seat.send(out.flip());
+        return true;
+    }
+
+    /**
+     * takes a player away from the table, their hand is left on it and played as a stay
+     * @param seat the seat of the player
+     */
+    void leave(Seat seat){
+        synchronized (this){
+            byte number = seat.getNumber();
+            if(seats[number] != seat){
+                return;
+            }
+            seats[number] = null;
+            ready[number] = false;
+            states[number] = SeatMachine.State.IDLE;
+            seated--;
+            if(view.getPhase() == TableState.IN_HAND && view.getTurn() == number){
+                record(HandJournal.ACTION, active(number), BinaryProtocol.STAY);
+                clear(BinaryProtocol.maxFrameLength(view));
+                nextTurn(); // any hands it split into that were not played yet stay too
+                broadcast();
+            }else if(view.getPhase() != TableState.IN_HAND && seated > 0 && allReady()){
+                deal(); // everyone left was only waiting for this player
+            }
+        }
+        scheduler.closeIfEmpty(this); // outside the lock of the table so the scheduler lock is always taken first
+    }
+
+    /**
+     * closes the table if nobody is sitting at it
+     * @return true if the table was closed
+     */
+    synchronized boolean close(){
+        if(seated > 0 || shoe == null){
+            return false;
+        }
+        cancelTimeout();
+        shoes.recycle(shoe);
+        shoe = null;
+        if(events != null){
+            events.close();
+        }
+        return true;
+    }
+
+    /**
+     * plays a command from a seat, what it does is looked up from where the seat is in the hand
+     * @param seat the seat the command came from
+     * @param command the command
+     * @param chips the chips of a bet
+     * @return true if the command was played, false if it was ignored, such as a hit out of turn
+     */
+    synchronized boolean command(Seat seat, Command command, long chips){
+        long start = System.nanoTime();
+        byte number = seat.getNumber();
+        if(seats[number] != seat){
+            return false; // the seat has left
+        }
+        boolean played = true;
+        switch (SeatMachine.action(states[number], command)){
+            case HIT:
+                record(HandJournal.ACTION, active(number), BinaryProtocol.HIT);
+                clear(BinaryProtocol.maxFrameLength(view) + BinaryProtocol.DEAL_LENGTH + BinaryProtocol.SEAT_LENGTH);
+                draw(number);
+                broadcast();
+                break;
+            case STAY:
+                record(HandJournal.ACTION, active(number), BinaryProtocol.STAY);
+                clear(BinaryProtocol.maxFrameLength(view));
+                advance(number);
+                broadcast();
+                break;
+            case DOUBLE:
+                played = raise(number, staked[number]);
+                if(played){
+                    record(HandJournal.ACTION, active(number), BinaryProtocol.DOUBLE);
+                    view.getHands(number).doubleDown();
+                    clear(BinaryProtocol.maxFrameLength(view) + BinaryProtocol.DEAL_LENGTH + BinaryProtocol.SEAT_LENGTH);
+                    draw(number);
+                    broadcast();
+                }
+                break;
+            case SPLIT:
+                played = view.getHands(number).canSplit() && raise(number, staked[number]);
+                if(played){
+                    clear(BinaryProtocol.maxFrameLength(view) + 2 * (BinaryProtocol.SEAT_LENGTH + BinaryProtocol.DEAL_LENGTH));
+                    split(number);
+                    broadcast();
+                }
+                break;
+            case INSURE:
+                played = insure(number);
+                break;
+            case DEAL: // a player who sat down during a hand waits for the next one
+                played = !ready[number];
+                if(played){
+                    ready[number] = true;
+                    if(view.getPhase() != TableState.IN_HAND && allReady()){
+                        deal();
+                    }else if(view.getPhase() != TableState.IN_HAND && readyCount() == 1){
+                        startTimeout(); // the others have until the timeout to join the hand
+                    }
+                }
+                break;
+            case BET: // a bet on a hand being played stays as it is
+                played = ledger != null && ledger.isAllowed(chips);
+                if(played){
+                    bets[number] = chips;
+                    tell(number, ledger.getBalance(ledger.open(seat.getPlayer())), bets[number]);
+                }
+                break;
+            case SYNC: {
+                ByteBuffer out = clear(BinaryProtocol.maxFrameLength(view));
+                BinaryProtocol.writeSnapshot(view, out);
+                seat.send(out.flip());
+                break;
+            }
+            case HINT: {
+                played = strategy != null;
+                if(played){
+                    // every card but the hole card is face up, so in composition mode the other seats' cards count as seen
+                    ByteBuffer out = clear(BinaryProtocol.LENGTH_FIELD + 6);
+                    BinaryProtocol.writeHint(strategy.hint(view.getHand(number), dealerHand, shoe), out);
+                    seat.send(out.flip()); // only the seat that asked is told
+                }
+                break;
+            }
+            default:
+                played = false;
+        }
+        metrics.command(command, System.nanoTime() - start);
+        return played;
+    }
+
+    /**
+     * names the player in a seat, only while the seat is not dealt into a hand, as its account is opened at the deal
+     * @param seat the seat the name came from
+     * @param name the name the player gave
+     * @return true if the name was taken, false if the seat is in a hand, has left or the name is not allowed
+     */
+    synchronized boolean name(Seat seat, String name){
+        byte number = seat.getNumber();
+        String named = Command.player(seat.getAddress(), name);
+        if(seats[number] != seat || named == null
+                || SeatMachine.action(states[number], Command.NAME) != SeatMachine.Action.NAME){
+            return false;
+        }
+        seat.setPlayer(named);
+        if(ledger != null){
+            tell(number, ledger.getBalance(ledger.open(named)), bets[number]);
+        }
+        return true;
+    }
+
+    /**
+     * deals a card to the active hand of the seat whose turn it is, adding the frame saying so to the buffer and
+     * moving on once the hand cannot take another
+     * @param number the seat
+     */
+    private void draw(byte number){
+        SeatHands hands = view.getHands(number);
+        int index = hands.getActiveIndex();
+        Hand hand = view.deal(number, index, shoe.dealCard());
+        record(HandJournal.CARD, active(number), hand.get(hand.size() - 1));
+        BinaryProtocol.writeDeal(BinaryProtocol.hand(number, index), hand.get(hand.size() - 1), hand.getScore(), frame);
+        if(hands.isDone()){ // 21 or more, or the one card of a doubled hand
+            advance(number);
+        }else{
+            states[number] = SeatMachine.of(hands);
+            startTimeout(); // a fresh timeout for the rest of the turn
+        }
+    }
+
+    /**
+     * splits the active hand of the seat whose turn it is and deals a second card to both hands, adding the frames
+     * saying so to the buffer
+     * @param number the seat
+     */
+    private void split(byte number){
+        int index = view.getHands(number).getActiveIndex();
+        record(HandJournal.ACTION, active(number), BinaryProtocol.SPLIT);
+        BinaryProtocol.writeSeat(BinaryProtocol.SPLIT_EVENT, BinaryProtocol.hand(number, index), frame);
+        int added = view.split(number, index);
+        for(int to:new int[]{index, added}){
+            Hand hand = view.deal(number, to, shoe.dealCard());
+            record(HandJournal.CARD, BinaryProtocol.hand(number, to), hand.get(1));
+            BinaryProtocol.writeDeal(BinaryProtocol.hand(number, to), hand.get(1), hand.getScore(), frame);
+        }
+        SeatHands hands = view.getHands(number);
+        if(hands.isDone()){ // 21 straight away, or split aces which get one card each
+            advance(number);
+        }else{
+            states[number] = SeatMachine.of(hands);
+            startTimeout();
+        }
+    }
+
+    /**
+     * insures the hand of the seat whose turn it is against a dealer blackjack for half its bet, only the seat is told
+     * @param number the seat
+     * @return false if the bet is too small to take half of or the bankroll does not cover it
+     */
+    private boolean insure(byte number){
+        long stake = staked[number] / 2;
+        if(ledger != null && (stake < 1 || !raise(number, stake))){
+            return false;
+        }
+        record(HandJournal.ACTION, active(number), BinaryProtocol.INSURANCE);
+        view.getHands(number).insure();
+        insurance[number] = stake;
+        states[number] = SeatMachine.of(view.getHands(number)); // insurance is only offered as the first decision
+        return true;
+    }
+
+    /**
+     * takes more chips out of the bankroll of a seat for the hand being played, to double, split or insure
+     * @param number the seat
+     * @param chips the chips to take
+     * @return false if the bankroll does not cover them, true straight away if hands are played without stakes
+     */
+    private boolean raise(byte number, long chips){
+        if(ledger == null){
+            return true;
+        }
+        if(!ledger.stake(accounts[number], chips)){
+            tell(number, ledger.getBalance(accounts[number]), 0);
+            return false;
+        }
+        tell(number, ledger.getBalance(accounts[number]), bets[number]);
+        return true;
+    }
+
+    /**
+     * moves a seat on to the next hand it split into that can still be played, or gives the turn to the next seat,
+     * adding the frame saying so to the buffer
+     * @param number the seat whose turn it is
+     */
+    private void advance(byte number){
+        SeatHands hands = view.getHands(number);
+        if(hands.next()){
+            states[number] = SeatMachine.of(hands);
+            ensure(BinaryProtocol.SEAT_LENGTH);
+            BinaryProtocol.writeSeat(BinaryProtocol.TURN, BinaryProtocol.hand(number, hands.getActiveIndex()), frame);
+            startTimeout();
+        }else{
+            states[number] = SeatMachine.State.WAITING;
+            nextTurn();
+        }
+    }
+
+    /**
+     * @param number a seat
+     * @return the active hand of the seat as the journal names it
+     */
+    private byte active(byte number){
+        return BinaryProtocol.hand(number, view.getHands(number).getActiveIndex());
+    }
+
+    /**
+     * deals a new hand to every seat that asked for one and gives the first of them the turn
+     */
+    private void deal(){
+        long start = System.nanoTime();
+        if(ledger != null && !stake()){
+            return; // nobody who asked could cover their bet
+        }
+        if(shoe.isCutCardReached()){ // swaps in a shoe that was shuffled in the background
+            shoes.recycle(shoe);
+            shoe = shoes.take();
+        }
+        shuffle = shoe.getShuffle();
+        view.startHand();
+        dealerHand.clear();
+        for(int round = 0; round < 2; round++){ // a card to each seat in turn and then the dealer, twice round
+            for(byte number = 1; number <= capacity; number++){
+                if(ready[number]){
+                    view.deal(number, shoe.dealCard());
+                }
+            }
+            dealerHand.add(shoe.dealCard());
+        }
+        view.deal(BinaryProtocol.DEALER_SEAT, dealerHand.get(0));
+        int dealtIn = readyCount();
+        for(byte number = 1; number <= capacity; number++){
+            players[number] = ready[number] ? seats[number].getPlayer() : null;
+            dealt[number] = ready[number] ? seats[number] : null;
+            states[number] = ready[number] ? SeatMachine.State.WAITING : SeatMachine.State.IDLE;
+        }
+        if(journal != null){
+            hand = journal.newHand();
+            record(HandJournal.START, (byte) 0, (byte) dealtIn);
+            for(byte number = 1; number <= capacity; number++){
+                recordCards(number, view.getHand(number), 0);
+            }
+            recordCards(BinaryProtocol.DEALER_SEAT, dealerHand, 0);
+        }
+        for(int i = 0; i < ready.length; i++){
+            ready[i] = false;
+        }
+        ByteBuffer out = clear(BinaryProtocol.maxFrameLength(view) + 4);
+        BinaryProtocol.writeSnapshot(view, out);
+        nextTurn();
+        long taken = System.nanoTime() - start;
+        for(int i = 0; i < dealtIn; i++){
+            metrics.gameStarted(taken);
+        }
+        broadcast();
+    }
+
+    /**
+     * takes the bet of every seat that asked for the next hand out of its bankroll, a seat that cannot cover its bet
+     * is told so and left out of the hand
+     * @return true if any seat is still in the hand
+     */
+    private boolean stake(){
+        for(byte number = 1; number <= capacity; number++){
+            if(ready[number] && seats[number] != null){
+                accounts[number] = ledger.open(seats[number].getPlayer());
+                if(ledger.stake(accounts[number], bets[number])){
+                    staked[number] = bets[number];
+                    tell(number, ledger.getBalance(accounts[number]), bets[number]);
+                }else{
+                    ready[number] = false;
+                    tell(number, ledger.getBalance(accounts[number]), 0);
+                }
+            }
+        }
+        return readyCount() > 0;
+    }
+
+    /**
+     * sends a seat its bankroll and bet, only to that seat
+     * @param number the seat
+     * @param balance the bankroll of the player in the seat
+     * @param bet the bet of the player, 0 if they cannot cover it
+     */
+    private void tell(byte number, long balance, long bet){
+        bankroll.clear();
+        BinaryProtocol.writeBankroll(balance, bet, bankroll);
+        seats[number].send(bankroll.flip());
+    }
+
+    /**
+     * gives the turn to the next seat still in the hand, or plays the dealer if there is none,
+     * adding the frame saying so to the buffer
+     */
+    private void nextTurn(){
+        for(byte number = (byte) (view.getTurn() + 1); number <= capacity; number++){
+            if(seats[number] != null && seats[number] == dealt[number] && !view.getHands(number).isDone()){
+                view.setTurn(number);
+                states[number] = SeatMachine.turn(view.getHands(number), dealerHand.get(0));
+                ensure(BinaryProtocol.SEAT_LENGTH);
+                BinaryProtocol.writeSeat(BinaryProtocol.TURN, number, frame);
+                startTimeout();
+                return;
+            }
+        }
+        finishHand();
+    }
+
+    /**
+     * plays the dealer once for the whole table and settles every seat dealt in, adding the result to the buffer
+     */
+    private void finishHand(){
+        long start = System.nanoTime();
+        cancelTimeout();
+        BlackjackRules.playDealer(shoe, dealerHand);
+        recordCards(BinaryProtocol.DEALER_SEAT, dealerHand, 2);
+        int dealerSent = view.getDealerHand().size();
+        ensure(BinaryProtocol.maxFrameLength(view) + dealerHand.size());
+        int entries = 0;
+        for(byte number = 1; number <= capacity; number++){
+            if(view.isDealtIn(number)){
+                entries += view.getHands(number).size();
+            }
+        }
+        int result = BinaryProtocol.beginResult(dealerHand, dealerSent, entries, frame);
+        Outcome[] outcomes = new Outcome[entries];
+        int settled = 0;
+        for(byte number = 1; number <= capacity; number++){
+            states[number] = SeatMachine.State.IDLE;
+            if(!view.isDealtIn(number)){
+                continue;
+            }
+            SeatHands hands = view.getHands(number);
+            for(int i = 0; i < hands.size(); i++){
+                Hand hand = hands.get(i);
+                Outcome outcome = BlackjackRules.settle(hand, hands.isNatural(i), dealerHand);
+                BinaryProtocol.writeSeatResult(number, outcome, hand, hand.size(), frame); // their cards were all sent as they were dealt
+                view.finish(number, i, outcome);
+                record(HandJournal.OUTCOME, BinaryProtocol.hand(number, i), (byte) outcome.getCode());
+                if(history != null){
+                    history.add(this.hand, players[number], number, outcome, hand, dealerHand, shoe.getSeed(), shuffle);
+                }
+                outcomes[settled++] = outcome;
+                if(staked[number] > 0){ // the seat is told once the result has been sent
+                    long bet = hands.isDoubled(i) ? 2 * staked[number] : staked[number];
+                    bankrolls[number] = ledger.settle(accounts[number], bet, outcome, hands.isNatural(i));
+                }
+            }
+            if(insurance[number] > 0){
+                bankrolls[number] = ledger.insurance(accounts[number], insurance[number], dealerHand.isBlackjack());
+                insurance[number] = 0;
+            }
+            staked[number] = 0;
+        }
+        BinaryProtocol.endResult(result, frame);
+        record(HandJournal.END, (byte) 0, HandJournal.FINISHED);
+        for(int i = dealerSent; i < dealerHand.size(); i++){
+            view.place(BinaryProtocol.DEALER_SEAT, dealerHand.get(i));
+        }
+        view.finishHand();
+        if(readyCount() > 0){
+            startTimeout(); // players who asked for a hand while this one was played wait no longer than the timeout
+        }
+        long taken = System.nanoTime() - start;
+        for(Outcome outcome:outcomes){
+            metrics.gameEnded(outcome, taken);
+        }
+    }
+
+    /**
+     * moves the table on when a timeout fires, the seat whose turn it was stays and a waiting hand is dealt
+     * @param number the number of the timeout
+     */
+    private synchronized void expire(long number){
+        if(number != timeouts || shoe == null){
+            return; // a newer timeout replaced this one
+        }
+        timeout = null;
+        if(view.getPhase() == TableState.IN_HAND && view.getTurn() != 0){
+            record(HandJournal.ACTION, active(view.getTurn()), BinaryProtocol.STAY);
+            clear(BinaryProtocol.maxFrameLength(view));
+            advance(view.getTurn());
+            broadcast();
+        }else if(view.getPhase() != TableState.IN_HAND && readyCount() > 0){
+            deal();
+        }
+    }
+
+    /**
+     * starts a new timeout, replacing any that is waiting
+     */
+    private void startTimeout(){
+        cancelTimeout();
+        long number = ++timeouts;
+        timeout = scheduler.afterTimeout(() -> expire(number));
+    }
+
+    /**
+     * stops the waiting timeout if there is one
+     */
+    private void cancelTimeout(){
+        timeouts++;
+        if(timeout != null){
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+
+    /**
+     * @return true if every seated player has asked for the next hand
+     */
+    private boolean allReady(){
+        return readyCount() == seated;
+    }
+
+    /**
+     * @return the number of seats that have asked for the next hand
+     */
+    private int readyCount(){
+        int count = 0;
+        for(byte number = 1; number <= capacity; number++){
+            if(ready[number] && seats[number] != null){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * writes a record of the hand being played to the journal, if there is one
+     * @param type what happened
+     * @param seat the seat it happened to
+     * @param value the card, command, outcome or ending
+     */
+    private void record(byte type, byte seat, byte value){
+        if(journal != null){
+            journal.record(hand, type, seat, value);
+        }
+    }
+
+    /**
+     * writes every card of a hand from an index onwards to the journal, if there is one
+     * @param seat the seat the hand belongs to
+     * @param cards the hand
+     * @param from the index of the first card to write
+     */
+    private void recordCards(byte seat, Hand cards, int from){
+        for(int i = from; i < cards.size(); i++){
+            record(HandJournal.CARD, seat, cards.get(i));
+        }
+    }
+
+    /**
+     * @return the number of this table
+     */
+    int getId(){
+        return id;
+    }
+
+    /**
+     * @return the number of players seated
+     */
+    synchronized int getSeated(){
+        return seated;
+    }
+
+    /**
+     * @return the ring spectators read the frames of this table from, null if the server has no spectators
+     */
+    EventRing getEvents(){
+        return events;
+    }
+
+    /**
+     * sends the frames in the buffer to every seat, the same bytes to each, and publishes them once for spectators
+     */
+    private void broadcast(){
+        frame.flip();
+        for(byte number = 1; number <= capacity; number++){
+            if(seats[number] != null){
+                frame.position(0);
+                seats[number].send(frame);
+            }
+        }
+        if(events != null){
+            frame.position(0);
+            events.publish(frame);
+        }
+        for(byte number = 1; number <= capacity; number++){
+            if(bankrolls[number] >= 0){ // bankrolls are private, they are neither broadcast nor published
+                if(seats[number] != null && seats[number] == dealt[number]){ // not to whoever took the seat since
+                    tell(number, bankrolls[number], bets[number]);
+                }
+                bankrolls[number] = -1;
+            }
+        }
+    }
+
+    /**
+     * gets the frame buffer ready for new frames
+     * @param size the most bytes the frames can need
+     * @return the cleared buffer
+     */
+    private ByteBuffer clear(int size){
+        frame.clear();
+        ensure(size);
+        return frame;
+    }
+
+    /**
+     * grows the frame buffer if it does not have room for more bytes, keeping what was written to it
+     * @param more the most bytes still to be written
+     */
+    private void ensure(int more){
+        if(frame.remaining() < more){
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(frame.position() + more, frame.capacity() * 2));
+            frame.flip();
+            bigger.put(frame);
+            frame = bigger;
+        }
+    }
+}
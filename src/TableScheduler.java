@@ -0,0 +1,163 @@
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * seats players at shared tables, filling the first table with a free seat before opening another,
+ * and runs the timer that moves a table on when a seat does not act in time
+ */
+public class TableScheduler {
+
+    /**
+     * the most players at each table
+     */
+    private final int seatsPerTable;
+
+    /**
+     * how long a seat has to act, in milliseconds
+     */
+    private final long turnTimeout;
+
+    /**
+     * where the tables get their shoes
+     */
+    private final ShoePool shoes;
+
+    /**
+     * where the tables record hands and commands
+     */
+    private final ServerMetrics metrics;
+
+    /**
+     * where the tables write down every card, command and outcome, null if the server keeps no journal
+     */
+    private final HandJournal journal;
+
+    /**
+     * where the tables store every finished hand, null if the server keeps no hand history
+     */
+    private final HandHistory history;
+
+    /**
+     * where the tables get hints, null if the server gives no hints
+     */
+    private final StrategyTable strategy;
+
+    /**
+     * where the tables keep the bankrolls of their players, null if hands are played without stakes
+     */
+    private final Ledger ledger;
+
+    /**
+     * the size of the event ring each table publishes to for spectators, 0 if the server has no spectators
+     */
+    private final int spectatorBuffer;
+
+    /**
+     * every open table, a table is closed once its last player leaves
+     */
+    private final List<Table> tables = new ArrayList<>();
+
+    /**
+     * the number of tables opened so far, the last number given to one
+     */
+    private int opened = 0;
+
+    /**
+     * runs the turn timeouts of every table
+     */
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "blackjack-table-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * constructor for a table scheduler
+     * @param seatsPerTable the most players at each table, from 1 to TableState.MAX_SEATS
+     * @param turnTimeout how long a seat has to act, in milliseconds
+     * @param shoes where the tables get their shoes
+     * @param metrics where the tables record hands and commands
+     * @param journal where the tables write down every card, command and outcome, null to keep no journal
+     * @param history where the tables store every finished hand, null to keep no hand history
+     * @param strategy where the tables get hints, null to give no hints
+     * @param ledger where the tables keep the bankrolls of their players, null to play hands without stakes
+     * @param spectatorBuffer the size in bytes of the event ring each table publishes to for spectators, 0 for none
+     */
+    public TableScheduler(int seatsPerTable, long turnTimeout, ShoePool shoes, ServerMetrics metrics, HandJournal journal,
+                          HandHistory history, StrategyTable strategy, Ledger ledger, int spectatorBuffer){
+        if(seatsPerTable < 1 || seatsPerTable > TableState.MAX_SEATS){
+            throw new IllegalArgumentException("a table seats from 1 to " + TableState.MAX_SEATS + " players: " + seatsPerTable);
+        }
+        this.seatsPerTable = seatsPerTable;
+        this.turnTimeout = turnTimeout;
+        this.shoes = shoes;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.history = history;
+        this.strategy = strategy;
+        this.ledger = ledger;
+        this.spectatorBuffer = spectatorBuffer;
+    }
+
+    /**
+     * sits a player at the first table with a free seat, opening a new table if they are all full
+     * @param seat the seat of the player
+     */
+    public synchronized void seat(Seat seat){
+        for(Table table:tables){
+            if(table.join(seat)){
+                return;
+            }
+        }
+        Table table = new Table(this, ++opened, seatsPerTable, shoes, metrics, journal, history, strategy, ledger,
+                spectatorBuffer > 0 ? new EventRing(spectatorBuffer) : null);
+        tables.add(table);
+        table.join(seat);
+    }
+
+    /**
+     * finds the events of a table for a spectator
+     * @param id the number of the table, 0 for the table with the most players
+     * @return the ring the table publishes to, null if there is no such table open or the server has no spectators
+     */
+    public synchronized EventRing watch(int id){
+        Table found = null;
+        for(Table table:tables){
+            if(id == 0 ? found == null || table.getSeated() > found.getSeated() : table.getId() == id){
+                found = table;
+            }
+        }
+        return found == null ? null : found.getEvents();
+    }
+
+    /**
+     * closes a table if its last player has left
+     * @param table the table
+     */
+    synchronized void closeIfEmpty(Table table){
+        if(table.close()){
+            tables.remove(table);
+        }
+    }
+
+    /**
+     * @return the number of open tables
+     */
+    public synchronized int getTableCount(){
+        return tables.size();
+    }
+
+    /**
+     * runs a task once the turn timeout has passed
+     * @param task the task
+     * @return the pending task, so it can be cancelled
+     */
+    ScheduledFuture<?> afterTimeout(Runnable task){
+        return timer.schedule(task, turnTimeout, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,304 @@
+
+/**
+ * the table as one side of a version 2 connection has seen it, built up from the changes sent by the server
+ *
+ * the client keeps one to rebuild what to show the player from each change, and the server keeps one
+ * per table to know which cards the clients have already been sent. seat 0 is the dealer, whose hole card
+ * is never on the table until the hand is over, and the players sit in seats 1 to MAX_SEATS, each with
+ * the hands it split into
+ */
+public class TableState {
+
+    /**
+     * the most players a table can seat
+     */
+    public static final int MAX_SEATS = 7;
+
+    /**
+     * no hand has been dealt yet
+     */
+    public static final byte EMPTY = 0;
+
+    /**
+     * a hand is being played
+     */
+    public static final byte IN_HAND = 1;
+
+    /**
+     * the last hand is over and has an outcome
+     */
+    public static final byte HAND_OVER = 2;
+
+    /**
+     * the hands on the table and how each ended, indexed by seat
+     */
+    private final SeatHands[] hands = new SeatHands[MAX_SEATS + 1];
+
+    /**
+     * stores weather each seat was dealt into the hand
+     */
+    private final boolean[] dealtIn = new boolean[MAX_SEATS + 1];
+
+    /**
+     * EMPTY, IN_HAND or HAND_OVER
+     */
+    private byte phase = EMPTY;
+
+    /**
+     * the seat whose turn it is, 0 when it is nobodys
+     */
+    private byte turn = 0;
+
+    /**
+     * the seat of the player this state is kept for, the only seat there is when playing alone
+     */
+    private byte seat = BinaryProtocol.PLAYER_SEAT;
+
+    /**
+     * stores weather a score sent by the server did not match the cards, meaning a change was missed
+     */
+    private boolean outOfSync = false;
+
+    /**
+     * constructor for an empty table
+     */
+    public TableState(){
+        for(int i = 0; i < hands.length; i++){
+            hands[i] = new SeatHands();
+        }
+    }
+
+    /**
+     * clears the table for a new hand
+     */
+    public void startHand(){
+        clear();
+        phase = IN_HAND;
+    }
+
+    /**
+     * adds a card to the active hand of a seat, starting a new hand first if the last one is over
+     * @param seat the seat, BinaryProtocol.DEALER_SEAT for the dealer
+     * @param rank the rank of the card
+     * @return the hand the card was added to
+     */
+    public Hand deal(byte seat, byte rank){
+        if(phase != IN_HAND){
+            startHand();
+        }
+        return place(seat, rank);
+    }
+
+    /**
+     * adds a card to one of the hands of a seat, starting a new hand first if the last one is over
+     * @param seat the seat, BinaryProtocol.DEALER_SEAT for the dealer
+     * @param index the index of the hand
+     * @param rank the rank of the card
+     * @return the hand the card was added to
+     */
+    public Hand deal(byte seat, int index, byte rank){
+        if(phase != IN_HAND){
+            startHand();
+        }
+        return place(seat, index, rank);
+    }
+
+    /**
+     * puts a card in front of a seat without changing the phase, as when reading a snapshot
+     * @param seat the seat, BinaryProtocol.DEALER_SEAT for the dealer
+     * @param rank the rank of the card
+     * @return the hand the card was added to
+     */
+    public Hand place(byte seat, byte rank){
+        return place(seat, hands[seat].getActiveIndex(), rank);
+    }
+
+    /**
+     * puts a card on one of the hands of a seat without changing the phase, as when reading a snapshot
+     * @param seat the seat, BinaryProtocol.DEALER_SEAT for the dealer
+     * @param index the index of the hand
+     * @param rank the rank of the card
+     * @return the hand the card was added to
+     */
+    public Hand place(byte seat, int index, byte rank){
+        Hand hand = open(seat, index);
+        hand.add(rank);
+        return hand;
+    }
+
+    /**
+     * marks a seat as dealt in and gets one of its hands, adding empty hands up to it if the seat does not have it yet
+     * @param seat the seat, BinaryProtocol.DEALER_SEAT for the dealer
+     * @param index the index of the hand
+     * @return the hand
+     */
+    public Hand open(byte seat, int index){
+        dealtIn[seat] = true;
+        return hands[seat].open(index);
+    }
+
+    /**
+     * splits a hand of a seat, its second card starts the next free hand of the seat
+     * @param seat the seat
+     * @param index the index of the hand split, which becomes the active hand
+     * @return the index of the new hand
+     */
+    public int split(byte seat, int index){
+        hands[seat].setActive(index);
+        return hands[seat].split();
+    }
+
+    /**
+     * records how one hand of a seat ended
+     * @param seat the seat
+     * @param index the index of the hand
+     * @param outcome how the hand ended
+     */
+    public void finish(byte seat, int index, Outcome outcome){
+        hands[seat].finish(index, outcome);
+    }
+
+    /**
+     * ends the hand once every seat has its outcome
+     */
+    public void finishHand(){
+        phase = HAND_OVER;
+        turn = 0;
+    }
+
+    /**
+     * empties the table so a snapshot can be read into it, which also brings it back in sync
+     * @param phase the phase of the snapshot
+     * @param turn the seat whose turn it is in the snapshot
+     */
+    public void restore(byte phase, byte turn){
+        clear();
+        this.phase = phase;
+        this.turn = turn;
+        outOfSync = false;
+    }
+
+    /**
+     * compares a score sent by the server with the cards on the table, marking the table out of sync if they differ
+     * @param hand the hand the score is for
+     * @param score the score sent by the server
+     */
+    public void check(Hand hand, int score){
+        if(hand.getScore() != score){
+            outOfSync = true;
+        }
+    }
+
+    /**
+     * takes every card off the table
+     */
+    private void clear(){
+        for(int i = 0; i < hands.length; i++){
+            hands[i].clear();
+            dealtIn[i] = false;
+        }
+        turn = 0;
+    }
+
+    /**
+     * @param seat the seat, BinaryProtocol.DEALER_SEAT for the dealer
+     * @return the cards of the active hand of the seat
+     */
+    public Hand getHand(int seat){
+        return hands[seat].getActive();
+    }
+
+    /**
+     * @param seat the seat, BinaryProtocol.DEALER_SEAT for the dealer
+     * @return every hand of the seat
+     */
+    public SeatHands getHands(int seat){
+        return hands[seat];
+    }
+
+    /**
+     * @param seat the seat
+     * @return how the first hand of the seat ended in the last round, null until it is over
+     */
+    public Outcome getOutcome(int seat){
+        return hands[seat].getOutcome(0);
+    }
+
+    /**
+     * @param seat the seat
+     * @return true if the seat was dealt into the hand
+     */
+    public boolean isDealtIn(int seat){
+        return seat != BinaryProtocol.DEALER_SEAT && dealtIn[seat];
+    }
+
+    /**
+     * @return the cards of the active hand of the player this state is kept for
+     */
+    public Hand getPlayerHand(){
+        return hands[seat].getActive();
+    }
+
+    /**
+     * @return every hand of the player this state is kept for
+     */
+    public SeatHands getPlayerHands(){
+        return hands[seat];
+    }
+
+    /**
+     * @return the cards of the dealer that are face up
+     */
+    public Hand getDealerHand(){
+        return hands[BinaryProtocol.DEALER_SEAT].getActive();
+    }
+
+    /**
+     * @return how the first hand of the player this state is kept for ended in the last round, null until it is over
+     */
+    public Outcome getOutcome(){
+        return hands[seat].getOutcome(0);
+    }
+
+    /**
+     * @return EMPTY, IN_HAND or HAND_OVER
+     */
+    public byte getPhase(){
+        return phase;
+    }
+
+    /**
+     * @return the seat whose turn it is, 0 when it is nobodys
+     */
+    public byte getTurn(){
+        return turn;
+    }
+
+    /**
+     * @param turn the seat whose turn it now is, 0 for nobody
+     */
+    public void setTurn(byte turn){
+        this.turn = turn;
+    }
+
+    /**
+     * @return the seat of the player this state is kept for
+     */
+    public byte getSeat(){
+        return seat;
+    }
+
+    /**
+     * @param seat the seat of the player this state is kept for
+     */
+    public void setSeat(byte seat){
+        this.seat = seat;
+    }
+
+    /**
+     * @return true if a change was missed and a snapshot is needed
+     */
+    public boolean isOutOfSync(){
+        return outOfSync;
+    }
+}
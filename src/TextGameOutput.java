@@ -0,0 +1,68 @@
+
+/**
+ * turns what happens in a game into the text messages shown to the player,
+ * used by the server for clients on the legacy object stream and by the client to show binary events
+ */
+public abstract class TextGameOutput implements GameOutput {
+
+    /**
+     * sends a message to the player
+     * @param message the message to be sent
+     */
+    protected abstract void sendData(String message);
+
+    /**
+     * tells the client what their opening hand is and what card the dealer has up
+     */
+    @Override
+    public void openingHand(Hand playerHand, byte dealerCard){
+        sendData("You have " + Card.name(playerHand.get(0)) + " " + Card.name(playerHand.get(1)) + " making a score of " + playerHand.getScore());
+        sendData("The dealer has a " + Card.name(dealerCard) + " showing");
+    }
+
+    /**
+     * gives the client information about what card was drawn and what information they have
+     */
+    @Override
+    public void playerHand(Hand playerHand, byte dealerCard){
+        String message = "You now have "; // creates a message to add all of the cards in the players hand to
+        for (int i = 0; i < playerHand.size(); i++) {
+            message = message + Card.name(playerHand.get(i)) + " "; // adds each card one by one
+        }
+        // adds information about score and dealers showing card
+        message = message + "making a score of " + playerHand.getScore() + " and the dealer has a " + Card.name(dealerCard) + " showing";
+        sendData(message);
+    }
+
+    /**
+     * informs the client of who won
+     */
+    @Override
+    public void outcome(Outcome outcome, Hand playerHand, Hand dealerHand){
+        String message = outcome.getMessage() + playerHand.getScore() + " points \nwith these cards: ";
+        for(int i = 0; i < playerHand.size(); i++){
+            message = message + Card.name(playerHand.get(i)) + " "; // shows all of the cards the player hand
+        }
+        message = message + "\n and the dealer had " + dealerHand.getScore() + " points with these cards: ";
+        for(int i = 0; i < dealerHand.size(); i++){
+            message = message + Card.name(dealerHand.get(i)) + " "; // shows all the cards the dealer ended up with
+        }
+        sendData(message);
+    }
+
+    /**
+     * tells the client which play is better
+     */
+    @Override
+    public void hint(Hint hint){
+        sendData(hint.getMessage());
+    }
+
+    /**
+     * tells the client their bankroll
+     */
+    @Override
+    public void bankroll(long balance, long bet){
+        sendData(Ledger.message(balance, bet));
+    }
+}
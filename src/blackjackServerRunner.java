@@ -1,5 +1,11 @@
 
-import javax.swing.JFrame;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import javax.management.JMException;
 
 /**
  * creates and runs a blackjack server
@@ -8,11 +14,132 @@ public class blackjackServerRunner {
 
     /**
      * main method to run the server
-     * @param args the arguments for the main method
+     * @param args the arguments for the main method, settings written as --name=value, for example --transport=nio
+     * @throws IOException if the event log file cannot be opened
      */
-    public static void main( String[] args){
-        BlackjackServer application = new BlackjackServer();
-        application.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        application.runServer();
+    public static void main( String[] args) throws IOException{
+        ServerConfig config = ServerConfig.parse(args);
+        BlackjackServer application = new BlackjackServer(config, openJournal(config), openHistory(config), openLedger(config));
+        startLog(application.getEventLog(), config.getLog());
+        startMetrics(application.getMetrics(), config);
+        startLobbyAgent(application, config);
+        startSpectators(application, config);
+        // the window is only touched when asked for so a headless server never loads awt
+        if(!config.isHeadless() && !ServerViewer.open(application.getEventLog())){
+            System.err.println("no display available, running headless, start with --headless=true --log=stdout to see the log");
+        }
+        if(config.getTransport() == ServerConfig.Transport.NIO){
+            new NioServer(application, config).runServer(); // selector based transport
+        }else{
+            application.runServer(); // a thread for every connection
+        }
+    }
+
+    /**
+     * opens the hand journal, reading what it already holds
+     * @param config the settings saying where the journal is kept and how often it is forced to the disk
+     * @return the journal, null if the server keeps none
+     * @throws IOException if the journal directory cannot be read or written
+     */
+    private static HandJournal openJournal(ServerConfig config) throws IOException{
+        if(config.getJournal() == null){
+            return null;
+        }
+        return new HandJournal(Paths.get(config.getJournal()), config.getJournalSegment(),
+                config.getJournalSync(), config.getJournalSyncMillis());
+    }
+
+    /**
+     * opens the hand history
+     * @param config the settings saying where the hand history is kept
+     * @return the hand history, null if the server keeps none
+     * @throws IOException if the hand history directory cannot be read or written
+     */
+    private static HandHistory openHistory(ServerConfig config) throws IOException{
+        if(config.getHistory() == null){
+            return null;
+        }
+        return new HandHistory(Paths.get(config.getHistory()));
+    }
+
+    /**
+     * opens the ledger, reading the bankrolls it already holds
+     * @param config the settings saying where the ledger is kept, the bets allowed and how often it is written
+     * @return the ledger, null if hands are played without stakes
+     * @throws IOException if the ledger file is there and cannot be read
+     */
+    private static Ledger openLedger(ServerConfig config) throws IOException{
+        if(config.getLedger() == null){
+            return null;
+        }
+        return new Ledger(Paths.get(config.getLedger()), config.getBankroll(), config.getBet(), config.getMaxBet(),
+                (long) (config.getLedgerSnapshot() * 1000));
+    }
+
+    /**
+     * makes the metrics of the server readable from outside the process
+     * @param metrics the metrics of the server
+     * @param config the settings saying whether to use jmx and which port to serve prometheus text on
+     * @throws IOException if the metrics port cannot be bound
+     */
+    private static void startMetrics(ServerMetrics metrics, ServerConfig config) throws IOException{
+        if(config.isJmx()){
+            try{
+                metrics.registerWithJmx();
+            }
+            catch (JMException e){
+                System.err.println("metrics not registered with jmx: " + e.getMessage());
+            }
+        }
+        if(config.getMetricsPort() > 0){
+            new MetricsEndpoint(metrics, config.getMetricsPort());
+        }
+    }
+
+    /**
+     * starts writing the event log out
+     * @param eventLog the log of the server
+     * @param log "stdout", "none" or the name of a file to append to
+     * @throws IOException if the file cannot be opened
+     */
+    private static void startLog(EventLog eventLog, String log) throws IOException{
+        Writer writer;
+        if(log.equals("none")){
+            return;
+        }else if(log.equals("stdout")){
+            writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        }else{
+            writer = new FileWriter(log, StandardCharsets.UTF_8, true);
+        }
+        eventLog.startWriter(writer);
+    }
+
+    /**
+     * starts sending heartbeats to the lobby, if the server was given one
+     * @param application the server
+     * @param config the settings saying where the lobby is
+     */
+    private static void startLobbyAgent(BlackjackServer application, ServerConfig config){
+        if(config.getLobby() == null){
+            return;
+        }
+        Thread agent = new Thread(new LobbyAgent(application, config), "blackjack-lobby-agent");
+        agent.setDaemon(true);
+        agent.start();
+    }
+
+    /**
+     * starts taking spectators, if the server was given a port for them
+     * @param application the server
+     * @param config the settings saying which port spectators connect to
+     * @throws IOException if the spectator port cannot be bound
+     */
+    private static void startSpectators(BlackjackServer application, ServerConfig config) throws IOException{
+        if(config.getSpectatorPort() == 0){
+            return;
+        }
+        Thread spectators = new Thread(new SpectatorServer(application, config.getSpectatorPort()), "blackjack-spectators");
+        spectators.setDaemon(true);
+        spectators.start();
     }
 }